@@ -4,10 +4,24 @@ import java.awt.Dimension;
 import java.awt.EventQueue;
 import javax.swing.JFrame;
 
+import com.github.neoflyingsaucer.j2dout.Java2DFontResolver;
+
 public class BrowserMain {
 
 	public static void main(String[] args)
 	{
+		// Look up system fonts while the window is being created.
+		Thread prewarm = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Java2DFontResolver.prewarmFontCatalog();
+			}
+		}, "font-catalog");
+		prewarm.setDaemon(true);
+		prewarm.start();
+
 		EventQueue.invokeLater(new Runnable() 
 		{
 			@Override
@@ -20,6 +20,7 @@ import com.github.neoflyingsaucer.j2dout.Java2DFontResolver;
 import com.github.neoflyingsaucer.j2dout.Java2DImageResolver;
 import com.github.neoflyingsaucer.j2dout.Java2DOut;
 import com.github.neoflyingsaucer.j2dout.Java2DReplacedElementResolver;
+import com.github.neoflyingsaucer.j2dout.Java2DTiledPngOut;
 import com.github.neoflyingsaucer.pdf2dout.Pdf2FontContext;
 import com.github.neoflyingsaucer.pdf2dout.Pdf2FontResolver;
 import com.github.neoflyingsaucer.pdf2dout.Pdf2ImageResolver;
@@ -226,17 +227,18 @@ public class ExportAction extends AbstractAction
     	DisplayList dl = r3.renderToList();
     	int height = r3.getLayoutHeight();
     	r3.setViewportSize(1000, height);
-    	BufferedImage img = new BufferedImage(1000, height, BufferedImage.TYPE_INT_ARGB);
     	
-    	Graphics2D g2d = img.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-  	
-    	Java2DOut out = new Java2DOut(g2d, RenderingHints.VALUE_ANTIALIAS_ON);
-    	out.render(dl);
-    	g2d.dispose();
-    	g2d2.dispose();
+    	RenderingHints hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    	hints.put(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
     	
-    	ImageIO.write(img, "png", new File(filename)); 
+    	// Paint a tile at a time rather than allocating the whole image, which may be very tall.
+    	Java2DTiledPngOut out = new Java2DTiledPngOut(1000, height, Java2DTiledPngOut.DEFAULT_TILE_HEIGHT, hints);
+    	BufferedOutputStream bs = new BufferedOutputStream(new FileOutputStream(filename));
+    	try {
+    		out.render(dl, bs);
+    	} finally {
+    		bs.close();
+    		g2d2.dispose();
+    	}
     }
 }
@@ -136,6 +136,10 @@ public class ContentFunctionFactory
     private static class PagesCounterFunction extends PageNumberFunction implements ContentFunction {
     	@Override
     	public String calculate(final RenderingContext c, final FSFunction function, final InlineText text) {
+            if (c.getLayoutFrontier() != null) {
+                // The page count is only known once layout is complete.
+                c.getLayoutFrontier().abandon();
+            }
             final int value = c.getRootLayer().getRelativePageCount(c);
             return CounterFunction.createCounterText(getListStyleType(function), value);
         }
@@ -162,6 +166,11 @@ public class ContentFunctionFactory
             if (uri != null && uri.startsWith("#")) {
                 final String anchor = uri.substring(1);
                 final Box target = c.getBoxById(anchor);
+                if (c.getLayoutFrontier() != null &&
+                        (target == null || target.getAbsY() >= c.getLayoutFrontier().getStableY())) {
+                    // The target is not laid out yet, or may still move.
+                    c.getLayoutFrontier().abandon();
+                }
                 if (target != null) {
                     final int pageNo = c.getRootLayer().getRelativePageNo(c, target.getAbsY());
                     return CounterFunction.createCounterText(IdentValue.DECIMAL, pageNo + 1);
@@ -32,6 +32,7 @@ import com.github.neoflyingsaucer.css.constants.CSSName;
 import com.github.neoflyingsaucer.css.extend.AttributeResolver;
 import com.github.neoflyingsaucer.css.extend.lib.DOMTreeResolver;
 import com.github.neoflyingsaucer.css.newmatch.CascadedStyle;
+import com.github.neoflyingsaucer.css.newmatch.MatcherRules;
 import com.github.neoflyingsaucer.css.newmatch.PageInfo;
 import com.github.neoflyingsaucer.css.parser.PropertyValue;
 import com.github.neoflyingsaucer.css.sheet.FontFaceRule;
@@ -88,12 +89,12 @@ public class StyleReference {
 
         final List<StylesheetInfo> infos = getStylesheets();
         
+        // Compiled rules are shared with other documents using the same stylesheets.
         _matcher = new com.github.neoflyingsaucer.css.newmatch.Matcher(
                 new DOMTreeResolver(),
                 attRes, 
                 _stylesheetFactory, 
-                readAndParseAll(infos, _context.getMedia()), 
-                _context);
+                MatcherRules.compile(readAndParseAll(infos, _context.getMedia()), _context));
     }
     
     private List<Stylesheet> readAndParseAll(final List<StylesheetInfo> infos, final String medium) 
@@ -254,6 +255,10 @@ public class StyleReference {
         return _matcher.getFontFaceRules();
     }
     
+    public MatcherRules getMatcherRules() {
+        return _matcher.getRules();
+    }
+    
     public void setUserAgentCallback(final UserAgentCallback userAgentCallback) {
         _uac = userAgentCallback;
         _stylesheetFactory.setUserAgentCallback(userAgentCallback);
@@ -262,4 +267,8 @@ public class StyleReference {
     public void setSupportCMYKColors(final boolean b) {
         _stylesheetFactory.setSupportCMYKColors(b);
     }
+
+    public void setUseStylesheetCache(final boolean b) {
+        _stylesheetFactory.setUseStylesheetCache(b);
+    }
 }
@@ -0,0 +1,205 @@
+package com.github.neoflyingsaucer.context;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.neoflyingsaucer.css.sheet.Stylesheet;
+import com.github.neoflyingsaucer.css.sheet.StylesheetInfo.CSSOrigin;
+import com.github.neoflyingsaucer.extend.controller.error.FSError;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
+import com.github.neoflyingsaucer.util.XRRuntimeException;
+
+/**
+ * A process-wide cache of parsed stylesheets, so that the default stylesheet and
+ * stylesheets shared by many documents are only lexed and parsed once.
+ *
+ * Entries are keyed by URI and a digest of the stylesheet text, so a changed
+ * stylesheet at the same URI is parsed again. One instance may be used by any number
+ * of concurrent renders, so code reading a parsed stylesheet must not modify it or
+ * cache values in it.
+ * The errors found while parsing are kept with each stylesheet, to be reported
+ * again to every render that uses it.
+ *
+ * Used unless turned off with {@link StyleReference#setUseStylesheetCache(boolean)}.
+ */
+public class StylesheetCache
+{
+	/** The most stylesheets, including inline styles, kept by the shared instance. */
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	private static final StylesheetCache INSTANCE = new StylesheetCache(DEFAULT_MAX_ENTRIES);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Map<Key, Entry> _cache;
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+
+	public StylesheetCache(final int maxEntries)
+	{
+		_cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public static StylesheetCache getInstance()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * @param uri The stylesheet's URI. For inline styles, the document URI.
+	 * @param supportCMYKColors Whether the parser accepted CMYK colors, which changes the parse result.
+	 * @param text The full text of the stylesheet.
+	 * @return The key for a stylesheet, to be used with {@link #get(Key)} and {@link #put(Key, Stylesheet, List)}.
+	 */
+	public static Key key(final String uri, final CSSOrigin origin, final boolean supportCMYKColors, final String text)
+	{
+		return new Key(uri, origin, supportCMYKColors, digest(text));
+	}
+
+	public Entry get(final Key key)
+	{
+		Entry entry;
+
+		synchronized (_cache)
+		{
+			entry = _cache.get(key);
+		}
+
+		if (entry == null)
+			_misses.incrementAndGet();
+		else
+			_hits.incrementAndGet();
+
+		return entry;
+	}
+
+	/**
+	 * @param errors The errors reported while parsing the stylesheet.
+	 */
+	public void put(final Key key, final Stylesheet sheet, final List<FSError> errors)
+	{
+		final Entry entry = new Entry(sheet, errors);
+
+		synchronized (_cache)
+		{
+			_cache.put(key, entry);
+		}
+	}
+
+	public void clear()
+	{
+		synchronized (_cache)
+		{
+			_cache.clear();
+		}
+	}
+
+	public long getHitCount()
+	{
+		return _hits.get();
+	}
+
+	public long getMissCount()
+	{
+		return _misses.get();
+	}
+
+	private static byte[] digest(final String text)
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1").digest(text.getBytes(UTF8));
+		}
+		catch (final NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-1.
+			throw new XRRuntimeException("SHA-1 not available", e);
+		}
+	}
+
+	public static final class Entry
+	{
+		private final Stylesheet _sheet;
+		private final List<FSError> _errors;
+
+		private Entry(final Stylesheet sheet, final List<FSError> errors)
+		{
+			_sheet = sheet;
+			_errors = errors.isEmpty() ? Collections.<FSError>emptyList() : new ArrayList<FSError>(errors);
+		}
+
+		public Stylesheet getStylesheet()
+		{
+			return _sheet;
+		}
+
+		/**
+		 * Reports the errors found while parsing the stylesheet to the current
+		 * thread's error handler, as parsing it again would have.
+		 */
+		public void replayErrors()
+		{
+			for (final FSError err : _errors)
+			{
+				FSErrorController.onError(new FSError(err.getLineNumber(), err.getLanguageId(), err.getErrorType(),
+						err.getURI(), err.getSourceClass(), err.getLevel(), err.getArguments()));
+			}
+		}
+	}
+
+	public static final class Key
+	{
+		private final String _uri;
+		private final CSSOrigin _origin;
+		private final boolean _cmyk;
+		private final byte[] _digest;
+		private final int _hash;
+
+		private Key(final String uri, final CSSOrigin origin, final boolean cmyk, final byte[] digest)
+		{
+			_uri = uri;
+			_origin = origin;
+			_cmyk = cmyk;
+			_digest = digest;
+			_hash = (uri.hashCode() * 31 + origin.hashCode()) * 31 + Arrays.hashCode(digest);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return _hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (!(obj instanceof Key))
+				return false;
+
+			final Key other = (Key) obj;
+
+			return _hash == other._hash &&
+				   _cmyk == other._cmyk &&
+				   _origin == other._origin &&
+				   _uri.equals(other._uri) &&
+				   Arrays.equals(_digest, other._digest);
+		}
+	}
+}
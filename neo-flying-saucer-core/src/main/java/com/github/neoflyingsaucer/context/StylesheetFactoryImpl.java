@@ -21,6 +21,9 @@ package com.github.neoflyingsaucer.context;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.github.neoflyingsaucer.css.extend.StylesheetFactory;
 import com.github.neoflyingsaucer.css.parser.CSSErrorHandler;
@@ -53,6 +56,10 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
      */
     private UserAgentCallback _userAgentCallback;
     private final CSSParser _cssParser;
+    private boolean _supportCMYKColors;
+    private boolean _useStylesheetCache = true;
+    /* The errors of the stylesheet being parsed for the shared cache, if any. */
+    private List<FSError> _parseErrors;
 
     public StylesheetFactoryImpl(final UserAgentCallback userAgentCallback) {
         _userAgentCallback = userAgentCallback;
@@ -65,6 +72,9 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
         			FSError err = new FSError(line, msgId, FSErrorType.CSS_ERROR, uri, StylesheetFactory.class, FSErrorLevel.WARNING, args);
         			FSErrorController.onError(err);
         		}
+
+        		if (_parseErrors != null)
+        			_parseErrors.add(new FSError(line, msgId, FSErrorType.CSS_ERROR, uri, StylesheetFactory.class, FSErrorLevel.WARNING, args));
         	}
         }, _userAgentCallback);
     }
@@ -79,7 +89,10 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
         	Stylesheet s1;
 
         	try {
-				s1 = _cssParser.parseStylesheet(info.getUri().get(), info.getOrigin(), reader);
+        		if (_useStylesheetCache)
+        			s1 = parseShared(reader, info.getUri().get(), info.getOrigin(), isInline);
+        		else
+        			s1 = _cssParser.parseStylesheet(info.getUri().get(), info.getOrigin(), reader);
 			} catch (IOException e) {
 				return Optional.empty();
 			}
@@ -98,6 +111,50 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
         return Optional.empty();
     }
 
+    /**
+     * Parses a stylesheet, or returns an identical stylesheet already parsed
+     * (possibly for another document) from the process-wide {@link StylesheetCache}
+     * and reports the errors found when it was parsed.
+     * Inline styles are keyed by their document's URI, as relative URLs in them are
+     * resolved against it.
+     */
+    private Stylesheet parseShared(final Reader reader, final String uri, final CSSOrigin origin, final boolean isInline) throws IOException
+    {
+    	final StringBuilder sb = new StringBuilder();
+    	final char[] buf = new char[4096];
+    	int read;
+
+    	while ((read = reader.read(buf)) != -1)
+    		sb.append(buf, 0, read);
+
+    	final String text = sb.toString();
+    	final String keyUri = isInline && uri.indexOf('#') != -1 ? uri.substring(0, uri.indexOf('#')) : uri;
+    	final StylesheetCache.Key key = StylesheetCache.key(keyUri, origin, _supportCMYKColors, text);
+    	final StylesheetCache cache = StylesheetCache.getInstance();
+
+    	final StylesheetCache.Entry entry = cache.get(key);
+
+    	if (entry != null)
+    	{
+    		// Report what parsing it would have, as the errors are per document.
+    		entry.replayErrors();
+    		return entry.getStylesheet();
+    	}
+
+    	_parseErrors = new ArrayList<FSError>();
+
+    	try
+    	{
+    		final Stylesheet sheet = _cssParser.parseStylesheet(uri, origin, new StringReader(text));
+    		cache.put(key, sheet, _parseErrors);
+    		return sheet;
+    	}
+    	finally
+    	{
+    		_parseErrors = null;
+    	}
+    }
+
     private Optional<StylesheetI> parse(final StylesheetInfo info) {
 
     	if (!info.getUri().isPresent())
@@ -168,6 +225,15 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
     }
     
     public void setSupportCMYKColors(final boolean b) {
+        _supportCMYKColors = b;
         _cssParser.setSupportCMYKColors(b);
     }
+
+    /**
+     * Whether to share parsed stylesheets with other renders through the
+     * {@link StylesheetCache}. Default is true.
+     */
+    public void setUseStylesheetCache(final boolean b) {
+        _useStylesheetCache = b;
+    }
 }
@@ -136,28 +136,43 @@ public class CascadedStyle {
         addProperties(iter);
     }
 
+    /**
+     * @param props Properties in order of specificity. Only the first count are used.
+     */
+    CascadedStyle(final PropertyDeclaration[] props, final int count) {
+        this();
+
+        addProperties(props, count);
+    }
+
     private void addProperties(final java.util.Iterator<PropertyDeclaration> iter) {
+        final List<PropertyDeclaration> props = new ArrayList<PropertyDeclaration>();
+        while (iter.hasNext()) {
+            props.add(iter.next());
+        }
+        addProperties(props.toArray(new PropertyDeclaration[props.size()]), props.size());
+    }
+
+    private void addProperties(final PropertyDeclaration[] props, final int count) {
         //do a bucket-sort on importance and origin
         //properties should already be in order of specificity
-        @SuppressWarnings("unchecked")
-        final
-		java.util.List<PropertyDeclaration>[] buckets = new java.util.List[PropertyDeclaration.IMPORTANCE_AND_ORIGIN_COUNT];
-        for (int i = 0; i < buckets.length; i++) {
-            buckets[i] = new java.util.LinkedList<PropertyDeclaration>();
+        final int[] starts = new int[PropertyDeclaration.IMPORTANCE_AND_ORIGIN_COUNT + 1];
+        for (int i = 0; i < count; i++) {
+            starts[props[i].getImportanceAndOrigin() + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
         }
 
-        while (iter.hasNext()) {
-            final PropertyDeclaration prop = iter.next();
-            buckets[prop.getImportanceAndOrigin()].add(prop);
+        final PropertyDeclaration[] sorted = new PropertyDeclaration[count];
+        for (int i = 0; i < count; i++) {
+            sorted[starts[props[i].getImportanceAndOrigin()]++] = props[i];
         }
 
-        for (final List<PropertyDeclaration> bucket : buckets) {
-            for (final java.util.Iterator<PropertyDeclaration> it = bucket.iterator(); it.hasNext();) {
-                FSCancelController.cancelOpportunity(CascadedStyle.class);
-            	
-            	PropertyDeclaration prop = it.next();
-                cascadedProperties.put(prop.getCSSName(), prop);
-            }
+        for (int i = 0; i < count; i++) {
+            FSCancelController.cancelOpportunity(CascadedStyle.class);
+
+            cascadedProperties.put(sorted[i].getCSSName(), sorted[i]);
         }
     }
     
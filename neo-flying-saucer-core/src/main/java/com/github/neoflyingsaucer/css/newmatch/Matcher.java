@@ -21,15 +21,13 @@
 package com.github.neoflyingsaucer.css.newmatch;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.w3c.dom.Element;
 
@@ -38,16 +36,11 @@ import com.github.neoflyingsaucer.css.extend.AttributeResolver;
 import com.github.neoflyingsaucer.css.extend.StylesheetFactory;
 import com.github.neoflyingsaucer.css.extend.TreeResolver;
 import com.github.neoflyingsaucer.css.sheet.FontFaceRule;
-import com.github.neoflyingsaucer.css.sheet.MediaRule;
 import com.github.neoflyingsaucer.css.sheet.PageRule;
 import com.github.neoflyingsaucer.css.sheet.PropertyDeclaration;
-import com.github.neoflyingsaucer.css.sheet.Ruleset;
 import com.github.neoflyingsaucer.css.sheet.Stylesheet;
 import com.github.neoflyingsaucer.css.sheet.StylesheetInfo.CSSOrigin;
 import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
-import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
-import com.github.neoflyingsaucer.extend.controller.error.FSError.FSErrorLevel;
-import com.github.neoflyingsaucer.extend.controller.error.LangId;
 import com.github.neoflyingsaucer.extend.useragent.Optional;
 import com.github.neoflyingsaucer.layout.SharedContext;
 
@@ -57,6 +50,12 @@ import com.github.neoflyingsaucer.layout.SharedContext;
  */
 public class Matcher {
 
+    /**
+     * Selectors are looked up in a {@link SelectorIndex} if there are at least
+     * this many, otherwise each is tested.
+     */
+    private static final int DEFAULT_INDEX_THRESHOLD = 16;
+
     private final Mapper docMapper;
     private final com.github.neoflyingsaucer.css.extend.AttributeResolver _attRes;
     private final com.github.neoflyingsaucer.css.extend.TreeResolver _treeRes;
@@ -67,22 +66,50 @@ public class Matcher {
     //handle dynamic
     private Set<Object> _visitElements;
     
-    private final List<PageRule> _pageRules;
-    private final List<FontFaceRule> _fontFaceRules;
+    private final MatcherRules _rules;
+    /* Null if selectors are tested one by one. */
+    private final SelectorIndex _index;
     
     public Matcher(
             final TreeResolver tr, final AttributeResolver ar,
             final StylesheetFactory factory,
             final List<Stylesheet> stylesheets, final SharedContext sharedCtx)
+    {
+        this(tr, ar, factory, MatcherRules.compile(stylesheets, sharedCtx));
+    }
+
+    /**
+     * Creates a matcher for one document from rules which may be shared with
+     * matchers for other documents.
+     */
+    public Matcher(
+            final TreeResolver tr, final AttributeResolver ar,
+            final StylesheetFactory factory, final MatcherRules rules)
+    {
+        this(tr, ar, factory, rules, DEFAULT_INDEX_THRESHOLD);
+    }
+
+    /**
+     * @param indexThreshold Selectors are looked up in a {@link SelectorIndex} if there
+     * are at least this many, otherwise each is tested.
+     */
+    Matcher(
+            final TreeResolver tr, final AttributeResolver ar,
+            final StylesheetFactory factory, final MatcherRules rules,
+            final int indexThreshold)
     {
         newMaps();
         _treeRes = tr;
         _attRes = ar;
         _styleFactory = factory;
-        
-        _pageRules = new ArrayList<PageRule>();
-        _fontFaceRules = new ArrayList<FontFaceRule>();
-        docMapper = createDocumentMapper(stylesheets, sharedCtx);
+        _rules = rules;
+        if (rules.getSelectors().size() >= indexThreshold) {
+            _index = rules.getSelectorIndex();
+            docMapper = new Mapper(_index.getRoots());
+        } else {
+            _index = null;
+            docMapper = new Mapper(rules.getSelectors());
+        }
     }
     
     public void removeStyle(final Object e) {
@@ -90,15 +117,13 @@ public class Matcher {
     }
 
     public CascadedStyle getCascadedStyle(final String uri, final Element e, final boolean restyle) {
-        synchronized (e) {
-            Mapper em;
-            if (!restyle) {
-                em = getMapper(e);
-            } else {
-                em = matchElement(e);
-            }
-            return em.getCascadedStyle(uri, e);
+        Mapper em;
+        if (!restyle) {
+            em = getMapper(e);
+        } else {
+            em = matchElement(e);
         }
+        return em.getCascadedStyle(uri, e);
     }
 
     /**
@@ -114,7 +139,7 @@ public class Matcher {
         final List<PropertyDeclaration> props = new ArrayList<PropertyDeclaration>();
         final Map<MarginBoxName, List<PropertyDeclaration>> marginBoxes = new HashMap<MarginBoxName, List<PropertyDeclaration>>();
 
-        for (PageRule rule : _pageRules)
+        for (PageRule rule : _rules.getPageRules())
         {
         	if (!rule.applies(pageName, pseudoPage))
         		continue;
@@ -135,7 +160,11 @@ public class Matcher {
     }
     
     public List<FontFaceRule> getFontFaceRules() {
-        return _fontFaceRules;
+        return _rules.getFontFaceRules();
+    }
+    
+    public MatcherRules getRules() {
+        return _rules;
     }
     
     public boolean isVisitedStyled(final Object e) {
@@ -155,63 +184,6 @@ public class Matcher {
        return child;
     }
 
-    Mapper createDocumentMapper(final List<Stylesheet> stylesheets, final SharedContext sharedCtx) {
-        final java.util.TreeMap<String, Selector> sorter = new java.util.TreeMap<String, Selector>();
-        addAllStylesheets(stylesheets, sorter, sharedCtx);
-        FSErrorController.log(Matcher.class, FSErrorLevel.INFO, LangId.MATCHER_CREATED, sorter.size());
-        return new Mapper(sorter.values());
-    }
-    
-    private void addAllStylesheets(final List<Stylesheet> stylesheets, 
-    		final TreeMap<String, Selector> sorter, final SharedContext sharedCtx) {
-        int count = 0;
-        int pCount = 0;
-        for (final Stylesheet stylesheet : stylesheets) {
-            for (final Object obj : stylesheet.getContents()) {
-                FSCancelController.cancelOpportunity(Matcher.class);
-            	
-            	if (obj instanceof Ruleset) {
-                    for (final Selector selector : ((Ruleset)obj).getFSSelectors()) {
-                        selector.setPos(++count);
-                        sorter.put(selector.getOrder(), selector);
-                    }
-                } else if (obj instanceof PageRule) {
-                    ((PageRule)obj).setPos(++pCount);
-                    _pageRules.add((PageRule) obj);
-                } else if (obj instanceof MediaRule) {
-                    final MediaRule mediaRule = (MediaRule)obj;
-                    if (mediaRule.matches(sharedCtx)) {
-                        for (final Ruleset ruleset : mediaRule.getContents()) {
-                            for (final Selector selector : ruleset.getFSSelectors()) {
-                                FSCancelController.cancelOpportunity(Matcher.class);
-                            	
-                            	selector.setPos(++count);
-                                sorter.put(selector.getOrder(), selector);
-                            }
-                        }
-                    }
-                }
-            }
-            
-            _fontFaceRules.addAll(stylesheet.getFontFaceRules());
-        }
-        
-        Collections.sort(_pageRules, new Comparator<PageRule>() {
-            public int compare(final PageRule o1, final PageRule o2) {
-                final PageRule p1 = o1;
-                final PageRule p2 = o2;
-                
-                if (p1.getOrder() - p2.getOrder() < 0) {
-                    return -1;
-                } else if (p1.getOrder() == p2.getOrder()) {
-                    return 0;
-                } else {
-                    return 1;
-                }
-            }
-        });
-    }
-
     private void link(final Object e, final Mapper m) {
         _map.put(e, m);
     }
@@ -230,51 +202,25 @@ public class Matcher {
         return m;
     }
 
-    private static java.util.Iterator<Ruleset> getMatchedRulesets(final List<Selector> mappedSelectors) {
-        return
-                new java.util.Iterator<Ruleset>() {
-                    java.util.Iterator<Selector> selectors = mappedSelectors.iterator();
-
-                    public boolean hasNext() {
-                        return selectors.hasNext();
-                    }
-
-                    public Ruleset next() {
-                        if (hasNext()) {
-                            return selectors.next().getRuleset();
-                        } else {
-                            throw new java.util.NoSuchElementException();
-                        }
-                    }
-
-                    public void remove() {
-                        throw new UnsupportedOperationException();
-                    }
-                };
-    }
-
-    private static java.util.Iterator<Ruleset> getSelectedRulesets(final java.util.List<Selector> selectorList) {
-        final java.util.List<Selector> sl = selectorList;
-        return
-                new java.util.Iterator<Ruleset>() {
-                    java.util.Iterator<Selector> selectors = sl.iterator();
-
-                    public boolean hasNext() {
-                        return selectors.hasNext();
-                    }
+    /**
+     * @return The declarations of the selectors' rulesets, in order.
+     */
+    private static PropertyDeclaration[] getDeclarations(final List<Selector> selectors) {
+        int count = 0;
+        for (final Selector sel : selectors) {
+            count += sel.getRuleset().getPropertyDeclarations().size();
+        }
 
-                    public Ruleset next() {
-                        if (hasNext()) {
-                            return ((Selector) selectors.next()).getRuleset();
-                        } else {
-                            throw new java.util.NoSuchElementException();
-                        }
-                    }
+        final PropertyDeclaration[] decls = new PropertyDeclaration[count];
+        int pos = 0;
+        for (final Selector sel : selectors) {
+            FSCancelController.cancelOpportunity(Matcher.class);
 
-                    public void remove() {
-                        throw new UnsupportedOperationException();
-                    }
-                };
+            for (final PropertyDeclaration decl : sel.getRuleset().getPropertyDeclarations()) {
+                decls[pos++] = decl;
+            }
+        }
+        return decls;
     }
 
     private Optional<com.github.neoflyingsaucer.css.sheet.Ruleset> getElementStyle(final String uri, final Object e) {
@@ -311,13 +257,23 @@ public class Matcher {
      */
     class Mapper {
         java.util.List<Selector> axes;
+        /* Instead of axes when using the index: the positions of the selectors to test. */
+        private BitSet active;
         private HashMap<String, List<Selector>> pseudoSelectors;
         private List<Selector> mappedSelectors;
-        private HashMap<String, Mapper> children;
+        private final ConcurrentHashMap<String, Mapper> children = new ConcurrentHashMap<String, Mapper>();
+        /* Built on first use. Races only build the same values twice. */
+        private volatile PropertyDeclaration[] matchedDeclarations;
+        /* The cascaded style of elements without style attribute or non-CSS styling. */
+        private volatile CascadedStyle sharedStyle;
+
+        Mapper(final java.util.List<Selector> selectors) {
+            // Only read, so the rules' list can be used as is.
+            axes = selectors;
+        }
 
-        Mapper(final java.util.Collection<Selector> selectors) {
-            axes = new java.util.ArrayList<Selector>(selectors.size());
-            axes.addAll(selectors);
+        Mapper(final BitSet selectors) {
+            active = selectors;
         }
 
         private Mapper() {
@@ -332,102 +288,150 @@ public class Matcher {
          */
         Mapper mapChild(final Element e) {
             //Mapper childMapper = new Mapper();
-            final java.util.List<Selector> childAxes = new ArrayList<Selector>(axes.size() + 10);
             final java.util.HashMap<String, List<Selector>> pseudoSelectors = new java.util.HashMap<String, List<Selector>>();
-            final java.util.List<Selector> mappedSelectors = new java.util.LinkedList<Selector>();
+            final java.util.List<Selector> mappedSelectors = new ArrayList<Selector>();
             final StringBuilder key = new StringBuilder();
-            for (int i = 0, size = axes.size(); i < size; i++) {
-                final Selector sel = axes.get(i);
-                if (sel.getAxis() == Selector.DESCENDANT_AXIS) {
-                    //carry it forward to other descendants
-                    childAxes.add(sel);
-                } else if (sel.getAxis() == Selector.IMMEDIATE_SIBLING_AXIS) {
-                    throw new RuntimeException();
-                }
-                if (!sel.matches(e, _attRes, _treeRes)) {
-                    continue;
-                }
-                //Assumption: if it is a pseudo-element, it does not also have dynamic pseudo-class
-                final String pseudoElement = sel.getPseudoElement();
-                if (pseudoElement != null) {
-                    java.util.List<Selector> l = pseudoSelectors.get(pseudoElement);
-                    if (l == null) {
-                        l = new java.util.LinkedList<Selector>();
-                        pseudoSelectors.put(pseudoElement, l);
+            java.util.List<Selector> childAxes = null;
+            BitSet childActive = null;
+            if (active == null) {
+                childAxes = new ArrayList<Selector>(axes.size() + 10);
+                for (int i = 0, size = axes.size(); i < size; i++) {
+                    final Selector sel = axes.get(i);
+                    if (sel.getAxis() == Selector.DESCENDANT_AXIS) {
+                        //carry it forward to other descendants
+                        childAxes.add(sel);
+                    } else if (sel.getAxis() == Selector.IMMEDIATE_SIBLING_AXIS) {
+                        throw new RuntimeException();
+                    }
+                    if (!matchSelector(sel, e, pseudoSelectors, key)) {
+                        continue;
+                    }
+                    final Selector chain = sel.getChainedSelector();
+                    if (chain == null) {
+                        mappedSelectors.add(sel);
+                    } else if (chain.getAxis() == Selector.IMMEDIATE_SIBLING_AXIS) {
+                        throw new RuntimeException();
+                    } else {
+                        childAxes.add(chain);
                     }
-                    l.add(sel);
-                    key.append(sel.getSelectorID()).append(":");
-                    continue;
-                }
-                if (sel.isPseudoClass(Selector.VISITED_PSEUDOCLASS)) {
-                    _visitElements.add(e);
-                }
-                if (sel.isPseudoClass(Selector.ACTIVE_PSEUDOCLASS)) {
-                    // Do nothing
-                }
-                if (sel.isPseudoClass(Selector.HOVER_PSEUDOCLASS)) {
-                    // Do nothing
-                }
-                if (sel.isPseudoClass(Selector.FOCUS_PSEUDOCLASS)) {
-                    // Do nothing
-                }
-                if (!sel.matchesDynamic(e, _attRes, _treeRes)) {
-                    continue;
                 }
-                key.append(sel.getSelectorID()).append(":");
-                final Selector chain = sel.getChainedSelector();
-                if (chain == null) {
-                    mappedSelectors.add(sel);
-                } else if (chain.getAxis() == Selector.IMMEDIATE_SIBLING_AXIS) {
-                    throw new RuntimeException();
-                } else {
-                    childAxes.add(chain);
+            } else {
+                // Positions follow the sort order, so this visits selectors in the same
+                // order as testing axes one by one.
+                childActive = (BitSet) active.clone();
+                childActive.and(_index.getDescendants());
+                final BitSet candidates = _index.getCandidates(e, _treeRes, _attRes);
+                candidates.and(active);
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    final Selector sel = _index.getSelector(i);
+                    if (!matchSelector(sel, e, pseudoSelectors, key)) {
+                        continue;
+                    }
+                    final Selector chain = sel.getChainedSelector();
+                    if (chain == null) {
+                        mappedSelectors.add(sel);
+                    } else if (chain.getAxis() == Selector.IMMEDIATE_SIBLING_AXIS) {
+                        throw new RuntimeException();
+                    } else {
+                        childActive.set(_index.getChainedPosition(i));
+                    }
                 }
             }
-            if (children == null) children = new HashMap<String, Mapper>();
             Mapper childMapper = children.get(key.toString());
             if (childMapper == null) {
                 childMapper = new Mapper();
                 childMapper.axes = childAxes;
+                childMapper.active = childActive;
                 childMapper.pseudoSelectors = pseudoSelectors;
                 childMapper.mappedSelectors = mappedSelectors;
-                children.put(key.toString(), childMapper);
+                final Mapper existing = children.putIfAbsent(key.toString(), childMapper);
+                if (existing != null) {
+                    childMapper = existing;
+                }
             }
             link(e, childMapper);
             return childMapper;
         }
 
-        CascadedStyle getCascadedStyle(final String uri, final Object e) {
-            CascadedStyle result;
-            synchronized (e) {
-                CascadedStyle cs = null;
-                final Optional<com.github.neoflyingsaucer.css.sheet.Ruleset> elementStyling = getElementStyle(uri, e);
-                final Optional<com.github.neoflyingsaucer.css.sheet.Ruleset> nonCssStyling = getNonCssStyle(uri, e);
-                final List<PropertyDeclaration> propList = new LinkedList<PropertyDeclaration>();
-                //specificity 0,0,0,0
-                if (nonCssStyling.isPresent()) {
-                    propList.addAll(nonCssStyling.get().getPropertyDeclarations());
-                }
-                //these should have been returned in order of specificity
-                for (final Iterator<Ruleset> i = getMatchedRulesets(mappedSelectors); i.hasNext();) {
-                    FSCancelController.cancelOpportunity(Matcher.class);
-                	
-                	Ruleset rs = i.next();
-                    propList.addAll(rs.getPropertyDeclarations());
-                }
-                //specificity 1,0,0,0
-                if (elementStyling.isPresent()) {
-                    propList.addAll(elementStyling.get().getPropertyDeclarations());
+        /**
+         * Pseudo-element selectors which match are added to pseudoSelectors.
+         * @return true if the selector matches the element itself.
+         */
+        private boolean matchSelector(final Selector sel, final Element e,
+                final Map<String, List<Selector>> pseudoSelectors, final StringBuilder key) {
+            if (!sel.matches(e, _attRes, _treeRes)) {
+                return false;
+            }
+            //Assumption: if it is a pseudo-element, it does not also have dynamic pseudo-class
+            final String pseudoElement = sel.getPseudoElement();
+            if (pseudoElement != null) {
+                java.util.List<Selector> l = pseudoSelectors.get(pseudoElement);
+                if (l == null) {
+                    l = new java.util.LinkedList<Selector>();
+                    pseudoSelectors.put(pseudoElement, l);
                 }
-                if (propList.size() == 0)
-                    cs = CascadedStyle.emptyCascadedStyle;
-                else {
-                    cs = new CascadedStyle(propList.iterator());
+                l.add(sel);
+                key.append(sel.getSelectorID()).append(":");
+                return false;
+            }
+            if (sel.isPseudoClass(Selector.VISITED_PSEUDOCLASS)) {
+                _visitElements.add(e);
+            }
+            if (!sel.matchesDynamic(e, _attRes, _treeRes)) {
+                return false;
+            }
+            key.append(sel.getSelectorID()).append(":");
+            return true;
+        }
+
+        /**
+         * Elements sharing a mapper have the same matched rulesets, so unless the
+         * element has its own styling the cascaded style is shared too.
+         */
+        CascadedStyle getCascadedStyle(final String uri, final Object e) {
+            final Optional<com.github.neoflyingsaucer.css.sheet.Ruleset> elementStyling = getElementStyle(uri, e);
+            final Optional<com.github.neoflyingsaucer.css.sheet.Ruleset> nonCssStyling = getNonCssStyle(uri, e);
+
+            if (!elementStyling.isPresent() && !nonCssStyling.isPresent()) {
+                CascadedStyle cs = sharedStyle;
+                if (cs == null) {
+                    final PropertyDeclaration[] matched = getMatchedDeclarations();
+                    cs = matched.length == 0 ? CascadedStyle.emptyCascadedStyle : new CascadedStyle(matched, matched.length);
+                    sharedStyle = cs;
                 }
+                return cs;
+            }
 
-                result = cs;
+            final List<PropertyDeclaration> before = nonCssStyling.isPresent() ?
+                    nonCssStyling.get().getPropertyDeclarations() : Collections.<PropertyDeclaration>emptyList();
+            final List<PropertyDeclaration> after = elementStyling.isPresent() ?
+                    elementStyling.get().getPropertyDeclarations() : Collections.<PropertyDeclaration>emptyList();
+            final PropertyDeclaration[] matched = getMatchedDeclarations();
+
+            final PropertyDeclaration[] props = new PropertyDeclaration[before.size() + matched.length + after.size()];
+            int count = 0;
+            //specificity 0,0,0,0
+            for (final PropertyDeclaration decl : before) {
+                props[count++] = decl;
+            }
+            //these should have been returned in order of specificity
+            System.arraycopy(matched, 0, props, count, matched.length);
+            count += matched.length;
+            //specificity 1,0,0,0
+            for (final PropertyDeclaration decl : after) {
+                props[count++] = decl;
             }
-            return result;
+
+            return count == 0 ? CascadedStyle.emptyCascadedStyle : new CascadedStyle(props, count);
+        }
+
+        private PropertyDeclaration[] getMatchedDeclarations() {
+            PropertyDeclaration[] decls = matchedDeclarations;
+            if (decls == null) {
+                decls = getDeclarations(mappedSelectors);
+                matchedDeclarations = decls;
+            }
+            return decls;
         }
 
         /**
@@ -443,17 +447,11 @@ public class Matcher {
             final java.util.List<Selector> pe = pseudoSelectors.get(pseudoElement);
             if (pe == null) return null;
 
-            final java.util.List<PropertyDeclaration> propList = new java.util.LinkedList<PropertyDeclaration>();
-            for (final java.util.Iterator<Ruleset> i = getSelectedRulesets(pe); i.hasNext();) {
-                FSCancelController.cancelOpportunity(Matcher.class);
-            	
-            	final com.github.neoflyingsaucer.css.sheet.Ruleset rs = (com.github.neoflyingsaucer.css.sheet.Ruleset) i.next();
-                propList.addAll(rs.getPropertyDeclarations());
-            }
-            if (propList.size() == 0)
+            final PropertyDeclaration[] props = getDeclarations(pe);
+            if (props.length == 0)
                 cs = CascadedStyle.emptyCascadedStyle;//already internalized
             else {
-                cs = new CascadedStyle(propList.iterator());
+                cs = new CascadedStyle(props, props.length);
             }
             return cs;
         }
@@ -0,0 +1,194 @@
+package com.github.neoflyingsaucer.css.newmatch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import com.github.neoflyingsaucer.css.sheet.FontFaceRule;
+import com.github.neoflyingsaucer.css.sheet.MediaRule;
+import com.github.neoflyingsaucer.css.sheet.PageRule;
+import com.github.neoflyingsaucer.css.sheet.Ruleset;
+import com.github.neoflyingsaucer.css.sheet.Stylesheet;
+import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
+import com.github.neoflyingsaucer.extend.controller.error.FSError.FSErrorLevel;
+import com.github.neoflyingsaucer.extend.controller.error.LangId;
+import com.github.neoflyingsaucer.layout.SharedContext;
+
+/**
+ * The rules of a set of stylesheets, compiled for matching: selectors sorted by
+ * specificity and order, page rules sorted by order and font face rules. Immutable,
+ * so one instance can be used by a {@link Matcher} for each document that uses the
+ * same stylesheets and media.
+ *
+ * {@link #compile(List, SharedContext)} keeps compiled rules for as long as their
+ * stylesheet instances are in use, keyed by those instances and which of their media
+ * rules match. As parsed stylesheets are shared between documents (see StylesheetCache),
+ * documents using the same stylesheets and media get the same rules without sorting
+ * them again.
+ */
+public class MatcherRules {
+
+    /* Guarded by itself. */
+    private static final Node _compiled = new Node();
+
+    private final List<Selector> _selectors;
+    private final List<PageRule> _pageRules;
+    private final List<FontFaceRule> _fontFaceRules;
+    private volatile SelectorIndex _selectorIndex;
+
+    private MatcherRules(final List<Selector> selectors, final List<PageRule> pageRules, final List<FontFaceRule> fontFaceRules) {
+        _selectors = Collections.unmodifiableList(selectors);
+        _pageRules = Collections.unmodifiableList(pageRules);
+        _fontFaceRules = Collections.unmodifiableList(fontFaceRules);
+    }
+
+    /**
+     * Returns the compiled rules for a document's stylesheets, compiling them if the
+     * same stylesheets in use elsewhere have not been compiled for the same media.
+     */
+    public static MatcherRules compile(final List<Stylesheet> stylesheets, final SharedContext sharedCtx) {
+        final BitSet media = matchingMediaRules(stylesheets, sharedCtx);
+        final Node node;
+
+        synchronized (_compiled) {
+            node = getNode(stylesheets);
+
+            final MatcherRules rules = node.rules.get(media);
+
+            if (rules != null) {
+                return rules;
+            }
+        }
+
+        final MatcherRules rules = build(stylesheets, media);
+
+        synchronized (_compiled) {
+            node.rules.put(media, rules);
+        }
+
+        return rules;
+    }
+
+    /* Guarded by _compiled. */
+    private static Node getNode(final List<Stylesheet> stylesheets) {
+        Node node = _compiled;
+
+        for (final Stylesheet sheet : stylesheets) {
+            Node next = node.next.get(sheet);
+
+            if (next == null) {
+                next = new Node();
+                node.next.put(sheet, next);
+            }
+
+            node = next;
+        }
+
+        return node;
+    }
+
+    /**
+     * Evaluates every media rule in the stylesheets, in order.
+     * @return A bit set for each media rule, set if it matches.
+     */
+    private static BitSet matchingMediaRules(final List<Stylesheet> stylesheets, final SharedContext sharedCtx) {
+        final BitSet media = new BitSet();
+        int i = 0;
+
+        for (final Stylesheet stylesheet : stylesheets) {
+            for (final Object obj : stylesheet.getContents()) {
+                if (obj instanceof MediaRule) {
+                    media.set(i++, ((MediaRule) obj).matches(sharedCtx));
+                }
+            }
+        }
+
+        return media;
+    }
+
+    private static MatcherRules build(final List<Stylesheet> stylesheets, final BitSet media) {
+        final TreeMap<String, Selector> sorter = new TreeMap<String, Selector>();
+        final TreeMap<Long, PageRule> pageSorter = new TreeMap<Long, PageRule>();
+        final List<FontFaceRule> fontFaceRules = new ArrayList<FontFaceRule>();
+        int count = 0;
+        int pCount = 0;
+        int mediaRule = 0;
+
+        for (final Stylesheet stylesheet : stylesheets) {
+            for (final Object obj : stylesheet.getContents()) {
+                FSCancelController.cancelOpportunity(Matcher.class);
+
+                if (obj instanceof Ruleset) {
+                    for (final Selector selector : ((Ruleset)obj).getFSSelectors()) {
+                        sorter.put(selector.getOrder(++count), selector);
+                    }
+                } else if (obj instanceof PageRule) {
+                    final PageRule pageRule = (PageRule) obj;
+                    pageSorter.put(pageRule.getOrder(++pCount), pageRule);
+                } else if (obj instanceof MediaRule) {
+                    if (media.get(mediaRule++)) {
+                        for (final Ruleset ruleset : ((MediaRule)obj).getContents()) {
+                            for (final Selector selector : ruleset.getFSSelectors()) {
+                                FSCancelController.cancelOpportunity(Matcher.class);
+
+                                sorter.put(selector.getOrder(++count), selector);
+                            }
+                        }
+                    }
+                }
+            }
+
+            fontFaceRules.addAll(stylesheet.getFontFaceRules());
+        }
+
+        FSErrorController.log(Matcher.class, FSErrorLevel.INFO, LangId.MATCHER_CREATED, sorter.size());
+
+        return new MatcherRules(new ArrayList<Selector>(sorter.values()),
+                new ArrayList<PageRule>(pageSorter.values()), fontFaceRules);
+    }
+
+    /**
+     * @return Selectors sorted according to specificity and order.
+     */
+    public List<Selector> getSelectors() {
+        return _selectors;
+    }
+
+    /**
+     * @return An index of {@link #getSelectors()}, built on first use.
+     */
+    SelectorIndex getSelectorIndex() {
+        SelectorIndex index = _selectorIndex;
+        if (index == null) {
+            // Building twice in a race is harmless.
+            index = new SelectorIndex(_selectors);
+            _selectorIndex = index;
+        }
+        return index;
+    }
+
+    public List<PageRule> getPageRules() {
+        return _pageRules;
+    }
+
+    public List<FontFaceRule> getFontFaceRules() {
+        return _fontFaceRules;
+    }
+
+    /**
+     * Compiled rules of the stylesheet lists starting with the stylesheets on the path
+     * to this node. Stylesheets are held weakly and compared by identity, so rules are
+     * dropped once any of their stylesheets is no longer used, for example when the
+     * stylesheet cache is disabled and the document is done.
+     */
+    private static class Node {
+        private final Map<Stylesheet, Node> next = new WeakHashMap<Stylesheet, Node>(4);
+        private final Map<BitSet, MatcherRules> rules = new HashMap<BitSet, MatcherRules>(2);
+    }
+}
@@ -20,6 +20,7 @@
 package com.github.neoflyingsaucer.css.newmatch;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.w3c.dom.Element;
 
@@ -55,10 +56,13 @@ public class Selector {
     private int _specificityC;
     private int _specificityD;
 
-    private int _pos;//to distinguish between selectors of same specificity
 
     private java.util.List<Condition> conditions = new ArrayList<Condition>(0);
 
+    /* The first #id and .class conditions, used to index selectors. */
+    private String _id;
+    private String _className;
+
     public final static int DESCENDANT_AXIS = 0;
     public final static int CHILD_AXIS = 1;
     public final static int IMMEDIATE_SIBLING_AXIS = 2;
@@ -72,10 +76,10 @@ public class Selector {
      * Give each a unique ID to be able to create a key to internalize Matcher.Mappers
      */
     private final int selectorID;
-    private static int selectorCount = 0;
+    private static final AtomicInteger selectorCount = new AtomicInteger();
 
     public Selector() {
-        selectorID = selectorCount++;
+        selectorID = selectorCount.getAndIncrement();
     }
 
     /**
@@ -205,6 +209,9 @@ public class Selector {
      */
     public void addIDCondition(final String id) {
         _specificityB++;
+        if (_id == null) {
+            _id = id;
+        }
         addCondition(Condition.createIDCondition(id));
     }
 
@@ -213,6 +220,9 @@ public class Selector {
      */
     public void addClassCondition(final String className) {
         _specificityC++;
+        if (_className == null) {
+            _className = className;
+        }
         addCondition(Condition.createClassCondition(className));
     }
 
@@ -381,16 +391,19 @@ public class Selector {
      * returns "a number in a large base" with specificity and specification
      * order of selector
      *
+     * @param pos The position of the selector in the document's stylesheets, to
+     * distinguish between selectors of the same specificity. It is passed in, rather
+     * than stored, so that parsed stylesheets can be shared between documents.
      * @return The order value
      */
-    String getOrder() {
+    String getOrder(final int pos) {
         if (chainedSelector != null) {
-            return chainedSelector.getOrder();
+            return chainedSelector.getOrder(pos);
         }//only "deepest" value is correct
         final String b = "000" + getSpecificityB();
         final String c = "000" + getSpecificityC();
         final String d = "000" + getSpecificityD();
-        final String p = "00000" + _pos;
+        final String p = "00000" + pos;
         return "0" + b.substring(b.length() - 3) + c.substring(c.length() - 3) + d.substring(d.length() - 3) + p.substring(p.length() - 5);
     }
 
@@ -436,6 +449,27 @@ public class Selector {
         return "1" + "000" + "000" + "000" + "00000";
     }
 
+    /**
+     * @return The value of the first #id condition, or null.
+     */
+    String getIDCondition() {
+        return _id;
+    }
+
+    /**
+     * @return The value of the first .class condition, or null.
+     */
+    String getClassCondition() {
+        return _className;
+    }
+
+    /**
+     * @return The element name if it must be matched against the node name only, otherwise null.
+     */
+    String getUnqualifiedName() {
+        return _namespaceURI == null ? _name : null;
+    }
+
     public int getSelectorID() {
         return selectorID;
     }
@@ -445,16 +479,6 @@ public class Selector {
         _specificityD++;
     }
     
-    public void setPos(final int pos) {
-        _pos = pos;
-        if (siblingSelector != null) {
-            siblingSelector.setPos(pos);
-        }
-        if (chainedSelector != null) {
-            chainedSelector.setPos(pos);
-        }
-    }
-    
     public void setParent(final Ruleset ruleset) {
         _parent = ruleset;
     }
@@ -0,0 +1,181 @@
+package com.github.neoflyingsaucer.css.newmatch;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+
+import com.github.neoflyingsaucer.css.extend.AttributeResolver;
+import com.github.neoflyingsaucer.css.extend.TreeResolver;
+import com.github.neoflyingsaucer.css.extend.lib.DOMTreeResolver;
+import com.github.neoflyingsaucer.extend.useragent.Optional;
+
+/**
+ * An index of every simple selector in a sorted list of selectors, by the id, class
+ * or element name an element must have to match it, so that only those selectors
+ * which may match an element need to be tested.
+ *
+ * Each simple selector (a selector and those chained after it) is given a position.
+ * The simple selectors of a selector have consecutive positions, in chain order, and
+ * selectors are numbered in sort order. Visiting positions in ascending order thus
+ * visits matched selectors in the same order as the sorted list.
+ *
+ * Each simple selector goes in a single bucket, the first of its #id condition, its
+ * first .class condition or its element name. Simple selectors with none of these
+ * (or with a namespaced element name) are always candidates. Element names are
+ * looked up as {@link DOMTreeResolver} matches them; with any other tree resolver,
+ * every simple selector with an element name is a candidate.
+ */
+class SelectorIndex {
+
+    private final Selector[] _selectors;
+    private final BitSet _roots = new BitSet();
+    private final BitSet _descendants = new BitSet();
+    private final BitSet _universal = new BitSet();
+    private final BitSet _named = new BitSet();
+    private final Map<String, int[]> _ids = new HashMap<String, int[]>();
+    private final Map<String, int[]> _classes = new HashMap<String, int[]>();
+    private final Map<String, int[]> _names = new HashMap<String, int[]>();
+
+    SelectorIndex(final List<Selector> selectors) {
+        final List<Selector> all = new ArrayList<Selector>(selectors.size() * 2);
+        final Map<String, List<Integer>> ids = new HashMap<String, List<Integer>>();
+        final Map<String, List<Integer>> classes = new HashMap<String, List<Integer>>();
+        final Map<String, List<Integer>> names = new HashMap<String, List<Integer>>();
+
+        for (final Selector root : selectors) {
+            _roots.set(all.size());
+
+            for (Selector sel = root; sel != null; sel = sel.getChainedSelector()) {
+                final int pos = all.size();
+                all.add(sel);
+
+                if (sel.getAxis() == Selector.DESCENDANT_AXIS) {
+                    _descendants.set(pos);
+                }
+
+                if (sel.getIDCondition() != null) {
+                    add(ids, sel.getIDCondition(), pos);
+                } else if (sel.getClassCondition() != null) {
+                    add(classes, sel.getClassCondition(), pos);
+                } else if (sel.getUnqualifiedName() != null) {
+                    add(names, sel.getUnqualifiedName(), pos);
+                    _named.set(pos);
+                } else {
+                    _universal.set(pos);
+                }
+            }
+        }
+
+        _selectors = all.toArray(new Selector[all.size()]);
+        toArrays(ids, _ids);
+        toArrays(classes, _classes);
+        toArrays(names, _names);
+    }
+
+    private static void add(final Map<String, List<Integer>> buckets, final String key, final int pos) {
+        List<Integer> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<Integer>(2);
+            buckets.put(key, bucket);
+        }
+        bucket.add(pos);
+    }
+
+    private static void toArrays(final Map<String, List<Integer>> buckets, final Map<String, int[]> result) {
+        for (final Map.Entry<String, List<Integer>> entry : buckets.entrySet()) {
+            final List<Integer> bucket = entry.getValue();
+            final int[] positions = new int[bucket.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = bucket.get(i);
+            }
+            result.put(entry.getKey(), positions);
+        }
+    }
+
+    private static void set(final BitSet bits, final int[] positions) {
+        if (positions != null) {
+            for (final int pos : positions) {
+                bits.set(pos);
+            }
+        }
+    }
+
+    Selector getSelector(final int pos) {
+        return _selectors[pos];
+    }
+
+    /**
+     * @return The position of the selector chained after the one at pos.
+     * Only valid if that selector has a chained selector.
+     */
+    int getChainedPosition(final int pos) {
+        return pos + 1;
+    }
+
+    /**
+     * @return The positions of the first simple selector of each selector, which
+     * are tested against the root element. Not to be modified.
+     */
+    BitSet getRoots() {
+        return _roots;
+    }
+
+    /**
+     * @return The positions of descendant axis selectors, which are carried forward
+     * to children whether or not they match. Not to be modified.
+     */
+    BitSet getDescendants() {
+        return _descendants;
+    }
+
+    /**
+     * @return The positions of selectors which may match the element. A new set, which the caller may modify.
+     */
+    BitSet getCandidates(final Element e, final TreeResolver treeRes, final AttributeResolver attRes) {
+        final BitSet candidates = (BitSet) _universal.clone();
+
+        // Other resolvers, including subclasses, may match names another way.
+        if (treeRes.getClass() == DOMTreeResolver.class) {
+            set(candidates, _names.get(treeRes.getElementName(e)));
+        } else {
+            candidates.or(_named);
+        }
+
+        // Conditions on id and class never match without an attribute resolver.
+        if (attRes == null) {
+            return candidates;
+        }
+
+        if (!_ids.isEmpty()) {
+            final Optional<String> id = attRes.getID(e);
+            if (id.isPresent()) {
+                set(candidates, _ids.get(id.get()));
+            }
+        }
+
+        if (!_classes.isEmpty()) {
+            final Optional<String> cls = attRes.getClass(e);
+            if (cls.isPresent()) {
+                // Split as ClassCondition does, on single spaces.
+                final String classes = cls.get();
+                int start = 0;
+                while (start <= classes.length()) {
+                    int end = classes.indexOf(' ', start);
+                    if (end == -1) {
+                        end = classes.length();
+                    }
+                    if (end > start) {
+                        set(candidates, _classes.get(classes.substring(start, end)));
+                    }
+                    start = end + 1;
+                }
+            }
+        }
+
+        return candidates;
+    }
+}
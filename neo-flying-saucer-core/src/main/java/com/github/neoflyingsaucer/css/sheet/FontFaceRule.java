@@ -36,7 +36,6 @@ import com.github.neoflyingsaucer.util.XRRuntimeException;
 public class FontFaceRule implements RulesetContainer {
     private CSSOrigin _origin;
     private Ruleset _ruleset;
-    private CalculatedStyle _calculatedStyle;
 
     public FontFaceRule(final CSSOrigin origin) {
         _origin = origin;
@@ -57,13 +56,13 @@ public class FontFaceRule implements RulesetContainer {
         _origin = origin;
     }
 
+    /**
+     * Derives a new style on each call. A cached stylesheet's rules are shared by
+     * concurrent renders, and a style fills in its derived values as they are read.
+     */
     public CalculatedStyle getCalculatedStyle() {
-        if (_calculatedStyle == null) {
-            _calculatedStyle = new EmptyStyle().deriveStyle(
-                    CascadedStyle.createLayoutStyle(_ruleset.getPropertyDeclarations()));
-        }
-
-        return _calculatedStyle;
+        return new EmptyStyle().deriveStyle(
+                CascadedStyle.createLayoutStyle(_ruleset.getPropertyDeclarations()));
     }
 
     public boolean hasFontFamily() {
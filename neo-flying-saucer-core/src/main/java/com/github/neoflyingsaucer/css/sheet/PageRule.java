@@ -34,8 +34,6 @@ public class PageRule implements RulesetContainer {
     
     private final Map<MarginBoxName, List<PropertyDeclaration>> _marginBoxes = new HashMap<MarginBoxName, List<PropertyDeclaration>>();
     
-    private int _pos;
-    
     private int _specificityF;
     private int _specificityG;
     private int _specificityH;
@@ -101,13 +99,16 @@ public class PageRule implements RulesetContainer {
         return _marginBoxes;
     }
     
-    public long getOrder() {
+    /**
+     * @param pos The position of the rule in the document's stylesheets.
+     */
+    public long getOrder(final int pos) {
         long result = 0;
         
         result |= (long)_specificityF << 32;
         result |= (long)_specificityG << 24;
         result |= (long)_specificityH << 16;
-        result |= _pos;
+        result |= pos;
         
         return result;
     }
@@ -128,12 +129,4 @@ public class PageRule implements RulesetContainer {
         
         return false;
     }
-
-    public int getPos() {
-        return _pos;
-    }
-
-    public void setPos(final int pos) {
-        _pos = pos;
-    }
 }
@@ -70,9 +70,10 @@ public class PropertyDeclaration {
     private IdentValue _identVal;
 
     /**
-     * Description of the Field
+     * Written after _identVal, volatile so that a parsed stylesheet shared
+     * between threads never shows it set before _identVal.
      */
-    private boolean identIsSet;
+    private volatile boolean identIsSet;
     
     private String _fingerprint;
 
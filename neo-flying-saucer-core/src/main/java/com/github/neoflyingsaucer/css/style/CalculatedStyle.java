@@ -690,11 +690,11 @@ public class CalculatedStyle {
                     result = RectPropertySet.ALL_ZEROS;
                 }
 
-                style._padding = result;
-
-                if (! allZeros && style._padding.hasNegativeValues()) {
-                    style._padding.resetNegativeValues();
+                if (! allZeros && result.hasNegativeValues()) {
+                    result.resetNegativeValues();
                 }
+
+                style._padding = result;
             }
 
             return style._padding;
@@ -746,11 +746,11 @@ public class CalculatedStyle {
                 result = BorderPropertySet.EMPTY_BORDER;
             }
 
-            style._border = result;
-
-            if (! allZeros && style._border.hasNegativeValues()) {
-                style._border.resetNegativeValues();
+            if (! allZeros && result.hasNegativeValues()) {
+                result.resetNegativeValues();
             }
+
+            style._border = result;
         }
         return style._border;
     }
@@ -81,7 +81,7 @@ import com.github.neoflyingsaucer.render.RenderingContext;
  */
 public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice 
 {
-	private DisplayList dl;
+	private DlVisitor out;
     private final SharedContext sharedContext;
     private final Box root;
     
@@ -92,7 +92,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	
 	public DlOutputDevice(DisplayList displayList, SharedContext ctx, Box root) 
 	{
-		this.dl = displayList;
+		setDisplayList(displayList);
 		this.sharedContext = ctx;
 		this.root = root;
 	}
@@ -105,7 +105,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	 */
 	public void drawString(String s, float x, float y)
 	{
-		dl.add(new DlInstruction.DlString(s, x, y));
+		out.visitString(s, x, y);
 	}
 	
 	/**
@@ -117,7 +117,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	 */
 	public void drawString(String s, float x, float y, JustificationInfo info)
 	{
-		dl.add(new DlInstruction.DlStringEx(s, x, y, info));
+		out.visitStringEx(s, x, y, info);
 	}
 	
 	/**
@@ -128,7 +128,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	 */
 	public void drawGlyphVector(FSGlyphVector vec, float x, float y)
 	{
-		dl.add(new DlInstruction.DlGlyphVector(vec, x, y));
+		out.visitGlyphVector(vec, x, y);
 	}
 	
 	/**
@@ -137,7 +137,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
 	public void setOpacity(float opacity) 
 	{
-		dl.add(new DlInstruction.DlOpacity(opacity));
+		out.visitOpacity(opacity);
 	}
 
 	/**
@@ -146,7 +146,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
     protected void drawLine(int x1, int y1, int x2, int y2) 
     {
-    	dl.add(new DlInstruction.DlLine(x1, y1, x2, y2));
+    	out.visitLine(x1, y1, x2, y2);
     }
 
 	/**
@@ -156,7 +156,8 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	public void translate(double tx, double ty) 
 	{
 		transform.translate(tx, ty);
-		dl.add(new DlInstruction.DlTranslate(tx, ty));
+
+		out.visitTranslate(tx, ty);
 	}
 
 	/**
@@ -174,7 +175,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 		
 		stroke = basic;
 		
-		dl.add(new DlInstruction.DlStroke(basic));
+		out.visitStroke(basic);
 	}
 
 	/**
@@ -190,12 +191,14 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
     	if (color instanceof FSRGBColor) 
         {
             FSRGBColor rgb = (FSRGBColor) color;
-            dl.add(new DlInstruction.DlRGBColor(rgb.getRed(), rgb.getGreen(), rgb.getBlue(), (int) (rgb.getAlpha() * 255)));
+            
+            out.visitRGBColor(rgb.getRed(), rgb.getGreen(), rgb.getBlue(), (int) (rgb.getAlpha() * 255));
         }
         else if (color instanceof FSCMYKColor)
         {
         	FSCMYKColor cmyk = (FSCMYKColor) color;
-        	dl.add(new DlInstruction.DlCMYKColor(cmyk.getCyan(), cmyk.getMagenta(), cmyk.getYellow(), cmyk.getBlack()));
+
+        	out.visitCMYKColor(cmyk.getCyan(), cmyk.getMagenta(), cmyk.getYellow(), cmyk.getBlack());
         }
     }
 	
@@ -205,7 +208,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
 	public void fillRect(int x, int y, int width, int height) 
 	{
-		dl.add(new DlInstruction.DlRectangle(x, y, width, height, Operation.FILL));
+		out.visitRectangle(x, y, width, height, Operation.FILL);
 	}
     
 	/**
@@ -214,7 +217,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
 	public void drawRect(int x, int y, int width, int height) 
 	{
-		dl.add(new DlInstruction.DlRectangle(x, y, width, height, Operation.STROKE));
+		out.visitRectangle(x, y, width, height, Operation.STROKE);
 	}
 	
 	/**
@@ -233,7 +236,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
         	clip = new Area(s2);
         }
 		
-		dl.add(new DlInstruction.DlSetClip(s));
+		out.visitSetClip(s);
 	}
 	
 	/**
@@ -248,7 +251,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
         else
         	clip.intersect(new Area(s3));
 		
-		dl.add(new DlInstruction.DlClip(s2));
+		out.visitClip(s2);
 	}
 	
 	/**
@@ -257,7 +260,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
 	public void drawOval(int x, int y, int width, int height) 
 	{
-		dl.add(new DlInstruction.DlOval(x, y, width, height, Operation.STROKE));
+		out.visitOval(x, y, width, height, Operation.STROKE);
 	}
 	
 	/**
@@ -266,7 +269,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
 	public void fillOval(int x, int y, int width, int height) 
 	{
-		dl.add(new DlInstruction.DlOval(x, y, width, height, Operation.FILL));
+		out.visitOval(x, y, width, height, Operation.FILL);
 	}
 	
 	/**
@@ -275,7 +278,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
 	public void draw(Shape s) 
 	{
-		dl.add(new DlInstruction.DlDrawShape(s, Operation.STROKE));
+		out.visitShape(s, Operation.STROKE);
 	}
 	
 	/**
@@ -284,7 +287,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
 	public void fill(Shape s) 
 	{
-		dl.add(new DlInstruction.DlDrawShape(s, Operation.FILL));
+		out.visitShape(s, Operation.FILL);
 	}
 	
 	@Override
@@ -321,11 +324,11 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 		if (value == RenderingHints.VALUE_ANTIALIAS_DEFAULT ||
 			value == RenderingHints.VALUE_ANTIALIAS_ON)
 		{
-			dl.add(new DlInstruction.DlAntiAliasDefault());
+			out.visitAntiAlias(true);
 		}
 		else
 		{
-			dl.add(new DlInstruction.DlAntiAliasOff());
+			out.visitAntiAlias(false);
 		}
 	}
 
@@ -350,7 +353,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	public void paintReplacedElement(RenderingContext c, BlockBox box)
 	{
 		ReplacedElement replaced = box.getReplacedElement();
-		dl.add(new DlInstruction.DlReplaced(replaced));
+		out.visitReplaced(replaced);
 	}
 
 	/**
@@ -359,7 +362,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
 	public void setFont(FSFont font)
 	{
-		dl.add(new DlInstruction.DlFont(font));
+		out.visitFont(font);
 	}
 
     @Override
@@ -416,7 +419,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 	@Override
 	public void drawImage(FSImage image, int x, int y) 
 	{
-		dl.add(new DlInstruction.DlImage(image, x, y));
+		out.visitImage(image, x, y);
 	}
 
 	/**
@@ -445,7 +448,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 			}
 		}
 		
-		dl.add(linear);
+		out.visitLinearGradient(linear);
 	}
 
 	/**
@@ -579,6 +582,14 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
             		String anchor = uri.substring(1);
                    
                     Box target = sharedContext.getBoxById(anchor);
+                    if (c.getLayoutFrontier() != null &&
+                    	(target == null || target.getAbsY() >= c.getLayoutFrontier().getStableY()))
+                    {
+                    	// The target is not laid out yet, or may still move.
+                    	c.getLayoutFrontier().abandon();
+                    	return;
+                    }
+                    
                     if (target == null)
                     {
                     	FSErrorController.log(DlOutputDevice.class, FSErrorLevel.WARNING, LangId.COULDNT_FIND_HASH_LINK_TARGET, uri);
@@ -611,7 +622,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
                     	(float) linkArea.getMinX(), (float) linkArea.getMinY(), 
                     	(float) linkArea.getWidth(), (float) linkArea.getHeight());
                         
-                    dl.add(link);
+                    out.visitInternalLink(link);
                 }
             	else if (uri.indexOf("://") != -1) 
             	{
@@ -628,7 +639,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
             				(float) pdfPageRect.getMinX(), (float) pdfPageRect.getMinY(),
             				(float) pdfPageRect.getWidth(), (float) pdfPageRect.getHeight());
             				
-            		dl.add(link);
+            		out.visitExternalLink(link);
                 }
             }
         }
@@ -666,7 +677,7 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
             DlInstruction.DlBookmark dlBookmark = new DlInstruction.DlBookmark(bookmarkLevel,
             		distanceFromTop, bookmarkContent, page.getPageNo());
             
-            dl.add(dlBookmark);
+            out.visitBookmark(dlBookmark);
         }
 	}
 	
@@ -689,6 +700,6 @@ public class DlOutputDevice extends AbstractOutputDevice implements OutputDevice
 
 	public void setDisplayList(DisplayList displayList)
 	{
-		this.dl = displayList;
+		this.out = DlRecorder.forList(displayList);
 	}
 }
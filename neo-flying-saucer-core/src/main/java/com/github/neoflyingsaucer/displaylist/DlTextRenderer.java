@@ -69,4 +69,10 @@ public class DlTextRenderer implements TextRenderer
 	{
 		return context.getWidth(font, string);
 	}
+
+	@Override
+	public int[] getPrefixWidths(FontContext context, FSFont font, String string, int[] widths)
+	{
+		return context.getPrefixWidths(font, string, widths);
+	}
 }
@@ -48,4 +48,9 @@ public interface TextRenderer
     public FSFontMetrics getFSFontMetrics(FontContext context, FSFont font, String string );
 
     public int getWidth(FontContext context, FSFont font, String string);
+
+    /**
+     * @see FontContext#getPrefixWidths(FSFont, String, int[])
+     */
+    public int[] getPrefixWidths(FontContext context, FSFont font, String string, int[] widths);
 }
@@ -69,6 +69,12 @@ public class BlockBoxing {
         int pageCount = NO_PAGE_TRIM;
         BlockBox previousChildBox = null;
         
+        LayoutFrontier frontier = c.isPrint() ? c.getLayoutFrontier() : null;
+        
+        if (frontier != null) {
+            frontier.push(block);
+        }
+        
         for (Box box : localChildren) 
         {
         	FSCancelController.cancelOpportunity(BlockBoxing.class);
@@ -93,6 +99,22 @@ public class BlockBoxing {
                     mayCheckKeepTogether = true;
                     c.setMayCheckKeepTogether(false);
                 }
+                
+                if (frontier != null) {
+                    // The child itself may be laid out again to keep it together, and with
+                    // it any run of page break avoiding siblings it belongs to. A table
+                    // moving to the next page is held back by the frontier itself.
+                    int firstUnstable = offset + 1;
+                    if (previousChildBox != null &&
+                            (relayoutDataList.get(offset - 1).isInRun() || isRunLink(previousChildBox, child))) {
+                        firstUnstable = relayoutDataList.findRunStart(offset - 1);
+                    } else if (child.getStyle().isAvoidPageBreakInside() || child.getStyle().isKeepWithInline() ||
+                            isRunLinkWithNext(localChildren, offset, child)) {
+                        firstUnstable = offset;
+                    }
+                    frontier.startChild(c, offset, firstUnstable, firstUnstable < offset ?
+                            localChildren.get(firstUnstable).getAbsY() : block.getAbsY() + childOffset);
+                }
             }
 
             layoutBlockChild(
@@ -161,8 +183,41 @@ public class BlockBoxing {
                 }
             }
 
+            if (frontier != null) {
+                // A run is laid out again once the child after its end is laid out.
+                int firstUnstable = offset + 1;
+                if ((relayoutData.isInRun() && offset < localChildren.size() - 1) ||
+                        isRunLinkWithNext(localChildren, offset, child)) {
+                    firstUnstable = relayoutDataList.findRunStart(offset);
+                }
+                frontier.childLaidOut(c, offset, firstUnstable,
+                        localChildren.get(Math.min(firstUnstable, offset)).getAbsY(), block.getAbsY() + childOffset);
+            }
+
             previousChildBox = child;
         }
+        
+        if (frontier != null) {
+            frontier.pop();
+        }
+    }
+
+    private static boolean isRunLinkWithNext(List<Box> localChildren, int offset, BlockBox child) {
+        return offset + 1 < localChildren.size() && isRunLink(child, (BlockBox) localChildren.get(offset + 1));
+    }
+
+    /**
+     * @return True if a page break between previous and current is to be avoided.
+     */
+    private static boolean isRunLink(BlockBox previous, BlockBox current) {
+        IdentValue previousAfter =
+                previous.getStyle().getIdent(CSSName.PAGE_BREAK_AFTER);
+        IdentValue currentBefore =
+                current.getStyle().getIdent(CSSName.PAGE_BREAK_BEFORE);
+
+        return (previousAfter == IdentValue.AVOID && currentBefore == IdentValue.AUTO) ||
+                (previousAfter == IdentValue.AUTO && currentBefore == IdentValue.AVOID) ||
+                (previousAfter == IdentValue.AVOID && currentBefore == IdentValue.AVOID);
     }
 
     private static RelayoutRunResult processPageBreakAvoidRun(LayoutContext c, BlockBox block,
@@ -189,11 +244,9 @@ public class BlockBoxing {
                 int runStart = relayoutDataList.getRunStart(runEnd);
                 if ( isPageBreakBetweenChildBoxes(relayoutDataList, runStart, runEnd, c, block) ) {
                     result.setChanged(true);
-                    block.resetChildren(c, runStart, offset);
                     result.setChildOffset(relayoutRun(c, localChildren, block,
                             relayoutDataList, runStart, offset, true));
                     if ( isPageBreakBetweenChildBoxes(relayoutDataList, runStart, runEnd, c, block) ) {
-                        block.resetChildren(c, runStart, offset);
                         result.setChildOffset(relayoutRun(c, localChildren, block,
                                 relayoutDataList, runStart, offset, false));
                     }
@@ -249,6 +302,15 @@ public class BlockBoxing {
         // reset height of parent as it is used for Y-setting of children
         block.setHeight(childOffset);
 
+        // If the run would be laid out the same way where it goes, it is moved there
+        // instead. Its boxes pass collapsed margins on to the next, so either all of
+        // them are moved or all of them are laid out again.
+        int deltaY = childOffset - relayoutDataList.get(start).getChildOffset();
+        boolean translate = isTranslateAllowed(c, localChildren, start, end, deltaY);
+
+        if (! translate) {
+            block.resetChildren(c, start, end);
+        }
 
         for (int i = start; i <= end; i++) {
         	FSCancelController.cancelOpportunity(BlockBoxing.class);
@@ -256,41 +318,13 @@ public class BlockBoxing {
         	BlockBox child = (BlockBox) localChildren.get(i);
 
             RelayoutData relayoutData = relayoutDataList.get(i);
-
-            int pageCount = c.getRootLayer().getPages().size();
-
-            //TODO:handle run-ins. For now, treat them as blocks
-
-            c.restoreStateForRelayout(relayoutData.getLayoutState());
             relayoutData.setChildOffset(childOffset);
-            boolean mayCheckKeepTogether = false;
-            if ((child.getStyle().isAvoidPageBreakInside() || child.getStyle().isKeepWithInline())
-                    && c.isMayCheckKeepTogether()) {
-                mayCheckKeepTogether = true;
-                c.setMayCheckKeepTogether(false);
-            }
-            layoutBlockChild(
-                    c, block, child, false, childOffset, NO_PAGE_TRIM, relayoutData.getLayoutState());
 
-            if (mayCheckKeepTogether) {
-                c.setMayCheckKeepTogether(true);
-                boolean tryToAvoidPageBreak =
-                    child.getStyle().isAvoidPageBreakInside() && child.crossesPageBreak(c);
-                boolean needPageClear = child.isNeedPageClear();
-                boolean keepWithInline = child.isNeedsKeepWithInline(c);
-                if (tryToAvoidPageBreak || needPageClear || keepWithInline) {
-                    c.restoreStateForRelayout(relayoutData.getLayoutState());
-                    child.reset(c);
-                    layoutBlockChild(
-                            c, block, child, true, childOffset, pageCount, relayoutData.getLayoutState());
-
-                    if (tryToAvoidPageBreak && child.crossesPageBreak(c) && ! keepWithInline) {
-                        c.restoreStateForRelayout(relayoutData.getLayoutState());
-                        child.reset(c);
-                        layoutBlockChild(
-                                c, block, child, false, childOffset, pageCount, relayoutData.getLayoutState());
-                    }
-                }
+            if (translate) {
+                child.translateLayout(deltaY);
+                c.getSharedContext().countAvoidedRelayout();
+            } else {
+                relayoutChild(c, block, child, relayoutData, childOffset);
             }
 
             c.getRootLayer().ensureHasPage(c, child);
@@ -315,6 +349,68 @@ public class BlockBoxing {
         return childOffset;
     }
 
+    /**
+     * @return True if laying out the run deltaY further down would give the same layout,
+     * moved down.
+     */
+    private static boolean isTranslateAllowed(
+            LayoutContext c, List<Box> localChildren, int start, int end, int deltaY)
+    {
+        if (deltaY == 0 || ! c.getSharedContext().isMoveAvoidedRuns() ||
+                c.getExtraSpaceTop() != 0 || c.getExtraSpaceBottom() != 0 ||
+                c.getPageName() != null || c.getBreakAtLineContext() != null ||
+                c.getBlockFormattingContext().getFloatManager().hasFloats()) {
+            return false;
+        }
+
+        for (int i = start; i <= end; i++) {
+            if (((BlockBox) localChildren.get(i)).isPagePositionDependent(c, deltaY)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void relayoutChild(
+            LayoutContext c, BlockBox block, BlockBox child, RelayoutData relayoutData, int childOffset)
+    {
+        int pageCount = c.getRootLayer().getPages().size();
+
+        //TODO:handle run-ins. For now, treat them as blocks
+
+        c.restoreStateForRelayout(relayoutData.getLayoutState());
+        boolean mayCheckKeepTogether = false;
+        if ((child.getStyle().isAvoidPageBreakInside() || child.getStyle().isKeepWithInline())
+                && c.isMayCheckKeepTogether()) {
+            mayCheckKeepTogether = true;
+            c.setMayCheckKeepTogether(false);
+        }
+        layoutBlockChild(
+                c, block, child, false, childOffset, NO_PAGE_TRIM, relayoutData.getLayoutState());
+
+        if (mayCheckKeepTogether) {
+            c.setMayCheckKeepTogether(true);
+            boolean tryToAvoidPageBreak =
+                child.getStyle().isAvoidPageBreakInside() && child.crossesPageBreak(c);
+            boolean needPageClear = child.isNeedPageClear();
+            boolean keepWithInline = child.isNeedsKeepWithInline(c);
+            if (tryToAvoidPageBreak || needPageClear || keepWithInline) {
+                c.restoreStateForRelayout(relayoutData.getLayoutState());
+                child.reset(c);
+                layoutBlockChild(
+                        c, block, child, true, childOffset, pageCount, relayoutData.getLayoutState());
+
+                if (tryToAvoidPageBreak && child.crossesPageBreak(c) && ! keepWithInline) {
+                    c.restoreStateForRelayout(relayoutData.getLayoutState());
+                    child.reset(c);
+                    layoutBlockChild(
+                            c, block, child, false, childOffset, pageCount, relayoutData.getLayoutState());
+                }
+            }
+        }
+    }
+
     private static void layoutBlockChild(
             LayoutContext c, BlockBox parent, BlockBox child,
             boolean needPageClear, int childOffset, int trimmedPageCount, LayoutState layoutState)
@@ -396,14 +492,7 @@ public class BlockBoxing {
             RelayoutData previousData = get(offset - 1);
             RelayoutData currentData = get(offset);
 
-            IdentValue previousAfter =
-                    previous.getStyle().getIdent(CSSName.PAGE_BREAK_AFTER);
-            IdentValue currentBefore =
-                    current.getStyle().getIdent(CSSName.PAGE_BREAK_BEFORE);
-
-            if ((previousAfter == IdentValue.AVOID && currentBefore == IdentValue.AUTO) ||
-                    (previousAfter == IdentValue.AUTO && currentBefore == IdentValue.AVOID) ||
-                    (previousAfter == IdentValue.AVOID && currentBefore == IdentValue.AVOID)) {
+            if (isRunLink(previous, current)) {
                 if (! previousData.isInRun()) {
                     previousData.setStartsRun(true);
                 }
@@ -420,6 +509,17 @@ public class BlockBoxing {
             }
         }
 
+        /**
+         * @return The first child of the run the child at offset is in so far,
+         * or offset if it is in none.
+         */
+        public int findRunStart(int offset) {
+            while (offset > 0 && get(offset).isInRun() && ! get(offset).isStartsRun()) {
+                offset--;
+            }
+            return offset;
+        }
+
         public int getRunStart(int runEnd) {
             int offset = runEnd;
             RelayoutData current = get(offset);
@@ -817,7 +817,6 @@ public class BoxBuilder {
 
                 IdentValue identValue = IdentValue.fsValueOf(value.getStringValue());
                 if (identValue != null) {
-                    value.setIdentValue(identValue);
                     listStyleType = identValue;
                 }
             }
@@ -854,7 +853,6 @@ public class BoxBuilder {
 
                 IdentValue identValue = IdentValue.fsValueOf(value.getStringValue());
                 if (identValue != null) {
-                    value.setIdentValue(identValue);
                     listStyleType = identValue;
                 }
             }
@@ -137,7 +137,23 @@ public class BoxCollector {
 
             if (container.getPaintingInfo() == null || intersectsAggregateBounds) {
                 if (container.getLayer() == null || container == layer.getMaster()) {
-                    for (int i = 0; i < container.getChildCount(); i++) {
+                    int start = 0;
+                    int end = container.getChildCount();
+                    final PaintingInfo info = container.getPaintingInfo();
+                    if (clip != null && info != null && info.getChildIndex() != null) {
+                        // Skip the children entirely above or below the clip.
+                        final Rectangle bounds = clip.getBounds();
+                        start = Math.min(info.getChildIndex().getFirst(bounds.y), end);
+                        end = Math.max(start, Math.min(info.getChildIndex().getEnd(bounds.y + bounds.height), end));
+                    }
+                    final LayoutFrontier frontier = c instanceof RenderingContext ?
+                            ((RenderingContext) c).getLayoutFrontier() : null;
+                    if (frontier != null) {
+                        // Painting while layout goes on, skip released and unfinished children.
+                        start = Math.max(start, frontier.getFirstChild(container));
+                        end = Math.max(start, Math.min(end, frontier.getEndChild(container)));
+                    }
+                    for (int i = start; i < end; i++) {
                         final Box child = container.getChild(i);
                         collect(c, clip, layer, child, blockContent, inlineContent, rangeLists);
                     }
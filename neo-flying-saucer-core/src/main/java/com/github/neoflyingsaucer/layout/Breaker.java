@@ -106,6 +106,12 @@ public class Breaker {
         doBreakText(c, context, avail, style, false);
     }
 
+    /**
+     * The number of characters measured at first when looking for a break point.
+     * Doubled until the measured prefix is wider than the available width.
+     */
+    private static final int MEASURE_CHARS = 128;
+
     private static void doBreakText(final LayoutContext c,
             final LineBreakContext context, final int avail, final CalculatedStyle style,
             final boolean tryToBreakAnywhere)
@@ -116,39 +122,17 @@ public class Breaker {
         iter.setText(currentString);
 
         final FSFont font = style.getFSFont(c);
+        final PrefixWidths widths = new PrefixWidths(c, context, font, currentString, avail);
         int width = 0;
         int next = 0;
         int last = 0;
-        
-        if (currentString.length() >= 5)
-        {
-        	// First we get the width of the first five characters.
-        	// This should give us a crude idea of the average width of a char.
-        	final float widthChar5 = c.getTextRenderer().getWidth(
-        			c.getFontContext(), font, currentString.substring(0, 4));
-        	
-        	final float sampledCharLength = widthChar5 / 5; 
-
-        	int estimate = 0;
-        	        	
-        	if (sampledCharLength != 0)
-        		estimate = (int) (avail / sampledCharLength); 
 
-            // Now iterate the possible line breaks until we reach the estimate.
-            do
-            {
-            	FSCancelController.cancelOpportunity(Breaker.class);
-            	
-            	next = iter.next();
-            	if (next == BreakIterator.DONE)
-            		break;
-            	last = next;
-            }
-            while (next < estimate);
-
-            // Next, measure our text at the break point.
-            final String broken = currentString.substring(0, last);
-            width = c.getTextRenderer().getWidth(c.getFontContext(), font, broken);
+        // Start from the last break opportunity in the longest prefix narrower than
+        // avail. This is where the searches below end up, in a step or two.
+        final int fits = widths.getLongestPrefixNarrowerThan(avail);
+        if (fits > 0) {
+            last = fits == currentString.length() ? iter.last() : iter.preceding(fits + 1);
+            width = widths.getWidth(last);
         }
 
         // If we still have room go to one break past.
@@ -160,8 +144,7 @@ public class Breaker {
         	if (next == BreakIterator.DONE)
         		break;
         	last = next;
-        	final String broken = currentString.substring(0, next);
-        	width = c.getTextRenderer().getWidth(c.getFontContext(), font, broken);
+        	width = widths.getWidth(next);
         }
         
         if (width >= avail)
@@ -174,8 +157,7 @@ public class Breaker {
         	if (next == 0 || next == BreakIterator.DONE)
         		break;
         	last = next;
-        	final String broken = currentString.substring(0, next);
-        	width = c.getTextRenderer().getWidth(c.getFontContext(), font, broken);        	
+        	width = widths.getWidth(next);
         }
         
         if (width >= avail && !tryToBreakAnywhere)
@@ -186,8 +168,7 @@ public class Breaker {
             {
             	FSCancelController.cancelOpportunity(Breaker.class);
             	
-            	final String broken = currentString.substring(0, last);
-            	width = c.getTextRenderer().getWidth(c.getFontContext(), font, broken);
+            	width = widths.getWidth(last);
             	last--;
             }
             
@@ -201,5 +182,78 @@ public class Breaker {
         context.setEnd(context.getStart() + last);
     }
 
-}
+    /**
+     * The widths of the prefixes of the text left to break, measured at once.
+     * Only as many characters as needed to pass the available width are measured,
+     * so that a long paragraph is not measured again in full for each line.
+     */
+    private static class PrefixWidths {
+        private final LayoutContext _c;
+        private final FSFont _font;
+        private final String _text;
+        private int[] _widths;
+        private int _measured;
+
+        PrefixWidths(final LayoutContext c, final LineBreakContext context,
+                final FSFont font, final String text, final int avail) {
+            _c = c;
+            _font = font;
+            _text = text;
+
+            int measured = Math.min(text.length(), MEASURE_CHARS);
+            int[] widths = context.getWidthBuffer();
 
+            while (true) {
+                widths = c.getTextRenderer().getPrefixWidths(c.getFontContext(), font,
+                        measured == text.length() ? text : text.substring(0, measured), widths);
+
+                if (measured == text.length() || widths[measured - 1] >= avail) {
+                    break;
+                }
+
+                measured = Math.min(text.length(), measured * 2);
+            }
+
+            context.setWidthBuffer(widths);
+            _widths = widths;
+            _measured = measured;
+        }
+
+        /**
+         * @return The width of text.substring(0, end).
+         */
+        int getWidth(final int end) {
+            if (end == 0) {
+                return 0;
+            }
+            if (end > _measured) {
+                // Past the available width, at the end of a long word.
+                _widths = _c.getTextRenderer().getPrefixWidths(_c.getFontContext(), _font,
+                        _text.substring(0, end), null);
+                _measured = end;
+            }
+            return _widths[end - 1];
+        }
+
+        /**
+         * Binary search, assuming a prefix is never narrower than a shorter one.
+         * @return The length of the longest prefix narrower than avail.
+         */
+        int getLongestPrefixNarrowerThan(final int avail) {
+            int low = 0;
+            int high = _measured;
+
+            while (low < high) {
+                final int mid = (low + high + 1) >>> 1;
+                if (_widths[mid - 1] < avail) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            return low;
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.github.neoflyingsaucer.layout;
+
+import java.awt.Rectangle;
+
+/**
+ * An index of the vertical extent of a box's children, by their aggregate bounds, so
+ * that painting a page visits only the run of children which may intersect it
+ * instead of testing every child against the clip.
+ *
+ * For each child it keeps the lowest bottom edge of it and every child before it,
+ * and the highest top edge of it and every child after it. Both only grow with the
+ * child index, so binary searches find the first and last child a vertical range
+ * may intersect. Children outside that run are entirely above or below the range,
+ * whatever the order the children are laid out in. Children in normal flow are
+ * laid out from top to bottom, which keeps the run short.
+ */
+public class ChildBoundsIndex {
+
+    private final int[] _maxBottom;
+    private final int[] _minTop;
+
+    /**
+     * @param bounds The aggregate bounds of each child, in child order.
+     */
+    public ChildBoundsIndex(final Rectangle[] bounds) {
+        final int count = bounds.length;
+
+        _maxBottom = new int[count];
+        _minTop = new int[count];
+
+        int maxBottom = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            maxBottom = Math.max(maxBottom, bounds[i].y + bounds[i].height);
+            _maxBottom[i] = maxBottom;
+        }
+
+        int minTop = Integer.MAX_VALUE;
+        for (int i = count - 1; i >= 0; i--) {
+            minTop = Math.min(minTop, bounds[i].y);
+            _minTop[i] = minTop;
+        }
+    }
+
+    /**
+     * @return The index of the first child which may end below top.
+     */
+    public int getFirst(final int top) {
+        int low = 0;
+        int high = _maxBottom.length;
+
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (_maxBottom[mid] <= top) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @return One past the index of the last child which may start above bottom.
+     */
+    public int getEnd(final int bottom) {
+        int low = 0;
+        int high = _minTop.length;
+
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (_minTop[mid] < bottom) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    public void translate(final int ty) {
+        for (int i = 0; i < _maxBottom.length; i++) {
+            _maxBottom[i] += ty;
+            _minTop[i] += ty;
+        }
+    }
+}
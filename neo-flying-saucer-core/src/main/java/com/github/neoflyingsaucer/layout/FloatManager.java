@@ -55,6 +55,10 @@ public class FloatManager {
         }
     }
 
+    public boolean hasFloats() {
+        return _leftFloats.size() > 0 || _rightFloats.size() > 0;
+    }
+
     public void clear(final CssContext cssCtx, final BlockFormattingContext bfc, final Box box) {
         if (box.getStyle().isClearLeft()) {
             moveClear(cssCtx, bfc, box, getFloats(LEFT));
@@ -46,6 +46,7 @@ import com.github.neoflyingsaucer.render.BlockBox;
 import com.github.neoflyingsaucer.render.Box;
 import com.github.neoflyingsaucer.render.BoxDimensions;
 import com.github.neoflyingsaucer.render.InlineLayoutBox;
+import com.github.neoflyingsaucer.render.LineBox;
 import com.github.neoflyingsaucer.render.PageBox;
 import com.github.neoflyingsaucer.render.RenderingContext;
 import com.github.neoflyingsaucer.render.ViewportBox;
@@ -80,10 +81,10 @@ public class Layer {
     private boolean _requiresLayout;
     
     private List<PageBox> _pages;
-    private PageBox _lastRequestedPage = null;
+    private volatile PageBox _lastRequestedPage = null;
     
     private Set<BlockBox> _pageSequences;
-    private List<BlockBox> _sortedPageSequences;
+    private volatile List<BlockBox> _sortedPageSequences;
     
     private Map<String, List<BlockBox>> _runningBlocks;
     
@@ -297,16 +298,55 @@ public class Layer {
         for (int i = 0; i < lines.size(); i++) {
         	FSCancelController.cancelOpportunity(Layer.class);
         	
-            helper.popClipRegions(c, i);
-            helper.pushClipRegion(c, i);
-            
-            final InlinePaintable paintable = (InlinePaintable)lines.get(i);
-            paintable.paintInline(c);
+            final Box box = lines.get(i);
+            if (box instanceof LineBox && ((LineBox) box).isContainsDynamicFunction()) {
+                // The line is measured again for every page it is painted on, so
+                // pages painted concurrently take turns with the line and its content.
+                synchronized (box) {
+                    i = paintLine(c, lines, helper, i);
+                }
+            } else {
+                paintInline(c, lines, helper, i);
+            }
         }
         
         helper.popClipRegions(c, lines.size());
     }
     
+    /**
+     * Paints the line at index start and the content of it which follows.
+     * @return The index of the last box painted.
+     */
+    private int paintLine(final RenderingContext c, final List<Box> lines, final BoxRangeHelper helper, final int start) {
+        final Box line = lines.get(start);
+        int i = start;
+        
+        paintInline(c, lines, helper, i);
+        while (i + 1 < lines.size() && isInLine(lines.get(i + 1), line)) {
+            i++;
+            paintInline(c, lines, helper, i);
+        }
+        
+        return i;
+    }
+    
+    private static boolean isInLine(final Box box, final Box line) {
+        for (Box b = box; b != null; b = b.getParent()) {
+            if (b == line) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void paintInline(final RenderingContext c, final List<Box> lines, final BoxRangeHelper helper, final int i) {
+        helper.popClipRegions(c, i);
+        helper.pushClipRegion(c, i);
+        
+        final InlinePaintable paintable = (InlinePaintable)lines.get(i);
+        paintable.paintInline(c);
+    }
+    
     private void paintSelection(final RenderingContext c, final List<Box> lines) {
         if (c.getOutputDevice().isSupportsSelection()) {
             for (final Box box : lines) {
@@ -326,9 +366,18 @@ public class Layer {
     
     public void paint(final RenderingContext c) {
         if (getMaster().getStyle().isFixed()) {
-            positionFixedLayer(c);
+            // A fixed layer is re-positioned for every page it is painted on, so
+            // pages being painted concurrently must take turns with it.
+            synchronized (this) {
+                positionFixedLayer(c);
+                paintPositioned(c);
+            }
+        } else {
+            paintPositioned(c);
         }
-
+    }
+    
+    private void paintPositioned(final RenderingContext c) {
         c.getOutputDevice().setOpacity(this._opacity);
         
         if (isRootLayer()) {
@@ -1112,9 +1161,18 @@ public class Layer {
     }
     
     public void layoutPages(final LayoutContext c) {
+        layoutPages(c, 0);
+    }
+    
+    /**
+     * Lays out the margin areas of the pages from start on, those before it having
+     * been laid out and painted while the document was laid out.
+     */
+    public void layoutPages(final LayoutContext c, final int start) {
         c.setRootDocumentLayer(c.getRootLayer());
-        for (final PageBox pageBox : _pages) {
-            pageBox.layout(c);
+        final List<PageBox> pages = getPages();
+        for (int i = start; i < pages.size(); i++) {
+            pages.get(i).layout(c);
         }
     }
     
@@ -1124,6 +1182,7 @@ public class Layer {
         }
         
         _pageSequences.add(start);
+        _sortedPageSequences = null;
     }
     
     private List<BlockBox> getSortedPageSequences() {
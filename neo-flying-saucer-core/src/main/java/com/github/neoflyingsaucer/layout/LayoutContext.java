@@ -85,6 +85,8 @@ public class LayoutContext implements CssContext {
     
     private BreakAtLineContext _breakAtLineContext;
     
+    private LayoutFrontier _layoutFrontier;
+    
     // TODO: Should this go in shared context as break iterators may be slow to
     // start up?
     
@@ -221,6 +223,12 @@ public class LayoutContext implements CssContext {
             layer = new Layer(parent, master);
 
             parent.addChild(layer);
+
+            if (_layoutFrontier != null &&
+                    (master.getStyle().isAbsolute() || master.getStyle().isFixed())) {
+                // Positioned once its containing layer is finished, on any page.
+                _layoutFrontier.abandon();
+            }
         }
 
         pushLayer(layer);
@@ -246,6 +254,15 @@ public class LayoutContext implements CssContext {
         return _rootLayer;
     }
 
+    /**
+     * Sets the root layer without laying it out, for content laid out apart from the
+     * document with a context of its own, such as the margin areas of a page painted
+     * while the document is still being laid out.
+     */
+    public void setRootLayer(final Layer rootLayer) {
+        _rootLayer = rootLayer;
+    }
+
     public void translate(final int x, final int y) {
         getBlockFormattingContext().translate(x, y);
     }
@@ -505,6 +522,18 @@ public class LayoutContext implements CssContext {
         _rootDocumentLayer = rootDocumentLayer;
     }
 
+    /**
+     * @return The frontier to report layout progress to, or null if pages are
+     * only painted once layout is complete.
+     */
+    public LayoutFrontier getLayoutFrontier() {
+        return _layoutFrontier;
+    }
+
+    public void setLayoutFrontier(final LayoutFrontier layoutFrontier) {
+        _layoutFrontier = layoutFrontier;
+    }
+
     public PageBox getPage() {
         return _page;
     }
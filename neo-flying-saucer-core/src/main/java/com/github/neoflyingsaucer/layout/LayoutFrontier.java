@@ -0,0 +1,310 @@
+package com.github.neoflyingsaucer.layout;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.neoflyingsaucer.css.style.CalculatedStyle;
+import com.github.neoflyingsaucer.css.style.CssContext;
+import com.github.neoflyingsaucer.newtable.TableBox;
+import com.github.neoflyingsaucer.newtable.TableSectionBox;
+import com.github.neoflyingsaucer.render.BlockBox;
+import com.github.neoflyingsaucer.render.Box;
+
+/**
+ * Tracks how far layout of a paged document has got, so that pages may be painted
+ * while the rest of the document is still being laid out.
+ *
+ * Every block whose block children are being laid out is open. For each open block
+ * the frontier knows which children have been started and how many of them are final,
+ * that is, can no longer be laid out again by a page-break-avoid run, a keep-together
+ * retry or a widows adjustment. Content above the stable position, the top of the first
+ * child which is not final in any open block, never moves again.
+ *
+ * Open blocks form a chain, each one the child being laid out by the one before it. Any
+ * other box between two open blocks (a table row, or a line holding an inline-block) has
+ * its own relayout rules, so the stable position never passes the top of such a box.
+ *
+ * Table rows are final once the last row any of their cells spans is laid out. A
+ * paginated table may move to the next page until its first body row is final, and
+ * one with a running footer lays it out after its last row, so neither is final before
+ * then. Rows are handed to their table as they become final, for it to track the content
+ * of each page it repeats its header on.
+ *
+ * Painting a page above the stable position is then final, except for what needs the
+ * whole document: the page count, forward references and absolutely positioned boxes.
+ * The frontier is abandoned as soon as one of these is found, after which pages are only
+ * painted once layout is complete.
+ */
+public class LayoutFrontier {
+
+    public interface Listener {
+        /**
+         * Called after each block child is laid out, with the position above which
+         * layout is final.
+         */
+        void layoutAdvanced(LayoutContext c, LayoutFrontier frontier, int stableY);
+    }
+
+    private static class OpenBlock {
+        private final BlockBox block;
+        /* The first child not yet released. */
+        private int firstKept;
+        /* The child being laid out, or the last one laid out. */
+        private int current = -1;
+        /* The number of leading children which are final. */
+        private int finalCount;
+        /* The number of leading children which have been handled as final. */
+        private int settledCount;
+        /* The top of the first child which is not final, if that bounds the stable position. */
+        private int pinnedY = Integer.MAX_VALUE;
+
+        private OpenBlock(final BlockBox block) {
+            this.block = block;
+        }
+    }
+
+    private final Listener _listener;
+    private final List<OpenBlock> _open = new ArrayList<OpenBlock>();
+    private int _chainLength;
+    private int _stableY;
+    private boolean _abandoned;
+
+    public LayoutFrontier(final Listener listener) {
+        _listener = listener;
+    }
+
+    void push(final BlockBox block) {
+        _open.add(new OpenBlock(block));
+    }
+
+    void pop() {
+        _open.remove(_open.size() - 1);
+    }
+
+    /**
+     * A child of the innermost open block is about to be laid out.
+     * @param firstUnstable The index of the first child which may be laid out again
+     * along with this one, or index + 1 if only its own layout may change it.
+     * @param unstableTop The top of that child.
+     */
+    void startChild(final LayoutContext c, final int index, final int firstUnstable, final int unstableTop) {
+        final OpenBlock open = _open.get(_open.size() - 1);
+
+        open.current = index;
+        setFirstUnstable(open, index, false, firstUnstable, unstableTop);
+        settle(c, open);
+    }
+
+    /**
+     * A child of the innermost open block has been laid out, and any run of page break
+     * avoiding siblings it ends has been laid out again.
+     * @param firstUnstable As for {@link #startChild(LayoutContext, int, int, int)}, now
+     * that the child is done.
+     * @param cursor The bottom of the laid out content.
+     */
+    void childLaidOut(final LayoutContext c, final int index,
+            final int firstUnstable, final int unstableTop, final int cursor) {
+        final OpenBlock open = _open.get(_open.size() - 1);
+
+        open.current = index;
+        setFirstUnstable(open, index, true, firstUnstable, unstableTop);
+        settle(c, open);
+
+        if (_abandoned) {
+            return;
+        }
+
+        _stableY = calcStableY(c, cursor);
+        _listener.layoutAdvanced(c, this, _stableY);
+    }
+
+    private static void setFirstUnstable(final OpenBlock open, final int index, final boolean done,
+            int firstUnstable, int unstableTop) {
+        final int next = done ? index + 1 : index;
+
+        if (open.block instanceof TableSectionBox) {
+            final int spanStart = ((TableSectionBox) open.block).getFirstSpannedRow(next);
+            if (spanStart < next && spanStart < firstUnstable) {
+                firstUnstable = spanStart;
+                unstableTop = open.block.getChild(spanStart).getAbsY();
+            }
+        }
+
+        if (firstUnstable <= index) {
+            open.finalCount = firstUnstable;
+            open.pinnedY = unstableTop;
+        } else {
+            open.finalCount = next;
+            open.pinnedY = Integer.MAX_VALUE;
+        }
+    }
+
+    private void settle(final LayoutContext c, final OpenBlock open) {
+        if (_abandoned) {
+            return;
+        }
+
+        while (open.settledCount < open.finalCount && open.settledCount < open.block.getChildCount()) {
+            // Children are collected for painting by their aggregate bounds.
+            open.block.getChild(open.settledCount).calcPaintingInfo(c, true);
+
+            if (open.block instanceof TableSectionBox) {
+                ((TableSectionBox) open.block).rowLayoutFinal(c, open.settledCount);
+            } else if (open.block instanceof TableBox) {
+                ((TableBox) open.block).sectionLayoutFinal(c, open.settledCount);
+            }
+
+            open.settledCount++;
+        }
+    }
+
+    private int calcStableY(final LayoutContext c, final int cursor) {
+        int result = cursor;
+
+        _chainLength = _open.size();
+        for (int i = 0; i < _open.size(); i++) {
+            final OpenBlock open = _open.get(i);
+            result = Math.min(result, open.pinnedY);
+
+            if (open.block instanceof TableBox && ((TableBox) open.block).isLayoutProvisional(c)) {
+                result = Math.min(result, open.block.getAbsY());
+            }
+
+            if (i + 1 < _open.size()) {
+                final BlockBox next = _open.get(i + 1).block;
+                if (open.current < 0 || open.current >= open.block.getChildCount() ||
+                        open.block.getChild(open.current) != next) {
+                    // Something else lays out the next open block.
+                    _chainLength = i + 1;
+                    if (open.current >= 0 && open.current < open.block.getChildCount()) {
+                        result = Math.min(result, open.block.getChild(open.current).getAbsY());
+                    }
+                    break;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The position above which layout is final, as of the last child laid out.
+     */
+    public int getStableY() {
+        return _stableY;
+    }
+
+    /**
+     * Stops painting pages before layout is complete, because the document needs
+     * all of its layout to paint them.
+     */
+    public void abandon() {
+        _abandoned = true;
+    }
+
+    public boolean isAbandoned() {
+        return _abandoned;
+    }
+
+    private OpenBlock find(final Box container) {
+        for (int i = 0; i < _open.size(); i++) {
+            final OpenBlock open = _open.get(i);
+            if (open.block == container) {
+                return open;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The index of the first child of container to paint, or 0 if it is not open.
+     */
+    public int getFirstChild(final Box container) {
+        final OpenBlock open = find(container);
+        return open == null ? 0 : open.firstKept;
+    }
+
+    /**
+     * @return One past the index of the last child of container to paint, the children
+     * after it not being laid out yet.
+     */
+    public int getEndChild(final Box container) {
+        final OpenBlock open = find(container);
+        return open == null ? container.getChildCount() : Math.min(open.current + 1, container.getChildCount());
+    }
+
+    /**
+     * Open blocks do not know their height yet. Extends them past bottom so that their
+     * background is painted down to it and their bottom edge is not.
+     * @return The heights to restore once painting is done.
+     */
+    public int[] extendOpenBlocks(final CssContext c, final int bottom) {
+        final int[] heights = new int[_chainLength];
+
+        for (int i = 0; i < _chainLength; i++) {
+            final BlockBox block = _open.get(i).block;
+            heights[i] = block.getHeight();
+            block.setHeight(Math.max(heights[i],
+                    bottom - block.getAbsY() + block.getMarginBorderPadding(c, CalculatedStyle.BOTTOM) + 1));
+        }
+
+        return heights;
+    }
+
+    public void restoreOpenBlocks(final int[] heights) {
+        for (int i = 0; i < heights.length; i++) {
+            _open.get(i).block.setHeight(heights[i]);
+        }
+    }
+
+    /**
+     * Drops the content of final children of open blocks which end above bottom,
+     * as every page they are painted on has been painted. The children themselves
+     * are kept, as layout of their siblings refers to them. Table sections are kept
+     * whole, as a header is painted again on every page, but their rows are not.
+     */
+    public void release(final int bottom) {
+        for (int i = 0; i < _chainLength; i++) {
+            final OpenBlock open = _open.get(i);
+
+            while (open.firstKept < open.finalCount && open.firstKept < open.block.getChildCount()) {
+                final Box child = open.block.getChild(open.firstKept);
+                final PaintingInfo info = child.getPaintingInfo();
+                if (info == null || child instanceof TableSectionBox) {
+                    break;
+                }
+
+                final Rectangle bounds = info.getAggregateBounds();
+                if (bounds.y + bounds.height > bottom) {
+                    break;
+                }
+
+                releaseContent(child);
+                if (open.block instanceof TableSectionBox) {
+                    ((TableSectionBox) open.block).releaseRow(open.firstKept);
+                }
+                open.firstKept++;
+            }
+        }
+    }
+
+    private static void releaseContent(final Box box) {
+        for (int i = 0; i < box.getChildCount(); i++) {
+            final Box child = box.getChild(i);
+            releaseContent(child);
+
+            if (child instanceof BlockBox && ((BlockBox) child).getFloatedBoxData() != null) {
+                final Layer layer = ((BlockBox) child).getFloatedBoxData().getDrawingLayer();
+                if (layer != null) {
+                    layer.removeFloat((BlockBox) child);
+                }
+            }
+        }
+
+        box.removeAllChildren();
+        if (box instanceof BlockBox) {
+            ((BlockBox) box).setInlineContent(null);
+        }
+    }
+}
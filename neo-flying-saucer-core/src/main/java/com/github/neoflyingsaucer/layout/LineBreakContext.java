@@ -36,7 +36,19 @@ public class LineBreakContext {
     private int _width;
     private boolean _endsOnNL;
     private Node _textNode;
+    private int[] _widthBuffer;
     
+    /**
+     * @return A buffer for measuring the text, reused from breaking previous lines. May be null.
+     */
+    public int[] getWidthBuffer() {
+        return _widthBuffer;
+    }
+
+    public void setWidthBuffer(final int[] widthBuffer) {
+        _widthBuffer = widthBuffer;
+    }
+
     public int getLast() {
         return _master.length();
     }
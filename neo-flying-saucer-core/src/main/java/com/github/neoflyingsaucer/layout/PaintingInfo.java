@@ -32,6 +32,7 @@ import java.awt.Rectangle;
 public class PaintingInfo {
     private Dimension _outerMarginCorner;
     private Rectangle _aggregateBounds;
+    private ChildBoundsIndex _childIndex;
     
     public PaintingInfo() {
     }
@@ -52,6 +53,18 @@ public class PaintingInfo {
         _outerMarginCorner = outerMarginCorner;
     }
     
+    /**
+     * @return The index of the children's aggregate bounds, or null if the children
+     * are few enough to test each one.
+     */
+    public ChildBoundsIndex getChildIndex() {
+        return _childIndex;
+    }
+    
+    public void setChildIndex(final ChildBoundsIndex childIndex) {
+        _childIndex = childIndex;
+    }
+    
     public PaintingInfo copyOf() {
         final PaintingInfo result = new PaintingInfo();
         result.setOuterMarginCorner(new Dimension(_outerMarginCorner));
@@ -62,6 +75,9 @@ public class PaintingInfo {
     
     public void translate(final int tx, final int ty) {
         _aggregateBounds.translate(tx, ty);
+        if (_childIndex != null) {
+            _childIndex.translate(ty);
+        }
         _outerMarginCorner.setSize(
                 _outerMarginCorner.getWidth()+tx, _outerMarginCorner.getHeight()+ty);
     }
@@ -27,6 +27,7 @@ import java.awt.Toolkit;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -108,6 +109,12 @@ public class SharedContext {
     
     private Dimension _deviceDimension;
 
+    private ExecutorService _layoutExecutor;
+    private int _layoutParallelism;
+
+    private boolean _moveAvoidedRuns = true;
+    private int _avoidedRelayoutCount;
+
     public SharedContext()
     {
     }
@@ -579,6 +586,56 @@ public class SharedContext {
     	this.replacedElementResolver = resolver;
     }
     
+    /**
+     * @param executor The executor to measure table cells on, or null to measure
+     * them on the thread laying out the document.
+     * @param maxParallelism The most tasks to split the cells of a table into.
+     */
+    public void setLayoutExecutor(final ExecutorService executor, final int maxParallelism) {
+        _layoutExecutor = executor;
+        _layoutParallelism = Math.max(1, maxParallelism);
+    }
+
+    public ExecutorService getLayoutExecutor() {
+        return _layoutExecutor;
+    }
+
+    public int getLayoutParallelism() {
+        return _layoutParallelism;
+    }
+
+    /**
+     * @return The number of boxes which were moved as laid out, instead of being
+     * laid out again, to keep a run of boxes from being split by a page break.
+     */
+    public int getAvoidedRelayoutCount() {
+        return _avoidedRelayoutCount;
+    }
+
+    public void countAvoidedRelayout() {
+        _avoidedRelayoutCount++;
+    }
+
+    /**
+     * Called at the start of each layout.
+     */
+    public void resetAvoidedRelayoutCount() {
+        _avoidedRelayoutCount = 0;
+    }
+
+    /**
+     * @param move If false, a run of boxes kept off a page break by page-break-before
+     * or page-break-after: avoid is always laid out again where it goes, never moved
+     * there. Defaults to true.
+     */
+    public void setMoveAvoidedRuns(final boolean move) {
+        _moveAvoidedRuns = move;
+    }
+
+    public boolean isMoveAvoidedRuns() {
+        return _moveAvoidedRuns;
+    }
+
     public ReplacedElementResolver getReplacedElementResolver()
     {
     	return this.replacedElementResolver;
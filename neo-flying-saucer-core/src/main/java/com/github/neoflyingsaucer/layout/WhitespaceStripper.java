@@ -19,7 +19,6 @@
  */
 package com.github.neoflyingsaucer.layout;
 
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -152,37 +151,144 @@ public class WhitespaceStripper {
         return text.equals("") ? collapseLeading : collapseNext;
     }
 
-    private static String collapseWhitespace(final InlineBox iB, final IdentValue whitespace, String text, final boolean collapseLeading) {
-        if (whitespace == IdentValue.NORMAL || whitespace == IdentValue.NOWRAP) {
-            text = linefeed_space_collapse.matcher(text).replaceAll(EOL);
-        } else if (whitespace == IdentValue.PRE) {
-        	// NOTE: Removed by danfickle, this doesn't seem to be in the CSS2 spec.
-        	//text = space_before_linefeed_collapse.matcher(text).replaceAll(EOL);
+    private static String collapseWhitespace(final InlineBox iB, final IdentValue whitespace, final String text, final boolean collapseLeading) {
+        if (whitespace == IdentValue.PRE || whitespace == IdentValue.PRE_WRAP) {
+            if (text.indexOf('\t') < 0) {
+                return text;
+            }
+            return expandTabs(text, (int) iB.getStyle().asFloat(CSSName.TAB_SIZE));
         }
 
+        return collapseWhitespace(whitespace, text, collapseLeading);
+    }
+
+    /**
+     * Collapses whitespace for normal, nowrap and pre-line in a single pass over the
+     * text, with the same result as applying the patterns above in turn.
+     *
+     * For normal and nowrap, a run of whitespace with a linefeed inside it becomes one
+     * space. Linefeeds, tabs and spaces in any other run become spaces, and sequences
+     * of spaces are collapsed. For pre-line, only tabs and spaces are collapsed.
+     *
+     * @return The text itself if nothing is collapsed.
+     */
+    static String collapseWhitespace(final IdentValue whitespace, final String text, final boolean collapseLeading) {
+        final boolean collapseLinefeeds;
         if (whitespace == IdentValue.NORMAL || whitespace == IdentValue.NOWRAP) {
-            text = linefeed_to_space.matcher(text).replaceAll(SPACE);
-            text = tab_to_space.matcher(text).replaceAll(SPACE);
-            text = space_collapse.matcher(text).replaceAll(SPACE);
-        } else if (whitespace == IdentValue.PRE || whitespace == IdentValue.PRE_WRAP) {
-            final int tabSize = (int) iB.getStyle().asFloat(CSSName.TAB_SIZE);
-            final char[] tabs = new char[tabSize];
-            Arrays.fill(tabs, ' ');
-            text = tab_to_space.matcher(text).replaceAll(new String(tabs));
+            collapseLinefeeds = true;
         } else if (whitespace == IdentValue.PRE_LINE) {
-            text = tab_to_space.matcher(text).replaceAll(SPACE);
-            text = space_collapse.matcher(text).replaceAll(SPACE);
+            collapseLinefeeds = false;
+        } else {
+            return text;
         }
 
-        if (whitespace == IdentValue.NORMAL || whitespace == IdentValue.NOWRAP) {
-            // collapse first space against prev inline
-            if (text.startsWith(SPACE) &&
-                    collapseLeading) {
-                text = text.substring(1, text.length());
+        final TextBuffer result = new TextBuffer(text);
+        final int length = text.length();
+        // Whether the last character written is a collapsible space. A leading
+        // space collapses against the previous inline.
+        boolean afterSpace = collapseLeading && collapseLinefeeds;
+
+        int i = 0;
+        while (i < length) {
+            final char c = text.charAt(i);
+
+            if (collapseLinefeeds && isWhitespace(c)) {
+                int end = i + 1;
+                boolean innerLinefeed = false;
+                while (end < length && isWhitespace(text.charAt(end))) {
+                    if (text.charAt(end) == EOLC && end + 1 < length && isWhitespace(text.charAt(end + 1))) {
+                        innerLinefeed = true;
+                    }
+                    end++;
+                }
+
+                if (innerLinefeed) {
+                    if (! afterSpace) {
+                        result.append(' ');
+                    }
+                    afterSpace = true;
+                } else {
+                    for (int j = i; j < end; j++) {
+                        final char w = text.charAt(j);
+                        if (w == ' ' || w == '\t' || w == EOLC) {
+                            if (! afterSpace) {
+                                result.append(' ');
+                            }
+                            afterSpace = true;
+                        } else {
+                            result.append(w);
+                            afterSpace = false;
+                        }
+                    }
+                }
+                i = end;
+            } else if (c == ' ' || c == '\t') {
+                if (! afterSpace) {
+                    result.append(' ');
+                }
+                afterSpace = true;
+                i++;
+            } else {
+                result.append(c);
+                afterSpace = false;
+                i++;
             }
         }
 
-        return text;
+        return result.toString();
+    }
+
+    private static boolean isWhitespace(final char c) {
+        // As matched by \s.
+        return c == ' ' || c == '\t' || c == EOLC || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static String expandTabs(final String text, final int tabSize) {
+        final StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '\t') {
+                for (int j = 0; j < tabSize; j++) {
+                    result.append(' ');
+                }
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Collects the collapsed text, which is never longer than the original. No copy
+     * is made for as long as the collapsed text is the same as the original.
+     */
+    private static class TextBuffer {
+        private final String _text;
+        private char[] _chars;
+        private int _length;
+
+        private TextBuffer(final String text) {
+            _text = text;
+        }
+
+        private void append(final char c) {
+            if (_chars == null) {
+                if (_text.charAt(_length) == c) {
+                    _length++;
+                    return;
+                }
+                _chars = new char[_text.length()];
+                _text.getChars(0, _length, _chars, 0);
+            }
+            _chars[_length++] = c;
+        }
+
+        public String toString() {
+            if (_chars == null) {
+                return _length == _text.length() ? _text : _text.substring(0, _length);
+            }
+            return new String(_chars, 0, _length);
+        }
     }
 }
 
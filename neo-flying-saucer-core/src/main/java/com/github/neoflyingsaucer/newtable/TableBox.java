@@ -25,6 +25,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.github.neoflyingsaucer.css.constants.CSSName;
 import com.github.neoflyingsaucer.css.constants.IdentValue;
@@ -45,6 +49,8 @@ import com.github.neoflyingsaucer.render.ContentLimitContainer;
 import com.github.neoflyingsaucer.render.PageBox;
 import com.github.neoflyingsaucer.render.RenderingContext;
 import com.github.neoflyingsaucer.util.ArrayUtil;
+import com.github.neoflyingsaucer.util.HandlerTask;
+import com.github.neoflyingsaucer.util.XRRuntimeException;
 
 // Much of this code is directly inspired by (and even copied from)
 // the equivalent code in KHTML (including the idea of "effective columns" to
@@ -63,6 +69,10 @@ public class TableBox extends BlockBox {
     private boolean _marginAreaRoot;
 
     private ContentLimitContainer _contentLimitContainer;
+    private boolean _contentLimitsStreamed;
+    private boolean _firstBodyRowFinal;
+    /* Held while a page with the header and footer moved onto it is painted. */
+    private final ReentrantLock _headerFooterLock = new ReentrantLock();
 
     private int _extraSpaceTop;
     private int _extraSpaceBottom;
@@ -287,6 +297,7 @@ public class TableBox extends BlockBox {
 
         if (running) {
             if (isNeedAnalyzePageBreaks()) {
+                _contentLimitsStreamed = false;
                 analyzePageBreaks(c);
 
                 setExtraSpaceTop(0);
@@ -316,10 +327,61 @@ public class TableBox extends BlockBox {
                 // table layout run still completes (which we don't)
                 setNeedPageClear(true);
             }
+
+            if (c.getLayoutFrontier() != null && isNeedAnalyzePageBreaks()) {
+                // Pages are painted before the table is done, the content limits
+                // of each are built up as its rows are final.
+                _contentLimitContainer = new ContentLimitContainer(c, getAbsY());
+                _contentLimitsStreamed = true;
+            }
         }
         super.layoutChildren(c, contentStart);
     }
 
+    /**
+     * @return True if, while a paged document is streamed, the rows of the table laid out
+     * so far may yet be laid out again. The table moves to the next page if its first body
+     * row does not fit, and a running footer is laid out after the last row.
+     */
+    public boolean isLayoutProvisional(final LayoutContext c) {
+        if (! c.isPrint() || ! getStyle().isPaginateTable()) {
+            return false;
+        }
+
+        if (getChildCount() > 0 && ((TableSectionBox)getChild(getChildCount()-1)).isFooter()) {
+            return true;
+        }
+
+        return isNeedPageClear() || ! _firstBodyRowFinal;
+    }
+
+    void rowLayoutFinal(final LayoutContext c, final TableSectionBox section, final int row) {
+        final TableRowBox rowBox = (TableRowBox)section.getChild(row);
+
+        if (rowBox == getFirstBodyRow()) {
+            _firstBodyRowFinal = true;
+        }
+
+        if (_contentLimitsStreamed) {
+            if (row == 0) {
+                _contentLimitContainer.updateTop(c, section.getAbsY());
+            }
+            rowBox.analyzePageBreaks(c, _contentLimitContainer);
+        }
+    }
+
+    /**
+     * Called while a paged document is streamed, once a section will not be laid out
+     * again.
+     */
+    public void sectionLayoutFinal(final LayoutContext c, final int index) {
+        if (_contentLimitsStreamed) {
+            final Box section = getChild(index);
+            _contentLimitContainer.updateTop(c, section.getAbsY());
+            _contentLimitContainer.updateBottom(c, section.getAbsY() + section.getHeight());
+        }
+    }
+
     private int layoutRunningHeader(final LayoutContext c) {
         int result = 0;
         if (getChildCount() > 0) {
@@ -475,6 +537,9 @@ public class TableBox extends BlockBox {
     }
 
     public void updateHeaderFooterPosition(final RenderingContext c) {
+        // The header and footer stay where they are put until the page is painted.
+        c.holdUntilPagePainted(_headerFooterLock);
+
         final ContentLimit limit = _contentLimitContainer.getContentLimit(c.getPageNo());
 
         if (limit != null) {
@@ -640,6 +705,8 @@ public class TableBox extends BlockBox {
         super.reset(c);
 
         _contentLimitContainer = null;
+        _contentLimitsStreamed = false;
+        _firstBodyRowFinal = false;
 
         _tableLayout.reset();
     }
@@ -1178,6 +1245,9 @@ public class TableBox extends BlockBox {
     }
 
     private static class AutoTableLayout implements TableLayout {
+        /* Fewer cells are not worth handing to another thread. */
+        private static final int MIN_CELLS_PER_TASK = 64;
+
         private final TableBox _table;
         private Layout[] _layoutStruct;
         private List<TableCellBox> _spanCells;
@@ -1235,11 +1305,85 @@ public class TableBox extends BlockBox {
 
             }
 
+            calcCellMinMaxWidths(c);
+
             for (int i = 0; i < nEffCols; i++) {
                 recalcColumn(c, i);
             }
         }
 
+        /**
+         * Measures the cells of the table on the layout executor, if there is one,
+         * so that recalcColumn() finds them measured and only merges their widths.
+         * The cells are prepared first, in document order, on this thread.
+         */
+        private void calcCellMinMaxWidths(final LayoutContext c) {
+            final ExecutorService executor = c.getSharedContext().getLayoutExecutor();
+            if (executor == null) {
+                return;
+            }
+
+            final List<TableCellBox> cells = new ArrayList<TableCellBox>();
+            for (final Iterator<Box> i = _table.getChildIterator(); i.hasNext();) {
+                final TableSectionBox section = (TableSectionBox) i.next();
+                for (final Iterator<Box> j = section.getChildIterator(); j.hasNext();) {
+                    final TableRowBox row = (TableRowBox) j.next();
+                    for (final Iterator<Box> k = row.getChildIterator(); k.hasNext();) {
+                        FSCancelController.cancelOpportunity(TableBox.class);
+
+                        final TableCellBox cell = (TableCellBox) k.next();
+                        if (cell.prepareMinMaxWidth(c)) {
+                            cells.add(cell);
+                        }
+                    }
+                }
+            }
+
+            final int tasks = Math.min(c.getSharedContext().getLayoutParallelism(),
+                    cells.size() / MIN_CELLS_PER_TASK);
+            if (tasks < 2) {
+                return;
+            }
+
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks);
+            for (int t = 0; t < tasks; t++) {
+                final List<TableCellBox> slice = cells.subList(
+                        t * cells.size() / tasks, (t + 1) * cells.size() / tasks);
+                futures.add(executor.submit(new HandlerTask<Void>() {
+                    protected Void run() {
+                        for (final TableCellBox cell : slice) {
+                            cell.calcMinMaxWidth(c);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            try {
+                for (final Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (final InterruptedException e) {
+                cancel(futures);
+                Thread.currentThread().interrupt();
+                throw new XRRuntimeException("Interrupted while measuring table cells", e);
+            } catch (final ExecutionException e) {
+                cancel(futures);
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new XRRuntimeException("Unable to measure table cells", e.getCause());
+            }
+        }
+
+        private static void cancel(final List<Future<Void>> futures) {
+            for (final Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+
         protected int getMinColWidth() {
             return 1;
         }
@@ -117,6 +117,42 @@ public class TableSectionBox extends BlockBox {
         return (TableCellBox)rowData.getRow().get(col);
     }
     
+    /**
+     * @return The first row any cell in row starts in, which is row itself unless
+     * a cell spans into it from a row above.
+     */
+    public int getFirstSpannedRow(final int row) {
+        int result = row;
+        if (row < _grid.size()) {
+            final List<TableCellBox> cells = _grid.get(row).getRow();
+            for (int i = 0; i < cells.size(); i++) {
+                final TableCellBox cell = cells.get(i);
+                if (cell != null && cell != TableCellBox.SPANNING_CELL && cell.getRow() < result) {
+                    result = cell.getRow();
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Called while a paged document is streamed, once a row will not be laid out
+     * again.
+     */
+    public void rowLayoutFinal(final LayoutContext c, final int row) {
+        getTable().rowLayoutFinal(c, this, row);
+    }
+    
+    /**
+     * Drops the cells of a row which has been painted on every page it is on. Rows
+     * below it only look at the cells of their own row and the one after it.
+     */
+    public void releaseRow(final int row) {
+        if (row < _grid.size()) {
+            _grid.get(row).getRow().clear();
+        }
+    }
+    
     private void setCellAt(final int row, final int col, final TableCellBox cell) {
         _grid.get(row).getRow().set(col, cell);
     }
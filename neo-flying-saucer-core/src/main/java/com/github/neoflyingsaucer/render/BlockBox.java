@@ -1548,14 +1548,8 @@ public class BlockBox extends Box implements InlinePaintable {
                 if (isReplaced()) {
                     width = getReplacedElement().getIntrinsicWidth();
                 } else {
-                    final int height = getCSSHeight(c);
-                    ReplacedElement re = c.getSharedContext().getReplacedElementFactory() != null ? c.getReplacedElementFactory().createReplacedElement(
-                            c, this, c.getUac(), width, height) :
-
-                            c.getSharedContext().getReplacedElementResolver().createReplacedElement(
-                            		getElement(), c.getSharedContext().getBaseURL(), c.getUac(), c.getSharedContext().getImageResolver(), width, height);
+                    final ReplacedElement re = createMinMaxReplacedElement(c, width);
                     if (re != null) {
-                        re = fitReplacedElement(c, re);
                         setReplacedElement(re);
                         width = getReplacedElement().getIntrinsicWidth();
                     }
@@ -1617,6 +1611,101 @@ public class BlockBox extends Box implements InlinePaintable {
         }
     }
 
+    private ReplacedElement createMinMaxReplacedElement(final LayoutContext c, final int width) {
+        final int height = getCSSHeight(c);
+        final ReplacedElement re = c.getSharedContext().getReplacedElementFactory() != null ? c.getReplacedElementFactory().createReplacedElement(
+                c, this, c.getUac(), width, height) :
+
+                c.getSharedContext().getReplacedElementResolver().createReplacedElement(
+                		getElement(), c.getSharedContext().getBaseURL(), c.getUac(), c.getSharedContext().getImageResolver(), width, height);
+        return re == null ? null : fitReplacedElement(c, re);
+    }
+
+    /**
+     * Does the part of {@link #calcMinMaxWidth(LayoutContext)} which depends on document
+     * order or changes shared state: building the boxes in this block, resolving their
+     * fonts and list markers, and replacing elements. It also resolves the margins,
+     * borders and padding of the boxes, which their styles cache on first use and
+     * share with sibling boxes. The rest may then run on another thread, while other
+     * blocks are measured.
+     * @return False if the block holds a table, which has to be measured on the
+     * calling thread.
+     */
+    public boolean prepareMinMaxWidth(final LayoutContext c) {
+        if (isMinMaxCalculated()) {
+            return true;
+        }
+
+        if (getStyle().isTable() || getStyle().isInlineTable()) {
+            return false;
+        }
+
+        getStyle().getFSFont(c);
+        getMargin(c);
+        getBorder(c);
+        getPadding(c);
+
+        final int width = getCSSWidth(c, true);
+        if (width == -1 && ! isReplaced()) {
+            final ReplacedElement re = createMinMaxReplacedElement(c, width);
+            if (re != null) {
+                setReplacedElement(re);
+            }
+        }
+
+        if (isReplaced() || (width != -1 && ! isFixedWidthAdvisoryOnly())) {
+            return true;
+        }
+
+        // Children resolve percentages against the same provisional width as
+        // calcMinMaxWidth() gives them.
+        final int cw = getContentWidth();
+        if (width != -1) {
+            setContentWidth(width);
+        }
+
+        try {
+            return prepareMinMaxWidthChildren(c);
+        } finally {
+            if (width != -1) {
+                setContentWidth(cw);
+            }
+        }
+    }
+
+    private boolean prepareMinMaxWidthChildren(final LayoutContext c) {
+        ensureChildren(c);
+
+        switch (getChildrenContentType()) {
+            case CONTENT_BLOCK:
+                for (final Iterator<Box> i = getChildIterator(); i.hasNext();) {
+                    if (! ((BlockBox) i.next()).prepareMinMaxWidth(c)) {
+                        return false;
+                    }
+                }
+                break;
+            case CONTENT_INLINE:
+                if (getStyle().isListItem() && getStyle().isListMarkerInside()) {
+                    createMarkerData(c);
+                }
+
+                for (final Iterator<Styleable> i = _inlineContent.iterator(); i.hasNext();) {
+                    final Styleable child = i.next();
+                    if (child instanceof BlockBox) {
+                        if (! ((BlockBox) child).prepareMinMaxWidth(c)) {
+                            return false;
+                        }
+                    } else {
+                        child.getStyle().getFSFont(c);
+                        child.getStyle().getMarginBorderPadding(c, getContentWidth(), CalculatedStyle.LEFT);
+                    }
+                }
+                break;
+        }
+
+        return true;
+    }
+
     private ReplacedElement fitReplacedElement(final LayoutContext c,
             ReplacedElement re)
     {
@@ -2181,6 +2270,152 @@ public class BlockBox extends Box implements InlinePaintable {
         throw new RuntimeException("internal error: no children");
     }
 
+    /**
+     * Checks if laying this box out again deltaY further down could give a different
+     * layout, rather than the same one moved down. It could if any line in it touches a
+     * page break, in either position, or if it holds anything else that depends on page
+     * breaks, page properties, layers or floats. The caller checks for floats around it.
+     */
+    public boolean isPagePositionDependent(final LayoutContext c, final int deltaY) {
+        return isPagePositionDependent(c, this, deltaY);
+    }
+
+    private static boolean isPagePositionDependent(final LayoutContext c, final Box box, final int deltaY) {
+        if (box.getLayer() != null) {
+            return true;
+        }
+
+        final boolean crosses = isCrossingPageBreak(c, box, 0) || isCrossingPageBreak(c, box, deltaY);
+
+        if (box instanceof BlockBox) {
+            final BlockBox block = (BlockBox) box;
+            final CalculatedStyle style = block.getStyle();
+
+            if (style.isTable() || style.isInlineTable() || style.isFloated() ||
+                    style.isAbsolute() || style.isFixed() || style.isRunning() ||
+                    style.isForcePageBreakBefore() || style.isForcePageBreakAfter() ||
+                    style.isKeepWithInline() || style.isDynamicAutoWidth() ||
+                    ! style.isIdent(CSSName.PAGE, IdentValue.AUTO) ||
+                    style.isIdent(CSSName.FS_PAGE_SEQUENCE, IdentValue.START) ||
+                    block.isNeedPageClear()) {
+                return true;
+            }
+
+            // A block at the top of a page gets back any top margin collapsed away,
+            // and one already there may have been moved there.
+            if (isAtPageTop(c, block.getAbsY()) ||
+                    (isAtPageTop(c, block.getAbsY() + deltaY) &&
+                            block.getMargin(c).top() != block.getStyleMargin(c).top())) {
+                return true;
+            }
+
+            // A block may cross a page break where none of its content does, unless
+            // it is kept together, its children are kept together or its lines are
+            // checked for widows and orphans.
+            if (crosses && (style.isAvoidPageBreakInside() || block.isReplaced() ||
+                    isLinesOnManyPages(c, block, 0) || isLinesOnManyPages(c, block, deltaY) ||
+                    isAvoidingPageBreaksBetweenChildren(block))) {
+                return true;
+            }
+        } else if (box instanceof LineBox) {
+            final LineBox line = (LineBox) box;
+            // A line at the top of a page may have been moved there.
+            if (crosses || isAtPageTop(c, line.getAbsY()) ||
+                    line.getNonFlowContent().size() > 0 || line.isContainsDynamicFunction()) {
+                return true;
+            }
+        } else if (crosses) {
+            return true;
+        }
+
+        if (box instanceof InlineLayoutBox) {
+            final InlineLayoutBox iB = (InlineLayoutBox) box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                final Object child = iB.getInlineChild(i);
+                if (child instanceof Box && isPagePositionDependent(c, (Box) child, deltaY)) {
+                    return true;
+                }
+            }
+        } else {
+            for (int i = 0; i < box.getChildCount(); i++) {
+            	FSCancelController.cancelOpportunity(BlockBox.class);
+
+                if (isPagePositionDependent(c, box.getChild(i), deltaY)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isCrossingPageBreak(final LayoutContext c, final Box box, final int deltaY) {
+        final int top = box.getAbsY() + deltaY;
+        return c.getRootLayer().crossesPageBreak(c, top, top + box.getHeight());
+    }
+
+    private static boolean isLinesOnManyPages(final LayoutContext c, final BlockBox block, final int deltaY) {
+        if (block.getChildrenContentType() != CONTENT_INLINE || block.getChildCount() == 0) {
+            return false;
+        }
+
+        final Box last = block.getChild(block.getChildCount() - 1);
+        return c.getRootLayer().getPage(c, block.getChild(0).getAbsY() + deltaY) !=
+                c.getRootLayer().getPage(c, last.getAbsY() + deltaY);
+    }
+
+    private static boolean isAvoidingPageBreaksBetweenChildren(final BlockBox block) {
+        if (block.getChildrenContentType() != CONTENT_BLOCK) {
+            return false;
+        }
+
+        for (int i = 0; i < block.getChildCount(); i++) {
+            final CalculatedStyle style = block.getChild(i).getStyle();
+            if (style.isIdent(CSSName.PAGE_BREAK_BEFORE, IdentValue.AVOID) ||
+                    style.isIdent(CSSName.PAGE_BREAK_AFTER, IdentValue.AVOID)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isAtPageTop(final LayoutContext c, final int y) {
+        final PageBox page = c.getRootLayer().getPage(c, y);
+        return page != null && page.getTop() == y;
+    }
+
+    /**
+     * Moves this box, as laid out, deltaY down.
+     * @see #isPagePositionDependent(LayoutContext, int)
+     */
+    public void translateLayout(final int deltaY) {
+        setY(getY() + deltaY);
+        calcCanvasLocation();
+        calcChildLocations();
+        translatePaintingInfo(this, deltaY);
+    }
+
+    private static void translatePaintingInfo(final Box box, final int deltaY) {
+        if (box.getPaintingInfo() != null) {
+            box.getPaintingInfo().translate(0, deltaY);
+        }
+
+        if (box instanceof InlineLayoutBox) {
+            final InlineLayoutBox iB = (InlineLayoutBox) box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                final Object child = iB.getInlineChild(i);
+                if (child instanceof Box) {
+                    translatePaintingInfo((Box) child, deltaY);
+                }
+            }
+        } else {
+            for (int i = 0; i < box.getChildCount(); i++) {
+                translatePaintingInfo(box.getChild(i), deltaY);
+            }
+        }
+    }
+
     public boolean checkPageContext(final LayoutContext c) {
         if (! getStyle().isIdent(CSSName.PAGE, IdentValue.AUTO)) {
             final String pageName = getStyle().getStringProperty(CSSName.PAGE);
@@ -42,6 +42,7 @@ import com.github.neoflyingsaucer.css.style.derived.BorderPropertySet;
 import com.github.neoflyingsaucer.css.style.derived.RectPropertySet;
 import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
 import com.github.neoflyingsaucer.extend.useragent.Optional;
+import com.github.neoflyingsaucer.layout.ChildBoundsIndex;
 import com.github.neoflyingsaucer.layout.Layer;
 import com.github.neoflyingsaucer.layout.LayoutContext;
 import com.github.neoflyingsaucer.layout.PaintingInfo;
@@ -52,6 +53,11 @@ public abstract class Box implements Styleable {
 
     protected static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
+    /**
+     * Boxes with fewer children than this are painted by testing each child.
+     */
+    private static final int MIN_INDEXED_CHILDREN = 16;
+
     /**
      *  DOM element associated with this box.
      */
@@ -911,11 +917,21 @@ public abstract class Box implements Styleable {
 
     protected void calcChildPaintingInfo(
             CssContext c, PaintingInfo result, boolean useCache) {
-        for (int i = 0; i < getChildCount(); i++) {
+        int count = getChildCount();
+        // Table headers and footers are moved to each page as it is painted.
+        Rectangle[] bounds = count >= MIN_INDEXED_CHILDREN && ! getStyle().isTable() ?
+                new Rectangle[count] : null;
+        for (int i = 0; i < count; i++) {
             Box child = getChild(i);
             PaintingInfo info = child.calcPaintingInfo(c, useCache);
             moveIfGreater(result.getOuterMarginCorner(), info.getOuterMarginCorner());
             result.getAggregateBounds().add(info.getAggregateBounds());
+            if (bounds != null) {
+                bounds[i] = info.getAggregateBounds();
+            }
+        }
+        if (bounds != null) {
+            result.setChildIndex(new ChildBoundsIndex(bounds));
         }
     }
 
@@ -145,7 +145,7 @@ public class InlineBox implements Styleable {
     private int getTextWidth(final LayoutContext c, final String s) {
         return c.getTextRenderer().getWidth(
                 c.getFontContext(),
-                c.getFont(getStyle().getFont(c)),
+                getStyle().getFSFont(c),
                 s);
     }
 
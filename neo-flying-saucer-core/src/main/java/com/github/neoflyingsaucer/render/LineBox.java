@@ -114,6 +114,7 @@ public class LineBox extends Box implements InlinePaintable {
         }
         
         if (isContainsDynamicFunction()) {
+            // Layer holds this line's lock until its content is painted too.
             lookForDynamicFunctions(c);
             final int totalLineWidth = InlineBoxing.positionHorizontally(c, this, 0);
             setContentWidth(totalLineWidth);
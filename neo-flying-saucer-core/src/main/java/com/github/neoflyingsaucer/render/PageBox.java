@@ -24,6 +24,7 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -443,6 +444,13 @@ public class PageBox {
         }
     }
     
+    /**
+     * Drops the margin areas once the page has been painted and will not be again.
+     */
+    public void releaseMarginAreas() {
+        Arrays.fill(_marginAreas, null);
+    }
+    
     public boolean isLeftPage() {
         return _pageNo % 2 != 0;
     }
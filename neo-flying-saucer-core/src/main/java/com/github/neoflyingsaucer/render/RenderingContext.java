@@ -20,6 +20,9 @@
 package com.github.neoflyingsaucer.render;
 
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.github.neoflyingsaucer.context.StyleReference;
 import com.github.neoflyingsaucer.css.style.CssContext;
@@ -31,6 +34,7 @@ import com.github.neoflyingsaucer.extend.output.FontResolver;
 import com.github.neoflyingsaucer.extend.output.FontSpecificationI;
 import com.github.neoflyingsaucer.extend.useragent.UserAgentCallback;
 import com.github.neoflyingsaucer.layout.Layer;
+import com.github.neoflyingsaucer.layout.LayoutFrontier;
 import com.github.neoflyingsaucer.layout.SharedContext;
 
 /**
@@ -53,6 +57,10 @@ public class RenderingContext implements CssContext {
     
     private int initialPageNo;
     
+    private LayoutFrontier layoutFrontier;
+    
+    private final List<ReentrantLock> pageLocks = new ArrayList<ReentrantLock>();
+    
     /**
      * needs a new instance every run
      */
@@ -226,6 +234,37 @@ public class RenderingContext implements CssContext {
         this.initialPageNo = initialPageNo;
     }    
 
+    /**
+     * @return The frontier of layout when painting a page before layout is complete,
+     * otherwise null.
+     */
+    public LayoutFrontier getLayoutFrontier() {
+        return layoutFrontier;
+    }
+
+    public void setLayoutFrontier(final LayoutFrontier layoutFrontier) {
+        this.layoutFrontier = layoutFrontier;
+    }
+
+    /**
+     * Takes a lock on shared boxes which are moved for the page being painted,
+     * and holds it until {@link #releasePageLocks()}, once the page is painted.
+     * Locks are taken in painting order, which is the same for every page.
+     */
+    public void holdUntilPagePainted(final ReentrantLock lock) {
+        if (! lock.isHeldByCurrentThread()) {
+            lock.lock();
+            pageLocks.add(lock);
+        }
+    }
+
+    public void releasePageLocks() {
+        for (int i = pageLocks.size() - 1; i >= 0; i--) {
+            pageLocks.get(i).unlock();
+        }
+        pageLocks.clear();
+    }
+
     public Box getBoxById(final String id) {
         return sharedContext.getBoxById(id);
     }
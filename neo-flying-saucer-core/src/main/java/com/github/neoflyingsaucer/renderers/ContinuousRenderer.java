@@ -108,6 +108,7 @@ public class ContinuousRenderer
             	return;
 
             LayoutContext c = newLayoutContext();
+            sharedContext.resetAvoidedRelayoutCount();
 
             BlockBox root = (BlockBox) getRootBox();
 
@@ -7,14 +7,24 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.github.neoflyingsaucer.css.constants.CSSName;
+import com.github.neoflyingsaucer.css.constants.IdentValue;
+import com.github.neoflyingsaucer.css.newmatch.CascadedStyle;
 import com.github.neoflyingsaucer.css.sheet.FontFaceRule;
 import com.github.neoflyingsaucer.css.style.CalculatedStyle;
+import com.github.neoflyingsaucer.displaylist.CompactDisplayList;
 import com.github.neoflyingsaucer.displaylist.DisplayListImpl;
 import com.github.neoflyingsaucer.displaylist.DlOutputDevice;
 import com.github.neoflyingsaucer.displaylist.DlTextRenderer;
@@ -24,6 +34,7 @@ import com.github.neoflyingsaucer.extend.output.FSFontFaceItem;
 import com.github.neoflyingsaucer.extend.output.FontContext;
 import com.github.neoflyingsaucer.extend.output.FontResolver;
 import com.github.neoflyingsaucer.extend.output.ImageResolver;
+import com.github.neoflyingsaucer.extend.output.PagedDisplayListOutputDevice;
 import com.github.neoflyingsaucer.extend.output.ReplacedElementResolver;
 import com.github.neoflyingsaucer.extend.useragent.HTMLResourceI;
 import com.github.neoflyingsaucer.extend.useragent.Optional;
@@ -31,6 +42,7 @@ import com.github.neoflyingsaucer.extend.useragent.UserAgentCallback;
 import com.github.neoflyingsaucer.layout.BoxBuilder;
 import com.github.neoflyingsaucer.layout.Layer;
 import com.github.neoflyingsaucer.layout.LayoutContext;
+import com.github.neoflyingsaucer.layout.LayoutFrontier;
 import com.github.neoflyingsaucer.layout.SharedContext;
 import com.github.neoflyingsaucer.render.BlockBox;
 import com.github.neoflyingsaucer.render.Box;
@@ -39,6 +51,7 @@ import com.github.neoflyingsaucer.render.RenderingContext;
 import com.github.neoflyingsaucer.render.ViewportBox;
 import com.github.neoflyingsaucer.resource.ResourceLoadHelper;
 import com.github.neoflyingsaucer.simple.HtmlNamespaceHandler;
+import com.github.neoflyingsaucer.util.HandlerTask;
 import com.github.neoflyingsaucer.util.NodeHelper;
 import com.github.neoflyingsaucer.util.XRRuntimeException;
 
@@ -57,6 +70,7 @@ public class PagedRenderer
 	private final int dpp;
 	private DlOutputDevice dlOut;
 	private LayoutContext c1;
+	private boolean compactDisplayLists;
 	
 	public PagedRenderer(UserAgentCallback cb, float dpi, int dpp)
 	{
@@ -108,6 +122,31 @@ public class PagedRenderer
 		fontContext = ctx;
 	}
 	
+	/**
+	 * If true, pages are painted into a {@link CompactDisplayList} rather than
+	 * a list holding an object per instruction. Defaults to false.
+	 * @param compact
+	 */
+	public void setCompactDisplayLists(boolean compact)
+	{
+		compactDisplayLists = compact;
+	}
+	
+	/**
+	 * Measures the cells of auto layout tables on the supplied executor, using at
+	 * most <code>maxParallelism</code> of its threads per table. Cell boxes are built
+	 * and their fonts resolved on the calling thread, in document order, so only text
+	 * measurement (through the font context) and the replaced element resolver, for
+	 * elements it does not replace, are called from the executor's threads.
+	 * Defaults to no executor, where cells are measured on the calling thread.
+	 * @param executor
+	 * @param maxParallelism
+	 */
+	public void setLayoutExecutor(ExecutorService executor, int maxParallelism)
+	{
+		sharedContext.setLayoutExecutor(executor, maxParallelism);
+	}
+	
 	public SharedContext getSharedContext()
 	{
         return sharedContext;
@@ -115,10 +154,210 @@ public class PagedRenderer
 	
 	public DisplayList renderToList(int pageNo)
 	{
-		paintPage(pageNo);
+		displayList = newDisplayList();
+		paintPage(c, dlOut, displayList, pageNo);
 		return displayList;
 	}
 	
+	/**
+	 * Paints every page of the document concurrently using the supplied executor.
+	 * Must be called after {@link #prepare()}. Each page is painted with its own
+	 * rendering context and output device, so the only state shared between pages
+	 * is the box tree. Boxes moved or measured again for each page they are painted on
+	 * (fixed blocks, repeated table headers and footers, and lines holding page counters)
+	 * are locked by one page at a time. The cancel and error handlers of the
+	 * calling thread are installed on the worker threads for the duration of each page.
+	 * @param executor
+	 * @return the display lists of all pages, in page order.
+	 */
+	public List<DisplayList> renderAllPages(ExecutorService executor)
+	{
+		final int pageCount = getPageCount();
+
+		List<Future<DisplayList>> futures = new ArrayList<Future<DisplayList>>(pageCount);
+		
+		for (int i = 0; i < pageCount; i++)
+		{
+			final int pageNo = i;
+			
+			futures.add(executor.submit(new HandlerTask<DisplayList>() 
+			{
+				@Override
+				protected DisplayList run() 
+				{
+					return renderToNewList(pageNo);
+				}
+			}));
+		}
+		
+		List<DisplayList> result = new ArrayList<DisplayList>(pageCount);
+
+		try
+		{
+			for (Future<DisplayList> future : futures)
+				result.add(future.get());
+		}
+		catch (InterruptedException e)
+		{
+			cancelAll(futures);
+			Thread.currentThread().interrupt();
+			throw new XRRuntimeException("Interrupted while rendering pages", e);
+		}
+		catch (ExecutionException e)
+		{
+			cancelAll(futures);
+			throw unwrap(e.getCause());
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Paints every page of the document and streams it to <code>out</code>, page by page.
+	 * Must be called after {@link #prepare()}. The display list for page N+1 is generated on
+	 * the supplied executor while page N is being written to <code>out</code> on the calling thread.
+	 * At most <code>maxQueuedPages</code> painted pages are held waiting for the output device and
+	 * each display list is released as soon as its page has been finished.
+	 * @param out
+	 * @param executor
+	 * @param maxQueuedPages
+	 */
+	public void renderToDevice(PagedDisplayListOutputDevice out, ExecutorService executor, int maxQueuedPages)
+	{
+		final BlockingQueue<QueuedPage> queue = new ArrayBlockingQueue<QueuedPage>(Math.max(1, maxQueuedPages));
+		final AtomicBoolean abandoned = new AtomicBoolean();
+		final int pageCount = getPageCount();
+
+		Future<Void> producer = executor.submit(new HandlerTask<Void>()
+		{
+			@Override
+			protected Void run() throws InterruptedException 
+			{
+				try
+				{
+					for (int i = 0; i < pageCount && ! abandoned.get(); i++)
+					{
+						DisplayList dl = renderToNewList(i);
+						queue.put(new QueuedPage(dl, getPageWidth(i), getPageHeight(i)));
+					}
+				}
+				finally
+				{
+					// Always wake the consumer, even if painting failed, unless it
+					// has stopped taking pages.
+					if (! abandoned.get())
+						queue.put(QueuedPage.END);
+				}
+
+				return null;
+			}
+		});
+		
+		try
+		{
+			while (true)
+			{
+				QueuedPage page = queue.take();
+				
+				if (page == QueuedPage.END)
+					break;
+				
+				out.initializePage(page.width, page.height);
+				out.render(page.dl);
+				out.finishPage();
+			}
+			
+			// Surfaces any exception thrown while painting.
+			producer.get();
+		}
+		catch (InterruptedException e)
+		{
+			abandon(producer, queue, abandoned);
+			Thread.currentThread().interrupt();
+			throw new XRRuntimeException("Interrupted while rendering pages", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw unwrap(e.getCause());
+		}
+		catch (RuntimeException e)
+		{
+			abandon(producer, queue, abandoned);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Stops the producer of {@link #renderToDevice(PagedDisplayListOutputDevice, ExecutorService, int)}
+	 * once its pages are no longer taken. The queue is emptied so that a put the producer is
+	 * about to make, if its interrupt has been swallowed, can not block the executor's thread.
+	 * The producer checks the flag before each put, so it makes at most one more.
+	 */
+	private static void abandon(Future<Void> producer, BlockingQueue<QueuedPage> queue, AtomicBoolean abandoned)
+	{
+		abandoned.set(true);
+		producer.cancel(true);
+		queue.clear();
+	}
+	
+	private static class QueuedPage
+	{
+		private static final QueuedPage END = new QueuedPage(null, 0, 0);
+		
+		private final DisplayList dl;
+		private final int width;
+		private final int height;
+		
+		private QueuedPage(DisplayList dl, int width, int height)
+		{
+			this.dl = dl;
+			this.width = width;
+			this.height = height;
+		}
+	}
+	
+	private static RuntimeException unwrap(Throwable cause)
+	{
+		if (cause instanceof RuntimeException)
+			return (RuntimeException) cause;
+		else if (cause instanceof Error)
+			throw (Error) cause;
+		
+		return new XRRuntimeException("Unable to render page", cause);
+	}
+	
+	private void cancelAll(List<Future<DisplayList>> futures)
+	{
+		for (Future<DisplayList> future : futures)
+			future.cancel(true);
+	}
+	
+	private DisplayList newDisplayList()
+	{
+		return compactDisplayLists ? new CompactDisplayList() : new DisplayListImpl();
+	}
+	
+	/**
+	 * Paints a page with a rendering context and output device of its own, so that
+	 * it may be called from several threads at once.
+	 */
+	private DisplayList renderToNewList(int pageNo)
+	{
+		// Not newRenderingContext(), as the text renderer was already set up by prepare().
+		RenderingContext pageCtx = getSharedContext().newRenderingContextInstance();
+		pageCtx.setFontContext(fontContext);
+		pageCtx.setRootLayer(getRootLayer());
+		pageCtx.setPageCount(c.getPageCount());
+		pageCtx.setInitialPageNo(c.getInitialPageNo());
+
+		DisplayList pageList = newDisplayList();
+		DlOutputDevice pageOut = new DlOutputDevice(pageList, getSharedContext(), getRootBox());
+		pageCtx.setOutputDevice(pageOut);
+
+		paintPage(pageCtx, pageOut, pageList, pageNo);
+		return pageList;
+	}
+	
     private Rectangle getInitialExtents(LayoutContext c)
     {
         PageBox first = Layer.createPageBox(c, "first");
@@ -131,6 +370,7 @@ public class PagedRenderer
             	return;
 
             c1 = newLayoutContext();
+            getSharedContext().resetAvoidedRelayoutCount();
 
             BlockBox root = (BlockBox) getRootBox();
 
@@ -142,7 +382,11 @@ public class PagedRenderer
             }
     }
     
-    private void doDocumentLayout2()
+    /**
+     * @param firstPage The first page whose margin areas are to be laid out, those
+     * before it having been streamed.
+     */
+    private void doDocumentLayout2(int firstPage)
     {
         BlockBox root = (BlockBox) getRootBox();
     	
@@ -152,7 +396,7 @@ public class PagedRenderer
         Dimension intrinsicSize = root.getLayer().getPaintingDimension(c1);
         
         root.getLayer().trimEmptyPages(c, intrinsicSize.height);
-        root.getLayer().layoutPages(c1);
+        root.getLayer().layoutPages(c1, firstPage);
     }
 
     private SharedContext newSharedContext(UserAgentCallback userAgent, float dpi, float dpp) 
@@ -211,6 +455,178 @@ public class PagedRenderer
     }
 	
     public void prepare() 
+    {
+    	initDocument();
+        doDocumentLayout1();
+        sharedContext.getFontResolver().importFontFaceItems(getFontFaceItems());
+        doDocumentLayout2(0);
+        initRenderingContext();
+    }
+    
+    /**
+     * Lays out the document as {@link #prepare()} does, handing each page to <code>consumer</code>
+     * as soon as layout of the content on it is final, instead of once the whole document is
+     * laid out. The rest of the pages are handed over once layout is complete. Pages are painted
+     * on the calling thread, in page order.
+     * <p>
+     * The content of pages handed over is dropped from the box tree as layout goes on, so that
+     * only the pages not yet painted are held in memory, and those pages can not be rendered
+     * again. The document itself is kept. Absolutely positioned or fixed content, a page count
+     * (<code>counter(pages)</code>) or a <code>target-counter</code> pointing forward all need
+     * the whole document laid out; once one is found the pages left are painted after layout.
+     * Content pulled up above the start of its block by a negative margin may be clipped
+     * from a page painted before it was laid out.
+     * @param consumer
+     */
+    public void prepareStreaming(PageConsumer consumer)
+    {
+    	initDocument();
+        doDocumentLayout1();
+        sharedContext.getFontResolver().importFontFaceItems(getFontFaceItems());
+        
+        StreamingListener listener = new StreamingListener(consumer);
+        
+        if (! hasAbsoluteContent(doc.getDocumentElement()))
+        	c1.setLayoutFrontier(new LayoutFrontier(listener));
+        
+        try
+        {
+        	doDocumentLayout2(listener.pagesDone);
+        }
+        finally
+        {
+        	c1.setLayoutFrontier(null);
+        }
+        
+        initRenderingContext();
+        
+        for (int i = listener.pagesDone; i < getPageCount(); i++)
+        	consumer.pageReady(i, renderToNewList(i), getPageWidth(i), getPageHeight(i));
+    }
+    
+    /**
+     * Receives the pages painted by {@link PagedRenderer#prepareStreaming(PageConsumer)}.
+     */
+    public interface PageConsumer
+    {
+    	void pageReady(int pageNo, DisplayList dl, int width, int height);
+    }
+    
+    /**
+     * Paints the pages above the content still being laid out and hands them over.
+     */
+    private class StreamingListener implements LayoutFrontier.Listener
+    {
+    	private final PageConsumer consumer;
+    	private LayoutContext marginContext;
+    	private int pagesDone;
+    	
+    	private StreamingListener(PageConsumer consumer)
+    	{
+    		this.consumer = consumer;
+    	}
+    	
+		@Override
+		public void layoutAdvanced(LayoutContext c, LayoutFrontier frontier, int stableY)
+		{
+			List<PageBox> pages = c.getRootLayer().getPages();
+			int start = pagesDone;
+			
+			while (pagesDone < pages.size() && pages.get(pagesDone).getBottom() <= stableY)
+			{
+				if (! paintStreamedPage(c.getRootLayer(), frontier, pagesDone))
+					return;
+				
+				pagesDone++;
+			}
+			
+			if (pagesDone > start)
+				frontier.release(pages.get(pagesDone - 1).getBottom());
+		}
+		
+		/**
+		 * @return false if the page needs the whole document laid out.
+		 */
+		private boolean paintStreamedPage(Layer root, LayoutFrontier frontier, int pageNo)
+		{
+			PageBox page = root.getPages().get(pageNo);
+
+			// Margin areas are laid out in a context of their own, the document's
+			// is in the middle of laying it out.
+			if (marginContext == null)
+				marginContext = newLayoutContext();
+			
+			marginContext.setRootLayer(root);
+			marginContext.setRootDocumentLayer(root);
+			page.layout(marginContext);
+
+			RenderingContext pageCtx = getSharedContext().newRenderingContextInstance();
+			pageCtx.setFontContext(fontContext);
+			pageCtx.setRootLayer(root);
+			pageCtx.setPageCount(root.getPages().size());
+			pageCtx.setLayoutFrontier(frontier);
+			
+			// As assignPagePaintingPositions() would.
+			int paintingTop = pageNo == 0 ? 0 : root.getPages().get(pageNo - 1).getPaintingBottom();
+			page.setPaintingTop(paintingTop);
+			page.setPaintingBottom(paintingTop + page.getContentHeight(pageCtx));
+
+			DisplayList pageList = newDisplayList();
+			DlOutputDevice pageOut = new DlOutputDevice(pageList, getSharedContext(), getRootBox());
+			pageCtx.setOutputDevice(pageOut);
+
+			int[] heights = frontier.extendOpenBlocks(pageCtx, page.getBottom());
+
+			try
+			{
+				paintPage(pageCtx, pageOut, pageList, pageNo);
+			}
+			finally
+			{
+				frontier.restoreOpenBlocks(heights);
+			}
+			
+			if (frontier.isAbandoned())
+				return false;
+			
+			consumer.pageReady(pageNo, pageList, page.getWidth(pageCtx), page.getHeight(pageCtx));
+			page.releaseMarginAreas();
+			
+			return true;
+		}
+    }
+    
+    /**
+     * @return true if the element, or any element in it, is absolutely positioned or fixed.
+     */
+    private boolean hasAbsoluteContent(Element e)
+    {
+    	if (isAbsolute(getSharedContext().getStyle(e).getIdent(CSSName.POSITION)) ||
+    		isAbsolute(getPseudoElementPosition(e, "before")) ||
+    		isAbsolute(getPseudoElementPosition(e, "after")))
+    		return true;
+    	
+    	for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling())
+    	{
+    		if (n instanceof Element && hasAbsoluteContent((Element) n))
+    			return true;
+    	}
+    	
+    	return false;
+    }
+    
+    private IdentValue getPseudoElementPosition(Element e, String pseudoElement)
+    {
+    	CascadedStyle style = getSharedContext().getCss().getPseudoElementStyle(e, pseudoElement);
+    	return style == null ? null : style.getIdent(CSSName.POSITION);
+    }
+    
+    private static boolean isAbsolute(IdentValue position)
+    {
+    	return position == IdentValue.ABSOLUTE || position == IdentValue.FIXED;
+    }
+    
+    private void initDocument()
     {
     	if (this.doc == null)
     	{
@@ -225,10 +641,10 @@ public class PagedRenderer
         getSharedContext().setUserAgentCallback(this.cb);
         getSharedContext().setNamespaceHandler(new HtmlNamespaceHandler());
         getSharedContext().getCss().setDocumentContext(getSharedContext(), getSharedContext().getNamespaceHandler(), doc);
-
-        doDocumentLayout1();
-        sharedContext.getFontResolver().importFontFaceItems(getFontFaceItems());
-        doDocumentLayout2();
+    }
+    
+    private void initRenderingContext()
+    {
         c = newRenderingContext();
         
         c.setPageCount(getRootLayer().getPages().size());
@@ -239,10 +655,9 @@ public class PagedRenderer
         c.setOutputDevice(dlOut);
     }
     
-	private Dimension paintPage(int pageNo)
+	private Dimension paintPage(RenderingContext c, DlOutputDevice dlOut, DisplayList displayList, int pageNo)
 	{
 		  	Layer root = getRootLayer();
-		  	displayList = new DisplayListImpl();
 
 	        if (pageNo < 0 || pageNo >= root.getPages().size()) {
 	            throw new IllegalArgumentException("Page " + pageNo + " is not between 0 " + "and " + root.getPages().size());
@@ -267,7 +682,11 @@ public class PagedRenderer
         	int left = page.getMarginBorderPadding(c, CalculatedStyle.LEFT);
 
         	c.getOutputDevice().translate(left, top);
+        	try {
 	        	root.paint(c);
+        	} finally {
+        		c.releasePageLocks();
+        	}
         	c.getOutputDevice().translate(-left, -top);
 
 	        c.getOutputDevice().setClip(working);
@@ -0,0 +1,33 @@
+package com.github.neoflyingsaucer.util;
+
+import java.util.concurrent.Callable;
+
+import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
+import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelHandler;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorHandler;
+
+/**
+ * A task that runs with the cancel and error handlers of the thread that created it.
+ */
+public abstract class HandlerTask<T> implements Callable<T> {
+    private final FSCancelHandler _cancelHandler = FSCancelController.getThreadCancelHandler();
+    private final FSErrorHandler _errorHandler = FSErrorController.getThreadErrorHandler();
+
+    protected abstract T run() throws Exception;
+
+    public T call() throws Exception {
+        final FSCancelHandler oldCancelHandler = FSCancelController.getThreadCancelHandler();
+        final FSErrorHandler oldErrorHandler = FSErrorController.getThreadErrorHandler();
+
+        FSCancelController.setThreadCancelHandler(_cancelHandler);
+        FSErrorController.setThreadErrorHandler(_errorHandler);
+
+        try {
+            return run();
+        } finally {
+            FSCancelController.setThreadCancelHandler(oldCancelHandler);
+            FSErrorController.setThreadErrorHandler(oldErrorHandler);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.github.neoflyingsaucer.css.newmatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import com.github.neoflyingsaucer.css.extend.AttributeResolver;
+import com.github.neoflyingsaucer.css.extend.TreeResolver;
+import com.github.neoflyingsaucer.css.extend.lib.DOMTreeResolver;
+import com.github.neoflyingsaucer.css.parser.CSSErrorHandler;
+import com.github.neoflyingsaucer.css.parser.CSSParser;
+import com.github.neoflyingsaucer.css.sheet.PropertyDeclaration;
+import com.github.neoflyingsaucer.css.sheet.Stylesheet;
+import com.github.neoflyingsaucer.css.sheet.StylesheetInfo.CSSOrigin;
+import com.github.neoflyingsaucer.extend.controller.error.LangId;
+import com.github.neoflyingsaucer.extend.useragent.Optional;
+
+public class MatcherTest
+{
+	static final AttributeResolver ATTRIBUTES = new AttributeResolver()
+	{
+		private Optional<String> attribute(Object e, String name)
+		{
+			String value = ((Element) e).getAttribute(name);
+			return value.isEmpty() ? Optional.<String>empty() : Optional.of(value);
+		}
+
+		@Override
+		public Optional<String> getAttributeValue(Object e, String attrName)
+		{
+			return attribute(e, attrName);
+		}
+
+		@Override
+		public Optional<String> getAttributeValue(Object e, String namespaceURI, String attrName)
+		{
+			return attribute(e, attrName);
+		}
+
+		@Override
+		public Optional<String> getClass(Object e)
+		{
+			return attribute(e, "class");
+		}
+
+		@Override
+		public Optional<String> getID(Object e)
+		{
+			return attribute(e, "id");
+		}
+
+		@Override
+		public Optional<String> getNonCssStyling(Object e)
+		{
+			return Optional.empty();
+		}
+
+		@Override
+		public Optional<String> getElementStyling(Object e)
+		{
+			return Optional.empty();
+		}
+
+		@Override
+		public Optional<String> getLang(Object e)
+		{
+			return Optional.empty();
+		}
+
+		@Override
+		public boolean isLink(Object e)
+		{
+			return false;
+		}
+
+		@Override
+		public boolean isVisited(Object e)
+		{
+			return false;
+		}
+	};
+
+	static Stylesheet parseStylesheet(String css) throws Exception
+	{
+		CSSParser parser = new CSSParser(new CSSErrorHandler() {
+			@Override
+			public void error(String uri, int line, LangId msgId, Object... args) {
+				throw new RuntimeException(msgId.toString());
+			}
+		}, null);
+
+		return parser.parseStylesheet("test.css", CSSOrigin.AUTHOR, new StringReader(css));
+	}
+
+	static Document parseDocument(String xml) throws Exception
+	{
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+	}
+
+	/**
+	 * @return For each element in document order, its cascaded declarations.
+	 */
+	static List<List<PropertyDeclaration>> cascade(Document doc, MatcherRules rules, int indexThreshold)
+	{
+		return cascade(doc, new DOMTreeResolver(), rules, indexThreshold);
+	}
+
+	static List<List<PropertyDeclaration>> cascade(Document doc, TreeResolver treeRes, MatcherRules rules, int indexThreshold)
+	{
+		Matcher matcher = new Matcher(treeRes, ATTRIBUTES, null, rules, indexThreshold);
+		NodeList elements = doc.getElementsByTagName("*");
+		List<List<PropertyDeclaration>> result = new ArrayList<List<PropertyDeclaration>>();
+
+		for (int i = 0; i < elements.getLength(); i++)
+		{
+			CascadedStyle style = matcher.getCascadedStyle("test.html", (Element) elements.item(i), false);
+			List<PropertyDeclaration> decls = new ArrayList<PropertyDeclaration>();
+
+			for (Iterator<PropertyDeclaration> it = style.getCascadedPropertyDeclarations(); it.hasNext(); )
+				decls.add(it.next());
+
+			result.add(decls);
+		}
+
+		return result;
+	}
+
+	private static void assertSameCascade(Document doc, Stylesheet sheet)
+	{
+		assertSameCascade(doc, new DOMTreeResolver(), sheet);
+	}
+
+	private static void assertSameCascade(Document doc, TreeResolver treeRes, Stylesheet sheet)
+	{
+		MatcherRules rules = MatcherRules.compile(Collections.singletonList(sheet), null);
+
+		List<List<PropertyDeclaration>> linear = cascade(doc, treeRes, rules, Integer.MAX_VALUE);
+		List<List<PropertyDeclaration>> indexed = cascade(doc, treeRes, rules, 0);
+
+		assertEquals(linear.size(), indexed.size());
+
+		for (int i = 0; i < linear.size(); i++)
+		{
+			assertEquals("element " + i, linear.get(i).size(), indexed.get(i).size());
+
+			for (int j = 0; j < linear.get(i).size(); j++)
+				assertTrue("element " + i, linear.get(i).get(j) == indexed.get(i).get(j));
+		}
+	}
+
+	@Test
+	public void testIndexedMatchingSameAsLinear() throws Exception
+	{
+		Stylesheet sheet = parseStylesheet(
+			"* { margin: 0 } div { color: red } .a { color: blue } .a.b { color: green } #x { color: black }" +
+			"div#y.a { width: 1px } p .a { height: 1px } body > div { width: 2px } div + p { width: 3px }" +
+			"table td.c { height: 2px } .b td { height: 3px } [title] { width: 4px } td[title=t].c { width: 5px }" +
+			"p:first-child { color: white } .a:before { content: 'a' } .A { color: yellow }");
+
+		Document doc = parseDocument(
+			"<html><body><div id='x' class='a'>" +
+			"<p title='t'><span class='b  a'>s</span></p><p class='a'>p</p></div>" +
+			"<div id='y' class='a b'><table><tr><td class='c' title='t'>1</td><td class='c d'>2</td></tr></table></div>" +
+			"<p><em class='A'>e</em></p></body></html>");
+
+		assertSameCascade(doc, sheet);
+	}
+
+	@Test
+	public void testDeeplyNestedDescendantSelectors() throws Exception
+	{
+		Stylesheet sheet = parseStylesheet(
+			"table td { color: red } table table td.x { color: blue } .outer td > span { width: 1px }" +
+			".outer .inner .inner span { height: 1px } td td td td td td td td td td td td span { width: 2px }");
+
+		StringBuilder html = new StringBuilder("<html><body><div class='outer'>");
+
+		for (int depth = 0; depth < 12; depth++)
+			html.append("<table class='inner'><tr><td class='x'><span>").append(depth).append("</span>");
+
+		for (int depth = 0; depth < 12; depth++)
+			html.append("</td></tr></table>");
+
+		Document doc = parseDocument(html.append("</div></body></html>").toString());
+
+		assertSameCascade(doc, sheet);
+
+		// The innermost span matches every rule with a span.
+		List<List<PropertyDeclaration>> styles = cascade(doc, MatcherRules.compile(Collections.singletonList(sheet), null), 0);
+		assertEquals(2, styles.get(styles.size() - 1).size());
+	}
+
+	@Test
+	public void testIndexedMatchingUsesTreeResolverNames() throws Exception
+	{
+		Stylesheet sheet = parseStylesheet("div { color: red } div p { width: 1px } .a { height: 1px }");
+		Document doc = parseDocument("<HTML><BODY><DIV class='a'><P>p</P></DIV><div><p>q</p></div></BODY></HTML>");
+
+		// Matches element names whatever their case.
+		TreeResolver treeRes = new DOMTreeResolver()
+		{
+			@Override
+			public boolean matchesElement(Element element, String namespaceURI, String name)
+			{
+				return name.equalsIgnoreCase(element.getNodeName());
+			}
+		};
+
+		assertSameCascade(doc, treeRes, sheet);
+
+		List<List<PropertyDeclaration>> styles = cascade(doc, treeRes, MatcherRules.compile(Collections.singletonList(sheet), null), 0);
+		assertEquals(2, styles.get(2).size());
+		assertEquals(1, styles.get(3).size());
+	}
+
+	@Test
+	public void testCascadedStyleSharedByElementsMatchingSameRules() throws Exception
+	{
+		Stylesheet sheet = parseStylesheet("td { color: red } td.x { color: blue } tr td + td { width: 1px }");
+		Document doc = parseDocument(
+			"<table><tr><td>1</td><td>2</td><td>3</td></tr><tr><td>4</td><td>5</td><td class='x'>6</td></tr></table>");
+		Matcher matcher = new Matcher(new DOMTreeResolver(), ATTRIBUTES, null,
+				MatcherRules.compile(Collections.singletonList(sheet), null), 16);
+		NodeList cells = doc.getElementsByTagName("td");
+
+		CascadedStyle first = matcher.getCascadedStyle("test.html", (Element) cells.item(0), false);
+		CascadedStyle second = matcher.getCascadedStyle("test.html", (Element) cells.item(1), false);
+
+		assertSame(first, matcher.getCascadedStyle("test.html", (Element) cells.item(3), false));
+		assertSame(second, matcher.getCascadedStyle("test.html", (Element) cells.item(2), false));
+		assertSame(second, matcher.getCascadedStyle("test.html", (Element) cells.item(4), false));
+		assertNotSame(second, matcher.getCascadedStyle("test.html", (Element) cells.item(5), false));
+	}
+
+	@Test
+	public void testCompiledRulesDroppedWithStylesheet() throws Exception
+	{
+		Stylesheet sheet = parseStylesheet("p { color: red }");
+		MatcherRules rules = MatcherRules.compile(Collections.singletonList(sheet), null);
+
+		assertSame(rules, MatcherRules.compile(Collections.singletonList(sheet), null));
+
+		WeakReference<MatcherRules> ref = new WeakReference<MatcherRules>(rules);
+		Stylesheet other = parseStylesheet("p { color: blue }");
+		sheet = null;
+		rules = null;
+
+		for (int i = 0; i < 50 && ref.get() != null; i++)
+		{
+			System.gc();
+			Thread.sleep(10);
+
+			// Entries of collected stylesheets are dropped on the next compile.
+			MatcherRules.compile(Collections.singletonList(other), null);
+		}
+
+		assertTrue(ref.get() == null);
+	}
+}
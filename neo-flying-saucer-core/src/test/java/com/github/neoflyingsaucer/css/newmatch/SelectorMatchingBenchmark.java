@@ -0,0 +1,114 @@
+package com.github.neoflyingsaucer.css.newmatch;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.w3c.dom.Document;
+
+/**
+ * Compares matching every element of a document against a framework sized
+ * stylesheet (about 3,000 rules, mostly class selectors, like Bootstrap) by testing
+ * each selector and by looking up candidates in a {@link SelectorIndex}.
+ *
+ * Not run as part of the tests. Run with the test classpath:
+ * java com.github.neoflyingsaucer.css.newmatch.SelectorMatchingBenchmark
+ */
+public class SelectorMatchingBenchmark
+{
+	private static final int WARMUP = 5;
+	private static final int RUNS = 15;
+
+	static String frameworkStylesheet()
+	{
+		StringBuilder css = new StringBuilder();
+
+		for (int i = 0; i < 600; i++)
+			css.append(".btn-").append(i).append(" { color: red }\n");
+		for (int i = 0; i < 600; i++)
+			css.append(".col-md-").append(i).append(".active { width: 1px }\n");
+		for (int i = 0; i < 400; i++)
+			css.append(".nav .nav-item-").append(i).append(" a { color: blue }\n");
+		for (int i = 0; i < 300; i++)
+			css.append(".card-").append(i).append(" > .card-body { margin: 0 }\n");
+		for (int i = 0; i < 300; i++)
+			css.append("table td.cell-").append(i).append(" { padding: 1px }\n");
+		for (int i = 0; i < 300; i++)
+			css.append(".icon-").append(i).append(":before { content: 'x' }\n");
+		for (int i = 0; i < 200; i++)
+			css.append("#section-").append(i).append(" { height: 1px }\n");
+		for (int i = 0; i < 200; i++)
+			css.append("[data-toggle=t").append(i).append("] { display: block }\n");
+		for (int i = 1; i <= 6; i++)
+			css.append("h").append(i).append(", .h").append(i).append(" { font-size: ").append(i).append("px }\n");
+		css.append("* { margin: 0 }\ntd { vertical-align: top }\ntable { border-collapse: collapse }\n");
+
+		return css.toString();
+	}
+
+	/**
+	 * A report-like document: tables nested 12 deep, each with rows of classed cells.
+	 */
+	static String reportDocument()
+	{
+		StringBuilder html = new StringBuilder("<html><body><div class='nav card-3'>");
+
+		for (int block = 0; block < 20; block++)
+		{
+			html.append("<div id='section-").append(block).append("' class='card-body'>");
+
+			for (int depth = 0; depth < 12; depth++)
+				html.append("<table class='table'><tr><td class='cell-").append(depth).append(" col-md-").append(depth).append(" active'>");
+
+			for (int row = 0; row < 10; row++)
+			{
+				html.append("<table><tr>");
+
+				for (int col = 0; col < 5; col++)
+					html.append("<td class='cell-").append(col).append(" btn-").append(row * 5 + col).append("'><a class='nav-item-").append(col).append("'>x</a></td>");
+
+				html.append("</tr></table>");
+			}
+
+			for (int depth = 0; depth < 12; depth++)
+				html.append("</td></tr></table>");
+
+			html.append("</div>");
+		}
+
+		return html.append("</div></body></html>").toString();
+	}
+
+	private static double time(Document doc, MatcherRules rules, int indexThreshold)
+	{
+		long[] times = new long[RUNS];
+
+		for (int i = 0; i < WARMUP; i++)
+			MatcherTest.cascade(doc, rules, indexThreshold);
+
+		for (int i = 0; i < RUNS; i++)
+		{
+			long start = System.nanoTime();
+			MatcherTest.cascade(doc, rules, indexThreshold);
+			times[i] = System.nanoTime() - start;
+		}
+
+		Arrays.sort(times);
+		return times[RUNS / 2] / 1e6;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		MatcherRules rules = MatcherRules.compile(
+				Collections.singletonList(MatcherTest.parseStylesheet(frameworkStylesheet())), null);
+		Document doc = MatcherTest.parseDocument(reportDocument());
+		int elements = doc.getElementsByTagName("*").getLength();
+
+		double linear = time(doc, rules, Integer.MAX_VALUE);
+		double indexed = time(doc, rules, 16);
+
+		System.out.printf("%d selectors, %d elements%n", rules.getSelectors().size(), elements);
+		System.out.printf("linear:  %8.2f ms (median of %d)%n", linear, RUNS);
+		System.out.printf("indexed: %8.2f ms (median of %d)%n", indexed, RUNS);
+		System.out.printf("speedup: %8.2fx%n", linear / indexed);
+	}
+}
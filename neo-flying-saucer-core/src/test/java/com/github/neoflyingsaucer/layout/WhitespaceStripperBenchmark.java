@@ -0,0 +1,94 @@
+package com.github.neoflyingsaucer.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.neoflyingsaucer.css.constants.IdentValue;
+
+/**
+ * Compares collapsing the whitespace of the text nodes of templated HTML, which
+ * are mostly indentation between tags, with the patterns and in a single pass.
+ *
+ * Not run as part of the tests. Run with the test classpath:
+ * java com.github.neoflyingsaucer.layout.WhitespaceStripperBenchmark
+ */
+public class WhitespaceStripperBenchmark
+{
+	private static final int WARMUP = 5;
+	private static final int RUNS = 15;
+
+	/**
+	 * The text nodes of an indented, generated invoice: one row of cells per item.
+	 */
+	static String[] templatedText()
+	{
+		List<String> text = new ArrayList<String>();
+
+		for (int row = 0; row < 20000; row++)
+		{
+			text.add("\n            ");
+			text.add("\n                ");
+			text.add("\n                    Item " + row + "\n                ");
+			text.add("\n                ");
+			text.add("\t\t" + (row % 7) + " x  unit\t\t");
+			text.add("\n                ");
+			text.add("\n                    Description of item " + row + ",\n                    over two lines.\n                ");
+			text.add("\n            ");
+			text.add("Total");
+		}
+
+		return text.toArray(new String[text.size()]);
+	}
+
+	private static int patterns(String[] text)
+	{
+		int length = 0;
+		for (String s : text)
+			length += WhitespaceStripperTest.collapseWithPatterns(IdentValue.NORMAL, s, true).length();
+		return length;
+	}
+
+	private static int singlePass(String[] text)
+	{
+		int length = 0;
+		for (String s : text)
+			length += WhitespaceStripper.collapseWhitespace(IdentValue.NORMAL, s, true).length();
+		return length;
+	}
+
+	private static double time(String[] text, boolean singlePass)
+	{
+		long[] times = new long[RUNS];
+		int check = 0;
+
+		for (int i = 0; i < WARMUP; i++)
+			check += singlePass ? singlePass(text) : patterns(text);
+
+		for (int i = 0; i < RUNS; i++)
+		{
+			long start = System.nanoTime();
+			check += singlePass ? singlePass(text) : patterns(text);
+			times[i] = System.nanoTime() - start;
+		}
+
+		if (check == 0)
+			throw new IllegalStateException();
+
+		Arrays.sort(times);
+		return times[RUNS / 2] / 1e6;
+	}
+
+	public static void main(String[] args)
+	{
+		String[] text = templatedText();
+
+		double patterns = time(text, false);
+		double singlePass = time(text, true);
+
+		System.out.printf("%d text nodes%n", text.length);
+		System.out.printf("patterns:    %8.2f ms (median of %d)%n", patterns, RUNS);
+		System.out.printf("single pass: %8.2f ms (median of %d)%n", singlePass, RUNS);
+		System.out.printf("speedup:     %8.2fx%n", patterns / singlePass);
+	}
+}
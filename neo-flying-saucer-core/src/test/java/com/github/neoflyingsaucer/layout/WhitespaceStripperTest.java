@@ -0,0 +1,75 @@
+package com.github.neoflyingsaucer.layout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.css.constants.IdentValue;
+
+public class WhitespaceStripperTest
+{
+	private static final IdentValue[] MODES = { IdentValue.NORMAL, IdentValue.NOWRAP, IdentValue.PRE_LINE };
+
+	/**
+	 * Collapses whitespace with the patterns, as the stripper used to.
+	 */
+	static String collapseWithPatterns(IdentValue whitespace, String text, boolean collapseLeading)
+	{
+		if (whitespace == IdentValue.NORMAL || whitespace == IdentValue.NOWRAP)
+		{
+			text = WhitespaceStripper.linefeed_space_collapse.matcher(text).replaceAll(WhitespaceStripper.EOL);
+			text = WhitespaceStripper.linefeed_to_space.matcher(text).replaceAll(WhitespaceStripper.SPACE);
+			text = WhitespaceStripper.tab_to_space.matcher(text).replaceAll(WhitespaceStripper.SPACE);
+			text = WhitespaceStripper.space_collapse.matcher(text).replaceAll(WhitespaceStripper.SPACE);
+
+			if (text.startsWith(WhitespaceStripper.SPACE) && collapseLeading)
+				text = text.substring(1);
+		}
+		else if (whitespace == IdentValue.PRE_LINE)
+		{
+			text = WhitespaceStripper.tab_to_space.matcher(text).replaceAll(WhitespaceStripper.SPACE);
+			text = WhitespaceStripper.space_collapse.matcher(text).replaceAll(WhitespaceStripper.SPACE);
+		}
+
+		return text;
+	}
+
+	@Test
+	public void testMatchesPatterns()
+	{
+		Random random = new Random(1);
+		String alphabet = "ab  \t\n\n\r\f\u000B";
+
+		for (int n = 0; n < 20000; n++)
+		{
+			char[] text = new char[random.nextInt(12)];
+			for (int i = 0; i < text.length; i++)
+				text[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+
+			for (IdentValue mode : MODES)
+			{
+				for (boolean collapseLeading : new boolean[] { false, true })
+				{
+					String s = new String(text);
+					assertEquals(mode + " '" + s + "'",
+							collapseWithPatterns(mode, s, collapseLeading),
+							WhitespaceStripper.collapseWhitespace(mode, s, collapseLeading));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testUnchangedTextIsNotCopied()
+	{
+		String text = "Nothing to collapse here.\nReally.";
+
+		assertSame(text, WhitespaceStripper.collapseWhitespace(IdentValue.PRE_LINE, text, false));
+		assertSame(text, WhitespaceStripper.collapseWhitespace(IdentValue.PRE, text, false));
+		assertEquals("Nothing to collapse here. Really.",
+				WhitespaceStripper.collapseWhitespace(IdentValue.NORMAL, text, true));
+	}
+}
@@ -0,0 +1,256 @@
+package com.github.neoflyingsaucer.defaultuseragent;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import com.github.neoflyingsaucer.defaultuseragent.ResourceCacheImpl.ImageKey;
+import com.github.neoflyingsaucer.extend.controller.error.FSError.FSErrorLevel;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
+import com.github.neoflyingsaucer.extend.controller.error.LangId;
+import com.github.neoflyingsaucer.extend.output.FSImage;
+import com.github.neoflyingsaucer.extend.useragent.Optional;
+import com.github.neoflyingsaucer.extend.useragent.ResourceCache;
+import com.github.neoflyingsaucer.extend.useragent.StylesheetI;
+import com.github.neoflyingsaucer.extend.useragent.Weighable;
+import com.github.neoflyingsaucer.extend.useragent.WeightedCache;
+
+/**
+ * A thread-safe resource cache, bounded by the estimated memory retained by each
+ * kind of resource rather than by entry count. One instance may be shared by any
+ * number of user agents rendering concurrently.
+ *
+ * Resources which implement {@link Weighable} are weighed by their own estimate.
+ * Otherwise, images are assumed to hold a 32 bit raster, documents are weighed by
+ * walking their nodes and stylesheets are given a fixed weight.
+ * See {@link WeightedCache} for the eviction policy.
+ */
+public class ConcurrentResourceCache implements ResourceCache
+{
+	public static final long DEFAULT_CSS_BYTES = 16L * 1024 * 1024;
+	public static final long DEFAULT_HTML_BYTES = 32L * 1024 * 1024;
+	public static final long DEFAULT_IMAGE_BYTES = 128L * 1024 * 1024;
+
+	private static final long DEFAULT_STYLESHEET_WEIGHT = 32 * 1024;
+	private static final int NODE_WEIGHT = 128;
+	private static final int ATTRIBUTE_WEIGHT = 64;
+
+	private final WeightedCache<String, StylesheetI> _cssCache;
+	private final WeightedCache<String, Document> _docCache;
+	private final WeightedCache<ImageKey, FSImage> _imgCache;
+
+	public ConcurrentResourceCache()
+	{
+		this(DEFAULT_CSS_BYTES, DEFAULT_HTML_BYTES, DEFAULT_IMAGE_BYTES);
+	}
+
+	/**
+	 * @param cssBytes Maximum estimated bytes of parsed stylesheets to retain.
+	 * @param htmlBytes Maximum estimated bytes of parsed documents to retain.
+	 * @param imgBytes Maximum estimated bytes of images to retain.
+	 */
+	public ConcurrentResourceCache(long cssBytes, long htmlBytes, long imgBytes)
+	{
+		_cssCache = new WeightedCache<String, StylesheetI>(cssBytes, 256, new WeightedCache.Weigher<StylesheetI>()
+		{
+			@Override
+			public long weigh(StylesheetI sheet)
+			{
+				if (sheet instanceof Weighable)
+					return ((Weighable) sheet).getRetainedBytes();
+
+				return DEFAULT_STYLESHEET_WEIGHT;
+			}
+		});
+
+		_docCache = new WeightedCache<String, Document>(htmlBytes, 256, new WeightedCache.Weigher<Document>()
+		{
+			@Override
+			public long weigh(Document doc)
+			{
+				return weighNodes(doc);
+			}
+		});
+
+		_imgCache = new WeightedCache<ImageKey, FSImage>(imgBytes, 1024, new WeightedCache.Weigher<FSImage>()
+		{
+			@Override
+			public long weigh(FSImage img)
+			{
+				if (img instanceof Weighable)
+					return ((Weighable) img).getRetainedBytes();
+
+				return (long) img.getWidth() * img.getHeight() * 4;
+			}
+		});
+	}
+
+	private static long weighNodes(Node root)
+	{
+		long weight = 0;
+		Node node = root;
+
+		while (node != null)
+		{
+			weight += NODE_WEIGHT;
+
+			String value = node.getNodeValue();
+
+			if (value != null)
+				weight += value.length() * 2;
+
+			NamedNodeMap attrs = node.getAttributes();
+
+			if (attrs != null)
+				weight += attrs.getLength() * ATTRIBUTE_WEIGHT;
+
+			// Depth first, without recursion.
+			if (node.getFirstChild() != null)
+			{
+				node = node.getFirstChild();
+			}
+			else
+			{
+				while (node != null && node != root && node.getNextSibling() == null)
+					node = node.getParentNode();
+
+				node = (node == null || node == root) ? null : node.getNextSibling();
+			}
+		}
+
+		return weight;
+	}
+
+	@Override
+	public void putCssStylesheet(String resolvedUri, StylesheetI sheet)
+	{
+		if (resolvedUri != null)
+		{
+			FSErrorController.log(ConcurrentResourceCache.class, FSErrorLevel.INFO, LangId.RECEIVING_STYLESHEET, resolvedUri);
+			_cssCache.put(resolvedUri, sheet);
+		}
+		else
+		{
+			FSErrorController.log(ConcurrentResourceCache.class, FSErrorLevel.WARNING, LangId.RESOURCE_WITH_NO_URI);
+		}
+	}
+
+	@Override
+	public Optional<StylesheetI> getCssStylesheet(String resolvedUri)
+	{
+		if (resolvedUri == null)
+			return Optional.empty();
+
+		return Optional.ofNullable(_cssCache.get(resolvedUri));
+	}
+
+	@Override
+	public Optional<Document> getHtmlDocument(String resolvedUri)
+	{
+		if (resolvedUri == null)
+			return Optional.empty();
+
+		return Optional.ofNullable(_docCache.get(resolvedUri));
+	}
+
+	@Override
+	public void putHtmlDocument(String resolvedUri, Document doc)
+	{
+		if (resolvedUri != null)
+			_docCache.put(resolvedUri, doc);
+	}
+
+	@Override
+	public void putImage(String resolvedUri, Class<?> imgType, FSImage img)
+	{
+		if (resolvedUri != null)
+		{
+			FSErrorController.log(ConcurrentResourceCache.class, FSErrorLevel.INFO, LangId.RECEIVING_IMAGE, resolvedUri);
+			_imgCache.put(new ImageKey(imgType, resolvedUri), img);
+		}
+		else
+		{
+			FSErrorController.log(ConcurrentResourceCache.class, FSErrorLevel.WARNING, LangId.RESOURCE_WITH_NO_URI);
+		}
+	}
+
+	@Override
+	public Optional<FSImage> getImage(String resolvedUri, Class<?> imgType)
+	{
+		return Optional.ofNullable(_imgCache.get(new ImageKey(imgType, resolvedUri)));
+	}
+
+	public CacheStats getCssStats()
+	{
+		return new CacheStats(_cssCache);
+	}
+
+	public CacheStats getHtmlStats()
+	{
+		return new CacheStats(_docCache);
+	}
+
+	public CacheStats getImageStats()
+	{
+		return new CacheStats(_imgCache);
+	}
+
+	/**
+	 * A snapshot of one cache's counters. Counts are cumulative since the cache was created.
+	 */
+	public static class CacheStats
+	{
+		private final long hitCount;
+		private final long missCount;
+		private final long evictionCount;
+		private final int entryCount;
+		private final long weight;
+
+		private CacheStats(WeightedCache<?, ?> cache)
+		{
+			hitCount = cache.getHitCount();
+			missCount = cache.getMissCount();
+			evictionCount = cache.getEvictionCount();
+			entryCount = cache.size();
+			weight = cache.weight();
+		}
+
+		public long getHitCount()
+		{
+			return hitCount;
+		}
+
+		public long getMissCount()
+		{
+			return missCount;
+		}
+
+		/**
+		 * @return The number of entries removed, or refused admission, to stay within the size bound.
+		 */
+		public long getEvictionCount()
+		{
+			return evictionCount;
+		}
+
+		public int getEntryCount()
+		{
+			return entryCount;
+		}
+
+		/**
+		 * @return The estimated bytes currently retained.
+		 */
+		public long getWeight()
+		{
+			return weight;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "CacheStats[hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount +
+					", entries=" + entryCount + ", weight=" + weight + "]";
+		}
+	}
+}
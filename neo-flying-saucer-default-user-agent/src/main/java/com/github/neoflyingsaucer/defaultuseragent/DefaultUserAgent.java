@@ -51,6 +51,15 @@ public class DefaultUserAgent implements UserAgentCallback, DocumentListener
 
     public DefaultUserAgent() {}
 
+    /**
+     * Creates a user agent using the given cache, which may be shared with other user
+     * agents if it is thread-safe, such as {@link ConcurrentResourceCache}.
+     */
+    public DefaultUserAgent(ResourceCache cache)
+    {
+    	_resourceCache = cache;
+    }
+
     /**
      * Retrieves the CSS located at the given URI.  It's assumed the URI does point to a CSS file--the URI will
      * be accessed (using java.io or java.net), opened, read and then passed into the CSS parser.
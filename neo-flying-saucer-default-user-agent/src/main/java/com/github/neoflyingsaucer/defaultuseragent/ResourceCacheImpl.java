@@ -97,12 +97,12 @@ public class ResourceCacheImpl implements ResourceCache
 		_docCache.put(resolvedUri, doc);
 	}
 
-	private static class ImageKey
+	static class ImageKey
 	{
 		private final Class<?> cls;
 		private final String uri;
 		
-		private ImageKey(Class<?> cls, String uri)
+		ImageKey(Class<?> cls, String uri)
 		{
 			this.cls = cls;
 			this.uri = uri;
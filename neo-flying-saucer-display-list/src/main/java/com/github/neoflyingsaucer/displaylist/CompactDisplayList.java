@@ -0,0 +1,453 @@
+package com.github.neoflyingsaucer.displaylist;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlBookmark;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlExternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlInternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLinearGradient;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.Operation;
+import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+import com.github.neoflyingsaucer.extend.output.DlItem;
+import com.github.neoflyingsaucer.extend.output.DlItem.DlType;
+import com.github.neoflyingsaucer.extend.output.FSFont;
+import com.github.neoflyingsaucer.extend.output.FSGlyphVector;
+import com.github.neoflyingsaucer.extend.output.FSImage;
+import com.github.neoflyingsaucer.extend.output.JustificationInfo;
+import com.github.neoflyingsaucer.extend.output.ReplacedElement;
+
+/**
+ * A display list that packs instructions into primitive arrays rather than keeping
+ * one {@link DlItem} object per instruction. Opcodes are held in a byte array, numeric
+ * operands in an int array (floats by their raw bits) and a double array, while strings,
+ * fonts, images, shapes and the rarely used instructions are kept in an object side table.
+ *
+ * Output devices should replay this list with {@link DlReplay} rather than
+ * {@link #getDisplayList()}, which has to create an object for every instruction.
+ *
+ * Operand layout for each instruction type (ints, doubles, objects):
+ * <ul>
+ * <li>LINE: x1, y1, x2, y2</li>
+ * <li>RECTANGLE, OVAL: x, y, width, height, operation</li>
+ * <li>RGBCOLOR: r, g, b, a</li>
+ * <li>CMYKCOLOR: c, m, y, k (floats)</li>
+ * <li>OPACITY: opacity (float)</li>
+ * <li>TRANSLATE: tx, ty (doubles)</li>
+ * <li>STRING, GLYPH_VECTOR: x, y (floats); text or glyph vector</li>
+ * <li>STRING_EX: x, y (floats); text, justification info</li>
+ * <li>IMAGE: x, y; image</li>
+ * <li>DRAW_SHAPE: operation; shape</li>
+ * <li>CLIP, SET_CLIP: shape (may be null)</li>
+ * <li>FONT: font; STROKE: stroke; REPLACED: replaced element</li>
+ * <li>LINEAR_GRADIENT, BOOKMARK, INTERNAL_LINK, EXTERNAL_LINK: the instruction itself</li>
+ * </ul>
+ */
+public class CompactDisplayList implements DisplayList, DlVisitor
+{
+	private static final int[] INT_COUNT = new int[DlType.values().length];
+	private static final int[] DOUBLE_COUNT = new int[DlType.values().length];
+	private static final int[] OBJECT_COUNT = new int[DlType.values().length];
+	private static final DlType[] TYPES = DlType.values();
+	private static final Operation[] OPERATIONS = Operation.values();
+
+	static
+	{
+		layout(DlType.LINE, 4, 0, 0);
+		layout(DlType.RECTANGLE, 5, 0, 0);
+		layout(DlType.OVAL, 5, 0, 0);
+		layout(DlType.RGBCOLOR, 4, 0, 0);
+		layout(DlType.CMYKCOLOR, 4, 0, 0);
+		layout(DlType.OPACITY, 1, 0, 0);
+		layout(DlType.TRANSLATE, 0, 2, 0);
+		layout(DlType.STRING, 2, 0, 1);
+		layout(DlType.GLYPH_VECTOR, 2, 0, 1);
+		layout(DlType.STRING_EX, 2, 0, 2);
+		layout(DlType.IMAGE, 2, 0, 1);
+		layout(DlType.DRAW_SHAPE, 1, 0, 1);
+		layout(DlType.CLIP, 0, 0, 1);
+		layout(DlType.SET_CLIP, 0, 0, 1);
+		layout(DlType.FONT, 0, 0, 1);
+		layout(DlType.STROKE, 0, 0, 1);
+		layout(DlType.REPLACED, 0, 0, 1);
+		layout(DlType.AA_OFF, 0, 0, 0);
+		layout(DlType.AA_DEFAULT, 0, 0, 0);
+		layout(DlType.LINEAR_GRADIENT, 0, 0, 1);
+		layout(DlType.BOOKMARK, 0, 0, 1);
+		layout(DlType.INTERNAL_LINK, 0, 0, 1);
+		layout(DlType.EXTERNAL_LINK, 0, 0, 1);
+	}
+
+	private static void layout(DlType type, int ints, int doubles, int objects)
+	{
+		INT_COUNT[type.ordinal()] = ints;
+		DOUBLE_COUNT[type.ordinal()] = doubles;
+		OBJECT_COUNT[type.ordinal()] = objects;
+	}
+
+	private byte[] ops = new byte[1024];
+	private int[] ints = new int[4096];
+	private double[] doubles = new double[256];
+	private Object[] objects = new Object[512];
+
+	private int opCount;
+	private int intCount;
+	private int doubleCount;
+	private int objectCount;
+
+	/**
+	 * Adds an instruction object by copying its operands into the packed arrays.
+	 */
+	@Override
+	public void add(DlItem item)
+	{
+		DlReplay.replay(item, this);
+	}
+
+	@Override
+	public void visitLine(int x1, int y1, int x2, int y2)
+	{
+		op(DlType.LINE);
+		ensureInts(4);
+		ints[intCount++] = x1;
+		ints[intCount++] = y1;
+		ints[intCount++] = x2;
+		ints[intCount++] = y2;
+	}
+
+	@Override
+	public void visitRectangle(int x, int y, int width, int height, Operation operation)
+	{
+		op(DlType.RECTANGLE);
+		box(x, y, width, height, operation);
+	}
+
+	@Override
+	public void visitOval(int x, int y, int width, int height, Operation operation)
+	{
+		op(DlType.OVAL);
+		box(x, y, width, height, operation);
+	}
+
+	@Override
+	public void visitRGBColor(int r, int g, int b, int a)
+	{
+		op(DlType.RGBCOLOR);
+		ensureInts(4);
+		ints[intCount++] = r;
+		ints[intCount++] = g;
+		ints[intCount++] = b;
+		ints[intCount++] = a;
+	}
+
+	@Override
+	public void visitCMYKColor(float c, float m, float y, float k)
+	{
+		op(DlType.CMYKCOLOR);
+		ensureInts(4);
+		ints[intCount++] = Float.floatToRawIntBits(c);
+		ints[intCount++] = Float.floatToRawIntBits(m);
+		ints[intCount++] = Float.floatToRawIntBits(y);
+		ints[intCount++] = Float.floatToRawIntBits(k);
+	}
+
+	@Override
+	public void visitOpacity(float opacity)
+	{
+		op(DlType.OPACITY);
+		ensureInts(1);
+		ints[intCount++] = Float.floatToRawIntBits(opacity);
+	}
+
+	@Override
+	public void visitTranslate(double tx, double ty)
+	{
+		op(DlType.TRANSLATE);
+
+		if (doubleCount + 2 > doubles.length)
+			doubles = Arrays.copyOf(doubles, doubles.length * 2);
+
+		doubles[doubleCount++] = tx;
+		doubles[doubleCount++] = ty;
+	}
+
+	@Override
+	public void visitString(String txt, float x, float y)
+	{
+		op(DlType.STRING);
+		point(x, y);
+		obj(txt);
+	}
+
+	@Override
+	public void visitStringEx(String txt, float x, float y, JustificationInfo info)
+	{
+		op(DlType.STRING_EX);
+		point(x, y);
+		obj(txt);
+		obj(info);
+	}
+
+	@Override
+	public void visitGlyphVector(FSGlyphVector vec, float x, float y)
+	{
+		op(DlType.GLYPH_VECTOR);
+		point(x, y);
+		obj(vec);
+	}
+
+	@Override
+	public void visitImage(FSImage image, int x, int y)
+	{
+		op(DlType.IMAGE);
+		ensureInts(2);
+		ints[intCount++] = x;
+		ints[intCount++] = y;
+		obj(image);
+	}
+
+	@Override
+	public void visitShape(Shape shape, Operation operation)
+	{
+		op(DlType.DRAW_SHAPE);
+		ensureInts(1);
+		ints[intCount++] = operation.ordinal();
+		obj(shape);
+	}
+
+	@Override
+	public void visitClip(Shape clip)
+	{
+		op(DlType.CLIP);
+		obj(clip);
+	}
+
+	@Override
+	public void visitSetClip(Shape clip)
+	{
+		op(DlType.SET_CLIP);
+		obj(clip);
+	}
+
+	@Override
+	public void visitFont(FSFont font)
+	{
+		op(DlType.FONT);
+		obj(font);
+	}
+
+	@Override
+	public void visitStroke(BasicStroke stroke)
+	{
+		op(DlType.STROKE);
+		obj(stroke);
+	}
+
+	@Override
+	public void visitReplaced(ReplacedElement replaced)
+	{
+		op(DlType.REPLACED);
+		obj(replaced);
+	}
+
+	@Override
+	public void visitAntiAlias(boolean on)
+	{
+		op(on ? DlType.AA_DEFAULT : DlType.AA_OFF);
+	}
+
+	@Override
+	public void visitLinearGradient(DlLinearGradient linear)
+	{
+		op(DlType.LINEAR_GRADIENT);
+		obj(linear);
+	}
+
+	@Override
+	public void visitBookmark(DlBookmark bookmark)
+	{
+		op(DlType.BOOKMARK);
+		obj(bookmark);
+	}
+
+	@Override
+	public void visitInternalLink(DlInternalLink link)
+	{
+		op(DlType.INTERNAL_LINK);
+		obj(link);
+	}
+
+	@Override
+	public void visitExternalLink(DlExternalLink link)
+	{
+		op(DlType.EXTERNAL_LINK);
+		obj(link);
+	}
+
+	/**
+	 * @return The number of instructions in this list.
+	 */
+	public int size()
+	{
+		return opCount;
+	}
+
+	/**
+	 * Calls the visitor for every instruction in this list, in order, without creating
+	 * instruction objects.
+	 */
+	public void replay(DlVisitor visitor)
+	{
+		int i = 0;
+		int d = 0;
+		int o = 0;
+
+		for (int n = 0; n < opCount; n++)
+		{
+			FSCancelController.cancelOpportunity(CompactDisplayList.class);
+
+			switch (TYPES[ops[n]])
+			{
+			case LINE:
+				visitor.visitLine(ints[i], ints[i + 1], ints[i + 2], ints[i + 3]);
+				break;
+			case RECTANGLE:
+				visitor.visitRectangle(ints[i], ints[i + 1], ints[i + 2], ints[i + 3], OPERATIONS[ints[i + 4]]);
+				break;
+			case OVAL:
+				visitor.visitOval(ints[i], ints[i + 1], ints[i + 2], ints[i + 3], OPERATIONS[ints[i + 4]]);
+				break;
+			case RGBCOLOR:
+				visitor.visitRGBColor(ints[i], ints[i + 1], ints[i + 2], ints[i + 3]);
+				break;
+			case CMYKCOLOR:
+				visitor.visitCMYKColor(getFloat(i), getFloat(i + 1), getFloat(i + 2), getFloat(i + 3));
+				break;
+			case OPACITY:
+				visitor.visitOpacity(getFloat(i));
+				break;
+			case TRANSLATE:
+				visitor.visitTranslate(doubles[d], doubles[d + 1]);
+				break;
+			case STRING:
+				visitor.visitString((String) objects[o], getFloat(i), getFloat(i + 1));
+				break;
+			case STRING_EX:
+				visitor.visitStringEx((String) objects[o], getFloat(i), getFloat(i + 1), (JustificationInfo) objects[o + 1]);
+				break;
+			case GLYPH_VECTOR:
+				visitor.visitGlyphVector((FSGlyphVector) objects[o], getFloat(i), getFloat(i + 1));
+				break;
+			case IMAGE:
+				visitor.visitImage((FSImage) objects[o], ints[i], ints[i + 1]);
+				break;
+			case DRAW_SHAPE:
+				visitor.visitShape((Shape) objects[o], OPERATIONS[ints[i]]);
+				break;
+			case CLIP:
+				visitor.visitClip((Shape) objects[o]);
+				break;
+			case SET_CLIP:
+				visitor.visitSetClip((Shape) objects[o]);
+				break;
+			case FONT:
+				visitor.visitFont((FSFont) objects[o]);
+				break;
+			case STROKE:
+				visitor.visitStroke((BasicStroke) objects[o]);
+				break;
+			case REPLACED:
+				visitor.visitReplaced((ReplacedElement) objects[o]);
+				break;
+			case AA_OFF:
+				visitor.visitAntiAlias(false);
+				break;
+			case AA_DEFAULT:
+				visitor.visitAntiAlias(true);
+				break;
+			case LINEAR_GRADIENT:
+				visitor.visitLinearGradient((DlLinearGradient) objects[o]);
+				break;
+			case BOOKMARK:
+				visitor.visitBookmark((DlBookmark) objects[o]);
+				break;
+			case INTERNAL_LINK:
+				visitor.visitInternalLink((DlInternalLink) objects[o]);
+				break;
+			case EXTERNAL_LINK:
+				visitor.visitExternalLink((DlExternalLink) objects[o]);
+				break;
+			}
+
+			i += INT_COUNT[ops[n]];
+			d += DOUBLE_COUNT[ops[n]];
+			o += OBJECT_COUNT[ops[n]];
+		}
+	}
+
+	/**
+	 * Materializes an instruction object for every packed instruction. Prefer {@link #replay(DlVisitor)}.
+	 */
+	@Override
+	public List<DlItem> getDisplayList()
+	{
+		DisplayListImpl result = new DisplayListImpl();
+		replay(new DlRecorder(result));
+		return result.getDisplayList();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getDisplayList().toString();
+	}
+
+	private void op(DlType type)
+	{
+		FSCancelController.cancelOpportunity(CompactDisplayList.class);
+
+		if (opCount == ops.length)
+			ops = Arrays.copyOf(ops, ops.length * 2);
+
+		ops[opCount++] = (byte) type.ordinal();
+	}
+
+	private void obj(Object o)
+	{
+		if (objectCount == objects.length)
+			objects = Arrays.copyOf(objects, objects.length * 2);
+
+		objects[objectCount++] = o;
+	}
+
+	private void box(int x, int y, int width, int height, Operation operation)
+	{
+		ensureInts(5);
+		ints[intCount++] = x;
+		ints[intCount++] = y;
+		ints[intCount++] = width;
+		ints[intCount++] = height;
+		ints[intCount++] = operation.ordinal();
+	}
+
+	private void point(float x, float y)
+	{
+		ensureInts(2);
+		ints[intCount++] = Float.floatToRawIntBits(x);
+		ints[intCount++] = Float.floatToRawIntBits(y);
+	}
+
+	private void ensureInts(int needed)
+	{
+		if (intCount + needed > ints.length)
+			ints = Arrays.copyOf(ints, Math.max(ints.length * 2, intCount + needed));
+	}
+
+	private float getFloat(int index)
+	{
+		return Float.intBitsToFloat(ints[index]);
+	}
+}
@@ -0,0 +1,224 @@
+package com.github.neoflyingsaucer.displaylist;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+
+/**
+ * An on-disk cache of laid out pages, so that a document can be sent to more
+ * than one output device without running the cascade and layout again.
+ *
+ * The file is written with a {@link Writer} and read back through a read only memory
+ * mapping. Pages are stored in the {@link DlSerializer} format, followed by an index
+ * of page sizes and offsets. Fonts, images and other device resources are stored by
+ * reference, so the same {@link DlReferences} (or an equivalent mapping to the target
+ * device's resources) must be supplied when reading a page.
+ */
+public class DlPageCache
+{
+	private static final int MAGIC = 0x46535043; /* FSPC */
+	private static final int FORMAT_VERSION = 1;
+
+	/* Magic, version, page count, index offset. */
+	private static final int HEADER_SIZE = 4 + 2 + 4 + 8;
+
+	/* Width, height, offset, length. */
+	private static final int INDEX_ENTRY_SIZE = 4 + 4 + 8 + 4;
+
+	private final MappedByteBuffer map;
+	private final int pageCount;
+	private final int indexOffset;
+
+	private DlPageCache(MappedByteBuffer map, int pageCount, int indexOffset)
+	{
+		this.map = map;
+		this.pageCount = pageCount;
+		this.indexOffset = indexOffset;
+	}
+
+	/**
+	 * Memory maps a page cache written by {@link Writer}.
+	 * The mapping remains valid after the file is closed.
+	 * @throws IOException if the file can not be read or is not a page cache.
+	 */
+	public static DlPageCache open(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+		try
+		{
+			FileChannel channel = raf.getChannel();
+
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Page cache too large: " + file);
+
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (map.limit() < HEADER_SIZE || map.getInt(0) != MAGIC)
+				throw new IOException("Not a page cache: " + file);
+
+			if (map.getShort(4) != FORMAT_VERSION)
+				throw new IOException("Unsupported page cache version: " + map.getShort(4));
+
+			int pageCount = map.getInt(6);
+			long indexOffset = map.getLong(10);
+
+			if (pageCount < 0 || indexOffset < HEADER_SIZE ||
+				indexOffset + (long) pageCount * INDEX_ENTRY_SIZE > map.limit())
+				throw new IOException("Truncated page cache: " + file);
+
+			return new DlPageCache(map, pageCount, (int) indexOffset);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	public int getPageCount()
+	{
+		return pageCount;
+	}
+
+	public float getPageWidth(int pageNo)
+	{
+		return map.getFloat(entry(pageNo));
+	}
+
+	public float getPageHeight(int pageNo)
+	{
+		return map.getFloat(entry(pageNo) + 4);
+	}
+
+	/**
+	 * Reads one page back into a display list which can be rendered
+	 * with any display list output device.
+	 * @throws IOException if the page's index entry is corrupt.
+	 */
+	public CompactDisplayList readPage(int pageNo, DlReferences refs) throws IOException
+	{
+		int entry = entry(pageNo);
+		long offset = map.getLong(entry + 8);
+		int length = map.getInt(entry + 16);
+
+		// Pages are stored between the header and the index.
+		if (offset < HEADER_SIZE || length < 0 || offset + length > indexOffset)
+			throw new IOException("Corrupt page cache entry for page " + pageNo);
+
+		// Each reader gets its own view so that pages may be read from several threads.
+		ByteBuffer page = map.duplicate();
+		page.position((int) offset);
+		page.limit((int) offset + length);
+
+		return DlSerializer.read(page, refs);
+	}
+
+	private int entry(int pageNo)
+	{
+		if (pageNo < 0 || pageNo >= pageCount)
+			throw new IndexOutOfBoundsException("Page " + pageNo + " of " + pageCount);
+
+		return indexOffset + pageNo * INDEX_ENTRY_SIZE;
+	}
+
+	/**
+	 * Writes pages, in order, to a new page cache file.
+	 * {@link #close()} must be called to complete the file.
+	 */
+	public static class Writer implements Closeable
+	{
+		private final File file;
+		private final DataOutputStream out;
+		private final DlReferences refs;
+		private final List<float[]> sizes = new ArrayList<float[]>();
+		private final List<long[]> extents = new ArrayList<long[]>();
+		private boolean closed;
+
+		public Writer(File file, DlReferences refs) throws IOException
+		{
+			this.file = file;
+			this.refs = refs;
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+			out.writeInt(MAGIC);
+			out.writeShort(FORMAT_VERSION);
+
+			// Page count and index offset are filled in on close.
+			out.writeInt(0);
+			out.writeLong(0);
+		}
+
+		public void writePage(DisplayList dl, float width, float height) throws IOException
+		{
+			long offset = out.size();
+
+			DlSerializer.write(dl, out, refs);
+			checkSize();
+
+			sizes.add(new float[] { width, height });
+			extents.add(new long[] { offset, out.size() - offset });
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			if (closed)
+				return;
+
+			closed = true;
+
+			try
+			{
+				checkSize();
+				long indexOffset = out.size();
+
+				for (int i = 0; i < sizes.size(); i++)
+				{
+					out.writeFloat(sizes.get(i)[0]);
+					out.writeFloat(sizes.get(i)[1]);
+					out.writeLong(extents.get(i)[0]);
+					out.writeInt((int) extents.get(i)[1]);
+				}
+
+				checkSize();
+				out.close();
+
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+				try
+				{
+					raf.seek(6);
+					raf.writeInt(sizes.size());
+					raf.writeLong(indexOffset);
+				}
+				finally
+				{
+					raf.close();
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+
+		private void checkSize() throws IOException
+		{
+			// DataOutputStream's counter stops at Integer.MAX_VALUE, which is also
+			// the most that can be mapped.
+			if (out.size() == Integer.MAX_VALUE)
+				throw new IOException("Page cache too large: " + file);
+		}
+	}
+}
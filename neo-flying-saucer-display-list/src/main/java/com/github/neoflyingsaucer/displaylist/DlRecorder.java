@@ -0,0 +1,176 @@
+package com.github.neoflyingsaucer.displaylist;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlBookmark;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlExternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlInternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLinearGradient;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.Operation;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+import com.github.neoflyingsaucer.extend.output.FSFont;
+import com.github.neoflyingsaucer.extend.output.FSGlyphVector;
+import com.github.neoflyingsaucer.extend.output.FSImage;
+import com.github.neoflyingsaucer.extend.output.JustificationInfo;
+import com.github.neoflyingsaucer.extend.output.ReplacedElement;
+
+/**
+ * Adds an instruction object to a display list for every instruction visited.
+ */
+public class DlRecorder implements DlVisitor
+{
+	private final DisplayList dl;
+
+	public DlRecorder(DisplayList dl)
+	{
+		this.dl = dl;
+	}
+
+	/**
+	 * @return A visitor that adds to the list, the list itself if it can be written to
+	 * without creating instruction objects.
+	 */
+	public static DlVisitor forList(DisplayList dl)
+	{
+		if (dl instanceof DlVisitor)
+			return (DlVisitor) dl;
+
+		return new DlRecorder(dl);
+	}
+
+	@Override
+	public void visitLine(int x1, int y1, int x2, int y2)
+	{
+		dl.add(new DlInstruction.DlLine(x1, y1, x2, y2));
+	}
+
+	@Override
+	public void visitRectangle(int x, int y, int width, int height, Operation op)
+	{
+		dl.add(new DlInstruction.DlRectangle(x, y, width, height, op));
+	}
+
+	@Override
+	public void visitOval(int x, int y, int width, int height, Operation op)
+	{
+		dl.add(new DlInstruction.DlOval(x, y, width, height, op));
+	}
+
+	@Override
+	public void visitRGBColor(int r, int g, int b, int a)
+	{
+		dl.add(new DlInstruction.DlRGBColor(r, g, b, a));
+	}
+
+	@Override
+	public void visitCMYKColor(float c, float m, float y, float k)
+	{
+		dl.add(new DlInstruction.DlCMYKColor(c, m, y, k));
+	}
+
+	@Override
+	public void visitOpacity(float opacity)
+	{
+		dl.add(new DlInstruction.DlOpacity(opacity));
+	}
+
+	@Override
+	public void visitTranslate(double tx, double ty)
+	{
+		dl.add(new DlInstruction.DlTranslate(tx, ty));
+	}
+
+	@Override
+	public void visitString(String txt, float x, float y)
+	{
+		dl.add(new DlInstruction.DlString(txt, x, y));
+	}
+
+	@Override
+	public void visitStringEx(String txt, float x, float y, JustificationInfo info)
+	{
+		dl.add(new DlInstruction.DlStringEx(txt, x, y, info));
+	}
+
+	@Override
+	public void visitGlyphVector(FSGlyphVector vec, float x, float y)
+	{
+		dl.add(new DlInstruction.DlGlyphVector(vec, x, y));
+	}
+
+	@Override
+	public void visitImage(FSImage image, int x, int y)
+	{
+		dl.add(new DlInstruction.DlImage(image, x, y));
+	}
+
+	@Override
+	public void visitShape(Shape shape, Operation op)
+	{
+		dl.add(new DlInstruction.DlDrawShape(shape, op));
+	}
+
+	@Override
+	public void visitClip(Shape clip)
+	{
+		dl.add(new DlInstruction.DlClip(clip));
+	}
+
+	@Override
+	public void visitSetClip(Shape clip)
+	{
+		dl.add(new DlInstruction.DlSetClip(clip));
+	}
+
+	@Override
+	public void visitFont(FSFont font)
+	{
+		dl.add(new DlInstruction.DlFont(font));
+	}
+
+	@Override
+	public void visitStroke(BasicStroke stroke)
+	{
+		dl.add(new DlInstruction.DlStroke(stroke));
+	}
+
+	@Override
+	public void visitReplaced(ReplacedElement replaced)
+	{
+		dl.add(new DlInstruction.DlReplaced(replaced));
+	}
+
+	@Override
+	public void visitAntiAlias(boolean on)
+	{
+		if (on)
+			dl.add(new DlInstruction.DlAntiAliasDefault());
+		else
+			dl.add(new DlInstruction.DlAntiAliasOff());
+	}
+
+	@Override
+	public void visitLinearGradient(DlLinearGradient linear)
+	{
+		dl.add(linear);
+	}
+
+	@Override
+	public void visitBookmark(DlBookmark bookmark)
+	{
+		dl.add(bookmark);
+	}
+
+	@Override
+	public void visitInternalLink(DlInternalLink link)
+	{
+		dl.add(link);
+	}
+
+	@Override
+	public void visitExternalLink(DlExternalLink link)
+	{
+		dl.add(link);
+	}
+}
@@ -0,0 +1,41 @@
+package com.github.neoflyingsaucer.displaylist;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory reference table. Each distinct resource (by identity) is given the next
+ * sequential reference. Useful for replaying a serialized display list in the process
+ * that wrote it, for example to emit the same pages to more than one output device.
+ */
+public class DlReferenceTable implements DlReferences
+{
+	private final Map<Object, Integer> references = new IdentityHashMap<Object, Integer>();
+	private final List<Object> resources = new ArrayList<Object>();
+
+	@Override
+	public synchronized int toReference(Object resource)
+	{
+		Integer ref = references.get(resource);
+
+		if (ref != null)
+			return ref;
+
+		ref = resources.size();
+		resources.add(resource);
+		references.put(resource, ref);
+
+		return ref;
+	}
+
+	@Override
+	public synchronized Object fromReference(int reference)
+	{
+		if (reference < 0 || reference >= resources.size())
+			throw new IllegalArgumentException("Unknown display list reference: " + reference);
+
+		return resources.get(reference);
+	}
+}
@@ -0,0 +1,20 @@
+package com.github.neoflyingsaucer.displaylist;
+
+/**
+ * Maps the device specific objects in a display list (fonts, images, glyph vectors
+ * and replaced elements) to and from integer references, so that a serialized display
+ * list can refer to them without knowing how they are stored.
+ * See {@link DlSerializer}, {@link DlReferenceTable}
+ */
+public interface DlReferences
+{
+	/**
+	 * @return A reference which {@link #fromReference(int)} can later turn back into the resource.
+	 */
+	public int toReference(Object resource);
+
+	/**
+	 * @return The resource for a reference returned by {@link #toReference(Object)}.
+	 */
+	public Object fromReference(int reference);
+}
@@ -0,0 +1,166 @@
+package com.github.neoflyingsaucer.displaylist;
+
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlBookmark;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlCMYKColor;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlClip;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlDrawShape;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlExternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlFont;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlGlyphVector;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlImage;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlInternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLine;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLinearGradient;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlOpacity;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlOval;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlRGBColor;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlRectangle;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlReplaced;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlSetClip;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlString;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlStringEx;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlStroke;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlTranslate;
+import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+import com.github.neoflyingsaucer.extend.output.DlItem;
+import com.github.neoflyingsaucer.extend.output.DlItem.DlType;
+
+/**
+ * Decodes display lists into a {@link DlVisitor}.
+ */
+public final class DlReplay
+{
+	private DlReplay()
+	{
+	}
+
+	/**
+	 * Calls the visitor for every instruction in the list, in order. A {@link CompactDisplayList}
+	 * is decoded from its packed arrays, without creating instruction objects.
+	 */
+	public static void replay(DisplayList dl, DlVisitor visitor)
+	{
+		if (dl instanceof CompactDisplayList)
+		{
+			((CompactDisplayList) dl).replay(visitor);
+			return;
+		}
+
+		for (DlItem item : dl.getDisplayList())
+		{
+			FSCancelController.cancelOpportunity(DlReplay.class);
+			replay(item, visitor);
+		}
+	}
+
+	/**
+	 * Calls the visitor for one instruction.
+	 */
+	public static void replay(DlItem item, DlVisitor visitor)
+	{
+		switch (item.getType())
+		{
+		case LINE:
+		{
+			DlLine obj = (DlLine) item;
+			visitor.visitLine(obj.x1, obj.y1, obj.x2, obj.y2);
+			break;
+		}
+		case RECTANGLE:
+		{
+			DlRectangle obj = (DlRectangle) item;
+			visitor.visitRectangle(obj.x, obj.y, obj.width, obj.height, obj.op);
+			break;
+		}
+		case OVAL:
+		{
+			DlOval obj = (DlOval) item;
+			visitor.visitOval(obj.x, obj.y, obj.width, obj.height, obj.op);
+			break;
+		}
+		case RGBCOLOR:
+		{
+			DlRGBColor obj = (DlRGBColor) item;
+			visitor.visitRGBColor(obj.r, obj.g, obj.b, obj.a);
+			break;
+		}
+		case CMYKCOLOR:
+		{
+			DlCMYKColor obj = (DlCMYKColor) item;
+			visitor.visitCMYKColor(obj.c, obj.m, obj.y, obj.k);
+			break;
+		}
+		case OPACITY:
+			visitor.visitOpacity(((DlOpacity) item).opacity);
+			break;
+		case TRANSLATE:
+		{
+			DlTranslate obj = (DlTranslate) item;
+			visitor.visitTranslate(obj.tx, obj.ty);
+			break;
+		}
+		case STRING:
+		{
+			DlString obj = (DlString) item;
+			visitor.visitString(obj.txt, obj.x, obj.y);
+			break;
+		}
+		case STRING_EX:
+		{
+			DlStringEx obj = (DlStringEx) item;
+			visitor.visitStringEx(obj.txt, obj.x, obj.y, obj.info);
+			break;
+		}
+		case GLYPH_VECTOR:
+		{
+			DlGlyphVector obj = (DlGlyphVector) item;
+			visitor.visitGlyphVector(obj.vec, obj.x, obj.y);
+			break;
+		}
+		case IMAGE:
+		{
+			DlImage obj = (DlImage) item;
+			visitor.visitImage(obj.image, obj.x, obj.y);
+			break;
+		}
+		case DRAW_SHAPE:
+		{
+			DlDrawShape obj = (DlDrawShape) item;
+			visitor.visitShape(obj.shape, obj.op);
+			break;
+		}
+		case CLIP:
+			visitor.visitClip(((DlClip) item).clip);
+			break;
+		case SET_CLIP:
+			visitor.visitSetClip(((DlSetClip) item).clip);
+			break;
+		case FONT:
+			visitor.visitFont(((DlFont) item).font);
+			break;
+		case STROKE:
+			visitor.visitStroke(((DlStroke) item).stroke);
+			break;
+		case REPLACED:
+			visitor.visitReplaced(((DlReplaced) item).replaced);
+			break;
+		case AA_OFF:
+		case AA_DEFAULT:
+			visitor.visitAntiAlias(item.getType() == DlType.AA_DEFAULT);
+			break;
+		case LINEAR_GRADIENT:
+			visitor.visitLinearGradient((DlLinearGradient) item);
+			break;
+		case BOOKMARK:
+			visitor.visitBookmark((DlBookmark) item);
+			break;
+		case INTERNAL_LINK:
+			visitor.visitInternalLink((DlInternalLink) item);
+			break;
+		case EXTERNAL_LINK:
+			visitor.visitExternalLink((DlExternalLink) item);
+			break;
+		}
+	}
+}
@@ -0,0 +1,821 @@
+package com.github.neoflyingsaucer.displaylist;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlBookmark;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlExternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlInternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLinearGradient;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlRGBColor;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlStopPoint;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.Operation;
+import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+import com.github.neoflyingsaucer.extend.output.DlItem;
+import com.github.neoflyingsaucer.extend.output.FSFont;
+import com.github.neoflyingsaucer.extend.output.FSGlyphVector;
+import com.github.neoflyingsaucer.extend.output.FSImage;
+import com.github.neoflyingsaucer.extend.output.JustificationInfo;
+import com.github.neoflyingsaucer.extend.output.ReplacedElement;
+
+/**
+ * Reads and writes display lists in a stable binary format.
+ *
+ * A serialized list is a magic number and format version followed by an instruction count
+ * and then, for each instruction, a one byte code and its operands. Numbers are big-endian
+ * as written by {@link DataOutput}. Shapes, strokes, strings, links, bookmarks and gradients
+ * are written in full. Fonts, images, glyph vectors and replaced elements are written as
+ * references obtained from a {@link DlReferences}.
+ *
+ * The instruction codes below are part of the format and must never be renumbered.
+ * Lists are read back into a {@link CompactDisplayList}, which any output device can render.
+ */
+public class DlSerializer
+{
+	public static final int MAGIC = 0x46534C44; /* FSDL */
+	public static final int FORMAT_VERSION = 1;
+
+	private static final byte OP_LINE = 1;
+	private static final byte OP_OPACITY = 2;
+	private static final byte OP_STROKE = 3;
+	private static final byte OP_RGBCOLOR = 4;
+	private static final byte OP_TRANSLATE = 5;
+	private static final byte OP_RECTANGLE = 6;
+	private static final byte OP_CLIP = 7;
+	private static final byte OP_SET_CLIP = 8;
+	private static final byte OP_OVAL = 9;
+	private static final byte OP_DRAW_SHAPE = 10;
+	private static final byte OP_CMYKCOLOR = 11;
+	private static final byte OP_IMAGE = 12;
+	private static final byte OP_FONT = 13;
+	private static final byte OP_STRING = 14;
+	private static final byte OP_STRING_EX = 15;
+	private static final byte OP_GLYPH_VECTOR = 16;
+	private static final byte OP_AA_OFF = 17;
+	private static final byte OP_AA_DEFAULT = 18;
+	private static final byte OP_REPLACED = 19;
+	private static final byte OP_LINEAR_GRADIENT = 20;
+	private static final byte OP_BOOKMARK = 21;
+	private static final byte OP_INTERNAL_LINK = 22;
+	private static final byte OP_EXTERNAL_LINK = 23;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private DlSerializer() { }
+
+	/**
+	 * Serializes a display list to a new byte array.
+	 */
+	public static byte[] toBytes(DisplayList dl, DlReferences refs)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try
+		{
+			write(dl, new DataOutputStream(bytes), refs);
+		}
+		catch (IOException e)
+		{
+			// Can't happen with a byte array.
+			throw new RuntimeException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	public static void write(DisplayList dl, DataOutput out, DlReferences refs) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeShort(FORMAT_VERSION);
+
+		Writer writer = new Writer(out, refs);
+
+		try
+		{
+			if (dl instanceof CompactDisplayList)
+			{
+				// Written straight from the packed arrays, without creating instruction objects.
+				CompactDisplayList compact = (CompactDisplayList) dl;
+				out.writeInt(compact.size());
+				compact.replay(writer);
+			}
+			else
+			{
+				List<DlItem> items = dl.getDisplayList();
+				out.writeInt(items.size());
+
+				for (DlItem item : items)
+				{
+					FSCancelController.cancelOpportunity(DlSerializer.class);
+					DlReplay.replay(item, writer);
+				}
+			}
+		}
+		catch (WriteException e)
+		{
+			throw (IOException) e.getCause();
+		}
+	}
+
+	/**
+	 * Carries an {@link IOException} out of the {@link Writer} callbacks, which can't throw it.
+	 */
+	private static class WriteException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		WriteException(IOException cause)
+		{
+			super(cause);
+		}
+	}
+
+	/**
+	 * Writes each instruction visited as its code and operands.
+	 */
+	private static class Writer implements DlVisitor
+	{
+		private final DataOutput out;
+		private final DlReferences refs;
+
+		Writer(DataOutput out, DlReferences refs)
+		{
+			this.out = out;
+			this.refs = refs;
+		}
+
+		@Override
+		public void visitLine(int x1, int y1, int x2, int y2)
+		{
+			try
+			{
+				out.writeByte(OP_LINE);
+				out.writeInt(x1);
+				out.writeInt(y1);
+				out.writeInt(x2);
+				out.writeInt(y2);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitRectangle(int x, int y, int width, int height, Operation op)
+		{
+			try
+			{
+				out.writeByte(OP_RECTANGLE);
+				writeBox(x, y, width, height, op, out);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitOval(int x, int y, int width, int height, Operation op)
+		{
+			try
+			{
+				out.writeByte(OP_OVAL);
+				writeBox(x, y, width, height, op, out);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitRGBColor(int r, int g, int b, int a)
+		{
+			try
+			{
+				out.writeByte(OP_RGBCOLOR);
+				writeRGBColor(r, g, b, a, out);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitCMYKColor(float c, float m, float y, float k)
+		{
+			try
+			{
+				out.writeByte(OP_CMYKCOLOR);
+				out.writeFloat(c);
+				out.writeFloat(m);
+				out.writeFloat(y);
+				out.writeFloat(k);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitOpacity(float opacity)
+		{
+			try
+			{
+				out.writeByte(OP_OPACITY);
+				out.writeFloat(opacity);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitTranslate(double tx, double ty)
+		{
+			try
+			{
+				out.writeByte(OP_TRANSLATE);
+				out.writeDouble(tx);
+				out.writeDouble(ty);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitString(String txt, float x, float y)
+		{
+			try
+			{
+				out.writeByte(OP_STRING);
+				writeString(txt, out);
+				out.writeFloat(x);
+				out.writeFloat(y);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitStringEx(String txt, float x, float y, JustificationInfo info)
+		{
+			try
+			{
+				out.writeByte(OP_STRING_EX);
+				writeString(txt, out);
+				out.writeFloat(x);
+				out.writeFloat(y);
+				out.writeFloat(info.getNonSpaceAdjust());
+				out.writeFloat(info.getSpaceAdjust());
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitGlyphVector(FSGlyphVector vec, float x, float y)
+		{
+			try
+			{
+				out.writeByte(OP_GLYPH_VECTOR);
+				out.writeInt(refs.toReference(vec));
+				out.writeFloat(x);
+				out.writeFloat(y);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitImage(FSImage image, int x, int y)
+		{
+			try
+			{
+				out.writeByte(OP_IMAGE);
+				out.writeInt(refs.toReference(image));
+				out.writeInt(x);
+				out.writeInt(y);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitShape(Shape shape, Operation op)
+		{
+			try
+			{
+				out.writeByte(OP_DRAW_SHAPE);
+				out.writeByte(op.ordinal());
+				writeShape(shape, out);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitClip(Shape clip)
+		{
+			try
+			{
+				out.writeByte(OP_CLIP);
+				writeShape(clip, out);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitSetClip(Shape clip)
+		{
+			try
+			{
+				out.writeByte(OP_SET_CLIP);
+				writeShape(clip, out);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitFont(FSFont font)
+		{
+			try
+			{
+				out.writeByte(OP_FONT);
+				out.writeInt(refs.toReference(font));
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitStroke(BasicStroke stroke)
+		{
+			try
+			{
+				out.writeByte(OP_STROKE);
+				writeStroke(stroke, out);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitReplaced(ReplacedElement replaced)
+		{
+			try
+			{
+				out.writeByte(OP_REPLACED);
+				out.writeInt(refs.toReference(replaced));
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitAntiAlias(boolean on)
+		{
+			try
+			{
+				out.writeByte(on ? OP_AA_DEFAULT : OP_AA_OFF);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitLinearGradient(DlLinearGradient linear)
+		{
+			try
+			{
+				out.writeByte(OP_LINEAR_GRADIENT);
+				out.writeInt(linear.x1);
+				out.writeInt(linear.y1);
+				out.writeInt(linear.x2);
+				out.writeInt(linear.y2);
+				out.writeInt(linear.x);
+				out.writeInt(linear.y);
+				out.writeInt(linear.width);
+				out.writeInt(linear.height);
+				out.writeInt(linear.stopPoints.size());
+
+				for (DlStopPoint sp : linear.stopPoints)
+				{
+					out.writeFloat(sp.dots);
+					writeRGBColor(sp.rgb.r, sp.rgb.g, sp.rgb.b, sp.rgb.a, out);
+				}
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitBookmark(DlBookmark bookmark)
+		{
+			try
+			{
+				out.writeByte(OP_BOOKMARK);
+				out.writeInt(bookmark.level);
+				writeString(bookmark.content, out);
+				out.writeFloat(bookmark.y);
+				out.writeInt(bookmark.pageNo);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitInternalLink(DlInternalLink link)
+		{
+			try
+			{
+				out.writeByte(OP_INTERNAL_LINK);
+				out.writeInt(link.pageNo);
+				out.writeFloat(link.y);
+				out.writeFloat(link.x1);
+				out.writeFloat(link.y1);
+				out.writeFloat(link.w);
+				out.writeFloat(link.h);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+
+		@Override
+		public void visitExternalLink(DlExternalLink link)
+		{
+			try
+			{
+				out.writeByte(OP_EXTERNAL_LINK);
+				writeString(link.uri, out);
+				out.writeFloat(link.x1);
+				out.writeFloat(link.y1);
+				out.writeFloat(link.w);
+				out.writeFloat(link.h);
+			}
+			catch (IOException e)
+			{
+				throw new WriteException(e);
+			}
+		}
+	}
+
+	/**
+	 * Reads a display list written by {@link #write(DisplayList, DataOutput, DlReferences)}, starting
+	 * at the buffer's position. On return, the buffer is positioned after the list.
+	 * @throws IOException if the buffer does not hold a display list in a supported format.
+	 */
+	public static CompactDisplayList read(ByteBuffer in, DlReferences refs) throws IOException
+	{
+		if (in.getInt() != MAGIC)
+			throw new IOException("Not a serialized display list");
+
+		int version = in.getShort();
+
+		if (version != FORMAT_VERSION)
+			throw new IOException("Unsupported display list format version: " + version);
+
+		int count = in.getInt();
+		CompactDisplayList dl = new CompactDisplayList();
+
+		for (int i = 0; i < count; i++)
+			readItem(in, dl, refs);
+
+		return dl;
+	}
+
+	private static void readItem(ByteBuffer in, CompactDisplayList dl, DlReferences refs) throws IOException
+	{
+		byte code = in.get();
+
+		switch (code)
+		{
+		case OP_LINE:
+			dl.visitLine(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+			break;
+		case OP_OPACITY:
+			dl.visitOpacity(in.getFloat());
+			break;
+		case OP_STROKE:
+			dl.visitStroke(readStroke(in));
+			break;
+		case OP_RGBCOLOR:
+			dl.visitRGBColor(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+			break;
+		case OP_TRANSLATE:
+			dl.visitTranslate(in.getDouble(), in.getDouble());
+			break;
+		case OP_RECTANGLE:
+			dl.visitRectangle(in.getInt(), in.getInt(), in.getInt(), in.getInt(), readOperation(in));
+			break;
+		case OP_CLIP:
+			dl.visitClip(readShape(in));
+			break;
+		case OP_SET_CLIP:
+			dl.visitSetClip(readShape(in));
+			break;
+		case OP_OVAL:
+			dl.visitOval(in.getInt(), in.getInt(), in.getInt(), in.getInt(), readOperation(in));
+			break;
+		case OP_DRAW_SHAPE:
+		{
+			Operation op = readOperation(in);
+			dl.visitShape(readShape(in), op);
+			break;
+		}
+		case OP_CMYKCOLOR:
+			dl.visitCMYKColor(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+			break;
+		case OP_IMAGE:
+		{
+			FSImage image = (FSImage) refs.fromReference(in.getInt());
+			dl.visitImage(image, in.getInt(), in.getInt());
+			break;
+		}
+		case OP_FONT:
+			dl.visitFont((FSFont) refs.fromReference(in.getInt()));
+			break;
+		case OP_STRING:
+			dl.visitString(readString(in), in.getFloat(), in.getFloat());
+			break;
+		case OP_STRING_EX:
+		{
+			String txt = readString(in);
+			float x = in.getFloat();
+			float y = in.getFloat();
+
+			JustificationInfo info = new JustificationInfo();
+			info.setNonSpaceAdjust(in.getFloat());
+			info.setSpaceAdjust(in.getFloat());
+
+			dl.visitStringEx(txt, x, y, info);
+			break;
+		}
+		case OP_GLYPH_VECTOR:
+		{
+			FSGlyphVector vec = (FSGlyphVector) refs.fromReference(in.getInt());
+			dl.visitGlyphVector(vec, in.getFloat(), in.getFloat());
+			break;
+		}
+		case OP_AA_OFF:
+			dl.visitAntiAlias(false);
+			break;
+		case OP_AA_DEFAULT:
+			dl.visitAntiAlias(true);
+			break;
+		case OP_REPLACED:
+			dl.visitReplaced((ReplacedElement) refs.fromReference(in.getInt()));
+			break;
+		case OP_LINEAR_GRADIENT:
+		{
+			DlLinearGradient linear = new DlLinearGradient(in.getInt(), in.getInt(), in.getInt(), in.getInt(),
+					in.getInt(), in.getInt(), in.getInt(), in.getInt());
+			int stops = in.getInt();
+
+			for (int i = 0; i < stops; i++)
+			{
+				float dots = in.getFloat();
+				linear.stopPoints.add(new DlStopPoint(dots, readRGBColor(in)));
+			}
+
+			dl.visitLinearGradient(linear);
+			break;
+		}
+		case OP_BOOKMARK:
+		{
+			int level = in.getInt();
+			String content = readString(in);
+			dl.visitBookmark(new DlBookmark(level, in.getFloat(), content, in.getInt()));
+			break;
+		}
+		case OP_INTERNAL_LINK:
+			dl.visitInternalLink(new DlInternalLink(in.getInt(), in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat()));
+			break;
+		case OP_EXTERNAL_LINK:
+			dl.visitExternalLink(new DlExternalLink(readString(in), in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat()));
+			break;
+		default:
+			throw new IOException("Unknown display list instruction code: " + code);
+		}
+	}
+
+	private static void writeBox(int x, int y, int width, int height, Operation op, DataOutput out) throws IOException
+	{
+		out.writeInt(x);
+		out.writeInt(y);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeByte(op.ordinal());
+	}
+
+	private static Operation readOperation(ByteBuffer in) throws IOException
+	{
+		int op = in.get();
+
+		if (op < 0 || op >= Operation.values().length)
+			throw new IOException("Unknown display list operation: " + op);
+
+		return Operation.values()[op];
+	}
+
+	private static void writeRGBColor(int r, int g, int b, int a, DataOutput out) throws IOException
+	{
+		out.writeInt(r);
+		out.writeInt(g);
+		out.writeInt(b);
+		out.writeInt(a);
+	}
+
+	private static DlRGBColor readRGBColor(ByteBuffer in)
+	{
+		return new DlRGBColor(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+	}
+
+	private static void writeString(String s, DataOutput out) throws IOException
+	{
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in)
+	{
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeStroke(BasicStroke stroke, DataOutput out) throws IOException
+	{
+		out.writeFloat(stroke.getLineWidth());
+		out.writeInt(stroke.getEndCap());
+		out.writeInt(stroke.getLineJoin());
+		out.writeFloat(stroke.getMiterLimit());
+
+		float[] dash = stroke.getDashArray();
+
+		if (dash == null)
+		{
+			out.writeInt(-1);
+		}
+		else
+		{
+			out.writeInt(dash.length);
+
+			for (float d : dash)
+				out.writeFloat(d);
+		}
+
+		out.writeFloat(stroke.getDashPhase());
+	}
+
+	private static BasicStroke readStroke(ByteBuffer in)
+	{
+		float width = in.getFloat();
+		int cap = in.getInt();
+		int join = in.getInt();
+		float miterLimit = in.getFloat();
+
+		int dashCount = in.getInt();
+		float[] dash = null;
+
+		if (dashCount >= 0)
+		{
+			dash = new float[dashCount];
+
+			for (int i = 0; i < dashCount; i++)
+				dash[i] = in.getFloat();
+		}
+
+		return new BasicStroke(width, cap, join, miterLimit, dash, in.getFloat());
+	}
+
+	/**
+	 * Writes a shape as its path segments in the shape's own coordinates.
+	 * A null shape (allowed for clips) is written as a winding rule of -1.
+	 */
+	private static void writeShape(Shape s, DataOutput out) throws IOException
+	{
+		if (s == null)
+		{
+			out.writeByte(-1);
+			return;
+		}
+
+		PathIterator it = s.getPathIterator(null);
+		double[] coords = new double[6];
+
+		out.writeByte(it.getWindingRule());
+
+		while (!it.isDone())
+		{
+			int segment = it.currentSegment(coords);
+			out.writeByte(segment);
+
+			for (int i = 0; i < coordCount(segment); i++)
+				out.writeDouble(coords[i]);
+
+			it.next();
+		}
+
+		out.writeByte(-1);
+	}
+
+	private static Shape readShape(ByteBuffer in) throws IOException
+	{
+		int windingRule = in.get();
+
+		if (windingRule == -1)
+			return null;
+
+		Path2D.Double path = new Path2D.Double(windingRule);
+
+		for (int segment = in.get(); segment != -1; segment = in.get())
+		{
+			switch (segment)
+			{
+			case PathIterator.SEG_MOVETO:
+				path.moveTo(in.getDouble(), in.getDouble());
+				break;
+			case PathIterator.SEG_LINETO:
+				path.lineTo(in.getDouble(), in.getDouble());
+				break;
+			case PathIterator.SEG_QUADTO:
+				path.quadTo(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+				break;
+			case PathIterator.SEG_CUBICTO:
+				path.curveTo(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+				break;
+			case PathIterator.SEG_CLOSE:
+				path.closePath();
+				break;
+			default:
+				throw new IOException("Unknown path segment: " + segment);
+			}
+		}
+
+		return path;
+	}
+
+	private static int coordCount(int segment)
+	{
+		switch (segment)
+		{
+		case PathIterator.SEG_MOVETO:
+		case PathIterator.SEG_LINETO:
+			return 2;
+		case PathIterator.SEG_QUADTO:
+			return 4;
+		case PathIterator.SEG_CUBICTO:
+			return 6;
+		default:
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.github.neoflyingsaucer.displaylist;
+
+import java.awt.BasicStroke;
+import java.awt.Shape;
+
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlBookmark;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlExternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlInternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLinearGradient;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.Operation;
+import com.github.neoflyingsaucer.extend.output.FSFont;
+import com.github.neoflyingsaucer.extend.output.FSGlyphVector;
+import com.github.neoflyingsaucer.extend.output.FSImage;
+import com.github.neoflyingsaucer.extend.output.JustificationInfo;
+import com.github.neoflyingsaucer.extend.output.ReplacedElement;
+
+/**
+ * Receives display list instructions one at a time, with their operands, whether they
+ * were held as {@link DlInstruction} objects or packed in a {@link CompactDisplayList}.
+ * Output devices implement this to draw and {@link DlReplay} decodes a list into it.
+ * Display lists implement it to be written to without creating instruction objects.
+ *
+ * There is one method for each instruction type, see {@link DlInstruction}.
+ */
+public interface DlVisitor
+{
+	public void visitLine(int x1, int y1, int x2, int y2);
+
+	public void visitRectangle(int x, int y, int width, int height, Operation op);
+
+	public void visitOval(int x, int y, int width, int height, Operation op);
+
+	public void visitRGBColor(int r, int g, int b, int a);
+
+	public void visitCMYKColor(float c, float m, float y, float k);
+
+	public void visitOpacity(float opacity);
+
+	public void visitTranslate(double tx, double ty);
+
+	public void visitString(String txt, float x, float y);
+
+	public void visitStringEx(String txt, float x, float y, JustificationInfo info);
+
+	public void visitGlyphVector(FSGlyphVector vec, float x, float y);
+
+	public void visitImage(FSImage image, int x, int y);
+
+	public void visitShape(Shape shape, Operation op);
+
+	public void visitClip(Shape clip);
+
+	public void visitSetClip(Shape clip);
+
+	public void visitFont(FSFont font);
+
+	public void visitStroke(BasicStroke stroke);
+
+	public void visitReplaced(ReplacedElement replaced);
+
+	/**
+	 * @param on true to restore the output's default antialiasing, false to turn it off.
+	 */
+	public void visitAntiAlias(boolean on);
+
+	public void visitLinearGradient(DlLinearGradient linear);
+
+	public void visitBookmark(DlBookmark bookmark);
+
+	public void visitInternalLink(DlInternalLink link);
+
+	public void visitExternalLink(DlExternalLink link);
+}
@@ -22,4 +22,9 @@ public class FSCancelController
 		assert(handler != null);
 		THREAD_CANCEL_HANDLER.set(handler);
 	}
+	
+	public static FSCancelHandler getThreadCancelHandler()
+	{
+		return THREAD_CANCEL_HANDLER.get();
+	}
 }
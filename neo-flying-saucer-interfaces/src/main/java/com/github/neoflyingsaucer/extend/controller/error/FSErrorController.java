@@ -32,4 +32,9 @@ public class FSErrorController
 		assert(handler != null);
 		THREAD_ERROR_HANDLER.set(handler);
 	}
+	
+	public static FSErrorHandler getThreadErrorHandler()
+	{
+		return THREAD_ERROR_HANDLER.get();
+	}
 }
@@ -7,18 +7,19 @@ import java.util.List;
  * Use this class when you want to get emitted errors into a list.
  * For example, to present to a tenant or template author
  * in a multi-tenanted environment.
+ * May be shared by the worker threads of a parallel page render.
  */
 public class FSListErrorHandler implements FSErrorHandler 
 {
 	private final List<FSError> list = new ArrayList<FSError>();
 	
 	@Override
-	public void onError(FSError error) 
+	public synchronized void onError(FSError error) 
 	{
 		list.add(error);
 	}
 
-	public List<FSError> getErrorList()
+	public synchronized List<FSError> getErrorList()
 	{
 		return list;
 	}
@@ -267,6 +267,11 @@ public enum LangId
 	 */
 	COULDNT_LOAD_FONT,
 
+	/**
+	 * 1 argument.
+	 */
+	COULDNT_SUBSET_FONT,
+
 	/**
 	 * 1 argument.
 	 */
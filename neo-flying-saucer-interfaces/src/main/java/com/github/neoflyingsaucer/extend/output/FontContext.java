@@ -27,6 +27,15 @@ public interface FontContext
 
 	int getWidth(FSFont font, String s);
 
+	/**
+	 * Measures every prefix of a string at once, so that a line breaker can search
+	 * for a break point without measuring each candidate separately.
+	 * @param widths A buffer to reuse, or null. Used if at least s.length() long.
+	 * @return An array whose element i is the width {@link #getWidth(FSFont, String)}
+	 * would return for s.substring(0, i + 1).
+	 */
+	int[] getPrefixWidths(FSFont font, String s, int[] widths);
+
 	FSGlyphVector getGlyphVector(FSFont font, String s);
 
 	float[] getGlyphPositions(FSFont font, FSGlyphVector fsGlyphVector);
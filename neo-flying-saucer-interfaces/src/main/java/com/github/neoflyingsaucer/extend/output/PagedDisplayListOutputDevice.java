@@ -0,0 +1,12 @@
+package com.github.neoflyingsaucer.extend.output;
+
+/**
+ * An output device that receives a document one page at a time.
+ * For each page, {@link #initializePage(float, float)} is called, followed
+ * by {@link #render(DisplayList)} and then {@link #finishPage()}.
+ */
+public interface PagedDisplayListOutputDevice extends DisplayListOuputDevice
+{
+	public void initializePage(float width, float height);
+	public void finishPage();
+}
@@ -0,0 +1,46 @@
+package com.github.neoflyingsaucer.extend.useragent;
+
+import java.util.Arrays;
+
+/**
+ * A cache key for resources identified by their content, such as image and font
+ * bytes, so that documents loading the same bytes from different places share
+ * one decoded copy. The bytes are not copied, so must not be changed once keyed.
+ */
+public final class ContentKey
+{
+	private final byte[] bytes;
+	private final int hash;
+
+	public ContentKey(byte[] bytes)
+	{
+		this.bytes = bytes;
+		this.hash = Arrays.hashCode(bytes);
+	}
+
+	/**
+	 * @return The number of bytes keyed.
+	 */
+	public int length()
+	{
+		return bytes.length;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof ContentKey))
+			return false;
+
+		ContentKey other = (ContentKey) obj;
+
+		return hash == other.hash &&
+			   (bytes == other.bytes || Arrays.equals(bytes, other.bytes));
+	}
+}
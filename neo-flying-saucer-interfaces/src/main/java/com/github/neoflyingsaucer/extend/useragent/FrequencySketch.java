@@ -0,0 +1,111 @@
+package com.github.neoflyingsaucer.extend.useragent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch of 4 bit counters, used to estimate how often a key has
+ * been requested recently. Counters are halved once the number of increments
+ * reaches ten times the table size, so that old popularity fades.
+ *
+ * Updates are lock-free. Under contention an increment or a halving may
+ * occasionally be lost, which only makes an estimate slightly less accurate.
+ */
+class FrequencySketch
+{
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final int[] SEEDS = { 0x97CB3127, 0xB3DEFA1D, 0xC6A4A793, 0x8EBC6AF1 };
+
+	private final AtomicLongArray table;
+	private final int tableMask;
+	private final int sampleSize;
+	private final AtomicInteger additions = new AtomicInteger();
+
+	FrequencySketch(int expectedEntries)
+	{
+		int size = Integer.highestOneBit(Math.max(16, expectedEntries - 1) << 1);
+
+		table = new AtomicLongArray(size);
+		tableMask = size - 1;
+		sampleSize = size * 10;
+	}
+
+	/**
+	 * @return The estimated number of recent increments for a hash, at most 15.
+	 */
+	int frequency(int hash)
+	{
+		int h = spread(hash);
+		int min = 15;
+
+		for (int i = 0; i < SEEDS.length; i++)
+		{
+			int index = indexOf(h, i);
+			int shift = counterShift(h, i);
+			int count = (int) ((table.get(index) >>> shift) & 0xFL);
+
+			min = Math.min(min, count);
+		}
+
+		return min;
+	}
+
+	void increment(int hash)
+	{
+		int h = spread(hash);
+		boolean added = false;
+
+		for (int i = 0; i < SEEDS.length; i++)
+			added |= incrementAt(indexOf(h, i), counterShift(h, i));
+
+		if (added && additions.incrementAndGet() >= sampleSize)
+			reset();
+	}
+
+	private boolean incrementAt(int index, int shift)
+	{
+		long mask = 0xFL << shift;
+
+		while (true)
+		{
+			long value = table.get(index);
+
+			if ((value & mask) == mask)
+				return false;
+
+			if (table.compareAndSet(index, value, value + (1L << shift)))
+				return true;
+		}
+	}
+
+	private void reset()
+	{
+		additions.set(0);
+
+		for (int i = 0; i < table.length(); i++)
+		{
+			long value = table.get(i);
+			table.compareAndSet(i, value, (value >>> 1) & RESET_MASK);
+		}
+	}
+
+	private int indexOf(int h, int row)
+	{
+		int hash = (h + SEEDS[row]) * SEEDS[row];
+		hash += hash >>> 16;
+		return hash & tableMask;
+	}
+
+	/* Each long holds 16 counters, each row uses a different group of four. */
+	private int counterShift(int h, int row)
+	{
+		return (((h >>> (row << 3)) & 3) + (row << 2)) << 2;
+	}
+
+	private static int spread(int hash)
+	{
+		hash = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+		hash = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+		return (hash >>> 16) ^ hash;
+	}
+}
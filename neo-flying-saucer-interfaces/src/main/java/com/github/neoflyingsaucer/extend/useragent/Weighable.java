@@ -0,0 +1,14 @@
+package com.github.neoflyingsaucer.extend.useragent;
+
+/**
+ * Optionally implemented by cached resources (images, stylesheets) which can
+ * estimate how much memory they retain, so that a {@link ResourceCache} can be
+ * bounded by size rather than by number of entries.
+ */
+public interface Weighable
+{
+	/**
+	 * @return An estimate, in bytes, of the memory retained by this resource.
+	 */
+	public long getRetainedBytes();
+}
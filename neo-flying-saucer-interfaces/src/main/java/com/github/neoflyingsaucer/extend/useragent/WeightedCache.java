@@ -0,0 +1,242 @@
+package com.github.neoflyingsaucer.extend.useragent;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent cache bounded by the total weight (estimated bytes) of its values.
+ *
+ * Reads do not lock: they are a hash map lookup plus setting a reference bit and
+ * counting the key in a {@link FrequencySketch}. Writes are serialized.
+ *
+ * Eviction follows W-TinyLFU. New entries go into a small window, holding 1% of the
+ * weight. Entries leaving the window are admitted to the main region only if they
+ * have been requested more often than the main region's eviction victim. This keeps
+ * a burst of one-off resources from flushing frequently used ones. Both regions
+ * use CLOCK (second chance) ordering, so that a read never needs to reorder a list.
+ *
+ * Values are weighed once, when put. A value whose retained memory may grow later
+ * must be put again to be weighed again.
+ */
+public class WeightedCache<K, V>
+{
+	public interface Weigher<V>
+	{
+		long weigh(V value);
+	}
+
+	private static class Node<K, V>
+	{
+		final K key;
+		final V value;
+		final long weight;
+		volatile boolean referenced;
+		boolean inMain;
+
+		Node(K key, V value, long weight)
+		{
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<K, Node<K, V>>();
+	private final FrequencySketch sketch;
+	private final Weigher<? super V> weigher;
+
+	private final long maxWindowWeight;
+	private final long maxMainWeight;
+
+	/* Guarded by this. */
+	private final ArrayDeque<Node<K, V>> window = new ArrayDeque<Node<K, V>>();
+	private final ArrayDeque<Node<K, V>> main = new ArrayDeque<Node<K, V>>();
+	private long windowWeight;
+	private long mainWeight;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxWeight The most total weight kept.
+	 * @param expectedEntries Sizes the frequency sketch, roughly the number of entries the cache will hold.
+	 * @param weigher Weighs values put without a weight, or null if every put gives one.
+	 */
+	public WeightedCache(long maxWeight, int expectedEntries, Weigher<? super V> weigher)
+	{
+		this.maxWindowWeight = maxWeight / 100;
+		this.maxMainWeight = maxWeight - maxWindowWeight;
+		this.sketch = new FrequencySketch(expectedEntries);
+		this.weigher = weigher;
+	}
+
+	/**
+	 * @return The cached value, or null if not cached.
+	 */
+	public V get(K key)
+	{
+		sketch.increment(key.hashCode());
+
+		Node<K, V> node = map.get(key);
+
+		if (node == null)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+
+		node.referenced = true;
+		hits.incrementAndGet();
+
+		return node.value;
+	}
+
+	/**
+	 * Adds or replaces a value, weighed by the weigher given to the constructor.
+	 * A value heavier than the cache can hold is not kept.
+	 */
+	public void put(K key, V value)
+	{
+		put(key, value, weigher.weigh(value));
+	}
+
+	/**
+	 * Adds or replaces a value whose weight is known to the caller, for caches created
+	 * without a weigher. A value heavier than the cache can hold is not kept.
+	 */
+	public void put(K key, V value, long weight)
+	{
+		weight = Math.max(1, weight);
+
+		synchronized (this)
+		{
+			Node<K, V> old = map.remove(key);
+
+			if (old != null)
+				discard(old);
+
+			if (weight > maxMainWeight)
+			{
+				// Would evict everything else.
+				return;
+			}
+
+			Node<K, V> node = new Node<K, V>(key, value, weight);
+			map.put(key, node);
+			window.addLast(node);
+			windowWeight += weight;
+
+			while (windowWeight > maxWindowWeight)
+			{
+				Node<K, V> candidate = selectVictim(window);
+
+				window.remove(candidate);
+				windowWeight -= candidate.weight;
+
+				admit(candidate);
+			}
+		}
+	}
+
+	/* Guarded by this. */
+	private void admit(Node<K, V> candidate)
+	{
+		if (mainWeight + candidate.weight > maxMainWeight)
+		{
+			Node<K, V> victim = selectVictim(main);
+
+			if (victim != null &&
+				sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode()))
+			{
+				evict(candidate);
+				return;
+			}
+		}
+
+		candidate.inMain = true;
+		main.addLast(candidate);
+		mainWeight += candidate.weight;
+
+		while (mainWeight > maxMainWeight)
+		{
+			Node<K, V> victim = selectVictim(main);
+
+			main.remove(victim);
+			mainWeight -= victim.weight;
+			evict(victim);
+		}
+	}
+
+	/**
+	 * CLOCK: entries read since they were last considered get a second chance
+	 * at the back of the queue.
+	 * @return The entry at the front of the queue after second chances, or null if the queue is empty.
+	 */
+	private Node<K, V> selectVictim(ArrayDeque<Node<K, V>> queue)
+	{
+		// Bound the scan in case readers keep setting reference bits.
+		int chances = queue.size();
+
+		while (!queue.isEmpty())
+		{
+			Node<K, V> node = queue.peekFirst();
+
+			if (!node.referenced || chances-- <= 0)
+				return node;
+
+			node.referenced = false;
+			queue.addLast(queue.pollFirst());
+		}
+
+		return null;
+	}
+
+	/* Guarded by this. */
+	private void evict(Node<K, V> node)
+	{
+		map.remove(node.key, node);
+		evictions.incrementAndGet();
+	}
+
+	/* Guarded by this. Unlinks a replaced entry, so that its value is no longer held. */
+	private void discard(Node<K, V> node)
+	{
+		if (node.inMain)
+		{
+			main.remove(node);
+			mainWeight -= node.weight;
+		}
+		else
+		{
+			window.remove(node);
+			windowWeight -= node.weight;
+		}
+	}
+
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	public long getEvictionCount()
+	{
+		return evictions.get();
+	}
+
+	public int size()
+	{
+		return map.size();
+	}
+
+	public synchronized long weight()
+	{
+		return windowWeight + mainWeight;
+	}
+}
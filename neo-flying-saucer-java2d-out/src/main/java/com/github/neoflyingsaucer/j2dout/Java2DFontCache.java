@@ -0,0 +1,46 @@
+package com.github.neoflyingsaucer.j2dout;
+
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import com.github.neoflyingsaucer.extend.useragent.ContentKey;
+import com.github.neoflyingsaucer.extend.useragent.WeightedCache;
+
+/**
+ * Fonts created from @font-face bytes, shared by every document using the same
+ * bytes. Fonts are immutable, so may be used by several threads at once.
+ */
+final class Java2DFontCache
+{
+	/**
+	 * The most font bytes kept.
+	 */
+	private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+
+	/* Weighed by the font bytes, given on put. */
+	private static final WeightedCache<ContentKey, Font> _fonts = new WeightedCache<ContentKey, Font>(MAX_CACHED_BYTES, 64, null);
+
+	private Java2DFontCache()
+	{
+	}
+
+	/**
+	 * @return The TrueType font of the bytes, created the first time they are seen.
+	 */
+	public static Font createFont(byte[] data) throws IOException, FontFormatException
+	{
+		ContentKey key = new ContentKey(data);
+		Font font = _fonts.get(key);
+
+		if (font == null)
+		{
+			// A second thread creating the same font just does so twice.
+			font = Font.createFont(Font.TRUETYPE_FONT, new ByteArrayInputStream(data));
+			_fonts.put(key, font, key.length());
+		}
+
+		return font;
+	}
+}
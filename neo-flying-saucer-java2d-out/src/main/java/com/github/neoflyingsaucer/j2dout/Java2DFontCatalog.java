@@ -0,0 +1,73 @@
+package com.github.neoflyingsaucer.j2dout;
+
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.neoflyingsaucer.extend.output.FontSpecificationI.FontStyle;
+import com.github.neoflyingsaucer.j2dout.Java2DFontResolver.FontDescription;
+
+/**
+ * The font families installed on the system, looked up once per process and shared
+ * by every {@link Java2DFontResolver}. Immutable, resolvers keep their own additions.
+ */
+final class Java2DFontCatalog
+{
+	private static volatile Java2DFontCatalog _instance;
+
+	private final Map<String, List<FontDescription>> _families;
+
+	private Java2DFontCatalog()
+	{
+		GraphicsEnvironment gfx = GraphicsEnvironment.getLocalGraphicsEnvironment();
+		String[] availableFonts = gfx.getAvailableFontFamilyNames();
+		Map<String, List<FontDescription>> families = new HashMap<String, List<FontDescription>>(availableFonts.length * 2);
+
+		// Only the names of system fonts are known, font objects
+		// are created by resolvers as they are used.
+		for (String availableFont : availableFonts)
+			families.put(availableFont, Collections.<FontDescription>emptyList());
+
+		// The logical fonts are always available.
+		families.put("Serif", Collections.singletonList(new FontDescription(400, FontStyle.NORMAL, new Font("Serif", Font.PLAIN, 1))));
+		families.put("SansSerif", Collections.singletonList(new FontDescription(400, FontStyle.NORMAL, new Font("SansSerif", Font.PLAIN, 1))));
+		families.put("Monospaced", Collections.singletonList(new FontDescription(400, FontStyle.NORMAL, new Font("Monospaced", Font.PLAIN, 1))));
+
+		_families = Collections.unmodifiableMap(families);
+	}
+
+	/**
+	 * @return The catalog, built by the first caller.
+	 */
+	public static Java2DFontCatalog getInstance()
+	{
+		Java2DFontCatalog catalog = _instance;
+
+		if (catalog == null)
+		{
+			synchronized (Java2DFontCatalog.class)
+			{
+				catalog = _instance;
+
+				if (catalog == null)
+				{
+					catalog = new Java2DFontCatalog();
+					_instance = catalog;
+				}
+			}
+		}
+
+		return catalog;
+	}
+
+	/**
+	 * @return The descriptions of the family, not to be modified, or null if it isn't installed.
+	 */
+	public List<FontDescription> getFamily(String family)
+	{
+		return _families.get(family);
+	}
+}
@@ -60,6 +60,59 @@ public class Java2DFontContext implements FontContext
         return (int) Math.round(_graphics.getFontMetrics(awtFont).getStringBounds(s, _graphics).getWidth());            
 	}
 
+	@Override
+	public int[] getPrefixWidths(FSFont font, String s, int[] widths)
+	{
+		Font awtFont = ((Java2DFont) font).getAWTFont();
+		int[] result = widths != null && widths.length >= s.length() ? widths : new int[s.length()];
+
+		if (!isSimpleText(awtFont, s))
+		{
+			// Shaping may depend on the following characters, so measure each prefix.
+			for (int i = 0; i < s.length(); i++)
+				result[i] = getWidth(font, s.substring(0, i + 1));
+
+			return result;
+		}
+
+		// Simple text is measured as a glyph vector with one glyph per character, the
+		// advance of a prefix being the position of the glyph following it.
+		GlyphVector vector = awtFont.createGlyphVector(_graphics.getFontRenderContext(), s);
+		float[] positions = vector.getGlyphPositions(0, s.length() + 1, null);
+
+		for (int i = 0; i < s.length(); i++)
+			result[i] = Math.round(positions[(i + 1) * 2] - positions[0]);
+
+		return result;
+	}
+
+	/**
+	 * @return false if the text may need layout (shaping, reordering or combining
+	 * marks), which Java2D does not measure as a simple sum of glyph advances.
+	 */
+	private static boolean isSimpleText(Font awtFont, String s)
+	{
+		if (awtFont.hasLayoutAttributes())
+			return false;
+
+		for (int i = 0; i < s.length(); i++)
+		{
+			char ch = s.charAt(i);
+
+			// Latin, Greek and Cyrillic without combining marks, and general punctuation
+			// other than the directional and joiner controls.
+			if (ch < 0x0300 ||
+				(ch >= 0x0370 && ch < 0x0500) ||
+				(ch >= 0x2010 && ch < 0x2028) ||
+				(ch >= 0x2030 && ch < 0x2060))
+				continue;
+
+			return false;
+		}
+
+		return true;
+	}
+
 	@Override
 	public FSGlyphVector getGlyphVector(FSFont font, String s)
 	{
@@ -32,8 +32,6 @@ import com.github.neoflyingsaucer.extend.output.FontSpecificationI.FontVariant;
 
 import java.awt.Font;
 import java.awt.FontFormatException;
-import java.awt.GraphicsEnvironment;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -42,48 +40,49 @@ import java.util.List;
 public class Java2DFontResolver implements FontResolver
 {
     private final HashMap<String, Font> instanceStore = new HashMap<String, Font>();
-    private final HashMap<String, List<FontDescription>> availableFontStore = new HashMap<String, List<FontDescription>>();;
+    private final Java2DFontCatalog catalog = Java2DFontCatalog.getInstance();
+    
+    // Families this resolver has added to, copied from the catalog when first changed.
+    private final HashMap<String, List<FontDescription>> availableFontStore = new HashMap<String, List<FontDescription>>();
     private float fontScale = 1f;
     
     public Java2DFontResolver() 
     {
-        init();
     }
     
-    private void init()
+    /**
+     * Looks up the fonts installed on the system, which otherwise happens when the
+     * first resolver is created. May be called at startup, from any thread.
+     */
+    public static void prewarmFontCatalog()
+    {
+        Java2DFontCatalog.getInstance();
+    }
+
+    private List<FontDescription> getFamily(String family)
     {
-        GraphicsEnvironment gfx = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        String[] availableFonts = gfx.getAvailableFontFamilyNames();
+        List<FontDescription> descriptions = availableFontStore.get(family);
+        return descriptions != null ? descriptions : catalog.getFamily(family);
+    }
+
+    private List<FontDescription> getWritableFamily(String family)
+    {
+        List<FontDescription> descriptions = availableFontStore.get(family);
 
-        // preload the font map with the font names as keys
-        // don't add the actual font objects because that would be a waste of memory
-        // we will only add them once we need to use them
-        for (String availableFont : availableFonts)
+        if (descriptions == null)
         {
-            availableFontStore.put(availableFont, new ArrayList<FontDescription>(0));
+            List<FontDescription> shared = catalog.getFamily(family);
+            descriptions = shared != null ? new ArrayList<FontDescription>(shared) : new ArrayList<FontDescription>();
+            availableFontStore.put(family, descriptions);
         }
-        
-        FontDescription serif = new FontDescription(400, FontStyle.NORMAL, new Font("Serif", Font.PLAIN, 1));
-        List<FontDescription> serifList = new ArrayList<FontDescription>(1);
-        serifList.add(serif);
 
-        FontDescription sansSerif = new FontDescription(400, FontStyle.NORMAL, new Font("SansSerif", Font.PLAIN, 1));
-        List<FontDescription> sansSerifList = new ArrayList<FontDescription>(1); 
-        sansSerifList.add(sansSerif);
-        
-        FontDescription monospace = new FontDescription(400, FontStyle.NORMAL, new Font("Monospaced", Font.PLAIN, 1));
-        List<FontDescription> monospaceList = new ArrayList<FontDescription>(1);        
-        monospaceList.add(monospace);
-        
-        // preload sans, serif, and monospace into the available font hash
-        availableFontStore.put("Serif", serifList);
-        availableFontStore.put("SansSerif", sansSerifList);
-        availableFontStore.put("Monospaced", monospaceList);
+        return descriptions;
     }
     
     public void flushCache() 
     {
-        init();
+        availableFontStore.clear();
+        instanceStore.clear();
     }
 
     public FSFont resolveFont(String[] families, float size, int weight, FontStyle style, FontVariant variant) 
@@ -109,7 +108,7 @@ public class Java2DFontResolver implements FontResolver
             family = "Serif";
         }
 
-        Font fnt = createFont(availableFontStore.get(family).get(0), size, weight, style, variant);
+        Font fnt = createFont(getFamily(family).get(0), size, weight, style, variant);
         instanceStore.put(getFontInstanceHashName(family, size, weight, style, variant), fnt);
         return new Java2DFont(fnt);
     }
@@ -193,10 +192,10 @@ public class Java2DFontResolver implements FontResolver
         
         // if not then
         //  does the font exist
-        if (availableFontStore.containsKey(font)) 
+        List<FontDescription> description = getFamily(font);
+
+        if (description != null)
         {
-            List<FontDescription> description = availableFontStore.get(font);
-            
             // First match on style and weight.
            	for (FontDescription item : description)
            	{
@@ -226,7 +225,7 @@ public class Java2DFontResolver implements FontResolver
            	{
            	  	Font rootFont = new Font(font, Font.PLAIN, 1);
             	baseFont = new FontDescription(400, FontStyle.NORMAL, rootFont);
-            	description.add(baseFont);
+            	getWritableFamily(font).add(baseFont);
             }
  
             // now that we have a root font, we need to create the correct version of it
@@ -262,7 +261,7 @@ public class Java2DFontResolver implements FontResolver
         return resolveFont(spec.getFamilies(), spec.getSize(), spec.getFontWeight(), spec.getStyle(), spec.getVariant());
     }
 
-    private static class FontDescription
+    static class FontDescription
     {
     	private final int weight;
     	private final FontStyle style;
@@ -298,7 +297,7 @@ public class Java2DFontResolver implements FontResolver
 		{
 			Font font = null;
 			try {
-				font = Font.createFont(Font.TRUETYPE_FONT, new ByteArrayInputStream(item.getFontBytes()));
+				font = Java2DFontCache.createFont(item.getFontBytes());
 			} catch (IOException e) {
 				FSErrorController.log(Java2DFontResolver.class, FSErrorLevel.ERROR, LangId.COULDNT_LOAD_FONT, item.getFontFamily());
 				continue;
@@ -307,14 +306,8 @@ public class Java2DFontResolver implements FontResolver
 				continue;
 			}
 
-			List<FontDescription> fontFamily = availableFontStore.get(item.getFontFamily());
-			
-			if (fontFamily == null)
-			{
-				fontFamily = new ArrayList<FontDescription>();
-				availableFontStore.put(item.getFontFamily(), fontFamily);
-			}
-			
+			List<FontDescription> fontFamily = getWritableFamily(item.getFontFamily());
+
 			FontDescription description = new FontDescription(item.getWeight(),
 				item.getSpecification() == null ? FontStyle.NORMAL : item.getSpecification().getStyle(), font);
 
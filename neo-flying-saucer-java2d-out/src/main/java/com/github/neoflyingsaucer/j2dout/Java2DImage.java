@@ -1,61 +1,277 @@
 package com.github.neoflyingsaucer.j2dout;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 import org.imgscalr.Scalr;
+import org.imgscalr.Scalr.Method;
 import org.imgscalr.Scalr.Mode;
 
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
+import com.github.neoflyingsaucer.extend.controller.error.LangId;
+import com.github.neoflyingsaucer.extend.controller.error.FSError.FSErrorLevel;
 import com.github.neoflyingsaucer.extend.output.FSImage;
+import com.github.neoflyingsaucer.extend.useragent.ContentKey;
+import com.github.neoflyingsaucer.extend.useragent.Weighable;
 
-public class Java2DImage implements FSImage
+public class Java2DImage implements FSImage, Weighable
 {
-	private final BufferedImage img;
-	
+	private static final Method SCALE_METHOD = Method.AUTOMATIC;
+
+	/* The encoded image, or null if created from a decoded image. */
+	private final byte[] _bytes;
+	private final String _uri;
+
+	private final int _width;
+	private final int _height;
+
+	/* The image, if created from a decoded image. Images created from bytes are decoded
+	 * into Java2DScaledImageCache, so that their weight in a resource cache does not
+	 * grow after they are put there. */
+	private final BufferedImage _img;
+
+	/* Content key of _bytes for the scaled image cache, created on first use. */
+	private volatile ContentKey _key;
+
+	/* The last full size decode, for when Java2DScaledImageCache does not keep it, as
+	 * it would not for an image heavier than the whole cache. Soft, so that it does not
+	 * count towards the weight of this image in a resource cache. */
+	private volatile SoftReference<BufferedImage> _decoded;
+
 	public Java2DImage(BufferedImage img)
 	{
-		this.img = img;
+		_bytes = null;
+		_uri = null;
+		_img = img;
+		_width = img == null ? 0 : img.getWidth();
+		_height = img == null ? 0 : img.getHeight();
 	}
-	
+
+	/**
+	 * Reads the size of the encoded image. The image itself is decoded when first drawn
+	 * or scaled, and only at the resolution needed when scaled down.
+	 * @throws IOException If the image format is not recognized.
+	 */
+	public Java2DImage(byte[] bytes, String uri) throws IOException
+	{
+		_bytes = bytes;
+		_uri = uri;
+		_img = null;
+
+		ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes));
+
+		try
+		{
+			ImageReader reader = getReader(in);
+
+			try
+			{
+				_width = reader.getWidth(0);
+				_height = reader.getHeight(0);
+			}
+			finally
+			{
+				reader.dispose();
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static ImageReader getReader(ImageInputStream in) throws IOException
+	{
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+
+		if (!readers.hasNext())
+			throw new IOException("Unrecognized Image format");
+
+		ImageReader reader = readers.next();
+		reader.setInput(in, true, true);
+
+		return reader;
+	}
+
+	/**
+	 * @param subsampling Keep every subsampling-th pixel in each direction, 1 to decode
+	 * the full image.
+	 */
+	private BufferedImage decode(int subsampling)
+	{
+		try
+		{
+			ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(_bytes));
+
+			try
+			{
+				ImageReader reader = getReader(in);
+
+				try
+				{
+					ImageReadParam param = reader.getDefaultReadParam();
+
+					if (subsampling > 1)
+						param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+					return reader.read(0, param);
+				}
+				finally
+				{
+					reader.dispose();
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			FSErrorController.log(Java2DImage.class, FSErrorLevel.ERROR, LangId.COULDNT_LOAD_IMAGE, _uri);
+			return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		}
+	}
+
 	public BufferedImage getAWTImage()
 	{
+		if (_bytes == null)
+			return _img;
+
+		BufferedImage img = getDecoded();
+
+		if (img == null)
+		{
+			// Two threads decoding at once both store an equal image.
+			img = decode(1);
+			Java2DScaledImageCache.put(getDecodedKey(), img);
+			_decoded = new SoftReference<BufferedImage>(img);
+		}
+
 		return img;
 	}
-	
+
+	/**
+	 * @return The image decoded at full size, or null if it is not held.
+	 */
+	private BufferedImage getDecoded()
+	{
+		BufferedImage img = Java2DScaledImageCache.get(getDecodedKey());
+
+		if (img != null)
+			return img;
+
+		SoftReference<BufferedImage> decoded = _decoded;
+
+		return decoded == null ? null : decoded.get();
+	}
+
+	private Java2DScaledImageCache.ScaledKey getDecodedKey()
+	{
+		return new Java2DScaledImageCache.ScaledKey(getKey(), _width, _height, null);
+	}
+
+	private ContentKey getKey()
+	{
+		ContentKey key = _key;
+
+		if (key == null)
+		{
+			key = new ContentKey(_bytes);
+			_key = key;
+		}
+
+		return key;
+	}
+
 	@Override
 	public int getWidth()
 	{
-		if (img == null)
-			return 0;
-		
-		return img.getWidth();
+		return _width;
 	}
 
 	@Override
 	public int getHeight()
 	{
-		if (img == null)
-			return 0;
-		
-		return img.getHeight();
+		return _height;
 	}
 
 	@Override
-	public FSImage scale(int width, int height) 
+	public FSImage scale(int width, int height)
 	{
-		if (width > 0 || height > 0)
+		if (width <= 0 && height <= 0)
+			return this;
+
+		// Keep the aspect ratio for a missing dimension, as Scalr would.
+		if (width <= 0)
+			width = _height == 0 ? 1 : Math.max(Math.round((float) height * _width / _height), 1);
+		else if (height <= 0)
+			height = _width == 0 ? 1 : Math.max(Math.round((float) width * _height / _width), 1);
+
+		if (_bytes == null)
 		{
-			BufferedImage newImg;
-			
-			if (width > 0 && height > 0)
-				newImg = Scalr.resize(img, Mode.FIT_EXACT,  width, height);
-			else if (width < 0)
-				newImg = Scalr.resize(img, Mode.FIT_TO_HEIGHT, height); 
-			else 
-				newImg = Scalr.resize(img, Mode.FIT_TO_WIDTH, width);
+			if (_img == null)
+				return this;
+
+			return new Java2DImage(Scalr.resize(_img, SCALE_METHOD, Mode.FIT_EXACT, width, height));
+		}
 
-			return new Java2DImage(newImg);
+		Java2DScaledImageCache.ScaledKey scaledKey = new Java2DScaledImageCache.ScaledKey(getKey(), width, height, SCALE_METHOD);
+		BufferedImage scaled = Java2DScaledImageCache.get(scaledKey);
+
+		if (scaled == null)
+		{
+			scaled = Scalr.resize(getSource(width, height), SCALE_METHOD, Mode.FIT_EXACT, width, height);
+			Java2DScaledImageCache.put(scaledKey, scaled);
 		}
 
-		return this;
+		return new Java2DImage(scaled);
+	}
+
+	/**
+	 * @return An image to scale to the size given, decoded at no less than twice that
+	 * size so that the resize still filters from enough pixels.
+	 */
+	private BufferedImage getSource(int width, int height)
+	{
+		BufferedImage img = getDecoded();
+
+		if (img != null)
+			return img;
+
+		int subsampling = Math.min(_width / Math.max(width * 2, 1), _height / Math.max(height * 2, 1));
+
+		if (subsampling > 1)
+			return decode(subsampling);
+
+		return getAWTImage();
+	}
+
+	static long getRasterBytes(BufferedImage img)
+	{
+		DataBuffer data = img.getRaster().getDataBuffer();
+		return (long) data.getSize() * data.getNumBanks() * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+	}
+
+	/**
+	 * @return The size of the encoded image, or of the image if created from a decoded image.
+	 * Does not change once created, decoded images are held by Java2DScaledImageCache.
+	 */
+	@Override
+	public long getRetainedBytes()
+	{
+		if (_bytes != null)
+			return _bytes.length;
+
+		return _img == null ? 0 : getRasterBytes(_img);
 	}
 }
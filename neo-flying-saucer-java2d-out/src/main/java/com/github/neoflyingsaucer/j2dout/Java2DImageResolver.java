@@ -1,11 +1,10 @@
 package com.github.neoflyingsaucer.j2dout;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import javax.imageio.ImageIO;
-
 import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
 import com.github.neoflyingsaucer.extend.controller.error.LangId;
 import com.github.neoflyingsaucer.extend.controller.error.FSError.FSErrorLevel;
@@ -19,19 +18,25 @@ public class Java2DImageResolver implements ImageResolver
 	@Override
 	public FSImage resolveImage(String uri, InputStream strm)
 	{
-		BufferedImage img;
-		
 		if (strm == null)
 			return new Java2DImage(NULL_IMG);
 		
 		try
 		{
-			img = ImageIO.read(strm);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+
+			while ((read = strm.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+
+			// Only the size is read here, the image is decoded when drawn or scaled.
+			return new Java2DImage(out.toByteArray(), uri);
 		}
 		catch (IOException e)
 		{
 			FSErrorController.log(Java2DImageResolver.class, FSErrorLevel.ERROR, LangId.COULDNT_LOAD_IMAGE, uri);
-			img = NULL_IMG;
+			return new Java2DImage(NULL_IMG);
 		}
 		finally
 		{
@@ -39,8 +44,6 @@ public class Java2DImageResolver implements ImageResolver
 				strm.close();
 			} catch (IOException e) { }
 		}
-		
-		return new Java2DImage(img);
 	}
 
 	@Override
@@ -11,29 +11,17 @@ import java.awt.Shape;
 import java.awt.font.GlyphVector;
 import java.awt.geom.Point2D;
 
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlClip;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlDrawShape;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlFont;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlGlyphVector;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlImage;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLine;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlBookmark;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlExternalLink;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlInternalLink;
 import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLinearGradient;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlOpacity;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlOval;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlRGBColor;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlRectangle;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlReplaced;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlSetClip;
 import com.github.neoflyingsaucer.displaylist.DlInstruction.DlStopPoint;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlString;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlStringEx;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlStroke;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlTranslate;
 import com.github.neoflyingsaucer.displaylist.DlInstruction.Operation;
+import com.github.neoflyingsaucer.displaylist.DlReplay;
+import com.github.neoflyingsaucer.displaylist.DlVisitor;
 import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
 import com.github.neoflyingsaucer.extend.output.DisplayList;
 import com.github.neoflyingsaucer.extend.output.DisplayListOuputDevice;
-import com.github.neoflyingsaucer.extend.output.DlItem;
 import com.github.neoflyingsaucer.extend.output.FSFont;
 import com.github.neoflyingsaucer.extend.output.FSGlyphVector;
 import com.github.neoflyingsaucer.extend.output.FSImage;
@@ -41,7 +29,7 @@ import com.github.neoflyingsaucer.extend.output.JustificationInfo;
 import com.github.neoflyingsaucer.extend.output.ReplacedElement;
 import com.github.neoflyingsaucer.j2dout.Java2DReplacedElementResolver.Java2DImageReplacedElement;
 
-public class Java2DOut implements DisplayListOuputDevice 
+public class Java2DOut implements DisplayListOuputDevice, DlVisitor
 {
 	protected final Graphics2D g2d;
 	protected final Object aaHint;
@@ -55,152 +43,145 @@ public class Java2DOut implements DisplayListOuputDevice
 	@Override
 	public void render(DisplayList dl)
 	{
-		for (DlItem item : dl.getDisplayList())
-		{
-			FSCancelController.cancelOpportunity(Java2DOut.class);
-			
-			switch (item.getType())
-			{
-			case LINE:
-			{
-				DlLine obj = (DlLine) item;
-				drawLine(obj.x1, obj.y1, obj.x2, obj.y2);
-				break;
-			}
-			case RGBCOLOR:
-			{
-				DlRGBColor obj = (DlRGBColor) item;
-				setRGBColor(obj.r, obj.g, obj.b, obj.a);
-				break;
-			}
-			case STROKE:
-			{
-				DlStroke stk = (DlStroke) item;
-				setStroke(stk.stroke);
-				break;
-			}
-			case OPACITY:
-			{
-				DlOpacity opac = (DlOpacity) item;
-				setOpacity(opac.opacity);
-				break;
-			}
-			case RECTANGLE:
-			{
-				DlRectangle rect = (DlRectangle) item;
-
-				if (rect.op == Operation.STROKE)
-					drawRect(rect.x, rect.y, rect.width, rect.height);
-				else if (rect.op == Operation.FILL)
-					fillRect(rect.x, rect.y, rect.width, rect.height);
-
-				break;
-			}
-			case TRANSLATE:
-			{
-				DlTranslate trans = (DlTranslate) item;
-				translate(trans.tx, trans.ty);
-				break;
-			}
-			case CLIP:
-			{
-				DlClip clip = (DlClip) item;
-				clip(clip.clip);
-				break;
-			}
-			case SET_CLIP:
-			{
-				DlSetClip clip = (DlSetClip) item;
-				setClip(clip.clip);
-				break;				
-			}
-			case OVAL:
-			{
-				DlOval oval = (DlOval) item;
-				
-				if (oval.op == Operation.STROKE)
-					drawOval(oval.x, oval.y, oval.width, oval.height);
-				else if (oval.op == Operation.FILL)
-					fillOval(oval.x, oval.y, oval.width, oval.height);
-				
-				break;
-			}
-			case DRAW_SHAPE:
-			{
-				DlDrawShape draw = (DlDrawShape) item;
-				
-				if (draw.op == Operation.STROKE)
-					draw(draw.shape);
-				else if (draw.op == Operation.FILL)
-					fill(draw.shape);
-				
-				break;
-			}
-			case IMAGE:
-			{
-				DlImage img = (DlImage) item;
-				drawImage(img.image, img.x, img.y);
-				break;
-			}
-			case FONT:
-			{
-				DlFont font = (DlFont) item;
-				setFont(font.font);
-				break;
-			}
-			case STRING:
-			{
-				DlString s = (DlString) item;
-				drawString(s.txt, (int) s.x, (int) s.y);
-				break;
-			}
-			case STRING_EX:
-			{
-				DlStringEx s = (DlStringEx) item;
-				drawStringEx(s.txt, (int) s.x, (int) s.y, s.info);
-				break;
-			}
-			case GLYPH_VECTOR:
-			{
-				DlGlyphVector g = (DlGlyphVector) item;
-				drawGlyphVector(g.vec, (int) g.x, (int) g.y);
-				break;
-			}
-			case AA_OFF:
-			{
-				g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-				break;
-			}
-			case AA_DEFAULT:
-			{
-				g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, aaHint);
-				break;
-			}
-			case REPLACED:
-			{
-				DlReplaced replaced = (DlReplaced) item;
-				drawReplaced(replaced.replaced);
-				break;
-			}
-			case LINEAR_GRADIENT:
-			{
-				DlLinearGradient linear = (DlLinearGradient) item;
-				drawLinearGradient(linear);
-				break;
-			}
-			case CMYKCOLOR:
-			{
-				// TODO: Convert color to rgb.
-				break;
-			}
-			case BOOKMARK:
-				break;
-			case EXTERNAL_LINK:
-				break;
-			case INTERNAL_LINK:
-				break;
-			}
-		}
+		DlReplay.replay(dl, this);
+	}
+
+	@Override
+	public void visitLine(int x1, int y1, int x2, int y2)
+	{
+		drawLine(x1, y1, x2, y2);
+	}
+
+	@Override
+	public void visitRectangle(int x, int y, int width, int height, Operation op)
+	{
+		if (op == Operation.STROKE)
+			drawRect(x, y, width, height);
+		else if (op == Operation.FILL)
+			fillRect(x, y, width, height);
+	}
+
+	@Override
+	public void visitOval(int x, int y, int width, int height, Operation op)
+	{
+		if (op == Operation.STROKE)
+			drawOval(x, y, width, height);
+		else if (op == Operation.FILL)
+			fillOval(x, y, width, height);
+	}
+
+	@Override
+	public void visitRGBColor(int r, int g, int b, int a)
+	{
+		setRGBColor(r, g, b, a);
+	}
+
+	@Override
+	public void visitCMYKColor(float c, float m, float y, float k)
+	{
+		// TODO: Convert color to rgb.
+	}
+
+	@Override
+	public void visitOpacity(float opacity)
+	{
+		setOpacity(opacity);
+	}
+
+	@Override
+	public void visitTranslate(double tx, double ty)
+	{
+		translate(tx, ty);
+	}
+
+	@Override
+	public void visitString(String txt, float x, float y)
+	{
+		drawString(txt, (int) x, (int) y);
+	}
+
+	@Override
+	public void visitStringEx(String txt, float x, float y, JustificationInfo info)
+	{
+		drawStringEx(txt, (int) x, (int) y, info);
+	}
+
+	@Override
+	public void visitGlyphVector(FSGlyphVector vec, float x, float y)
+	{
+		drawGlyphVector(vec, (int) x, (int) y);
+	}
+
+	@Override
+	public void visitImage(FSImage image, int x, int y)
+	{
+		drawImage(image, x, y);
+	}
+
+	@Override
+	public void visitShape(Shape shape, Operation op)
+	{
+		if (op == Operation.STROKE)
+			draw(shape);
+		else if (op == Operation.FILL)
+			fill(shape);
+	}
+
+	@Override
+	public void visitClip(Shape clip)
+	{
+		clip(clip);
+	}
+
+	@Override
+	public void visitSetClip(Shape clip)
+	{
+		setClip(clip);
+	}
+
+	@Override
+	public void visitFont(FSFont font)
+	{
+		setFont(font);
+	}
+
+	@Override
+	public void visitStroke(BasicStroke stroke)
+	{
+		setStroke(stroke);
+	}
+
+	@Override
+	public void visitReplaced(ReplacedElement replaced)
+	{
+		drawReplaced(replaced);
+	}
+
+	@Override
+	public void visitAntiAlias(boolean on)
+	{
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, on ? aaHint : RenderingHints.VALUE_ANTIALIAS_OFF);
+	}
+
+	@Override
+	public void visitLinearGradient(DlLinearGradient linear)
+	{
+		drawLinearGradient(linear);
+	}
+
+	@Override
+	public void visitBookmark(DlBookmark bookmark)
+	{
+	}
+
+	@Override
+	public void visitInternalLink(DlInternalLink link)
+	{
+	}
+
+	@Override
+	public void visitExternalLink(DlExternalLink link)
+	{
 	}
 
 	protected void drawLinearGradient(DlLinearGradient linear)
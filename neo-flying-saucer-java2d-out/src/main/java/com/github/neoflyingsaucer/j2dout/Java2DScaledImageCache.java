@@ -0,0 +1,90 @@
+package com.github.neoflyingsaucer.j2dout;
+
+import java.awt.image.BufferedImage;
+
+import org.imgscalr.Scalr.Method;
+
+import com.github.neoflyingsaucer.extend.useragent.WeightedCache;
+
+/**
+ * Decoded and scaled variants of encoded images, shared by every page and document
+ * showing the same image bytes at the same size. The images are only drawn, never
+ * changed, so may be used by several threads at once.
+ *
+ * Encoded images hold no raster of their own, so the raster bytes are bounded here
+ * rather than by the resource cache holding the encoded image.
+ */
+final class Java2DScaledImageCache
+{
+	/**
+	 * The most raster bytes kept.
+	 */
+	private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+
+	private static final WeightedCache<ScaledKey, BufferedImage> _images =
+		new WeightedCache<ScaledKey, BufferedImage>(MAX_CACHED_BYTES, 256, new WeightedCache.Weigher<BufferedImage>()
+		{
+			@Override
+			public long weigh(BufferedImage img)
+			{
+				return Java2DImage.getRasterBytes(img);
+			}
+		});
+
+	private Java2DScaledImageCache()
+	{
+	}
+
+	static class ScaledKey
+	{
+		private final Object source;
+		private final int width;
+		private final int height;
+		private final Method method;
+
+		/**
+		 * @param source The content key of the encoded image.
+		 * @param method The scaling method, or null for the image decoded at its own size.
+		 */
+		ScaledKey(Object source, int width, int height, Method method)
+		{
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.method = method;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ((source.hashCode() * 31 + width) * 31 + height) * 31 + (method == null ? 0 : method.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof ScaledKey))
+				return false;
+
+			ScaledKey other = (ScaledKey) obj;
+
+			return width == other.width &&
+				   height == other.height &&
+				   method == other.method &&
+				   source.equals(other.source);
+		}
+	}
+
+	/**
+	 * @return The variant, or null if not cached.
+	 */
+	public static BufferedImage get(ScaledKey key)
+	{
+		return _images.get(key);
+	}
+
+	public static void put(ScaledKey key, BufferedImage img)
+	{
+		_images.put(key, img);
+	}
+}
@@ -0,0 +1,80 @@
+package com.github.neoflyingsaucer.j2dout;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+
+/**
+ * Paints a display list into a PNG image one horizontal tile at a time, handing each
+ * tile's rows to a {@link PngRowEncoder} before painting the next. Only one tile is
+ * held in memory, so the memory needed depends on the tile size and not on the
+ * height of the image, which for a continuous document may be tens of thousands
+ * of pixels.
+ *
+ * The whole display list is replayed for every tile, through a graphics clipped
+ * to the tile and translated to its top.
+ */
+public class Java2DTiledPngOut
+{
+	public static final int DEFAULT_TILE_HEIGHT = 512;
+
+	private final int width;
+	private final int height;
+	private final int tileHeight;
+	private final RenderingHints hints;
+
+	public Java2DTiledPngOut(int width, int height, int tileHeight, RenderingHints hints)
+	{
+		if (tileHeight <= 0)
+			throw new IllegalArgumentException("Tile height must be positive: " + tileHeight);
+
+		this.width = width;
+		this.height = height;
+		this.tileHeight = Math.min(tileHeight, height);
+		this.hints = hints;
+	}
+
+	public void render(DisplayList dl, OutputStream os) throws IOException
+	{
+		PngRowEncoder encoder = new PngRowEncoder(os, width, height);
+		BufferedImage tile = new BufferedImage(width, tileHeight, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+		Object aaHint = hints.get(RenderingHints.KEY_ANTIALIASING);
+
+		if (aaHint == null)
+			aaHint = RenderingHints.VALUE_ANTIALIAS_DEFAULT;
+
+		for (int top = 0; top < height; top += tileHeight)
+		{
+			FSCancelController.cancelOpportunity(Java2DTiledPngOut.class);
+
+			int rows = Math.min(tileHeight, height - top);
+			Arrays.fill(pixels, 0);
+
+			Graphics2D g2d = tile.createGraphics();
+			g2d.setRenderingHints(hints);
+			g2d.clipRect(0, 0, width, rows);
+			g2d.translate(0, -top);
+
+			try
+			{
+				new Java2DOut(g2d, aaHint).render(dl);
+			}
+			finally
+			{
+				g2d.dispose();
+			}
+
+			encoder.writeRows(pixels, 0, width, rows);
+		}
+
+		encoder.finish();
+	}
+}
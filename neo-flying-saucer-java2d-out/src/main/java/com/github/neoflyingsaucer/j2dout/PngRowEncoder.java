@@ -0,0 +1,266 @@
+package com.github.neoflyingsaucer.j2dout;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes a PNG image a few rows at a time, so that the whole image never has to
+ * be held in memory. Rows are given as non-premultiplied ARGB ints, as held by a
+ * TYPE_INT_ARGB BufferedImage, and written as 8 bit RGBA. Each row is filtered
+ * with whichever of the five PNG filters gives the smallest sum of absolute
+ * differences, as most encoders do.
+ */
+public class PngRowEncoder
+{
+	private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+	private static final int BYTES_PER_PIXEL = 4;
+	private static final int FILTER_COUNT = 5;
+
+	private final ChunkOutputStream chunks;
+	private final Deflater deflater;
+	private final DeflaterOutputStream idat;
+	private final int width;
+	private final int height;
+
+	private byte[] row;
+	private byte[] prior;
+	private final byte[][] filtered;
+	private int rowsWritten;
+
+	public PngRowEncoder(OutputStream os, int width, int height) throws IOException
+	{
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+
+		this.width = width;
+		this.height = height;
+		this.chunks = new ChunkOutputStream(os);
+		this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		this.idat = new DeflaterOutputStream(chunks, deflater, 8192);
+
+		int rowBytes = width * BYTES_PER_PIXEL;
+		this.row = new byte[rowBytes];
+		this.prior = new byte[rowBytes];
+		this.filtered = new byte[FILTER_COUNT][rowBytes + 1];
+
+		os.write(SIGNATURE);
+
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8;  // Bit depth.
+		header[9] = 6;  // Color type, RGBA.
+		header[10] = 0; // Deflate compression.
+		header[11] = 0; // Adaptive filtering.
+		header[12] = 0; // No interlacing.
+		chunks.writeChunk("IHDR", header, header.length);
+	}
+
+	/**
+	 * Writes the next rows of the image.
+	 * @param argb The pixels.
+	 * @param offset The index of the first pixel of the first row.
+	 * @param scanSize The distance between the start of one row and the next.
+	 * @param rows The number of rows to write.
+	 */
+	public void writeRows(int[] argb, int offset, int scanSize, int rows) throws IOException
+	{
+		if (rowsWritten + rows > height)
+			throw new IllegalStateException("More rows than the image height of " + height);
+
+		for (int y = 0; y < rows; y++)
+		{
+			int start = offset + y * scanSize;
+
+			for (int x = 0; x < width; x++)
+			{
+				int px = argb[start + x];
+				int i = x * BYTES_PER_PIXEL;
+
+				row[i] = (byte) (px >>> 16);
+				row[i + 1] = (byte) (px >>> 8);
+				row[i + 2] = (byte) px;
+				row[i + 3] = (byte) (px >>> 24);
+			}
+
+			idat.write(filterRow());
+
+			byte[] tmp = prior;
+			prior = row;
+			row = tmp;
+			rowsWritten++;
+		}
+	}
+
+	/**
+	 * Ends the image once all its rows are written. Does not close the underlying stream.
+	 */
+	public void finish() throws IOException
+	{
+		if (rowsWritten != height)
+			throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows written");
+
+		try
+		{
+			idat.finish();
+			chunks.flushData();
+			chunks.writeChunk("IEND", new byte[0], 0);
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	private byte[] filterRow()
+	{
+		int best = 0;
+		long bestSum = Long.MAX_VALUE;
+
+		for (int type = 0; type < FILTER_COUNT; type++)
+		{
+			byte[] out = filtered[type];
+			long sum = 0;
+
+			out[0] = (byte) type;
+
+			for (int i = 0; i < row.length; i++)
+			{
+				int raw = row[i] & 0xff;
+				int left = i >= BYTES_PER_PIXEL ? row[i - BYTES_PER_PIXEL] & 0xff : 0;
+				int up = rowsWritten > 0 ? prior[i] & 0xff : 0;
+				int upLeft = rowsWritten > 0 && i >= BYTES_PER_PIXEL ? prior[i - BYTES_PER_PIXEL] & 0xff : 0;
+				int predicted;
+
+				switch (type)
+				{
+				case 1:
+					predicted = left;
+					break;
+				case 2:
+					predicted = up;
+					break;
+				case 3:
+					predicted = (left + up) >>> 1;
+					break;
+				case 4:
+					predicted = paeth(left, up, upLeft);
+					break;
+				default:
+					predicted = 0;
+					break;
+				}
+
+				byte b = (byte) (raw - predicted);
+				out[i + 1] = b;
+				sum += Math.abs((int) b);
+			}
+
+			if (sum < bestSum)
+			{
+				bestSum = sum;
+				best = type;
+			}
+		}
+
+		return filtered[best];
+	}
+
+	private static int paeth(int a, int b, int c)
+	{
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+
+		if (pa <= pb && pa <= pc)
+			return a;
+		else if (pb <= pc)
+			return b;
+		else
+			return c;
+	}
+
+	private static void putInt(byte[] buf, int offset, int value)
+	{
+		buf[offset] = (byte) (value >>> 24);
+		buf[offset + 1] = (byte) (value >>> 16);
+		buf[offset + 2] = (byte) (value >>> 8);
+		buf[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * Collects compressed image data into IDAT chunks of a bounded size.
+	 */
+	private static class ChunkOutputStream extends OutputStream
+	{
+		private static final int MAX_DATA = 65536;
+
+		private final OutputStream os;
+		private final byte[] data = new byte[MAX_DATA];
+		private final byte[] lengthAndType = new byte[8];
+		private final CRC32 crc = new CRC32();
+		private int length;
+
+		private ChunkOutputStream(OutputStream os)
+		{
+			this.os = os;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			if (length == MAX_DATA)
+				flushData();
+
+			data[length++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			while (len > 0)
+			{
+				if (length == MAX_DATA)
+					flushData();
+
+				int n = Math.min(len, MAX_DATA - length);
+				System.arraycopy(b, off, data, length, n);
+				length += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void flushData() throws IOException
+		{
+			if (length > 0)
+			{
+				writeChunk("IDAT", data, length);
+				length = 0;
+			}
+		}
+
+		private void writeChunk(String type, byte[] buf, int len) throws IOException
+		{
+			putInt(lengthAndType, 0, len);
+
+			for (int i = 0; i < 4; i++)
+				lengthAndType[4 + i] = (byte) type.charAt(i);
+
+			crc.reset();
+			crc.update(lengthAndType, 4, 4);
+			crc.update(buf, 0, len);
+
+			byte[] crcBytes = new byte[4];
+			putInt(crcBytes, 0, (int) crc.getValue());
+
+			os.write(lengthAndType);
+			os.write(buf, 0, len);
+			os.write(crcBytes);
+		}
+	}
+}
@@ -21,9 +21,6 @@ package com.github.neoflyingsaucer.pdf2dout;
 
 import java.awt.Rectangle;
 
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.font.PDFont;
-
 import com.github.neoflyingsaucer.extend.output.FSFont;
 import com.github.neoflyingsaucer.extend.output.FSFontMetrics;
 import com.github.neoflyingsaucer.extend.output.FSGlyphVector;
@@ -38,13 +35,12 @@ public class Pdf2FontContext implements FontContext
     public FSFontMetrics getFontMetrics(FSFont font, String string) 
 	{
         FontDescription descr = ((Pdf2Font )font).getFontDescription();
-        PDFont bf = descr.getFont();
+        Pdf2FontMetrics metrics = descr.getMetrics();
         float size = font.getSize2D() / 1000f;
         Pdf2MetricsAdapter result = new Pdf2MetricsAdapter();
-        PDRectangle bbox = Pdf2PdfBoxWrapper.pdfGetFontBoundingBox(bf);
         
-        result.setAscent(bbox.getUpperRightY() * size);
-        result.setDescent(-bbox.getLowerLeftY() * size);
+        result.setAscent(metrics.getAscent() * size);
+        result.setDescent(metrics.getDescent() * size);
         
         result.setStrikethroughOffset(-descr.getYStrikeoutPosition() / 1000f * size);
         if (descr.getYStrikeoutSize() != 0) {
@@ -62,9 +58,14 @@ public class Pdf2FontContext implements FontContext
 	@Override
 	public int getWidth(FSFont font, String s) 
 	{
-        PDFont bf = ((Pdf2Font) font).getFontDescription().getFont();
-        float result = (Pdf2PdfBoxWrapper.pdfGetStringWidth(bf, s)) * (font.getSize2D() / 1000f);
+        Pdf2FontMetrics metrics = ((Pdf2Font) font).getFontDescription().getMetrics();
+        float result = metrics.getStringWidth(s) * (font.getSize2D() / 1000f);
         
+        return round(result);
+	}
+
+	static int round(float result)
+	{
         if (result - Math.floor(result) < TEXT_MEASURING_DELTA) {
             return (int)result;
         } else {
@@ -72,6 +73,17 @@ public class Pdf2FontContext implements FontContext
         }
 	}
 
+	@Override
+	public int[] getPrefixWidths(FSFont font, String s, int[] widths)
+	{
+		Pdf2FontMetrics metrics = ((Pdf2Font) font).getFontDescription().getMetrics();
+		int[] result = widths != null && widths.length >= s.length() ? widths : new int[s.length()];
+
+		metrics.getPrefixWidths(s, font.getSize2D() / 1000f, result);
+
+		return result;
+	}
+
 	@Override
 	public FSGlyphVector getGlyphVector(FSFont font, String s)
 	{
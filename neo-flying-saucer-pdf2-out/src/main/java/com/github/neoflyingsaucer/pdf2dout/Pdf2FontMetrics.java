@@ -0,0 +1,128 @@
+package com.github.neoflyingsaucer.pdf2dout;
+
+import java.util.Arrays;
+
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * Metrics of one PDFont, read from PDFBox once so that measuring text is a
+ * summing loop. Units are those of the font (1000 per em).
+ *
+ * PDFBox measures a string by encoding it to ISO-8859-1 and adding up the width
+ * of each byte, so every character outside Latin-1 is measured (and drawn) as a
+ * '?'. A table of 256 advances therefore covers every character. Advances are
+ * looked up in PDFBox the first time each byte is measured.
+ *
+ * Safe to share between threads: concurrent first lookups of the same advance
+ * both store the same value.
+ */
+final class Pdf2FontMetrics
+{
+	private static final int UNMAPPABLE = '?';
+
+	private final PDFont _font;
+	private final float _ascent;
+	private final float _descent;
+	private final float[] _advances = new float[256];
+
+	Pdf2FontMetrics(PDFont font)
+	{
+		PDRectangle bbox = Pdf2PdfBoxWrapper.pdfGetFontBoundingBox(font);
+
+		_font = font;
+		_ascent = bbox.getUpperRightY();
+		_descent = -bbox.getLowerLeftY();
+
+		Arrays.fill(_advances, Float.NaN);
+	}
+
+	/**
+	 * @return The top of the font bounding box.
+	 */
+	public float getAscent()
+	{
+		return _ascent;
+	}
+
+	/**
+	 * @return The bottom of the font bounding box, positive below the baseline.
+	 */
+	public float getDescent()
+	{
+		return _descent;
+	}
+
+	private float getAdvance(int code)
+	{
+		float advance = _advances[code];
+
+		if (advance != advance)
+		{
+			advance = Pdf2PdfBoxWrapper.pdfGetFontWidth(_font, new byte[] { (byte) code }, 0);
+			_advances[code] = advance;
+		}
+
+		return advance;
+	}
+
+	/**
+	 * @return The same width as PDFont.getStringWidth.
+	 */
+	public float getStringWidth(String s)
+	{
+		float total = 0;
+
+		for (int i = 0; i < s.length(); i++)
+		{
+			char ch = s.charAt(i);
+
+			if (ch <= 0xFF)
+			{
+				total += getAdvance(ch);
+				continue;
+			}
+
+			// A surrogate pair is encoded as a single '?'.
+			if (Character.isHighSurrogate(ch) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)))
+				i++;
+
+			total += getAdvance(UNMAPPABLE);
+		}
+
+		return total;
+	}
+
+	/**
+	 * Writes the width of each prefix of s, as {@link #getStringWidth(String)} would
+	 * measure s.substring(0, i + 1), scaled and rounded as {@link Pdf2FontContext} does.
+	 */
+	void getPrefixWidths(String s, float scale, int[] result)
+	{
+		float total = 0;
+
+		for (int i = 0; i < s.length(); i++)
+		{
+			char ch = s.charAt(i);
+
+			if (ch <= 0xFF)
+			{
+				total += getAdvance(ch);
+			}
+			else if (Character.isHighSurrogate(ch) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)))
+			{
+				total += getAdvance(UNMAPPABLE);
+
+				// Not a break opportunity, but give it the width of the pair.
+				result[i] = Pdf2FontContext.round(total * scale);
+				i++;
+			}
+			else
+			{
+				total += getAdvance(UNMAPPABLE);
+			}
+
+			result[i] = Pdf2FontContext.round(total * scale);
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package com.github.neoflyingsaucer.pdf2dout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptorDictionary;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+
+import com.github.neoflyingsaucer.extend.useragent.ContentKey;
+import com.github.neoflyingsaucer.extend.useragent.WeightedCache;
+
+/**
+ * A TrueType font program, parsed and compressed once and shared by every document
+ * which embeds the same font bytes.
+ *
+ * Each document gets its own copy of the font dictionary, made by {@link #createFont(PDDocument)},
+ * as PDF objects belong to one document and are changed when the font is subset.
+ */
+final class Pdf2FontProgram
+{
+	/**
+	 * The most font bytes kept.
+	 */
+	private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+
+	private static final WeightedCache<ContentKey, Pdf2FontProgram> _programs =
+		new WeightedCache<ContentKey, Pdf2FontProgram>(MAX_CACHED_BYTES, 64, new WeightedCache.Weigher<Pdf2FontProgram>()
+		{
+			@Override
+			public long weigh(Pdf2FontProgram program)
+			{
+				return program._data.length + program._fontFile.length;
+			}
+		});
+
+	private final byte[] _data;
+	private final TrueTypeFont _ttf;
+	private final COSDictionary _template;
+	private final byte[] _fontFile;
+
+	private Pdf2FontProgram(byte[] data) throws IOException
+	{
+		PDDocument scratch = new PDDocument();
+
+		try
+		{
+			PDTrueTypeFont font = PDTrueTypeFont.loadTTF(scratch, new ByteArrayInputStream(data));
+			PDFontDescriptorDictionary descriptor = (PDFontDescriptorDictionary) font.getFontDescriptor();
+
+			// The compressed font file is copied into each document as it is.
+			_fontFile = readAll(descriptor.getFontFile2().getStream().getFilteredStream());
+			descriptor.setFontFile2(null);
+			_template = copy((COSDictionary) font.getCOSObject());
+		}
+		finally
+		{
+			scratch.close();
+		}
+
+		_data = data;
+		_ttf = new TTFParser().parseTTF(new ByteArrayInputStream(data));
+	}
+
+	/**
+	 * @return The program of the font bytes, parsed the first time they are seen.
+	 */
+	public static Pdf2FontProgram load(byte[] data) throws IOException
+	{
+		ContentKey key = new ContentKey(data);
+		Pdf2FontProgram program = _programs.get(key);
+
+		if (program == null)
+		{
+			// A second thread parsing the same font just does so twice.
+			program = new Pdf2FontProgram(data);
+			_programs.put(key, program);
+		}
+
+		return program;
+	}
+
+	/**
+	 * @return The font bytes.
+	 */
+	public byte[] getData()
+	{
+		return _data;
+	}
+
+	/**
+	 * @return The parsed font, not to be modified.
+	 */
+	public TrueTypeFont getTrueTypeFont()
+	{
+		return _ttf;
+	}
+
+	/**
+	 * @return A new font embedding this program in the document.
+	 */
+	public PDTrueTypeFont createFont(PDDocument doc) throws IOException
+	{
+		COSDictionary dict = copy(_template);
+		PDStream fontFile = new PDStream(doc, new ByteArrayInputStream(_fontFile), true);
+
+		fontFile.setFilters(Collections.singletonList(COSName.FLATE_DECODE));
+		fontFile.getStream().setInt(COSName.LENGTH1, _data.length);
+		((COSDictionary) dict.getDictionaryObject(COSName.FONT_DESC)).setItem(COSName.FONT_FILE2, fontFile);
+
+		return new PDTrueTypeFont(dict);
+	}
+
+	/**
+	 * @return A deep copy of the dictionary. Names and numbers are immutable, so are shared.
+	 */
+	private static COSDictionary copy(COSDictionary dict)
+	{
+		COSDictionary result = new COSDictionary();
+
+		for (Map.Entry<COSName, COSBase> entry : dict.entrySet())
+			result.setItem(entry.getKey(), copy(entry.getValue()));
+
+		return result;
+	}
+
+	private static COSBase copy(COSBase value)
+	{
+		if (value instanceof COSDictionary)
+			return copy((COSDictionary) value);
+
+		if (value instanceof COSArray)
+		{
+			COSArray array = (COSArray) value;
+			COSArray result = new COSArray();
+
+			for (int i = 0; i < array.size(); i++)
+				result.add(copy(array.get(i)));
+
+			return result;
+		}
+
+		return value;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+
+		try
+		{
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return out.toByteArray();
+	}
+}
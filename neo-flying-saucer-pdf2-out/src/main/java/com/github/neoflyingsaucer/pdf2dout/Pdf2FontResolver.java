@@ -30,7 +30,6 @@ import com.github.neoflyingsaucer.extend.output.FontSpecificationI;
 import com.github.neoflyingsaucer.extend.output.FontSpecificationI.FontStyle;
 import com.github.neoflyingsaucer.extend.output.FontSpecificationI.FontVariant;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -237,6 +236,8 @@ public class Pdf2FontResolver implements FontResolver
         private int _weight;
 
         private PDFont _font;
+        private volatile Pdf2FontMetrics _metrics;
+        private Pdf2FontProgram _program;
 
         private float _underlinePosition;
         private float _underlineThickness;
@@ -266,6 +267,30 @@ public class Pdf2FontResolver implements FontResolver
 
         public void setFont(PDFont font) {
             _font = font;
+            _metrics = null;
+        }
+
+        /**
+         * @return Metrics of the font, read once and shared by every document using this description.
+         */
+        Pdf2FontMetrics getMetrics() {
+            Pdf2FontMetrics metrics = _metrics;
+            if (metrics == null) {
+                metrics = new Pdf2FontMetrics(_font);
+                _metrics = metrics;
+            }
+            return metrics;
+        }
+
+        /**
+         * @return The shared program of an embedded TrueType font, or null for other fonts.
+         */
+        Pdf2FontProgram getProgram() {
+            return _program;
+        }
+
+        void setProgram(Pdf2FontProgram program) {
+            _program = program;
         }
 
         public int getWeight() {
@@ -478,9 +503,12 @@ public class Pdf2FontResolver implements FontResolver
 	{
 		for (FSFontFaceItem item : fontFaces)
 		{
+			Pdf2FontProgram program = null;
 			PDTrueTypeFont font = null;
 			try {
-				font = PDTrueTypeFont.loadTTF(doc, new ByteArrayInputStream(item.getFontBytes()));
+				// Parsed once per process, each document gets its own font object.
+				program = Pdf2FontProgram.load(item.getFontBytes());
+				font = program.createFont(doc);
 			} catch (IOException e) {
 				FSErrorController.log(Pdf2FontResolver.class, FSErrorLevel.ERROR, LangId.COULDNT_LOAD_FONT, item.getFontFamily());
 				continue;
@@ -496,6 +524,7 @@ public class Pdf2FontResolver implements FontResolver
 			FontDescription description = new FontDescription(font);
 			description.setWeight(item.getWeight());
 			description.setFromFontFace(true);
+			description.setProgram(program);
 			description.setStyle(item.getSpecification() == null ? FontStyle.NORMAL : item.getSpecification().getStyle());
 			
 			family.addFontDescription(description);
@@ -0,0 +1,479 @@
+package com.github.neoflyingsaucer.pdf2dout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.fontbox.ttf.CMAPEncodingEntry;
+import org.apache.fontbox.ttf.CMAPTable;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptorDictionary;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
+import com.github.neoflyingsaucer.extend.controller.error.LangId;
+import com.github.neoflyingsaucer.extend.controller.error.FSError.FSErrorLevel;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2FontResolver.FontDescription;
+
+/**
+ * Replaces an embedded @font-face TrueType font with a subset holding only the glyphs a
+ * document draws with it, as iText did for Flying Saucer.
+ *
+ * Glyph ids are kept, so the cmap and the widths of the font stay valid. The outlines
+ * of unused glyphs are dropped from the glyf table, the post table loses its glyph
+ * names and tables a PDF viewer does not use (layout, kerning, bitmaps) are left out.
+ *
+ * Fonts whose OS/2 fsType forbids subsetting are embedded whole. Every offset read
+ * from the font is checked against its table before use, a font which fails a check
+ * is embedded whole too.
+ */
+final class Pdf2FontSubsetter
+{
+	/**
+	 * The tables kept, in the order of their tags.
+	 */
+	private static final String[] TABLES =
+		{ "OS/2", "cmap", "cvt ", "fpgm", "glyf", "head", "hhea", "hmtx", "loca", "maxp", "name", "post", "prep" };
+
+	private static final int ARG_1_AND_2_ARE_WORDS = 0x1;
+	private static final int WE_HAVE_A_SCALE = 0x8;
+	private static final int MORE_COMPONENTS = 0x20;
+	private static final int WE_HAVE_AN_X_AND_Y_SCALE = 0x40;
+	private static final int WE_HAVE_A_TWO_BY_TWO = 0x80;
+
+	private static final int PLATFORM_UNICODE = 0;
+	private static final int FS_TYPE_NO_SUBSETTING = 0x0100;
+
+	private final byte[] _data;
+	private final Map<String, int[]> _tables = new HashMap<String, int[]>();
+
+	private final int _numGlyphs;
+	private final boolean _longOffsets;
+
+	private Pdf2FontSubsetter(byte[] data) throws IOException
+	{
+		_data = data;
+
+		if (data.length < 12)
+			throw new IOException("Bad font header");
+
+		int numTables = readUShort(4);
+
+		if (12 + numTables * 16 > data.length)
+			throw new IOException("Bad table directory");
+
+		for (int i = 0; i < numTables; i++)
+		{
+			int entry = 12 + i * 16;
+			String tag = new String(data, entry, 4, "ISO-8859-1");
+			int offset = readInt(entry + 8);
+			int length = readInt(entry + 12);
+
+			if (offset < 0 || length < 0 || offset > data.length - length)
+				throw new IOException("Bad table: " + tag);
+
+			_tables.put(tag, new int[] { offset, length });
+		}
+
+		for (String tag : new String[] { "glyf", "head", "loca", "maxp" })
+		{
+			if (!_tables.containsKey(tag))
+				throw new IOException("Missing table: " + tag);
+		}
+
+		checkLength("head", 54);
+		checkLength("maxp", 6);
+
+		_numGlyphs = readUShort(_tables.get("maxp")[0] + 4);
+		_longOffsets = readUShort(_tables.get("head")[0] + 50) != 0;
+
+		checkLength("loca", (_numGlyphs + 1) * (_longOffsets ? 4 : 2));
+	}
+
+	private void checkLength(String tag, int minLength) throws IOException
+	{
+		if (_tables.get(tag)[1] < minLength)
+			throw new IOException("Table too short: " + tag);
+	}
+
+	/**
+	 * @return Whether bit 8 of the OS/2 fsType is set, asking that the font is only
+	 * embedded whole.
+	 */
+	private boolean isSubsettingForbidden()
+	{
+		int[] os2 = _tables.get("OS/2");
+
+		return os2 != null && os2[1] >= 10 && (readUShort(os2[0] + 8) & FS_TYPE_NO_SUBSETTING) != 0;
+	}
+
+	/**
+	 * Subsets the font to the glyphs of the given character codes. If the font can't be
+	 * read, logs an error and leaves the whole font embedded.
+	 */
+	public static void subset(PDDocument doc, FontDescription description, BitSet codes)
+	{
+		PDTrueTypeFont font = (PDTrueTypeFont) description.getFont();
+		PDFontDescriptorDictionary descriptor = (PDFontDescriptorDictionary) font.getFontDescriptor();
+		Pdf2FontProgram program = description.getProgram();
+
+		try
+		{
+			Pdf2FontSubsetter subsetter = new Pdf2FontSubsetter(program.getData());
+
+			if (subsetter.isSubsettingForbidden())
+				return;
+
+			byte[] subset = subsetter.write(subsetter.getGlyphs(font, program.getTrueTypeFont(), codes));
+
+			PDStream stream = new PDStream(doc, new ByteArrayInputStream(subset), false);
+			stream.getStream().setInt(COSName.LENGTH1, subset.length);
+			stream.addCompression();
+			descriptor.setFontFile2(stream);
+
+			// A subset is named with a tag unique to its glyphs.
+			String name = getTag(font.getBaseFont(), codes) + '+' + font.getBaseFont();
+			font.setBaseFont(name);
+			descriptor.setFontName(name);
+		}
+		catch (IOException e)
+		{
+			FSErrorController.log(Pdf2FontSubsetter.class, FSErrorLevel.ERROR, LangId.COULDNT_SUBSET_FONT, font.getBaseFont());
+		}
+	}
+
+	private static String getTag(String baseFont, BitSet codes)
+	{
+		long hash = (codes.hashCode() * 31 + baseFont.hashCode()) & 0xffffffffL;
+		char[] tag = new char[6];
+
+		for (int i = 0; i < tag.length; i++)
+		{
+			tag[i] = (char) ('A' + hash % 26);
+			hash /= 26;
+		}
+
+		return new String(tag);
+	}
+
+	/**
+	 * @return The glyphs a viewer may draw for the codes: those the font's cmaps map
+	 * the codes (or the characters they encode) to, the glyphs these are composed of
+	 * and .notdef.
+	 */
+	private BitSet getGlyphs(PDTrueTypeFont font, TrueTypeFont ttf, BitSet codes) throws IOException
+	{
+		CMAPTable cmap = ttf.getCMAP();
+		BitSet glyphs = new BitSet();
+		byte[] code = new byte[1];
+
+		glyphs.set(0);
+
+		for (int c = codes.nextSetBit(0); c >= 0; c = codes.nextSetBit(c + 1))
+		{
+			code[0] = (byte) c;
+			String unicode = font.encode(code, 0, 1);
+
+			for (CMAPEncodingEntry entry : cmap == null ? new CMAPEncodingEntry[0] : cmap.getCmaps())
+			{
+				if (entry.getPlatformId() == PLATFORM_UNICODE ||
+					(entry.getPlatformId() == CMAPTable.PLATFORM_WINDOWS && entry.getPlatformEncodingId() == CMAPTable.ENCODING_UNICODE))
+				{
+					if (unicode != null)
+					{
+						for (int i = 0; i < unicode.length(); i++)
+							glyphs.set(entry.getGlyphId(unicode.charAt(i)));
+					}
+				}
+				else if (entry.getPlatformId() == CMAPTable.PLATFORM_WINDOWS && entry.getPlatformEncodingId() == CMAPTable.ENCODING_SYMBOL)
+				{
+					glyphs.set(entry.getGlyphId(c));
+					glyphs.set(entry.getGlyphId(0xF000 + c));
+				}
+				else if (entry.getPlatformId() == CMAPTable.PLATFORM_MACINTOSH)
+				{
+					glyphs.set(entry.getGlyphId(c));
+				}
+			}
+		}
+
+		addComponents(glyphs);
+
+		return glyphs;
+	}
+
+	/**
+	 * @return The offset of the glyph in the glyf table, checked to lie in the table.
+	 */
+	private int getGlyphOffset(int glyph) throws IOException
+	{
+		int loca = _tables.get("loca")[0];
+		int offset = _longOffsets ? readInt(loca + glyph * 4) : readUShort(loca + glyph * 2) * 2;
+
+		if (offset < 0 || offset > _tables.get("glyf")[1])
+			throw new IOException("Bad glyph offset: " + glyph);
+
+		return offset;
+	}
+
+	/**
+	 * @return The length of the glyph's data, checked to be positive or zero.
+	 */
+	private int getGlyphLength(int glyph) throws IOException
+	{
+		int length = getGlyphOffset(glyph + 1) - getGlyphOffset(glyph);
+
+		if (length < 0)
+			throw new IOException("Bad glyph length: " + glyph);
+
+		return length;
+	}
+
+	/**
+	 * Adds the glyphs composite glyphs are made of.
+	 */
+	private void addComponents(BitSet glyphs) throws IOException
+	{
+		int glyf = _tables.get("glyf")[0];
+		int[] pending = new int[glyphs.cardinality()];
+		int count = 0;
+
+		for (int g = glyphs.nextSetBit(0); g >= 0; g = glyphs.nextSetBit(g + 1))
+			pending[count++] = g;
+
+		while (count > 0)
+		{
+			int glyph = pending[--count];
+
+			if (glyph >= _numGlyphs)
+				continue;
+
+			int start = getGlyphOffset(glyph);
+			int length = getGlyphLength(glyph);
+
+			// Empty glyphs, glyphs too short for a header and simple glyphs have no components.
+			if (length < 10 || (short) readUShort(glyf + start) >= 0)
+				continue;
+
+			int pos = glyf + start + 10;
+			int end = glyf + start + length;
+			int flags;
+
+			do
+			{
+				if (pos + 4 > end)
+					throw new IOException("Bad composite glyph: " + glyph);
+
+				flags = readUShort(pos);
+				int component = readUShort(pos + 2);
+				pos += 4;
+
+				if (!glyphs.get(component))
+				{
+					glyphs.set(component);
+
+					if (count == pending.length)
+					{
+						int[] grown = new int[pending.length * 2 + 1];
+						System.arraycopy(pending, 0, grown, 0, count);
+						pending = grown;
+					}
+
+					pending[count++] = component;
+				}
+
+				pos += (flags & ARG_1_AND_2_ARE_WORDS) != 0 ? 4 : 2;
+
+				if ((flags & WE_HAVE_A_SCALE) != 0)
+					pos += 2;
+				else if ((flags & WE_HAVE_AN_X_AND_Y_SCALE) != 0)
+					pos += 4;
+				else if ((flags & WE_HAVE_A_TWO_BY_TWO) != 0)
+					pos += 8;
+			}
+			while ((flags & MORE_COMPONENTS) != 0);
+		}
+	}
+
+	private byte[] write(BitSet glyphs) throws IOException
+	{
+		Map<String, byte[]> tables = new HashMap<String, byte[]>();
+		int numGlyphs = _numGlyphs;
+		int glyf = _tables.get("glyf")[0];
+
+		// The glyf table holds only the used glyphs, with long loca offsets.
+		ByteArrayOutputStream glyphData = new ByteArrayOutputStream();
+		byte[] loca = new byte[(numGlyphs + 1) * 4];
+
+		for (int g = 0; g < numGlyphs; g++)
+		{
+			writeInt(loca, g * 4, glyphData.size());
+
+			if (glyphs.get(g))
+			{
+				glyphData.write(_data, glyf + getGlyphOffset(g), getGlyphLength(g));
+
+				while (glyphData.size() % 4 != 0)
+					glyphData.write(0);
+			}
+		}
+
+		writeInt(loca, numGlyphs * 4, glyphData.size());
+
+		tables.put("glyf", glyphData.toByteArray());
+		tables.put("loca", loca);
+
+		byte[] head = getTable("head");
+		head[50] = 0;
+		head[51] = 1;
+		writeInt(head, 8, 0);
+		tables.put("head", head);
+
+		// Version 3 of the post table has no glyph names.
+		byte[] post = getTable("post");
+		if (post != null && post.length >= 32)
+		{
+			byte[] names = new byte[32];
+			System.arraycopy(post, 0, names, 0, 32);
+			writeInt(names, 0, 0x00030000);
+			tables.put("post", names);
+		}
+
+		for (String tag : TABLES)
+		{
+			if (!tables.containsKey(tag) && _tables.containsKey(tag))
+				tables.put(tag, getTable(tag));
+		}
+
+		byte[] font = assemble(tables);
+
+		// Set the whole font checksum in the head table.
+		int headOffset = findTableOffset(font, "head");
+		writeInt(font, headOffset + 8, 0xB1B0AFBA - checksum(font, 0, font.length));
+
+		return font;
+	}
+
+	private static byte[] assemble(Map<String, byte[]> tables) throws IOException
+	{
+		int numTables = tables.size();
+		int entrySelector = 31 - Integer.numberOfLeadingZeros(numTables);
+		int searchRange = (1 << entrySelector) * 16;
+		int size = 12 + numTables * 16;
+
+		for (byte[] table : tables.values())
+			size += (table.length + 3) & ~3;
+
+		byte[] font = new byte[size];
+		writeInt(font, 0, 0x00010000);
+		writeUShort(font, 4, numTables);
+		writeUShort(font, 6, searchRange);
+		writeUShort(font, 8, entrySelector);
+		writeUShort(font, 10, numTables * 16 - searchRange);
+
+		int entry = 12;
+		int offset = 12 + numTables * 16;
+
+		for (String tag : TABLES)
+		{
+			byte[] table = tables.get(tag);
+
+			if (table == null)
+				continue;
+
+			System.arraycopy(tag.getBytes("ISO-8859-1"), 0, font, entry, 4);
+			System.arraycopy(table, 0, font, offset, table.length);
+			writeInt(font, entry + 4, checksum(font, offset, table.length));
+			writeInt(font, entry + 8, offset);
+			writeInt(font, entry + 12, table.length);
+
+			entry += 16;
+			offset += (table.length + 3) & ~3;
+		}
+
+		return font;
+	}
+
+	private static int findTableOffset(byte[] font, String tag) throws IOException
+	{
+		byte[] bytes = tag.getBytes("ISO-8859-1");
+		int numTables = ((font[4] & 0xff) << 8) | (font[5] & 0xff);
+
+		for (int i = 0; i < numTables; i++)
+		{
+			int entry = 12 + i * 16;
+
+			if (font[entry] == bytes[0] && font[entry + 1] == bytes[1] && font[entry + 2] == bytes[2] && font[entry + 3] == bytes[3])
+				return readInt(font, entry + 8);
+		}
+
+		throw new IOException("Missing table: " + tag);
+	}
+
+	/**
+	 * @return The sum of the data as big endian integers, padded with zeros.
+	 */
+	private static int checksum(byte[] data, int offset, int length)
+	{
+		int sum = 0;
+
+		for (int i = 0; i < length; i += 4)
+		{
+			int value = 0;
+
+			for (int j = 0; j < 4; j++)
+				value = (value << 8) | (i + j < length ? data[offset + i + j] & 0xff : 0);
+
+			sum += value;
+		}
+
+		return sum;
+	}
+
+	private byte[] getTable(String tag)
+	{
+		int[] table = _tables.get(tag);
+
+		if (table == null)
+			return null;
+
+		byte[] result = new byte[table[1]];
+		System.arraycopy(_data, table[0], result, 0, table[1]);
+		return result;
+	}
+
+	private int readUShort(int pos)
+	{
+		return ((_data[pos] & 0xff) << 8) | (_data[pos + 1] & 0xff);
+	}
+
+	private int readInt(int pos)
+	{
+		return readInt(_data, pos);
+	}
+
+	private static int readInt(byte[] data, int pos)
+	{
+		return ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16) | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+	}
+
+	private static void writeUShort(byte[] data, int pos, int value)
+	{
+		data[pos] = (byte) (value >>> 8);
+		data[pos + 1] = (byte) value;
+	}
+
+	private static void writeInt(byte[] data, int pos, int value)
+	{
+		data[pos] = (byte) (value >>> 24);
+		data[pos + 1] = (byte) (value >>> 16);
+		data[pos + 2] = (byte) (value >>> 8);
+		data[pos + 3] = (byte) value;
+	}
+}
@@ -2,6 +2,7 @@ package com.github.neoflyingsaucer.pdf2dout;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import javax.imageio.ImageIO;
@@ -10,8 +11,9 @@ import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.stream.ImageInputStream;
 
 import com.github.neoflyingsaucer.extend.output.FSImage;
+import com.github.neoflyingsaucer.extend.useragent.Weighable;
 
-public class Pdf2Image implements FSImage
+public class Pdf2Image implements FSImage, Weighable
 {
 	private final byte[] _bytes;
 	private final String _uri;
@@ -21,10 +23,30 @@ public class Pdf2Image implements FSImage
 	
 	private final boolean _isJpeg;
 	
+	/* Lazily computed hash of _bytes, shared by scaled copies. Zero if not yet computed. */
+	private final int[] _contentHash;
+	
+	/* Header information for PNG and JPEG images, otherwise null. */
+	private final Pdf2ImageData _data;
+	
 	public Pdf2Image(byte[] image, String uri) throws IOException
 	{
 		_bytes = image;
 		_uri = uri;
+		_contentHash = new int[1];
+		_data = Pdf2ImageData.parse(image);
+
+		if (_data != null)
+		{
+			// PNG or JPEG, no need for an image reader.
+			_intrinsicWidth = _data.getWidth();
+			_intrinsicHeight = _data.getHeight();
+			_isJpeg = _data.isJpeg();
+			return;
+		}
+
+		float width, height;
+		boolean isJpeg;
 		
 		ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(_bytes));
 
@@ -35,12 +57,12 @@ public class Pdf2Image implements FSImage
 		    {
 		        ImageReader reader = readers.next();
 	            reader.setInput(in);
-	            _intrinsicWidth = reader.getWidth(0);
-	            _intrinsicHeight = reader.getHeight(0);
+	            width = reader.getWidth(0);
+	            height = reader.getHeight(0);
 	            
 	            String type = reader.getFormatName();
 	            
-	           _isJpeg = 
+	            isJpeg = 
 	        	   (type.equalsIgnoreCase("jpeg") ||
 	            	type.equalsIgnoreCase("jpg") ||
 	            	type.equalsIgnoreCase("jfif"));
@@ -53,6 +75,10 @@ public class Pdf2Image implements FSImage
 		    if (in != null)
 				in.close();
 		}
+
+		_intrinsicWidth = width;
+		_intrinsicHeight = height;
+		_isJpeg = isJpeg;
 	}
 	
 	public Pdf2Image(byte[] bytes, String uri, float width, float height, boolean isJpeg)
@@ -62,6 +88,19 @@ public class Pdf2Image implements FSImage
     	this._intrinsicWidth = width;
     	this._intrinsicHeight = height;
     	this._isJpeg = isJpeg;
+    	this._contentHash = new int[1];
+    	this._data = Pdf2ImageData.parse(bytes);
+	}
+
+	private Pdf2Image(Pdf2Image original, float width, float height)
+	{
+		this._bytes = original._bytes;
+		this._uri = original._uri;
+		this._intrinsicWidth = width;
+		this._intrinsicHeight = height;
+		this._isJpeg = original._isJpeg;
+		this._contentHash = original._contentHash;
+		this._data = original._data;
 	}
 
 	public FSImage scaleToOutputResolution(float dotsPerPixel)
@@ -76,7 +115,7 @@ public class Pdf2Image implements FSImage
             height *= factor;
         }
         
-        return new Pdf2Image(_bytes, _uri, width, height, _isJpeg);
+        return new Pdf2Image(this, width, height);
     }
 
 	@Override
@@ -130,7 +169,7 @@ public class Pdf2Image implements FSImage
 			setHeight = _intrinsicHeight;
 		}
 		
-		return new Pdf2Image(_bytes, _uri, setWidth, setHeight, _isJpeg);
+		return new Pdf2Image(this, setWidth, setHeight);
 	}
 
 	public byte[] getBytes()
@@ -147,4 +186,38 @@ public class Pdf2Image implements FSImage
 	{
 		return _isJpeg;
 	}
+
+	/**
+	 * @return Header information parsed from the image bytes, or null if the image is not a PNG or JPEG.
+	 */
+	public Pdf2ImageData getImageData()
+	{
+		return _data;
+	}
+
+	/**
+	 * @return A hash of the encoded image bytes. Computed on first use and
+	 * shared with every scaled copy of this image.
+	 */
+	public int getContentHash()
+	{
+		int hash = _contentHash[0];
+
+		if (hash == 0)
+		{
+			hash = Arrays.hashCode(_bytes);
+			_contentHash[0] = hash;
+		}
+
+		return hash;
+	}
+
+	/**
+	 * @return The size of the encoded image, which is all a PDF image retains.
+	 */
+	@Override
+	public long getRetainedBytes()
+	{
+		return _bytes.length;
+	}
 }
@@ -0,0 +1,293 @@
+package com.github.neoflyingsaucer.pdf2dout;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Reads the headers of PNG and JPEG images directly from their bytes, so that
+ * image dimensions are known without an ImageReader and, where the encoded data is
+ * already in a form PDF understands, the image can be embedded without decoding it.
+ *
+ * JPEGs with one or three 8 bit components are embedded as-is with DCTDecode.
+ * Non-interlaced grayscale, RGB and palette PNGs of up to 8 bits per component and without
+ * transparency have their IDAT data copied into a FlateDecode stream with a PNG predictor.
+ * Anything else uses the decode and re-encode path in {@link Pdf2Out}.
+ */
+public class Pdf2ImageData
+{
+	private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+	private static final int PNG_GRAY = 0;
+	private static final int PNG_RGB = 2;
+	private static final int PNG_PALETTE = 3;
+
+	private final byte[] bytes;
+	private final boolean jpeg;
+	private final int width;
+	private final int height;
+	private final int bitsPerComponent;
+	private final int components;
+	private final byte[] palette;
+	private final boolean passThrough;
+
+	private Pdf2ImageData(byte[] bytes, boolean jpeg, int width, int height,
+			int bitsPerComponent, int components, byte[] palette, boolean passThrough)
+	{
+		this.bytes = bytes;
+		this.jpeg = jpeg;
+		this.width = width;
+		this.height = height;
+		this.bitsPerComponent = bitsPerComponent;
+		this.components = components;
+		this.palette = palette;
+		this.passThrough = passThrough;
+	}
+
+	/**
+	 * @return The image's header information or null if the bytes are not
+	 * a PNG or JPEG image that could be parsed.
+	 */
+	public static Pdf2ImageData parse(byte[] bytes)
+	{
+		try
+		{
+			if (startsWith(bytes, PNG_SIGNATURE))
+				return parsePng(bytes);
+			else if (bytes.length > 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xD8)
+				return parseJpeg(bytes);
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+			// Truncated image.
+		}
+
+		return null;
+	}
+
+	private static Pdf2ImageData parsePng(byte[] bytes)
+	{
+		int pos = PNG_SIGNATURE.length;
+
+		int width = 0, height = 0, bitDepth = 0, colorType = 0, interlace = 0;
+		boolean sawHeader = false;
+		boolean transparent = false;
+		byte[] palette = null;
+
+		while (pos + 8 <= bytes.length)
+		{
+			int length = readInt(bytes, pos);
+			int data = pos + 8;
+
+			if (length < 0 || data + length > bytes.length)
+				return null;
+
+			if (isChunk(bytes, pos, "IHDR"))
+			{
+				width = readInt(bytes, data);
+				height = readInt(bytes, data + 4);
+				bitDepth = bytes[data + 8] & 0xFF;
+				colorType = bytes[data + 9] & 0xFF;
+				interlace = bytes[data + 12] & 0xFF;
+				sawHeader = true;
+			}
+			else if (isChunk(bytes, pos, "PLTE"))
+			{
+				palette = new byte[length];
+				System.arraycopy(bytes, data, palette, 0, length);
+			}
+			else if (isChunk(bytes, pos, "tRNS"))
+			{
+				transparent = true;
+			}
+			else if (isChunk(bytes, pos, "IDAT") || isChunk(bytes, pos, "IEND"))
+			{
+				// Everything we need precedes the image data.
+				break;
+			}
+
+			pos = data + length + 4; /* Skip the CRC. */
+		}
+
+		if (!sawHeader || width <= 0 || height <= 0)
+			return null;
+
+		boolean passThrough = interlace == 0 && bitDepth <= 8 && !transparent &&
+				(colorType == PNG_GRAY ||
+				 (colorType == PNG_RGB && bitDepth == 8) ||
+				 (colorType == PNG_PALETTE && palette != null && palette.length % 3 == 0));
+
+		int components = colorType == PNG_RGB ? 3 : 1;
+
+		return new Pdf2ImageData(bytes, false, width, height, bitDepth, components,
+				colorType == PNG_PALETTE ? palette : null, passThrough);
+	}
+
+	private static Pdf2ImageData parseJpeg(byte[] bytes)
+	{
+		int pos = 2;
+
+		while (pos + 4 <= bytes.length)
+		{
+			if ((bytes[pos] & 0xFF) != 0xFF)
+				return null;
+
+			int marker = bytes[pos + 1] & 0xFF;
+
+			if (marker == 0xFF)
+			{
+				// Fill byte.
+				pos++;
+				continue;
+			}
+
+			if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7))
+			{
+				// Standalone marker, no length.
+				pos += 2;
+				continue;
+			}
+
+			if (marker == 0xDA || marker == 0xD9)
+			{
+				// Start of scan or end of image before any frame header.
+				return null;
+			}
+
+			int length = ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+
+			if (isStartOfFrame(marker))
+			{
+				int precision = bytes[pos + 4] & 0xFF;
+				int height = ((bytes[pos + 5] & 0xFF) << 8) | (bytes[pos + 6] & 0xFF);
+				int width = ((bytes[pos + 7] & 0xFF) << 8) | (bytes[pos + 8] & 0xFF);
+				int components = bytes[pos + 9] & 0xFF;
+
+				if (width <= 0 || height <= 0)
+					return null;
+
+				// Baseline, extended and progressive huffman JPEGs are supported by DCTDecode.
+				// CMYK JPEGs are left to the existing path, as Adobe's inverted CMYK needs care.
+				boolean passThrough = precision == 8 && (components == 1 || components == 3) &&
+						(marker == 0xC0 || marker == 0xC1 || marker == 0xC2);
+
+				return new Pdf2ImageData(bytes, true, width, height, precision, components, null, passThrough);
+			}
+
+			pos += 2 + length;
+		}
+
+		return null;
+	}
+
+	private static boolean isStartOfFrame(int marker)
+	{
+		return marker >= 0xC0 && marker <= 0xCF &&
+			   marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+	}
+
+	/**
+	 * @return The concatenated zlib data of a PNG's IDAT chunks.
+	 */
+	public byte[] getPngImageData()
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+		int pos = PNG_SIGNATURE.length;
+
+		while (pos + 8 <= bytes.length)
+		{
+			int length = readInt(bytes, pos);
+			int data = pos + 8;
+
+			if (length < 0)
+				break;
+
+			if (isChunk(bytes, pos, "IDAT"))
+			{
+				out.write(bytes, data, Math.min(length, bytes.length - data));
+			}
+
+			pos = data + length + 4;
+		}
+
+		return out.toByteArray();
+	}
+
+	private static boolean isChunk(byte[] b, int pos, String type)
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			if (b[pos + 4 + i] != type.charAt(i))
+				return false;
+		}
+
+		return true;
+	}
+
+	private static int readInt(byte[] b, int pos)
+	{
+		return ((b[pos] & 0xFF) << 24) | ((b[pos + 1] & 0xFF) << 16) |
+			   ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+	}
+
+	private static boolean startsWith(byte[] bytes, byte[] prefix)
+	{
+		if (bytes.length < prefix.length)
+			return false;
+
+		for (int i = 0; i < prefix.length; i++)
+		{
+			if (bytes[i] != prefix[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	public byte[] getBytes()
+	{
+		return bytes;
+	}
+
+	public boolean isJpeg()
+	{
+		return jpeg;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	public int getBitsPerComponent()
+	{
+		return bitsPerComponent;
+	}
+
+	/**
+	 * @return The number of color components per pixel, one for palette images.
+	 */
+	public int getComponents()
+	{
+		return components;
+	}
+
+	/**
+	 * @return The RGB palette of a palette PNG, otherwise null.
+	 */
+	public byte[] getPalette()
+	{
+		return palette;
+	}
+
+	/**
+	 * @return Whether the encoded data can be embedded in a PDF without decoding it.
+	 */
+	public boolean canPassThrough()
+	{
+		return passThrough;
+	}
+}
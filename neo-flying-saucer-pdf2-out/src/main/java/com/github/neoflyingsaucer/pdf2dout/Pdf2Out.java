@@ -14,21 +14,34 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
 import javax.imageio.ImageIO;
 
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.graphics.PDExtendedGraphicsState;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
 import org.apache.pdfbox.pdmodel.graphics.xobject.PDJpeg;
 import org.apache.pdfbox.pdmodel.graphics.xobject.PDPixelMap;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
 import org.apache.pdfbox.pdmodel.interactive.action.type.PDActionURI;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
 import org.apache.pdfbox.pdmodel.interactive.annotation.PDBorderStyleDictionary;
@@ -36,43 +49,31 @@ import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPa
 
 import com.github.neoflyingsaucer.displaylist.DlInstruction.DlBookmark;
 import com.github.neoflyingsaucer.displaylist.DlInstruction.DlCMYKColor;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlClip;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlDrawShape;
 import com.github.neoflyingsaucer.displaylist.DlInstruction.DlExternalLink;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlFont;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlGlyphVector;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlImage;
 import com.github.neoflyingsaucer.displaylist.DlInstruction.DlInternalLink;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLine;
 import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLinearGradient;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlOpacity;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlOval;
 import com.github.neoflyingsaucer.displaylist.DlInstruction.DlRGBColor;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlRectangle;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlReplaced;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlSetClip;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlString;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlStringEx;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlStroke;
-import com.github.neoflyingsaucer.displaylist.DlInstruction.DlTranslate;
 import com.github.neoflyingsaucer.displaylist.DlInstruction.Operation;
+import com.github.neoflyingsaucer.displaylist.DlReplay;
+import com.github.neoflyingsaucer.displaylist.DlVisitor;
 import com.github.neoflyingsaucer.extend.controller.cancel.FSCancelController;
 import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
 import com.github.neoflyingsaucer.extend.controller.error.FSError.FSErrorLevel;
 import com.github.neoflyingsaucer.extend.controller.error.LangId;
 import com.github.neoflyingsaucer.extend.output.DisplayList;
-import com.github.neoflyingsaucer.extend.output.DisplayListOuputDevice;
 import com.github.neoflyingsaucer.extend.output.DlItem;
 import com.github.neoflyingsaucer.extend.output.FSFont;
+import com.github.neoflyingsaucer.extend.output.FSGlyphVector;
 import com.github.neoflyingsaucer.extend.output.FSImage;
 import com.github.neoflyingsaucer.extend.output.JustificationInfo;
+import com.github.neoflyingsaucer.extend.output.PagedDisplayListOutputDevice;
 import com.github.neoflyingsaucer.extend.output.ReplacedElement;
 import com.github.neoflyingsaucer.pdf2dout.Pdf2FontResolver.FontDescription;
 import com.github.neoflyingsaucer.pdf2dout.Pdf2ReplacedElementResolver.Pdf2ImageReplacedElement;
 
 import static com.github.neoflyingsaucer.pdf2dout.Pdf2PdfBoxWrapper.*;
 
-public class Pdf2Out implements DisplayListOuputDevice 
+public class Pdf2Out implements PagedDisplayListOutputDevice, DlVisitor
 {
 	private final float _dotsPerPoint;
 	private final PdfOutMode _mode;
@@ -95,6 +96,9 @@ public class Pdf2Out implements DisplayListOuputDevice
 	private int specialPatternCount = 0;
 	private int nextGStateNumber = 0;
 	private Map<Float, String> opacityExtGStates = new HashMap<Float, String>();
+	/* Null values are images that could not be decoded. */
+	private final Map<ImageKey, PDXObjectImage> imageXObjects = new HashMap<ImageKey, PDXObjectImage>();
+	private final Map<FontDescription, BitSet> subsetFonts = new IdentityHashMap<FontDescription, BitSet>();
     
     private static final BasicStroke STROKE_ONE = new BasicStroke(1);
     private static final AffineTransform IDENTITY = new AffineTransform();
@@ -117,165 +121,162 @@ public class Pdf2Out implements DisplayListOuputDevice
 	@Override
 	public void render(DisplayList dl)
 	{
-		for (DlItem item : dl.getDisplayList())
+		DlReplay.replay(dl, this);
+	}
+
+	@Override
+	public void visitLine(int x1, int y1, int x2, int y2)
+	{
+		drawLine(x1, y1, x2, y2);
+	}
+
+	@Override
+	public void visitRectangle(int x, int y, int width, int height, Operation op)
+	{
+		if (op == Operation.STROKE)
+			drawRect(x, y, width, height);
+		else if (op == Operation.FILL)
+			fillRect(x, y, width, height);
+	}
+
+	@Override
+	public void visitOval(int x, int y, int width, int height, Operation op)
+	{
+		if (op == Operation.STROKE)
+			drawOval(x, y, width, height);
+		else if (op == Operation.FILL)
+			fillOval(x, y, width, height);
+	}
+
+	@Override
+	public void visitRGBColor(int r, int g, int b, int a)
+	{
+		setColor(rgbColor(r, g, b, a));
+	}
+
+	@Override
+	public void visitCMYKColor(float c, float m, float y, float k)
+	{
+		setColor(new DlCMYKColor(c, m, y, k));
+	}
+
+	@Override
+	public void visitOpacity(float opacity)
+	{
+		setOpacity(opacity);
+	}
+
+	@Override
+	public void visitTranslate(double tx, double ty)
+	{
+		translate(tx, ty);
+	}
+
+	@Override
+	public void visitString(String txt, float x, float y)
+	{
+		drawString(txt, x, y, null);
+	}
+
+	@Override
+	public void visitStringEx(String txt, float x, float y, JustificationInfo info)
+	{
+		drawString(txt, x, y, info);
+	}
+
+	@Override
+	public void visitGlyphVector(FSGlyphVector vec, float x, float y)
+	{
+	}
+
+	@Override
+	public void visitImage(FSImage image, int x, int y)
+	{
+		drawImage(image, x, y);
+	}
+
+	@Override
+	public void visitShape(Shape shape, Operation op)
+	{
+		if (op == Operation.STROKE)
+			draw(shape);
+		else if (op == Operation.FILL)
+			fill(shape);
+	}
+
+	@Override
+	public void visitClip(Shape clip)
+	{
+		clip(clip);
+	}
+
+	@Override
+	public void visitSetClip(Shape clip)
+	{
+		setClip(clip);
+	}
+
+	@Override
+	public void visitFont(FSFont font)
+	{
+		setFont(font);
+	}
+
+	@Override
+	public void visitStroke(BasicStroke stroke)
+	{
+		setStroke(stroke);
+	}
+
+	@Override
+	public void visitReplaced(ReplacedElement replaced)
+	{
+		drawReplaced(replaced);
+	}
+
+	@Override
+	public void visitAntiAlias(boolean on)
+	{
+	}
+
+	@Override
+	public void visitLinearGradient(DlLinearGradient linear)
+	{
+		drawLinearGradient(linear);
+	}
+
+	@Override
+	public void visitBookmark(DlBookmark bookmark)
+	{
+		createBookmark(bookmark);
+	}
+
+	@Override
+	public void visitInternalLink(DlInternalLink link)
+	{
+		createInternalLink(link);
+	}
+
+	@Override
+	public void visitExternalLink(DlExternalLink link)
+	{
+		createLink(link);
+	}
+
+	/**
+	 * @return The current color if it is the same as the requested color, otherwise a new color.
+	 */
+	private DlItem rgbColor(int r, int g, int b, int a)
+	{
+		if (_color instanceof DlRGBColor)
 		{
-			FSCancelController.cancelOpportunity(Pdf2Out.class);
+			DlRGBColor current = (DlRGBColor) _color;
 			
-			switch (item.getType())
-			{
-			case LINE:
-			{
-				DlLine obj = (DlLine) item;
-				drawLine(obj.x1, obj.y1, obj.x2, obj.y2);
-				break;
-			}
-			case RGBCOLOR:
-			{
-				DlRGBColor obj = (DlRGBColor) item;
-				setColor(obj);
-				break;
-			}
-			case STROKE:
-			{
-				DlStroke stk = (DlStroke) item;
-				setStroke(stk.stroke);
-				break;
-			}
-			case OPACITY:
-			{
-				DlOpacity opac = (DlOpacity) item;
-				setOpacity(opac.opacity);
-				break;
-			}
-			case RECTANGLE:
-			{
-				DlRectangle rect = (DlRectangle) item;
-
-				if (rect.op == Operation.STROKE)
-					drawRect(rect.x, rect.y, rect.width, rect.height);
-				else if (rect.op == Operation.FILL)
-					fillRect(rect.x, rect.y, rect.width, rect.height);
-
-				break;
-			}
-			case TRANSLATE:
-			{
-				DlTranslate trans = (DlTranslate) item;
-				translate(trans.tx, trans.ty);
-				break;
-			}
-			case CLIP:
-			{
-				DlClip clip = (DlClip) item;
-				clip(clip.clip);
-				break;
-			}
-			case SET_CLIP:
-			{
-				DlSetClip clip = (DlSetClip) item;
-				setClip(clip.clip);
-				break;				
-			}
-			case OVAL:
-			{
-				DlOval oval = (DlOval) item;
-				
-				if (oval.op == Operation.STROKE)
-					drawOval(oval.x, oval.y, oval.width, oval.height);
-				else if (oval.op == Operation.FILL)
-					fillOval(oval.x, oval.y, oval.width, oval.height);
-				
-				break;
-			}
-			case DRAW_SHAPE:
-			{
-				DlDrawShape draw = (DlDrawShape) item;
-				
-				if (draw.op == Operation.STROKE)
-					draw(draw.shape);
-				else if (draw.op == Operation.FILL)
-					fill(draw.shape);
-				
-				break;
-			}
-			case IMAGE:
-			{
-				DlImage img = (DlImage) item;
-				drawImage(img.image, img.x, img.y);
-				break;
-			}
-			case FONT:
-			{
-				DlFont font = (DlFont) item;
-				setFont(font.font);
-				break;
-			}
-			case STRING:
-			{
-				DlString s = (DlString) item;
-				drawString(s.txt, s.x, s.y, null);
-				break;
-			}
-			case STRING_EX:
-			{
-				DlStringEx s = (DlStringEx) item;
-				drawString(s.txt, s.x, s.y, s.info);
-				break;
-			}
-			case GLYPH_VECTOR:
-			{
-				DlGlyphVector g = (DlGlyphVector) item;
-				//drawGlyphVector(g.vec, (int) g.x, (int) g.y);
-				break;
-			}
-			case AA_OFF:
-			{
-				
-				break;
-			}
-			case AA_DEFAULT:
-			{
-				
-				break;
-			}
-			case REPLACED:
-			{
-				DlReplaced replaced = (DlReplaced) item;
-				drawReplaced(replaced.replaced);
-				break;
-			}
-			case LINEAR_GRADIENT:
-			{
-				DlLinearGradient linear = (DlLinearGradient) item;
-				drawLinearGradient(linear);
-				break;
-			}
-			case CMYKCOLOR:
-			{
-				DlCMYKColor obj = (DlCMYKColor) item;
-				setColor(obj);
-				break;
-			}
-			case BOOKMARK:
-			{
-				DlBookmark bm = (DlBookmark) item;
-				createBookmark(bm);
-				break;
-			}
-			case EXTERNAL_LINK:
-			{
-				DlExternalLink link = (DlExternalLink) item;
-				createLink(link);
-				break;
-			}
-			case INTERNAL_LINK:
-			{
-				DlInternalLink link = (DlInternalLink) item;
-				createInternalLink(link);
-				break;
-			}
-			}
+			if (current.r == r && current.g == g && current.b == b && current.a == a)
+				return current;
 		}
+		
+		return new DlRGBColor(r, g, b, a);
 	}
 
 	/**
@@ -374,6 +375,9 @@ public class Pdf2Out implements DisplayListOuputDevice
 
 	public void finish()
 	{
+		for (Map.Entry<FontDescription, BitSet> entry : subsetFonts.entrySet())
+			Pdf2FontSubsetter.subset(_pdf, entry.getKey(), entry.getValue());
+
 		bookmarkManager.outputBookmarks(_pdf);
 		pdfSavePdf(_pdf, _os);
 		pdfCloseDocument(_pdf);
@@ -382,9 +386,11 @@ public class Pdf2Out implements DisplayListOuputDevice
 	/**
 	 * MUST be called after rendering every page.
 	 */
+	@Override
 	public void finishPage()
 	{
 		pdfCloseContent(_content);
+		_content = null;
 	}
 	
     /**
@@ -477,6 +483,9 @@ public class Pdf2Out implements DisplayListOuputDevice
 	    float fontSize = _font.getSize2D() / _dotsPerPoint;
 	    pdfSetFont(desc.getFont(), fontSize, _content);
 
+	    if (desc.getProgram() != null)
+	    	addGlyphsUsed(desc, s);
+
 	    float b = (float) mx[1];
 	    float c = (float) mx[2];
 //
@@ -528,6 +537,25 @@ public class Pdf2Out implements DisplayListOuputDevice
 	}
 	
 
+	/**
+	 * Records the character codes drawn with a font, so that only their glyphs are
+	 * embedded when the document is finished.
+	 */
+	private void addGlyphsUsed(FontDescription font, String s)
+	{
+		BitSet codes = subsetFonts.get(font);
+
+		if (codes == null)
+		{
+			codes = new BitSet(256);
+			subsetFonts.put(font, codes);
+		}
+
+		// The bytes the content stream will contain for the string.
+		for (byte b : new COSString(s).getBytes())
+			codes.set(b & 0xff);
+	}
+
 	protected void setFont(FSFont font) 
 	{
 		_font = (Pdf2Font) font;
@@ -577,39 +605,163 @@ public class Pdf2Out implements DisplayListOuputDevice
         inverse.concatenate(at);
         inverse.concatenate(flipper);
 
+        PDXObjectImage xobject = getImageXObject(image);
+
+        if (xobject == null) {
+            return;
+        }
+
         String name = registerExtGState(_opacity, _currentPg);
 		pdfAppendRawCommand("/" + name + " gs\n", _content);
-        
-        if (image.isJpeg())
+		pdfDrawXObject(xobject, inverse, _content);
+    }
+
+	/**
+	 * Returns the XObject for an image, creating it the first time the image is drawn
+	 * in this document. Later draws, on any page, reference the same XObject so that
+	 * the image is decoded and embedded only once. An image that can't be decoded is
+	 * remembered as a null entry, so it is not decoded or reported again.
+	 * @return The XObject or null if the image could not be loaded.
+	 */
+	private PDXObjectImage getImageXObject(Pdf2Image image)
+	{
+		ImageKey key = new ImageKey(image);
+
+		if (imageXObjects.containsKey(key))
+			return imageXObjects.get(key);
+
+		PDXObjectImage xobject = null;
+
+		Pdf2ImageData data = image.getImageData();
+
+		if (data != null && data.canPassThrough())
+		{
+			xobject = createPassThroughImage(data);
+		}
+		else if (image.isJpeg())
         {
-        	PDJpeg jpeg = pdfCreateJpeg(_pdf, new ByteArrayInputStream(image.getBytes()));
-        	pdfDrawXObject(jpeg, inverse, _content);
+        	xobject = pdfCreateJpeg(_pdf, new ByteArrayInputStream(image.getBytes()));
         }
         else
         {
-        	PDPixelMap pixel;
-        	
         	try
         	{
         		BufferedImage img = ImageIO.read(new ByteArrayInputStream(image.getBytes()));
-        		pixel = new PDPixelMap(_pdf, img);
+
+        		if (img != null)
+        			xobject = new PDPixelMap(_pdf, img);
         	}
         	catch (IOException e)
         	{
-        		FSErrorController.log(Pdf2Out.class, FSErrorLevel.ERROR, LangId.COULDNT_LOAD_IMAGE, image.getUri());
-        		return;
+        		// Reported below.
         	}
-        	
-        	pdfDrawXObject(pixel, inverse, _content);
+
+        	if (xobject == null)
+        		FSErrorController.log(Pdf2Out.class, FSErrorLevel.ERROR, LangId.COULDNT_LOAD_IMAGE, image.getUri());
         }
-    }
+
+        imageXObjects.put(key, xobject);
+        return xobject;
+	}
+
+	/**
+	 * Embeds an image's encoded data as-is. JPEG data is used with DCTDecode. PNG image
+	 * data is already a zlib stream with per-row PNG filters, which FlateDecode undoes
+	 * when given a PNG predictor.
+	 */
+	private PDXObjectImage createPassThroughImage(Pdf2ImageData data)
+	{
+		byte[] encoded = data.isJpeg() ? data.getBytes() : data.getPngImageData();
+		PDStream stream = pdfCreateFilteredStream(_pdf, new ByteArrayInputStream(encoded));
+		COSStream dict = stream.getStream();
+
+		dict.setItem(COSName.TYPE, COSName.XOBJECT);
+		dict.setItem(COSName.SUBTYPE, COSName.IMAGE);
+		dict.setItem(COSName.FILTER, data.isJpeg() ? COSName.DCT_DECODE : COSName.FLATE_DECODE);
+
+		PDXObjectImage xobject = data.isJpeg() ? new PDJpeg(stream) : new PDPixelMap(stream);
+
+		if (data.getPalette() != null)
+		{
+			COSArray indexed = new COSArray();
+			indexed.add(COSName.INDEXED);
+			indexed.add(COSName.DEVICERGB);
+			indexed.add(COSInteger.get(data.getPalette().length / 3 - 1));
+			indexed.add(new COSString(data.getPalette()));
+			dict.setItem(COSName.COLORSPACE, indexed);
+		}
+		else if (data.getComponents() == 1)
+		{
+			xobject.setColorSpace(new PDDeviceGray());
+		}
+		else
+		{
+			xobject.setColorSpace(PDDeviceRGB.INSTANCE);
+		}
+
+		xobject.setBitsPerComponent(data.getBitsPerComponent());
+		xobject.setHeight(data.getHeight());
+		xobject.setWidth(data.getWidth());
+
+		if (!data.isJpeg())
+		{
+			COSDictionary parms = new COSDictionary();
+			parms.setInt(COSName.PREDICTOR, 15);
+			parms.setInt(COSName.COLORS, data.getComponents());
+			parms.setInt(COSName.BITS_PER_COMPONENT, data.getBitsPerComponent());
+			parms.setInt(COSName.COLUMNS, data.getWidth());
+			dict.setItem(COSName.DECODE_PARMS, parms);
+		}
+
+		return xobject;
+	}
+
+	/**
+	 * Identifies an image by its URI and content, so that the same image loaded more
+	 * than once (for example, by each page's running header) shares an XObject.
+	 */
+	private static class ImageKey
+	{
+		private final String uri;
+		private final byte[] bytes;
+		private final int hash;
+
+		ImageKey(Pdf2Image image)
+		{
+			this.uri = image.getUri();
+			this.bytes = image.getBytes();
+			this.hash = image.getContentHash() * 31 + (uri == null ? 0 : uri.hashCode());
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof ImageKey))
+				return false;
+
+			ImageKey other = (ImageKey) obj;
+
+			return hash == other.hash &&
+				   (uri == null ? other.uri == null : uri.equals(other.uri)) &&
+				   (bytes == other.bytes || Arrays.equals(bytes, other.bytes));
+		}
+	}
 
 	public void initializePdf(OutputStream os)
 	{
 		_pdf = new PDDocument();
 		_os = os;
+		imageXObjects.clear();
+		subsetFonts.clear();
 	}
 	
+	@Override
 	public void initializePage(float w, float h)
 	{
 		_currentPg = new PDPage();
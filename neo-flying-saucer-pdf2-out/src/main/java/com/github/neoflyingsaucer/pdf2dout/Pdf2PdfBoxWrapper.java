@@ -13,6 +13,7 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.graphics.pattern.PDPatternResources;
@@ -270,6 +271,19 @@ public class Pdf2PdfBoxWrapper
 		}
 	}
 	
+	/**
+	 * @param data A string encoded as getStringWidth encodes it, in ISO-8859-1.
+	 * @return The width of one character, as getStringWidth adds it up.
+	 */
+	public static float pdfGetFontWidth(PDFont font, byte[] data, int offset)
+	{
+		try {
+			return font.getFontWidth(data, offset, 1);
+		} catch (IOException e) {
+			throw new PdfException(e);
+		}
+	}
+	
 	public static void pdfBeginText(PDPageContentStream strm)
 	{
 		try {
@@ -333,6 +347,18 @@ public class Pdf2PdfBoxWrapper
 		}
 	}
 	
+	/**
+	 * Creates a stream from data which is already encoded. The caller must set the stream's filter.
+	 */
+	public static PDStream pdfCreateFilteredStream(PDDocument doc, InputStream is)
+	{
+		try {
+			return new PDStream(doc, is, true);
+		} catch (IOException e) {
+			throw new PdfException(e);
+		}
+	}
+	
 	public static PDJpeg pdfCreateJpeg(PDDocument doc, InputStream is)
 	{
 		try {
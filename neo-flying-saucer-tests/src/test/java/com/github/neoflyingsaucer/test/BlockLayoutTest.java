@@ -0,0 +1,79 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.renderers.PagedRenderer;
+import com.github.neoflyingsaucer.test.support.PagedRendererSupport;
+
+public class BlockLayoutTest
+{
+	@Test
+	public void testEveryChildOfLongBlockIsPainted()
+	{
+		StringBuilder html = new StringBuilder("<html><head><style>" +
+			"@page { size: 200px 100px; margin: 20px; }" +
+			"p { height: 30px; margin: 0; }" +
+			"</style></head><body>");
+
+		// Enough children for the body to index them by position.
+		for (int i = 0; i < 40; i++)
+			html.append("<p>P").append(i).append("</p>");
+
+		html.append("</body></html>");
+
+		PagedRenderer r3 = PagedRendererSupport.prepare(html.toString());
+		Set<String> painted = new HashSet<String>();
+
+		for (int i = 0; i < r3.getPageCount(); i++)
+		{
+			List<String> strings = PagedRendererSupport.getStrings(r3.renderToList(i));
+
+			// Only the paragraphs on the page are painted.
+			assertTrue(strings.toString(), strings.size() <= 2);
+			painted.addAll(strings);
+		}
+
+		for (int i = 0; i < 40; i++)
+			assertTrue("P" + i, painted.contains("P" + i));
+	}
+
+	@Test
+	public void testPageBreakAvoidRunMovedWithoutRelayout()
+	{
+		String html =
+			"<html><head><style>" +
+			"@page { size: 200px 100px; margin: 20px; }" +
+			"body { margin: 0; font-size: 10px; }" +
+			"h4 { margin: 0; font-size: 10px; page-break-after: avoid; }" +
+			"div { height: 30px; }" +
+			".box { border: 2px solid blue; padding: 2px; height: auto; }" +
+			"</style></head><body>" +
+			"<div style='height: 45px'></div><h4>Heading</h4>" +
+			"<div class=box><div style='height: 10px'></div><p style='margin: 0'>Boxed <b>text</b></p></div>" +
+			"<p style='margin: 0'>After</p>" +
+			"</body></html>";
+
+		PagedRenderer moved = PagedRendererSupport.prepare(html);
+
+		assertTrue(moved.getSharedContext().getAvoidedRelayoutCount() > 0);
+
+		// The heading stays with the block after it.
+		assertFalse(PagedRendererSupport.getStrings(moved.renderToList(0)).contains("Heading"));
+		assertTrue(PagedRendererSupport.getStrings(moved.renderToList(1)).contains("Heading"));
+
+		PagedRenderer relaidOut = PagedRendererSupport.create(html);
+		relaidOut.getSharedContext().setMoveAvoidedRuns(false);
+		relaidOut.prepare();
+
+		assertEquals(0, relaidOut.getSharedContext().getAvoidedRelayoutCount());
+		PagedRendererSupport.assertPagesEqual(relaidOut, moved);
+	}
+}
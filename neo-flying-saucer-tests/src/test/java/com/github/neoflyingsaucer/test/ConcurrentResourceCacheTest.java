@@ -0,0 +1,92 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.defaultuseragent.ConcurrentResourceCache;
+import com.github.neoflyingsaucer.defaultuseragent.ConcurrentResourceCache.CacheStats;
+import com.github.neoflyingsaucer.j2dout.Java2DImage;
+
+public class ConcurrentResourceCacheTest
+{
+	/* 32 x 32 x 4 bytes. */
+	private static final long IMAGE_BYTES = 4096;
+
+	private static Java2DImage newImage()
+	{
+		return new Java2DImage(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB));
+	}
+
+	@Test
+	public void testImagesBoundedByWeight()
+	{
+		ConcurrentResourceCache cache = new ConcurrentResourceCache(1024, 1024, IMAGE_BYTES * 10);
+
+		for (int i = 0; i < 100; i++)
+			cache.putImage("img" + i, Java2DImage.class, newImage());
+
+		CacheStats stats = cache.getImageStats();
+
+		assertTrue(stats.getWeight() <= IMAGE_BYTES * 10);
+		assertTrue(stats.getEntryCount() <= 10);
+		assertEquals(100 - stats.getEntryCount(), stats.getEvictionCount());
+	}
+
+	@Test
+	public void testFrequentImageSurvivesScan()
+	{
+		ConcurrentResourceCache cache = new ConcurrentResourceCache(1024, 1024, IMAGE_BYTES * 10);
+
+		cache.putImage("logo", Java2DImage.class, newImage());
+
+		for (int i = 0; i < 100; i++)
+		{
+			assertTrue(cache.getImage("logo", Java2DImage.class).isPresent());
+
+			// One-off images, each requested once before being loaded.
+			cache.getImage("img" + i, Java2DImage.class);
+			cache.putImage("img" + i, Java2DImage.class, newImage());
+		}
+
+		CacheStats stats = cache.getImageStats();
+
+		assertEquals(100, stats.getHitCount());
+		assertEquals(100, stats.getMissCount());
+	}
+
+	@Test
+	public void testOversizedImageNotCached()
+	{
+		ConcurrentResourceCache cache = new ConcurrentResourceCache(1024, 1024, IMAGE_BYTES / 2);
+
+		cache.putImage("big", Java2DImage.class, newImage());
+
+		assertTrue(!cache.getImage("big", Java2DImage.class).isPresent());
+		assertEquals(0, cache.getImageStats().getWeight());
+	}
+
+	@Test
+	public void testReplacedImageNotRetained()
+	{
+		ConcurrentResourceCache cache = new ConcurrentResourceCache(1024, 1024, IMAGE_BYTES * 10);
+		Java2DImage first = newImage();
+		WeakReference<Java2DImage> firstRef = new WeakReference<Java2DImage>(first);
+
+		// Two renders that both missed put the same image.
+		cache.putImage("img", Java2DImage.class, first);
+		cache.putImage("img", Java2DImage.class, newImage());
+		first = null;
+
+		for (int i = 0; i < 20 && firstRef.get() != null; i++)
+			System.gc();
+
+		assertNull(firstRef.get());
+		assertEquals(IMAGE_BYTES, cache.getImageStats().getWeight());
+	}
+}
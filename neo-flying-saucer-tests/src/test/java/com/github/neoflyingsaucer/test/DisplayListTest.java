@@ -0,0 +1,144 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.displaylist.CompactDisplayList;
+import com.github.neoflyingsaucer.displaylist.DlPageCache;
+import com.github.neoflyingsaucer.displaylist.DlReferenceTable;
+import com.github.neoflyingsaucer.displaylist.DlSerializer;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+import com.github.neoflyingsaucer.renderers.PagedRenderer;
+import com.github.neoflyingsaucer.test.support.PagedRendererSupport;
+
+public class DisplayListTest
+{
+	@Test
+	public void testCompactDisplayListMatchesDefault()
+	{
+		PagedRenderer standard = PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+		PagedRenderer compact = PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+		compact.setCompactDisplayLists(true);
+
+		for (int i = 0; i < standard.getPageCount(); i++)
+		{
+			DisplayList actual = compact.renderToList(i);
+
+			assertTrue(actual instanceof CompactDisplayList);
+			PagedRendererSupport.assertDisplayListsEqual("Page " + i, standard.renderToList(i), actual);
+		}
+	}
+
+	@Test
+	public void testCompactDisplayListSerializes() throws IOException
+	{
+		PagedRenderer compact = PagedRendererSupport.create(PagedRendererSupport.MULTI_PAGE_HTML);
+		compact.setCompactDisplayLists(true);
+		compact.prepare();
+
+		for (int i = 0; i < compact.getPageCount(); i++)
+		{
+			DisplayList expected = compact.renderToList(i);
+			DlReferenceTable refs = new DlReferenceTable();
+			byte[] bytes = DlSerializer.toBytes(expected, refs);
+
+			PagedRendererSupport.assertDisplayListsEqual("Page " + i, expected, DlSerializer.read(ByteBuffer.wrap(bytes), refs));
+		}
+	}
+
+	@Test
+	public void testPageCacheRoundTrip() throws IOException
+	{
+		PagedRenderer r3 = PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+		File file = File.createTempFile("fs-pages", ".dl");
+
+		try
+		{
+			DlReferenceTable refs = new DlReferenceTable();
+			DlPageCache.Writer writer = new DlPageCache.Writer(file, refs);
+
+			try
+			{
+				for (int i = 0; i < r3.getPageCount(); i++)
+					writer.writePage(r3.renderToList(i), r3.getPageWidth(i), r3.getPageHeight(i));
+			}
+			finally
+			{
+				writer.close();
+			}
+
+			DlPageCache cache = DlPageCache.open(file);
+			assertEquals(r3.getPageCount(), cache.getPageCount());
+
+			for (int i = 0; i < r3.getPageCount(); i++)
+			{
+				assertEquals(r3.getPageWidth(i), cache.getPageWidth(i), 0f);
+				assertEquals(r3.getPageHeight(i), cache.getPageHeight(i), 0f);
+				PagedRendererSupport.assertDisplayListsEqual("Page " + i, r3.renderToList(i), cache.readPage(i, refs));
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCorruptPageCacheEntryRejected() throws IOException
+	{
+		PagedRenderer r3 = PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+		File file = File.createTempFile("fs-pages", ".dl");
+
+		try
+		{
+			DlReferenceTable refs = new DlReferenceTable();
+			DlPageCache.Writer writer = new DlPageCache.Writer(file, refs);
+
+			try
+			{
+				writer.writePage(r3.renderToList(0), r3.getPageWidth(0), r3.getPageHeight(0));
+			}
+			finally
+			{
+				writer.close();
+			}
+
+			// Make the length in the first index entry run past the end of the file.
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+			try
+			{
+				raf.seek(10);
+				long indexOffset = raf.readLong();
+				raf.seek(indexOffset + 16);
+				raf.writeInt(Integer.MAX_VALUE);
+			}
+			finally
+			{
+				raf.close();
+			}
+
+			try
+			{
+				DlPageCache.open(file).readPage(0, refs);
+				fail("Corrupt entry read");
+			}
+			catch (IOException e)
+			{
+				// Expected.
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+}
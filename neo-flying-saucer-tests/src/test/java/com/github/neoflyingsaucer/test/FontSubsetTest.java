@@ -0,0 +1,264 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.GlyphVector;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptorDictionary;
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.test.support.PdfTest;
+
+public class FontSubsetTest
+{
+	private static final String FONT = "/fonts/fuzz.ttf";
+
+	private static byte[] readFont() throws Exception
+	{
+		InputStream in = FontSubsetTest.class.getResourceAsStream(FONT);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int b;
+
+		try
+		{
+			while ((b = in.read()) != -1)
+				out.write(b);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return The offset of a table in the font.
+	 */
+	private static int findTable(byte[] font, String tag) throws Exception
+	{
+		int numTables = readUShort(font, 4);
+
+		for (int i = 0; i < numTables; i++)
+		{
+			int entry = 12 + i * 16;
+
+			if (new String(font, entry, 4, "ISO-8859-1").equals(tag))
+				return (readUShort(font, entry + 8) << 16) | readUShort(font, entry + 10);
+		}
+
+		throw new AssertionError("Missing table: " + tag);
+	}
+
+	private static int readUShort(byte[] data, int pos)
+	{
+		return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+	}
+
+	private static void writeUShort(byte[] data, int pos, int value)
+	{
+		data[pos] = (byte) (value >>> 8);
+		data[pos + 1] = (byte) value;
+	}
+
+	private static PdfTest render(String text)
+	{
+		return render(FontSubsetTest.class.getResource(FONT).toString(), text);
+	}
+
+	private static PdfTest render(byte[] font, String text) throws Exception
+	{
+		File file = File.createTempFile("fs-font", ".ttf");
+
+		try
+		{
+			OutputStream out = new FileOutputStream(file);
+
+			try
+			{
+				out.write(font);
+			}
+			finally
+			{
+				out.close();
+			}
+
+			return render(file.toURI().toString(), text);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	private static PdfTest render(String fontUri, String text)
+	{
+		PdfTest pdf = new PdfTest("font-subset");
+
+		pdf.prepare("<html><head><style>@font-face { font-family: fuzz; src: url(" +
+				fontUri + "); }" +
+				"body { font-family: fuzz; }</style></head><body>" + text + "</body></html>");
+
+		return pdf;
+	}
+
+	private static byte[] getEmbeddedFont(PdfTest pdf, String[] baseFont) throws Exception
+	{
+		PDDocument doc = PDDocument.load(new ByteArrayInputStream(pdf.getBytes()));
+
+		try
+		{
+			PDPage page = (PDPage) doc.getDocumentCatalog().getAllPages().get(0);
+			PDFont font = page.findResources().getFonts().values().iterator().next();
+			PDFontDescriptorDictionary descriptor = (PDFontDescriptorDictionary) font.getFontDescriptor();
+
+			assertEquals(font.getBaseFont(), descriptor.getFontName());
+			baseFont[0] = font.getBaseFont();
+
+			return descriptor.getFontFile2().getByteArray();
+		}
+		finally
+		{
+			doc.close();
+		}
+	}
+
+	private static boolean hasOutline(Font font, char c)
+	{
+		return hasGlyphOutline(font, getGlyph(font, c));
+	}
+
+	private static int getGlyph(Font font, char c)
+	{
+		Graphics2D g2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+		try
+		{
+			return font.createGlyphVector(g2d.getFontRenderContext(), String.valueOf(c)).getGlyphCode(0);
+		}
+		finally
+		{
+			g2d.dispose();
+		}
+	}
+
+	private static boolean hasGlyphOutline(Font font, int glyph)
+	{
+		Graphics2D g2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+		try
+		{
+			GlyphVector glyphs = font.createGlyphVector(g2d.getFontRenderContext(), new int[] { glyph });
+			return glyphs.getGlyphOutline(0).getBounds().width > 0;
+		}
+		finally
+		{
+			g2d.dispose();
+		}
+	}
+
+	@Test
+	public void testFontFaceFontIsSubset() throws Exception
+	{
+		String[] baseFont = new String[1];
+		byte[] subset = getEmbeddedFont(render("Hello, world"), baseFont);
+
+		assertTrue(baseFont[0], baseFont[0].matches("[A-Z]{6}\\+.+"));
+		assertTrue(subset.length + " bytes", subset.length < readFont().length / 4);
+
+		// The subset is a valid font, with outlines for the characters drawn only.
+		Font font = Font.createFont(Font.TRUETYPE_FONT, new ByteArrayInputStream(subset)).deriveFont(100f);
+
+		assertTrue(hasOutline(font, 'H'));
+		assertTrue(hasOutline(font, 'w'));
+		assertFalse(hasOutline(font, 'Q'));
+	}
+
+	@Test
+	public void testDocumentsSharingFontAreSubsetSeparately() throws Exception
+	{
+		String[] first = new String[1];
+		String[] second = new String[1];
+		Font one = Font.createFont(Font.TRUETYPE_FONT, new ByteArrayInputStream(getEmbeddedFont(render("One"), first))).deriveFont(100f);
+		Font two = Font.createFont(Font.TRUETYPE_FONT, new ByteArrayInputStream(getEmbeddedFont(render("Two"), second))).deriveFont(100f);
+
+		assertNotEquals(first[0], second[0]);
+		assertTrue(hasOutline(one, 'O'));
+		assertFalse(hasOutline(one, 'T'));
+		assertTrue(hasOutline(two, 'T'));
+		assertFalse(hasOutline(two, 'O'));
+	}
+
+	@Test
+	public void testUnicodePlatformCmapIsUsed() throws Exception
+	{
+		// Leave the Unicode platform cmap as the only one mapping characters. PDFBox needs
+		// a Windows Unicode cmap to load the font, so that one stays, but shares the
+		// Macintosh table, which is cleared to map every code to .notdef.
+		byte[] font = readFont();
+		int cmap = findTable(font, "cmap");
+		int records = readUShort(font, cmap + 2);
+		int macTable = -1;
+
+		for (int i = 0; i < records; i++)
+		{
+			int record = cmap + 4 + i * 8;
+
+			if (readUShort(font, record) == 1)
+				macTable = record + 4;
+		}
+
+		int subtable = cmap + (readUShort(font, macTable) << 16 | readUShort(font, macTable + 2));
+		// A trimmed table, format 6.
+		assertEquals(6, readUShort(font, subtable));
+		Arrays.fill(font, subtable + 10, subtable + 10 + readUShort(font, subtable + 8) * 2, (byte) 0);
+
+		for (int i = 0; i < records; i++)
+		{
+			int record = cmap + 4 + i * 8;
+
+			if (readUShort(font, record) == 3)
+				System.arraycopy(font, macTable, font, record + 4, 4);
+		}
+
+		String[] baseFont = new String[1];
+		Font subset = Font.createFont(Font.TRUETYPE_FONT,
+				new ByteArrayInputStream(getEmbeddedFont(render(font, "Hello"), baseFont))).deriveFont(100f);
+		Font whole = Font.createFont(Font.TRUETYPE_FONT, new ByteArrayInputStream(readFont()));
+
+		// The subset's own cmaps are the cleared ones, so glyphs are looked up in the whole font.
+		assertTrue(baseFont[0], baseFont[0].matches("[A-Z]{6}\\+.+"));
+		assertTrue(hasGlyphOutline(subset, getGlyph(whole, 'H')));
+		assertTrue(hasGlyphOutline(subset, getGlyph(whole, 'o')));
+		assertFalse(hasGlyphOutline(subset, getGlyph(whole, 'Q')));
+	}
+
+	@Test
+	public void testFontForbiddingSubsettingIsEmbeddedWhole() throws Exception
+	{
+		byte[] font = readFont();
+		writeUShort(font, findTable(font, "OS/2") + 8, 0x0100);
+
+		String[] baseFont = new String[1];
+		byte[] embedded = getEmbeddedFont(render(font, "Hello, world"), baseFont);
+
+		assertFalse(baseFont[0], baseFont[0].matches("[A-Z]{6}\\+.+"));
+		assertEquals(font.length, embedded.length);
+	}
+}
@@ -0,0 +1,93 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.extend.output.FSFontFaceItem;
+import com.github.neoflyingsaucer.extend.output.FontSpecificationI;
+import com.github.neoflyingsaucer.extend.output.FontSpecificationI.FontStyle;
+import com.github.neoflyingsaucer.extend.output.FontSpecificationI.FontVariant;
+import com.github.neoflyingsaucer.j2dout.Java2DFont;
+import com.github.neoflyingsaucer.j2dout.Java2DFontResolver;
+
+public class Java2DFontResolverTest
+{
+	private static byte[] readFont() throws Exception
+	{
+		InputStream in = Java2DFontResolverTest.class.getResourceAsStream("/fonts/fuzz.ttf");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try
+		{
+			int b;
+			while ((b = in.read()) != -1)
+				out.write(b);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return out.toByteArray();
+	}
+
+	private static String resolveFamily(Java2DFontResolver resolver, String family)
+	{
+		return ((Java2DFont) resolver.resolveFont(new String[] { family }, 12, 400, FontStyle.NORMAL, FontVariant.NORMAL)).getAWTFont().getFamily();
+	}
+
+	@Test
+	public void testFontFaceFamiliesAreKeptPerResolver() throws Exception
+	{
+		final byte[] bytes = readFont();
+		Java2DFontResolver withFontFace = new Java2DFontResolver();
+		Java2DFontResolver without = new Java2DFontResolver();
+
+		withFontFace.importFontFaceItems(Collections.<FSFontFaceItem>singletonList(new FSFontFaceItem()
+		{
+			@Override
+			public String getFontFamily()
+			{
+				return "Serif";
+			}
+
+			@Override
+			public byte[] getFontBytes()
+			{
+				return bytes;
+			}
+
+			@Override
+			public String getEncoding()
+			{
+				return null;
+			}
+
+			@Override
+			public int getWeight()
+			{
+				return 400;
+			}
+
+			@Override
+			public FontSpecificationI getSpecification()
+			{
+				return null;
+			}
+		}));
+
+		String system = resolveFamily(without, "Serif");
+
+		assertNotEquals(system, resolveFamily(withFontFace, "Serif"));
+		assertEquals(system, resolveFamily(new Java2DFontResolver(), "Serif"));
+
+		withFontFace.flushCache();
+		assertEquals(system, resolveFamily(withFontFace, "Serif"));
+	}
+}
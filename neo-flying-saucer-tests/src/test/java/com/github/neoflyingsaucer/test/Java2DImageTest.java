@@ -0,0 +1,96 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.j2dout.Java2DImage;
+import com.github.neoflyingsaucer.j2dout.Java2DImageResolver;
+
+public class Java2DImageTest
+{
+	private static byte[] createPng(int width, int height) throws Exception
+	{
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = img.createGraphics();
+
+		g2d.setColor(Color.RED);
+		g2d.fillRect(0, 0, width, height);
+		g2d.dispose();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(img, "png", out);
+
+		return out.toByteArray();
+	}
+
+	private static Java2DImage resolve(byte[] png)
+	{
+		return (Java2DImage) new Java2DImageResolver().resolveImage("test.png", new ByteArrayInputStream(png));
+	}
+
+	@Test
+	public void testScaledImagesAreSharedAndSourceNotDecoded() throws Exception
+	{
+		byte[] png = createPng(2000, 1000);
+		Java2DImage first = resolve(png);
+
+		assertEquals(2000, first.getWidth());
+		assertEquals(1000, first.getHeight());
+
+		Java2DImage scaled = (Java2DImage) first.scale(200, -1);
+
+		assertEquals(200, scaled.getWidth());
+		assertEquals(100, scaled.getHeight());
+		assertEquals(Color.RED.getRGB(), scaled.getAWTImage().getRGB(100, 50));
+
+		// Only the encoded bytes are kept, the full size image was never decoded.
+		assertEquals(png.length, first.getRetainedBytes());
+
+		// Another document resolving the same bytes reuses the scaled image.
+		Java2DImage second = resolve(png.clone());
+		assertSame(scaled.getAWTImage(), ((Java2DImage) second.scale(-1, 100)).getAWTImage());
+	}
+
+	@Test
+	public void testDecodedImageDoesNotGrowRetainedBytes() throws Exception
+	{
+		byte[] png = createPng(300, 200);
+		Java2DImage first = resolve(png);
+		long weight = first.getRetainedBytes();
+
+		BufferedImage decoded = first.getAWTImage();
+
+		assertEquals(300, decoded.getWidth());
+		assertEquals(Color.RED.getRGB(), decoded.getRGB(150, 100));
+
+		// The weight a resource cache gave the image when it was put stays correct.
+		assertEquals(weight, first.getRetainedBytes());
+
+		// The decoded image is shared with another document resolving the same bytes.
+		assertSame(decoded, resolve(png.clone()).getAWTImage());
+	}
+
+	@Test
+	public void testOversizeImageDecodedOnce() throws Exception
+	{
+		// Decodes to more raster bytes than the scaled image cache holds.
+		Java2DImage img = resolve(createPng(4800, 4800));
+
+		BufferedImage decoded = img.getAWTImage();
+
+		assertEquals(4800, decoded.getWidth());
+
+		// Drawn again, on another page.
+		assertSame(decoded, img.getAWTImage());
+	}
+}
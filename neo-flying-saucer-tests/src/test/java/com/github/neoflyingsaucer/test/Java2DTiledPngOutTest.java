@@ -0,0 +1,103 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.defaultuseragent.DefaultUserAgent;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+import com.github.neoflyingsaucer.j2dout.Java2DFontContext;
+import com.github.neoflyingsaucer.j2dout.Java2DFontResolver;
+import com.github.neoflyingsaucer.j2dout.Java2DImageResolver;
+import com.github.neoflyingsaucer.j2dout.Java2DOut;
+import com.github.neoflyingsaucer.j2dout.Java2DReplacedElementResolver;
+import com.github.neoflyingsaucer.j2dout.Java2DTiledPngOut;
+import com.github.neoflyingsaucer.renderers.ContinuousRenderer;
+
+public class Java2DTiledPngOutTest
+{
+	private static String createHtml()
+	{
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("<html><head><style>");
+		sb.append("div { margin: 7px; padding: 5px; border: 3px solid blue; background-color: #ffeecc; }");
+		sb.append("div.round { border-radius: 9px; opacity: 0.5; }");
+		sb.append("</style></head><body>");
+
+		for (int i = 0; i < 40; i++)
+			sb.append("<div class='" + (i % 3 == 0 ? "round" : "") + "'>Block " + i + " with some text to wrap around</div>");
+
+		sb.append("</body></html>");
+		return sb.toString();
+	}
+
+	@Test
+	public void testTiledImageMatchesWholeImage() throws Exception
+	{
+		File file = File.createTempFile("fs-continuous", ".html");
+		BufferedImage layoutGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d2 = layoutGraphics.createGraphics();
+
+		try
+		{
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			writer.write(createHtml());
+			writer.close();
+
+			ContinuousRenderer r3 = new ContinuousRenderer(new DefaultUserAgent(), 72f, 300, 300);
+			r3.setDocumentUri(file.toURI().toString());
+			r3.setImageResolver(new Java2DImageResolver());
+			r3.setFontContext(new Java2DFontContext(g2d2));
+			r3.setFontResolver(new Java2DFontResolver());
+			r3.setReplacedElementResolver(new Java2DReplacedElementResolver());
+			r3.setViewportSize(300, 300);
+
+			DisplayList dl = r3.renderToList();
+			int height = r3.getLayoutHeight();
+
+			RenderingHints hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			hints.put(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+
+			BufferedImage whole = new BufferedImage(300, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2d = whole.createGraphics();
+			g2d.setRenderingHints(hints);
+			new Java2DOut(g2d, RenderingHints.VALUE_ANTIALIAS_ON).render(dl);
+			g2d.dispose();
+
+			// A tile height that does not divide the image, so that the last tile is cut short.
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new Java2DTiledPngOut(300, height, 37, hints).render(dl, out);
+			BufferedImage tiled = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+
+			assertEquals(300, tiled.getWidth());
+			assertEquals(height, tiled.getHeight());
+
+			for (int y = 0; y < height; y++)
+			{
+				for (int x = 0; x < 300; x++)
+				{
+					if (whole.getRGB(x, y) != tiled.getRGB(x, y))
+						assertEquals("Pixel at " + x + "," + y, whole.getRGB(x, y), tiled.getRGB(x, y));
+				}
+			}
+		}
+		finally
+		{
+			g2d2.dispose();
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.defaultuseragent.DefaultUserAgent;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+import com.github.neoflyingsaucer.extend.output.PagedDisplayListOutputDevice;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2FontContext;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2FontResolver;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2ImageResolver;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2Out;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2Out.PdfOutMode;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2ReplacedElementResolver;
+import com.github.neoflyingsaucer.renderers.PagedRenderer;
+import com.github.neoflyingsaucer.test.support.PagedRendererSupport;
+
+public class PagedRendererTest
+{
+	@Test
+	public void testRenderAllPagesMatchesSequentialRender()
+	{
+		// The fixed block and the table header are painted on every page, with the
+		// page number in them measured again for each page.
+		StringBuilder html = new StringBuilder("<html><head><style>" +
+			"@page { size: 200px 100px; margin: 20px; }" +
+			"#fixed { position: fixed; top: -15px; left: 0; font-size: 8px; }" +
+			"#fixed:after { content: 'Page ' counter(page) ' of ' counter(pages); }" +
+			"table { -fs-table-paginate: paginate; font-size: 8px; }" +
+			"th:after { content: ' p' counter(page) ' x'; }" +
+			"</style></head><body><div id=fixed>Header</div><table><thead><tr><th>Head</th></tr></thead><tbody>");
+
+		for (int i = 0; i < 60; i++)
+			html.append("<tr><td>Row ").append(i).append("</td></tr>");
+
+		html.append("</tbody></table></body></html>");
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try
+		{
+			PagedRenderer sequential = PagedRendererSupport.prepare(html.toString());
+			PagedRenderer parallel = PagedRendererSupport.prepare(html.toString());
+
+			assertTrue(sequential.getPageCount() >= 10);
+
+			for (int run = 0; run < 5; run++)
+			{
+				List<DisplayList> lists = parallel.renderAllPages(executor);
+
+				assertEquals(sequential.getPageCount(), lists.size());
+
+				for (int i = 0; i < sequential.getPageCount(); i++)
+				{
+					PagedRendererSupport.assertDisplayListsEqual("Page " + i, sequential.renderToList(i), lists.get(i));
+
+					List<String> strings = PagedRendererSupport.getStrings(lists.get(i));
+					assertTrue(strings.toString(), strings.contains("" + (i + 1)));
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRenderToDeviceWritesEveryPage()
+	{
+		final float dotsPerPoint = 20f * 4f / 3f;
+		final int dotsPerPixel = 20;
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Pdf2Out out = new Pdf2Out(dotsPerPoint, PdfOutMode.TEST_MODE);
+		ByteArrayOutputStream bs = new ByteArrayOutputStream();
+
+		try
+		{
+			out.initializePdf(bs);
+
+			PagedRenderer r3 = new PagedRenderer(new DefaultUserAgent(), dotsPerPoint * 72f, dotsPerPixel);
+			r3.setDocumentHtml(PagedRendererSupport.MULTI_PAGE_HTML);
+			r3.setImageResolver(new Pdf2ImageResolver(dotsPerPixel));
+			r3.setFontContext(new Pdf2FontContext());
+			r3.setFontResolver(new Pdf2FontResolver(out.getDocument()));
+			r3.setReplacedElementResolver(new Pdf2ReplacedElementResolver());
+			r3.prepare();
+
+			r3.renderToDevice(out, executor, 2);
+
+			assertTrue(r3.getPageCount() > 1);
+			assertEquals(r3.getPageCount(), out.getDocument().getNumberOfPages());
+
+			out.finish();
+			assertTrue(bs.size() > 0);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * @return True if the thread is blocked adding to a full queue, rather than waiting on
+	 * a lock while painting.
+	 */
+	private static boolean isWaitingToQueue(Thread thread)
+	{
+		if (thread.getState() != Thread.State.WAITING)
+			return false;
+
+		for (StackTraceElement element : thread.getStackTrace())
+		{
+			if (element.getClassName().equals(ArrayBlockingQueue.class.getName()) && element.getMethodName().equals("put"))
+				return true;
+		}
+
+		return false;
+	}
+
+	@Test
+	public void testFailingDeviceReleasesExecutor() throws InterruptedException
+	{
+		final Thread[] producer = new Thread[1];
+		ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				producer[0] = new Thread(r);
+				return producer[0];
+			}
+		});
+
+		PagedRenderer r3 = PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+		assertTrue(r3.getPageCount() >= 3);
+
+		PagedDisplayListOutputDevice out = new PagedDisplayListOutputDevice()
+		{
+			@Override
+			public void initializePage(float width, float height)
+			{
+				// Fail once the queue is full and the producer is waiting to add the next page.
+				// A producer just woken by taking this page may still look blocked for a moment.
+				long end = System.currentTimeMillis() + 5000;
+
+				try
+				{
+					while (System.currentTimeMillis() < end)
+					{
+						if (isWaitingToQueue(producer[0]))
+						{
+							Thread.sleep(100);
+
+							if (isWaitingToQueue(producer[0]))
+								break;
+						}
+						else
+						{
+							Thread.yield();
+						}
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+
+				throw new IllegalStateException("Device failed");
+			}
+
+			@Override
+			public void render(DisplayList dl)
+			{
+			}
+
+			@Override
+			public void finishPage()
+			{
+			}
+		};
+
+		try
+		{
+			r3.renderToDevice(out, executor, 1);
+			fail();
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals("Device failed", e.getMessage());
+		}
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testStreamedPagesMatchPreparedPages()
+	{
+		StringBuilder html = new StringBuilder("<html><head><style>" +
+			"@page { size: 200px 100px; margin: 20px; @top-center { content: counter(page); } }" +
+			"h2 { page-break-after: avoid; margin: 0; font-size: 12px; }" +
+			"p { height: 30px; margin: 0; }" +
+			"div { border: 1px solid blue; }" +
+			"</style></head><body>");
+
+		for (int i = 0; i < 20; i++)
+			html.append("<div><h2>H").append(i).append("</h2><p>P").append(i).append("</p></div>");
+
+		html.append("</body></html>");
+
+		PagedRendererSupport.assertStreamedPagesEqual(html.toString());
+		assertTrue(PagedRendererSupport.streamsBeforeLayoutEnds(html.toString()));
+
+		// Fixed content and the page count need the whole document laid out.
+		PagedRendererSupport.assertStreamedPagesEqual(PagedRendererSupport.MULTI_PAGE_HTML);
+		assertFalse(PagedRendererSupport.streamsBeforeLayoutEnds(PagedRendererSupport.MULTI_PAGE_HTML));
+	}
+}
@@ -0,0 +1,174 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.context.StylesheetCache;
+import com.github.neoflyingsaucer.extend.controller.error.FSError;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorHandler;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorType;
+import com.github.neoflyingsaucer.extend.controller.error.FSListErrorHandler;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+import com.github.neoflyingsaucer.renderers.PagedRenderer;
+import com.github.neoflyingsaucer.test.support.PagedRendererSupport;
+
+public class StylesheetCacheTest
+{
+	private static List<Integer> prepareForCssErrors(String html)
+	{
+		FSErrorHandler old = FSErrorController.getThreadErrorHandler();
+		FSListErrorHandler errors = new FSListErrorHandler();
+		List<Integer> lines = new ArrayList<Integer>();
+
+		FSErrorController.setThreadErrorHandler(errors);
+
+		try
+		{
+			PagedRendererSupport.prepare(html);
+		}
+		finally
+		{
+			FSErrorController.setThreadErrorHandler(old);
+		}
+
+		for (FSError err : errors.getErrorList())
+		{
+			if (err.getErrorType() == FSErrorType.CSS_ERROR)
+				lines.add(err.getLineNumber());
+		}
+
+		return lines;
+	}
+
+	@Test
+	public void testParsedStylesheetsSharedBetweenRenders()
+	{
+		PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+
+		long hits = StylesheetCache.getInstance().getHitCount();
+		long misses = StylesheetCache.getInstance().getMissCount();
+
+		PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+
+		// The default stylesheet and the inline style.
+		assertTrue(StylesheetCache.getInstance().getHitCount() >= hits + 2);
+		assertEquals(misses, StylesheetCache.getInstance().getMissCount());
+	}
+
+	@Test
+	public void testStylesheetCacheCanBeTurnedOff()
+	{
+		PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+
+		long hits = StylesheetCache.getInstance().getHitCount();
+		long misses = StylesheetCache.getInstance().getMissCount();
+
+		PagedRenderer r3 = PagedRendererSupport.create(PagedRendererSupport.MULTI_PAGE_HTML);
+		r3.getSharedContext().getCss().setUseStylesheetCache(false);
+		r3.prepare();
+
+		assertEquals(hits, StylesheetCache.getInstance().getHitCount());
+		assertEquals(misses, StylesheetCache.getInstance().getMissCount());
+	}
+
+	@Test
+	public void testCachedStylesheetReportsParseErrors()
+	{
+		// A stylesheet no other test parses, with errors in it.
+		String html = "<html><head><style>\n" +
+			"/* " + StylesheetCacheTest.class.getName() + " */\n" +
+			"p { color: red; ; ; }\n" +
+			"p { margin: 1px } }} div { color: blue; }\n" +
+			"</style></head><body><p>Text</p></body></html>";
+
+		long hits = StylesheetCache.getInstance().getHitCount();
+		List<Integer> first = prepareForCssErrors(html);
+		List<Integer> second = prepareForCssErrors(html);
+
+		assertTrue(StylesheetCache.getInstance().getHitCount() > hits);
+		assertTrue(first.size() > 0);
+		assertEquals(first, second);
+	}
+
+	@Test
+	public void testMatcherRulesSharedBetweenRenders()
+	{
+		PagedRenderer first = PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+		PagedRenderer second = PagedRendererSupport.prepare(PagedRendererSupport.MULTI_PAGE_HTML);
+
+		assertSame(first.getSharedContext().getCss().getMatcherRules(),
+				   second.getSharedContext().getCss().getMatcherRules());
+		assertEquals(first.getPageCount(), second.getPageCount());
+	}
+
+	@Test
+	public void testConcurrentRendersShareStylesheet() throws Exception
+	{
+		// Renders reading the shared stylesheet derive the @font-face style and
+		// resolve the counter styles in it.
+		StringBuilder text = new StringBuilder("<html><head><style>" +
+			"/* " + StylesheetCacheTest.class.getName() + " concurrent */" +
+			"@font-face { font-family: fuzz; src: url(" + StylesheetCacheTest.class.getResource("/fonts/fuzz.ttf") + "); }" +
+			"@page { size: 200px 100px; margin: 20px; }" +
+			"body { font-family: fuzz, serif; font-size: 10px; counter-reset: item; }" +
+			"ol { counter-reset: sub; }" +
+			"li { counter-increment: item sub; }" +
+			"li:before { content: counter(item, upper-roman) ' ' counters(sub, '.', lower-alpha) ' '; }" +
+			"</style></head><body>");
+
+		for (int i = 0; i < 10; i++)
+			text.append("<ol><li>One</li><li>Two<ol><li>Three</li></ol></li></ol>");
+
+		text.append("</body></html>");
+
+		final String html = text.toString();
+		PagedRenderer expected = PagedRendererSupport.prepare(html);
+		final List<DisplayList> expectedPages = new ArrayList<DisplayList>();
+
+		// Painted up front, as a renderer may only paint one page at a time.
+		for (int i = 0; i < expected.getPageCount(); i++)
+			expectedPages.add(expected.renderToList(i));
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try
+		{
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+
+			for (int i = 0; i < 16; i++)
+			{
+				futures.add(executor.submit(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						PagedRenderer actual = PagedRendererSupport.prepare(html);
+						assertEquals(expectedPages.size(), actual.getPageCount());
+
+						for (int i = 0; i < expectedPages.size(); i++)
+							PagedRendererSupport.assertDisplayListsEqual("Page " + i, expectedPages.get(i), actual.renderToList(i));
+					}
+				}));
+			}
+
+			for (Future<?> future : futures)
+				future.get();
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		assertTrue(PagedRendererSupport.getStrings(expectedPages.get(0)).contains("III"));
+	}
+}
@@ -0,0 +1,117 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.renderers.PagedRenderer;
+import com.github.neoflyingsaucer.test.support.PagedRendererSupport;
+
+public class TableLayoutTest
+{
+	private static void assertParallelMeasureMatchesSerial(String html)
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try
+		{
+			PagedRenderer serial = PagedRendererSupport.prepare(html);
+			PagedRenderer parallel = PagedRendererSupport.create(html);
+			parallel.setLayoutExecutor(executor, 4);
+			parallel.prepare();
+
+			PagedRendererSupport.assertPagesEqual(serial, parallel);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testParallelTableMeasureMatchesSerial()
+	{
+		StringBuilder html = new StringBuilder("<html><head><style>" +
+			"@page { size: 600px 400px; margin: 20px; }" +
+			"td { border: 1px solid black; font-size: 10px; }" +
+			"span { display: inline-block; width: 15px; }" +
+			"</style></head><body><table>");
+
+		for (int i = 0; i < 100; i++)
+		{
+			html.append("<tr><td>").append(i).append("</td>");
+			html.append("<td>word word ").append(i % 7 == 0 ? "longerword" : "w").append("</td>");
+			html.append("<td style='white-space: nowrap'>no wrap ").append(i % 5).append("</td>");
+			html.append("<td><span>").append(i).append("</span> text</td></tr>");
+		}
+
+		html.append("</table></body></html>");
+
+		assertParallelMeasureMatchesSerial(html.toString());
+	}
+
+	@Test
+	public void testParallelTableMeasureWithSharedCellStyles()
+	{
+		// Cells of a class share one style, whose margins, borders, padding and
+		// colors are resolved on first use. Colors not used by any other test are
+		// also new to the color cache.
+		StringBuilder html = new StringBuilder("<html><head><style>" +
+			"@page { size: 800px 600px; margin: 20px; }" +
+			"td { font-size: 10px; }" +
+			"b { padding: 0 3px; border-left: 2px solid rgb(7, 9, 11); margin: 0 1px; }");
+
+		for (int i = 0; i < 8; i++)
+		{
+			html.append(".c").append(i).append(" { border: ").append(i + 1).append("px solid rgb(3, 5, ").append(i).append(");");
+			html.append(" padding: ").append(i).append("px ").append(-i).append("px ").append(i).append("px 3%;");
+			html.append(" margin: ").append(i).append("px; }");
+		}
+
+		html.append("</style></head><body><table>");
+
+		for (int i = 0; i < 60; i++)
+		{
+			html.append("<tr>");
+
+			for (int j = 0; j < 8; j++)
+				html.append("<td class='c").append((i + j) % 8).append("'>cell <b>").append(i * j).append("</b> text</td>");
+
+			html.append("</tr>");
+		}
+
+		html.append("</table></body></html>");
+
+		assertParallelMeasureMatchesSerial(html.toString());
+	}
+
+	@Test
+	public void testStreamedTablePagesMatchPreparedPages()
+	{
+		StringBuilder html = new StringBuilder("<html><head><style>" +
+			"@page { size: 200px 100px; margin: 20px; }" +
+			"table { table-layout: fixed; width: 100%; -fs-table-paginate: paginate; border: 1px solid blue; }" +
+			"td, th { border: 1px solid black; font-size: 10px; }" +
+			"</style></head><body><table><thead><tr><th>A</th><th>B</th></tr></thead><tbody>");
+
+		for (int i = 0; i < 40; i++)
+		{
+			if (i % 4 == 0)
+				html.append("<tr><td rowspan='2' style='vertical-align: bottom'>S").append(i).append("</td>");
+			else if (i % 4 == 1)
+				html.append("<tr>");
+			else
+				html.append("<tr><td>A").append(i).append("</td>");
+
+			html.append("<td>B").append(i).append("</td></tr>");
+		}
+
+		html.append("</tbody></table></body></html>");
+
+		PagedRendererSupport.assertStreamedPagesEqual(html.toString());
+		assertTrue(PagedRendererSupport.streamsBeforeLayoutEnds(html.toString()));
+	}
+}
@@ -0,0 +1,82 @@
+package com.github.neoflyingsaucer.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.Test;
+
+import com.github.neoflyingsaucer.extend.output.FSFont;
+import com.github.neoflyingsaucer.extend.output.FontContext;
+import com.github.neoflyingsaucer.j2dout.Java2DFont;
+import com.github.neoflyingsaucer.j2dout.Java2DFontContext;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2Font;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2FontContext;
+import com.github.neoflyingsaucer.pdf2dout.Pdf2FontResolver.FontDescription;
+
+public class TextMeasurementTest
+{
+	private static final String TEXT =
+		"WHEREAS the Parties (each a “Party”) wish to amend the Agreement dated 1 May 2014 — " +
+		"as previously amended … été, naïve Αβγ, שלום; " +
+		"AVAWAY ffi fl \uD83D\uDE00 \uD83D  trailing";
+
+	private static void assertPrefixWidthsMatch(FontContext ctx, FSFont font)
+	{
+		int[] widths = ctx.getPrefixWidths(font, TEXT, new int[4]);
+
+		for (int i = 0; i < TEXT.length(); i++)
+			assertEquals("prefix " + (i + 1), ctx.getWidth(font, TEXT.substring(0, i + 1)), widths[i]);
+
+		// Simple text only, measured from glyph positions.
+		String simple = TEXT.substring(0, TEXT.indexOf('Α'));
+		widths = ctx.getPrefixWidths(font, simple, widths);
+
+		for (int i = 0; i < simple.length(); i++)
+			assertEquals("prefix " + (i + 1), ctx.getWidth(font, simple.substring(0, i + 1)), widths[i]);
+	}
+
+	@Test
+	public void testJava2DPrefixWidths()
+	{
+		Graphics2D g2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+		try
+		{
+			FontContext ctx = new Java2DFontContext(g2d);
+
+			assertPrefixWidthsMatch(ctx, new Java2DFont(new Font(Font.SERIF, Font.PLAIN, 12)));
+			assertPrefixWidthsMatch(ctx, new Java2DFont(new Font(Font.SANS_SERIF, Font.BOLD, 31)));
+		}
+		finally
+		{
+			g2d.dispose();
+		}
+	}
+
+	@Test
+	public void testPdf2WidthSameAsPdfBox() throws Exception
+	{
+		FontContext ctx = new Pdf2FontContext();
+		Pdf2Font font = new Pdf2Font(new FontDescription(PDType1Font.TIMES_ROMAN), 1000);
+
+		// At 1000 units per em, and with whole unit AFM widths, no rounding is involved.
+		for (int i = 0; i < TEXT.length(); i++)
+		{
+			String s = TEXT.substring(i);
+			assertEquals(s, (int) PDType1Font.TIMES_ROMAN.getStringWidth(s), ctx.getWidth(font, s));
+		}
+	}
+
+	@Test
+	public void testPdf2PrefixWidths()
+	{
+		FontContext ctx = new Pdf2FontContext();
+
+		assertPrefixWidthsMatch(ctx, new Pdf2Font(new FontDescription(PDType1Font.TIMES_ROMAN), 12 * 20));
+		assertPrefixWidthsMatch(ctx, new Pdf2Font(new FontDescription(PDType1Font.HELVETICA_BOLD), 31 * 20));
+	}
+}
@@ -1,8 +1,28 @@
 package com.github.neoflyingsaucer.test.pdf;
 
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.xobject.PDXObjectImage;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.github.neoflyingsaucer.extend.controller.error.FSError;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorController;
+import com.github.neoflyingsaucer.extend.controller.error.FSErrorHandler;
+import com.github.neoflyingsaucer.extend.controller.error.FSListErrorHandler;
+import com.github.neoflyingsaucer.extend.controller.error.LangId;
 import com.github.neoflyingsaucer.test.support.PdfTest;
 
 public class TestPage 
@@ -152,6 +172,110 @@ public class TestPage
 		pdf.assertContains(imgObject);
 	}
 
+	@Test
+	public void testPNGImagePixels() throws IOException
+	{
+		assertImagePixels("PNGImagePixels", PATTERN_IMAGE_DATA_URL);
+	}
+
+	@Test
+	public void testPalettePNGImagePixels() throws IOException
+	{
+		byte[] r = { (byte) 255, 0 };
+		byte[] g = { 0, 0 };
+		byte[] b = { 0, (byte) 255 };
+
+		BufferedImage img = new BufferedImage(4, 4, BufferedImage.TYPE_BYTE_BINARY, new IndexColorModel(1, 2, r, g, b));
+
+		for (int y = 0; y < 4; y++)
+			for (int x = 0; x < 4; x++)
+				img.setRGB(x, y, x == 0 && y == 0 ? 0xFFFF0000 : 0xFF0000FF);
+
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(img, "png", png);
+
+		assertImagePixels("PalettePNGImagePixels", "data:image/png;base64," + DatatypeConverter.printBase64Binary(png.toByteArray()));
+	}
+
+	@Test
+	public void testUndecodableImageReportedOnce()
+	{
+		// A PNG header for a 4px x 4px RGBA image, without any image data. The header
+		// is enough to size the image but it can't be decoded for embedding.
+		byte[] png = DatatypeConverter.parseHexBinary(
+			"89504E470D0A1A0A" +
+			"0000000D49484452000000040000000408060000000000000000" +
+			"0000000049454E4400000000");
+		String url = "data:image/png;base64," + DatatypeConverter.printBase64Binary(png);
+
+		String html =
+			"<html><head><style>" +
+			"@page { size: 20px 20px; margin: 0 }" +
+			"body { margin: 0; }" +
+			"div { background-image: url(" + url + "); background-repeat: no-repeat; width: 4px; height: 4px; }" +
+			"</style></head><body><div></div><div></div><div></div></body></html>";
+
+		FSErrorHandler old = FSErrorController.getThreadErrorHandler();
+		FSListErrorHandler errors = new FSListErrorHandler();
+		FSErrorController.setThreadErrorHandler(errors);
+
+		try
+		{
+			new PdfTest("UndecodableImageReportedOnce").prepare(html);
+		}
+		finally
+		{
+			FSErrorController.setThreadErrorHandler(old);
+		}
+
+		int failures = 0;
+
+		for (FSError err : errors.getErrorList())
+		{
+			if (err.getLanguageId() == LangId.COULDNT_LOAD_IMAGE)
+				failures++;
+		}
+
+		assertEquals(1, failures);
+	}
+
+	/**
+	 * Renders a 4px x 4px image with a red top left pixel and the rest blue, then
+	 * decodes the embedded image from the PDF and checks its pixels.
+	 */
+	private void assertImagePixels(String testName, String dataUrl) throws IOException
+	{
+		PdfTest pdf = new PdfTest(testName);
+
+		String html =
+			"<html><head><style>" +
+			"@page { size: 4px 4px; margin: 0 }" +
+			"body {  margin: 0; }" +
+			"div { background-image: url(" + dataUrl + "); width: 4px; height: 4px; }" +
+			"</style></head><body><div></div></body></html>";
+
+		pdf.prepare(html);
+
+		PDDocument doc = PDDocument.load(new ByteArrayInputStream(pdf.getBytes()));
+
+		try
+		{
+			PDPage page = (PDPage) doc.getDocumentCatalog().getAllPages().get(0);
+			PDXObject xobject = page.getResources().getXObjects().values().iterator().next();
+			BufferedImage img = ((PDXObjectImage) xobject).getRGBImage();
+
+			assertEquals(4, img.getWidth());
+			assertEquals(4, img.getHeight());
+			assertEquals(0xFF0000, img.getRGB(0, 0) & 0xFFFFFF);
+			assertEquals(0x0000FF, img.getRGB(1, 0) & 0xFFFFFF);
+			assertEquals(0x0000FF, img.getRGB(3, 3) & 0xFFFFFF);
+		}
+		finally
+		{
+			doc.close();
+		}
+	}
+
 	@Test
 	public void testBasicFonts()
 	{
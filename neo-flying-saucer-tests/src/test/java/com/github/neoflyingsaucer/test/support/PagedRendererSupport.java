@@ -0,0 +1,328 @@
+package com.github.neoflyingsaucer.test.support;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.neoflyingsaucer.defaultuseragent.DefaultUserAgent;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlClip;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlDrawShape;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlLine;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlOval;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlRectangle;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlSetClip;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlString;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.DlTranslate;
+import com.github.neoflyingsaucer.displaylist.DlInstruction.Operation;
+import com.github.neoflyingsaucer.extend.output.DisplayList;
+import com.github.neoflyingsaucer.extend.output.DlItem;
+import com.github.neoflyingsaucer.j2dout.Java2DFontContext;
+import com.github.neoflyingsaucer.j2dout.Java2DFontResolver;
+import com.github.neoflyingsaucer.j2dout.Java2DImageResolver;
+import com.github.neoflyingsaucer.j2dout.Java2DReplacedElementResolver;
+import com.github.neoflyingsaucer.renderers.PagedRenderer;
+
+/**
+ * Creates Java2D paged renderers over html text, and compares what they paint.
+ */
+public class PagedRendererSupport
+{
+	public static final String MULTI_PAGE_HTML =
+		"<html><head><style>" +
+		"@page { size: 200px 100px; margin: 20px; @bottom-center { content: counter(page) ' of ' counter(pages); } }" +
+		"#fixed { position: fixed; top: 0; left: 0; }" +
+		"p { height: 30px; margin: 0; border: 1px solid red; }" +
+		"</style></head><body><div id=fixed>Page <span>header</span></div>" +
+		"<p>One</p><p>Two</p><p>Three</p><p>Four</p><p>Five</p><p>Six</p><p>Seven</p><p>Eight</p>" +
+		"</body></html>";
+
+	// Only used to measure text, so one is shared by every renderer.
+	private static final Graphics2D LAYOUT_GRAPHICS = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+	public static PagedRenderer create(String html)
+	{
+		PagedRenderer r3 = new PagedRenderer(new DefaultUserAgent(), 72, 1);
+
+		r3.setDocumentHtml(html);
+		r3.setImageResolver(new Java2DImageResolver());
+		r3.setFontContext(new Java2DFontContext(LAYOUT_GRAPHICS));
+		r3.setFontResolver(new Java2DFontResolver());
+		r3.setReplacedElementResolver(new Java2DReplacedElementResolver());
+
+		return r3;
+	}
+
+	public static PagedRenderer prepare(String html)
+	{
+		PagedRenderer r3 = create(html);
+		r3.prepare();
+
+		return r3;
+	}
+
+	/**
+	 * @return The text painted on a page, in painting order.
+	 */
+	public static List<String> getStrings(DisplayList dl)
+	{
+		List<String> strings = new ArrayList<String>();
+
+		for (DlItem item : dl.getDisplayList())
+		{
+			if (item instanceof DlString)
+				strings.add(((DlString) item).txt);
+		}
+
+		return strings;
+	}
+
+	/**
+	 * Asserts that every page of both renderers paints the same.
+	 */
+	public static void assertPagesEqual(PagedRenderer expected, PagedRenderer actual)
+	{
+		assertEquals(expected.getPageCount(), actual.getPageCount());
+
+		for (int i = 0; i < expected.getPageCount(); i++)
+			assertDisplayListsEqual("Page " + i, expected.renderToList(i), actual.renderToList(i));
+	}
+
+	/**
+	 * Pages handed over by {@link PagedRenderer#prepareStreaming(PagedRenderer.PageConsumer)}.
+	 */
+	private static class StreamedPages implements PagedRenderer.PageConsumer
+	{
+		private final PagedRenderer renderer;
+		private final List<DisplayList> lists = new ArrayList<DisplayList>();
+		private int pageCountAtFirst;
+
+		private StreamedPages(String html)
+		{
+			renderer = create(html);
+			renderer.prepareStreaming(this);
+		}
+
+		@Override
+		public void pageReady(int pageNo, DisplayList dl, int width, int height)
+		{
+			assertEquals(lists.size(), pageNo);
+			lists.add(dl);
+
+			if (pageNo == 0)
+				pageCountAtFirst = renderer.getPageCount();
+		}
+	}
+
+	/**
+	 * Asserts that the pages handed over while streaming paint the same as the pages of a
+	 * prepared renderer. Blocks still being laid out when a page is handed over are painted
+	 * past the bottom of the page, to a height they may not end up with, so lines and shapes
+	 * are compared as clipped to the page.
+	 */
+	public static void assertStreamedPagesEqual(String html)
+	{
+		PagedRenderer prepared = prepare(html);
+		StreamedPages streamed = new StreamedPages(html);
+
+		assertEquals(prepared.getPageCount(), streamed.lists.size());
+
+		for (int i = 0; i < prepared.getPageCount(); i++)
+			assertDisplayListsEqual("Page " + i, prepared.renderToList(i), streamed.lists.get(i), true);
+	}
+
+	/**
+	 * @return True if the first page is handed over before layout is complete.
+	 */
+	public static boolean streamsBeforeLayoutEnds(String html)
+	{
+		StreamedPages streamed = new StreamedPages(html);
+
+		// Pages are still being added while layout goes on.
+		return streamed.pageCountAtFirst < streamed.lists.size();
+	}
+
+	/**
+	 * Asserts that two display lists hold the same instructions, with the same text,
+	 * coordinates, colors and shape bounds.
+	 */
+	public static void assertDisplayListsEqual(String message, DisplayList expected, DisplayList actual)
+	{
+		assertDisplayListsEqual(message, expected, actual, false);
+	}
+
+	/**
+	 * @param clipped Compare lines and shapes by the part of them inside the clip.
+	 */
+	private static void assertDisplayListsEqual(String message, DisplayList expected, DisplayList actual, boolean clipped)
+	{
+		List<DlItem> expectedItems = expected.getDisplayList();
+		List<DlItem> actualItems = actual.getDisplayList();
+		Clip clip = new Clip();
+
+		assertEquals(message, expectedItems.size(), actualItems.size());
+
+		for (int i = 0; i < expectedItems.size(); i++)
+		{
+			DlItem expectedItem = expectedItems.get(i);
+			DlItem actualItem = actualItems.get(i);
+			Rectangle2D expectedBounds = clipped ? getBounds(expectedItem) : null;
+
+			if (expectedBounds != null)
+			{
+				assertEquals(message + ", item " + i, expectedItem.getClass(), actualItem.getClass());
+				assertEquals(message + ", item " + i, getOperation(expectedItem), getOperation(actualItem));
+				assertEquals(message + ", item " + i + ", visible bounds",
+						clip.getVisible(expectedBounds), clip.getVisible(getBounds(actualItem)));
+			}
+			else
+			{
+				assertItemsEqual(message + ", item " + i, expectedItem, actualItem);
+			}
+
+			// Clips and translations were compared exactly.
+			clip.update(expectedItem);
+		}
+	}
+
+	/**
+	 * @return The bounds of a line or shape, or null for other instructions.
+	 */
+	private static Rectangle2D getBounds(DlItem item)
+	{
+		if (item instanceof DlLine)
+		{
+			DlLine line = (DlLine) item;
+			return new Rectangle2D.Double(Math.min(line.x1, line.x2), Math.min(line.y1, line.y2),
+					Math.abs(line.x2 - line.x1), Math.abs(line.y2 - line.y1));
+		}
+		else if (item instanceof DlRectangle)
+		{
+			DlRectangle rect = (DlRectangle) item;
+			return new Rectangle2D.Double(rect.x, rect.y, rect.width, rect.height);
+		}
+		else if (item instanceof DlOval)
+		{
+			DlOval oval = (DlOval) item;
+			return new Rectangle2D.Double(oval.x, oval.y, oval.width, oval.height);
+		}
+		else if (item instanceof DlDrawShape)
+		{
+			return ((DlDrawShape) item).shape.getBounds2D();
+		}
+
+		return null;
+	}
+
+	private static Operation getOperation(DlItem item)
+	{
+		if (item instanceof DlRectangle)
+			return ((DlRectangle) item).op;
+		else if (item instanceof DlOval)
+			return ((DlOval) item).op;
+		else if (item instanceof DlDrawShape)
+			return ((DlDrawShape) item).op;
+
+		return null;
+	}
+
+	/**
+	 * Follows the translation and clip set by a display list, in page coordinates.
+	 */
+	private static class Clip
+	{
+		private double tx;
+		private double ty;
+		private Rectangle2D clip;
+
+		private void update(DlItem item)
+		{
+			if (item instanceof DlTranslate)
+			{
+				tx += ((DlTranslate) item).tx;
+				ty += ((DlTranslate) item).ty;
+			}
+			else if (item instanceof DlClip)
+			{
+				Rectangle2D added = toPage(((DlClip) item).clip.getBounds2D());
+
+				if (clip == null)
+					clip = added;
+				else
+					clip = intersect(clip, added);
+			}
+			else if (item instanceof DlSetClip)
+			{
+				Shape set = ((DlSetClip) item).clip;
+				clip = set == null ? null : toPage(set.getBounds2D());
+			}
+		}
+
+		private Rectangle2D toPage(Rectangle2D r)
+		{
+			return new Rectangle2D.Double(r.getX() + tx, r.getY() + ty, r.getWidth(), r.getHeight());
+		}
+
+		/**
+		 * @return The part of the bounds inside the clip, in page coordinates, or null if none is.
+		 */
+		private Rectangle2D getVisible(Rectangle2D bounds)
+		{
+			Rectangle2D r = toPage(bounds);
+			return clip == null ? r : intersect(r, clip);
+		}
+
+		private static Rectangle2D intersect(Rectangle2D a, Rectangle2D b)
+		{
+			Rectangle2D result = new Rectangle2D.Double();
+			Rectangle2D.intersect(a, b, result);
+
+			// Lines have no width or height, so an empty intersection is one turned inside out.
+			if (result.getWidth() < 0 || result.getHeight() < 0)
+				return null;
+
+			return result;
+		}
+	}
+
+	private static void assertItemsEqual(String message, DlItem expected, DlItem actual)
+	{
+		assertEquals(message, expected.getClass(), actual.getClass());
+
+		for (Field field : expected.getClass().getFields())
+		{
+			if (Modifier.isStatic(field.getModifiers()))
+				continue;
+
+			Object expectedValue;
+			Object actualValue;
+
+			try
+			{
+				expectedValue = field.get(expected);
+				actualValue = field.get(actual);
+			}
+			catch (IllegalAccessException e)
+			{
+				throw new RuntimeException(e);
+			}
+
+			if (expectedValue instanceof Shape && actualValue instanceof Shape)
+			{
+				assertEquals(message + ", " + field.getName(),
+						((Shape) expectedValue).getBounds2D(), ((Shape) actualValue).getBounds2D());
+			}
+			else if (expectedValue == null || expectedValue instanceof Number || expectedValue instanceof String ||
+					 expectedValue instanceof Enum || expectedValue instanceof Boolean)
+			{
+				assertEquals(message + ", " + field.getName(), expectedValue, actualValue);
+			}
+		}
+	}
+}
@@ -95,6 +95,11 @@ public class PdfTest
     	}
 	}
 	
+	public byte[] getBytes()
+	{
+		return bs.toByteArray();
+	}
+	
 	public String getUnencoded()
 	{
 		String unencoded;